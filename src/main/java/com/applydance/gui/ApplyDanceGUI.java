@@ -37,6 +37,7 @@ public class ApplyDanceGUI extends Application {
             // Gestion de la fermeture
             primaryStage.setOnCloseRequest(event -> {
                 logger.info("Fermeture de l'application ApplyDance");
+                controller.shutdown();
                 System.exit(0);
             });
             
@@ -43,6 +43,7 @@ import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.Optional;
 import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 import javafx.collections.ListChangeListener;
 import javafx.scene.control.SelectionMode;
@@ -1709,9 +1710,9 @@ public class MainController {
         Optional<ButtonType> result = alert.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
             // Supprimer les slots sélectionnés
-            for (GeneratedSlot slot : selectedSlots) {
-                historyService.removeSlot(slot.getId());
-            }
+            historyService.removeSlots(selectedSlots.stream()
+                    .map(GeneratedSlot::getId)
+                    .collect(Collectors.toList()));
             
             // Rafraîchir l'affichage
             refreshHistory();
@@ -1723,6 +1724,18 @@ public class MainController {
         }
     }
     
+    /**
+     * Fermeture de l'application : écrit les sauvegardes en attente
+     */
+    public void shutdown() {
+        if (configService != null) {
+            configService.shutdown();
+        }
+        if (historyService != null) {
+            historyService.close();
+        }
+    }
+    
     private void loadInitialData() {
         try {
             // Charger les données existantes
@@ -1850,10 +1863,31 @@ public class MainController {
         }
     }
     
+    /**
+     * Rafraîchit la table : après une génération, seuls les nouveaux slots sont ajoutés
+     * (la sélection des lignes affichées est conservée) ; rechargement complet sinon
+     */
     private void refreshHistory() {
-        List<GeneratedSlot> allSlots = historyService.getAllSlots();
-        historyData.clear();
-        historyData.addAll(allSlots);
+        long lastShownId = historyData.isEmpty() || historyData.get(historyData.size() - 1).getId() == null
+                ? 0 : historyData.get(historyData.size() - 1).getId();
+        List<GeneratedSlot> added = new ArrayList<>();
+        historyService.iterateFrom(lastShownId + 1).forEachRemaining(added::add);
+        if (historyData.size() + added.size() == historyService.getTotalCount() && isShownHistoryCurrent()) {
+            historyData.addAll(added);
+        } else {
+            historyData.setAll(historyService.asList());
+        }
+    }
+    
+    /**
+     * Vrai si les slots affichés sont encore, dans l'ordre, les premiers slots de l'historique
+     */
+    private boolean isShownHistoryCurrent() {
+        if (historyData.isEmpty()) {
+            return true;
+        }
+        List<GeneratedSlot> shown = historyService.page(historyData.size() - 1, 1);
+        return !shown.isEmpty() && Objects.equals(shown.get(0).getId(), historyData.get(historyData.size() - 1).getId());
     }
     
     private void refreshStatistics() {
@@ -1865,9 +1899,9 @@ public class MainController {
                 // Collecter TOUS les nœuds traversés dans les chemins de décision
                 Map<String, Integer> uniqueNodeStats = new HashMap<>();
                 
-                List<GeneratedSlot> allSlots = historyService.getAllSlots();
-                for (GeneratedSlot slot : allSlots) {
-                    String decisionPath = slot.getDecisionPath();
+                // Un passage par chemin distinct, pondéré par son effectif (même comptage que le rapport)
+                for (Map.Entry<String, Integer> pathStat : report.decisionPathStats.entrySet()) {
+                    String decisionPath = pathStat.getKey();
                     
                     // Traiter TOUS les nœuds du chemin de décision, pas seulement le final
                     if (decisionPath != null && decisionPath.contains(" > ")) {
@@ -1911,7 +1945,7 @@ public class MainController {
                                 }
                                 
                                 if (!displayName.isEmpty()) {
-                                    uniqueNodeStats.merge(nodeKey, 1, Integer::sum);
+                                    uniqueNodeStats.merge(nodeKey, pathStat.getValue(), Integer::sum);
                                 }
                             }
                         }
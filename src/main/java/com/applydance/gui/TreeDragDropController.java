@@ -1,6 +1,8 @@
 package com.applydance.gui;
 
 import com.applydance.model.TreeNode;
+import com.applydance.model.Weights;
+import com.applydance.service.TreeChangeEvent;
 import com.applydance.service.TreeConfigurationService;
 import java.util.UUID;
 import javafx.animation.KeyFrame;
@@ -22,8 +24,12 @@ import javafx.util.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Contrôleur JavaFX pour l'interface d'arbre avec glisser-déposer.
@@ -38,21 +44,24 @@ public class TreeDragDropController {
     private final TreeConfigurationService configService;
     private VBox treeContainer;
     private TreeNode draggedNode;
+    // Index des éléments affichés pour patcher l'affichage sans tout reconstruire
+    private final Map<String, VBox> nodeDisplays = new HashMap<>();
+    private final Map<String, VBox> childrenContainers = new HashMap<>();
     
     // Constructeur qui accepte une instance existante de TreeConfigurationService (recommandé)
     public TreeDragDropController(TreeConfigurationService configService) {
         this.configService = configService;
         
-        // Écouter les changements de configuration pour rafraîchir l'affichage
-        this.configService.addChangeListener(this::refreshTreeDisplay);
+        // Écouter les changements de configuration pour mettre à jour l'affichage
+        this.configService.addTreeChangeListener(this::onTreeChanged);
     }
     
     // Constructeur par défaut (pour compatibilité)
     public TreeDragDropController() {
         this.configService = new TreeConfigurationService();
         
-        // Écouter les changements de configuration pour rafraîchir l'affichage
-        this.configService.addChangeListener(this::refreshTreeDisplay);
+        // Écouter les changements de configuration pour mettre à jour l'affichage
+        this.configService.addTreeChangeListener(this::onTreeChanged);
     }
     
     /**
@@ -137,9 +146,10 @@ public class TreeDragDropController {
                              "-fx-font-weight: bold; -fx-font-size: 14;");
         expandButton.setOnAction(e -> {
             boolean expand = expandButton.getText().contains("Développer");
-            expandCollapseAll(configService.getRootNode(), expand);
+            // Un seul lot pour tout l'arbre : une étape de journal, un événement (qui reconstruit
+            // l'affichage), aucune entrée d'annulation
+            configService.setExpanded(configService.getRootNode(), expand, true);
             expandButton.setText(expand ? "Tout Réduire" : "Tout Développer");
-            refreshTreeDisplay(configService.getRootNode());
         });
         
         // Bouton d'import/rechargement
@@ -148,8 +158,29 @@ public class TreeDragDropController {
                              "-fx-background-radius: 15; -fx-padding: 12 24; " +
                              "-fx-font-weight: bold; -fx-font-size: 14;");
         reloadButton.setOnAction(e -> importTreeConfiguration());
-        
-        actions.getChildren().addAll(expandButton, reloadButton);
+
+        // Boutons d'annulation/rétablissement (journal des modifications)
+        Button undoButton = new Button("↶ Annuler");
+        undoButton.setStyle("-fx-background-color: #D08770; -fx-text-fill: white; " +
+                           "-fx-background-radius: 15; -fx-padding: 12 24; " +
+                           "-fx-font-weight: bold; -fx-font-size: 14;");
+        undoButton.setOnAction(e -> {
+            if (!configService.undo()) {
+                showQuickFeedback(undoButton, "#BF616A", "✗");
+            }
+        });
+
+        Button redoButton = new Button("↷ Rétablir");
+        redoButton.setStyle("-fx-background-color: #B48EAD; -fx-text-fill: white; " +
+                           "-fx-background-radius: 15; -fx-padding: 12 24; " +
+                           "-fx-font-weight: bold; -fx-font-size: 14;");
+        redoButton.setOnAction(e -> {
+            if (!configService.redo()) {
+                showQuickFeedback(redoButton, "#BF616A", "✗");
+            }
+        });
+
+        actions.getChildren().addAll(expandButton, undoButton, redoButton, reloadButton);
         return actions;
     }
     
@@ -165,6 +196,8 @@ public class TreeDragDropController {
         
         logger.debug("Rafraîchissement de l'affichage de l'arbre");
         treeContainer.getChildren().clear();
+        nodeDisplays.clear();
+        childrenContainers.clear();
         
         if (rootNode != null) {
             logger.debug("Affichage de la racine : {} (expanded: {}, children: {})", 
@@ -183,18 +216,9 @@ public class TreeDragDropController {
                 
                 VBox childrenContainer = new VBox(5);
                 childrenContainer.setPadding(new Insets(10, 0, 0, 30));
-                
-                for (TreeNode child : rootNode.getChildren()) {
-                    logger.debug("Affichage enfant : {} ({}%)", child.getLabel(), child.getPercentage());
-                    VBox childDisplay = createNodeDisplay(child, false);
-                    childrenContainer.getChildren().add(childDisplay);
-                    
-                    // Récursif pour les petits-enfants
-                    if (child.hasChildren() && child.isExpanded()) {
-                        VBox grandChildrenContainer = createChildrenContainer(child);
-                        childrenContainer.getChildren().add(grandChildrenContainer);
-                    }
-                }
+                childrenContainer.setUserData(rootNode.getId());
+                childrenContainers.put(rootNode.getId(), childrenContainer);
+                populateChildrenContainer(childrenContainer, rootNode);
                 
                 treeContainer.getChildren().add(childrenContainer);
             }
@@ -209,20 +233,131 @@ public class TreeDragDropController {
     private VBox createChildrenContainer(TreeNode parent) {
         VBox container = new VBox(5);
         container.setPadding(new Insets(5, 0, 0, 30));
+        container.setUserData(parent.getId());
+        childrenContainers.put(parent.getId(), container);
+        populateChildrenContainer(container, parent);
         
+        return container;
+    }
+    
+    /**
+     * Remplit un conteneur avec l'affichage des enfants d'un nœud (et de leurs descendants dépliés)
+     */
+    private void populateChildrenContainer(VBox container, TreeNode parent) {
         if (parent.hasChildren()) {
             for (TreeNode child : parent.getChildren()) {
+                logger.debug("Affichage enfant : {} ({}%)", child.getLabel(), child.getPercentage());
                 VBox childDisplay = createNodeDisplay(child, false);
                 container.getChildren().add(childDisplay);
                 
+                // Récursif pour les petits-enfants
                 if (child.hasChildren() && child.isExpanded()) {
                     VBox grandChildrenContainer = createChildrenContainer(child);
                     container.getChildren().add(grandChildrenContainer);
                 }
             }
         }
+    }
+    
+    /**
+     * Applique un événement de modification en ne reconstruisant que les fratries touchées
+     */
+    private void onTreeChanged(TreeChangeEvent event) {
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> onTreeChanged(event));
+            return;
+        }
+        if (treeContainer == null) {
+            return;
+        }
+        if (event.isFullRefresh() || nodeDisplays.isEmpty()) {
+            refreshTreeDisplay(event.getRootNode());
+            return;
+        }
         
-        return container;
+        Set<String> rebuiltParents = new HashSet<>();
+        boolean patched = true;
+        for (TreeChangeEvent.Change change : event.getChanges()) {
+            switch (change.type) {
+                case NODE_ADDED:
+                case NODE_REMOVED:
+                case NODE_MOVED:
+                    patched &= rebuildChildren(change.parent, rebuiltParents);
+                    patched &= rebuildChildren(change.oldParent, rebuiltParents);
+                    break;
+                case NODE_UPDATED:
+                    if (change.node.hasChildren()) {
+                        // L'état déplié peut avoir changé : reconstruire la fratrie qui le contient
+                        patched &= change.parent != null && rebuildChildren(change.parent, rebuiltParents);
+                    } else {
+                        refreshNodeRow(change.node);
+                    }
+                    break;
+                case WEIGHTS_CHANGED:
+                    if (change.parent != null && !rebuiltParents.contains(change.parent.getId())) {
+                        for (TreeNode sibling : change.parent.getChildren()) {
+                            refreshNodeRow(sibling);
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        
+        if (!patched) {
+            logger.debug("Patch incrémental impossible pour {}, reconstruction complète", event);
+            refreshTreeDisplay(event.getRootNode());
+        }
+    }
+    
+    /**
+     * Reconstruit le conteneur des enfants d'un parent affiché.
+     * Retourne false si l'affichage ne peut pas être patché (conteneur absent alors qu'il devrait exister).
+     */
+    private boolean rebuildChildren(TreeNode parent, Set<String> rebuiltParents) {
+        if (parent == null || !rebuiltParents.add(parent.getId()) || !nodeDisplays.containsKey(parent.getId())) {
+            return true;
+        }
+        refreshNodeRow(parent);
+        
+        VBox container = childrenContainers.get(parent.getId());
+        if (container == null) {
+            // Parent replié : rien à afficher, sinon le conteneur doit être créé au bon endroit
+            return !parent.hasChildren() || !parent.isExpanded();
+        }
+        forgetDisplays(container);
+        container.getChildren().clear();
+        if (parent.isRoot() || parent.isExpanded()) {
+            populateChildrenContainer(container, parent);
+        }
+        return true;
+    }
+    
+    /**
+     * Oublie les affichages de nœuds et conteneurs d'enfants contenus dans un conteneur avant son vidage.
+     * Une entrée déjà remplacée ailleurs (nœud déplacé sous un parent reconstruit plus tôt) est conservée.
+     */
+    private void forgetDisplays(VBox container) {
+        for (Node child : container.getChildren()) {
+            if (child.getUserData() instanceof String) {
+                String id = (String) child.getUserData();
+                nodeDisplays.remove(id, child);
+                if (childrenContainers.remove(id, child)) {
+                    forgetDisplays((VBox) child);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Remplace la ligne d'un nœud affiché (libellé, pourcentage, indicateurs)
+     */
+    private void refreshNodeRow(TreeNode node) {
+        VBox display = node != null ? nodeDisplays.get(node.getId()) : null;
+        if (display != null && !display.getChildren().isEmpty()) {
+            display.getChildren().set(0, createNodeRow(node, node.isRoot()));
+        }
     }
     
     /**
@@ -230,10 +365,12 @@ public class TreeDragDropController {
      */
     private VBox createNodeDisplay(TreeNode node, boolean isRoot) {
         VBox nodeContainer = new VBox(5);
+        nodeContainer.setUserData(node.getId());
         
         // Ligne principale du nœud
         HBox nodeRow = createNodeRow(node, isRoot);
         nodeContainer.getChildren().add(nodeRow);
+        nodeDisplays.put(node.getId(), nodeContainer);
         
         return nodeContainer;
     }
@@ -262,8 +399,7 @@ public class TreeDragDropController {
         if (node.hasChildren()) {
             expandButton.setText(node.isExpanded() ? "▼" : "▶");
             expandButton.setOnAction(e -> {
-                node.setExpanded(!node.isExpanded());
-                configService.updateNode(node);
+                configService.setExpanded(node, !node.isExpanded(), false);
             });
         } else {
             expandButton.setText("•");
@@ -368,10 +504,7 @@ public class TreeDragDropController {
         TreeNode parent = findParentNode(node);
         boolean isValidPercentage = true;
         if (parent != null && parent.hasChildren()) {
-            double sum = parent.getChildren().stream()
-                    .mapToDouble(TreeNode::getPercentage)
-                    .sum();
-            isValidPercentage = Math.abs(sum - 100.0) < 0.1;
+            isValidPercentage = Weights.isComplete(parent.getChildren());
         }
         
         String nodeColor = node.getColor() != null ? node.getColor() : DEFAULT_COLOR;
@@ -387,9 +520,7 @@ public class TreeDragDropController {
         // Tooltip informatif amélioré
         String tooltipText = "Cliquez pour éditer le pourcentage";
         if (!isValidPercentage && parent != null) {
-            double sum = parent.getChildren().stream()
-                    .mapToDouble(TreeNode::getPercentage)
-                    .sum();
+            double sum = Weights.toPercentage(Weights.sumPpm(parent.getChildren()));
             tooltipText = sum < 100 ? 
                 String.format("⚠️ Somme: %.1f%% (manque %.1f%%) • Cliquez pour éditer", sum, 100.0 - sum) :
                 String.format("⚠️ Somme: %.1f%% (excès %.1f%%) • Cliquez pour éditer", sum, sum - 100.0);
@@ -435,15 +566,16 @@ public class TreeDragDropController {
         Runnable saveEdit = () -> {
             String newText = textField.getText().trim();
             if (!newText.isEmpty() && !newText.equals(originalText)) {
-                // Appliquer la modification
+                // Appliquer la modification et sauvegarder
+                configService.updateNode(node, n -> {
+                    if ("name".equals(property)) {
+                        n.setName(newText);
+                    }
+                });
                 if ("name".equals(property)) {
-                    node.setName(newText);
                     label.setText(newText);
                 }
                 
-                // Sauvegarder
-                configService.updateNode(node);
-                
                 // Feedback visuel
                 showQuickFeedback(textField, "#A3BE8C", "✓");
             } else {
@@ -511,21 +643,15 @@ public class TreeDragDropController {
         Runnable saveEdit = () -> {
             double newValue = spinner.getValue();
             if (newValue != originalValue) {
-                // Appliquer la modification
-                node.setPercentage(newValue);
+                // Appliquer la modification et sauvegarder
+                configService.updateNode(node, n -> n.setPercentage(newValue));
                 
                 // Mettre à jour le label
                 percentageLabel.setText(String.format("%.1f%%", newValue));
                 updatePercentageStyle(percentageLabel, node);
                 
-                // Sauvegarder
-                configService.updateNode(node);
-                
-                // Feedback visuel
+                // Feedback visuel (les indicateurs de la fratrie sont mis à jour par l'événement de modification)
                 showQuickFeedback(spinner, "#A3BE8C", "✓");
-                
-                // Rafraîchir l'affichage pour mettre à jour les indicateurs de validation
-                Platform.runLater(() -> refreshTreeDisplay(configService.getRootNode()));
             }
             
             // Restaurer le label
@@ -560,10 +686,7 @@ public class TreeDragDropController {
         TreeNode parent = findParentNode(node);
         boolean isValidPercentage = true;
         if (parent != null && parent.hasChildren()) {
-            double sum = parent.getChildren().stream()
-                    .mapToDouble(TreeNode::getPercentage)
-                    .sum();
-            isValidPercentage = Math.abs(sum - 100.0) < 0.1;
+            isValidPercentage = Weights.isComplete(parent.getChildren());
         }
         
         String nodeColor = node.getColor() != null ? node.getColor() : DEFAULT_COLOR;
@@ -599,20 +722,17 @@ public class TreeDragDropController {
             return null;
         }
         
-        double sum = parent.getChildren().stream()
-                .mapToDouble(TreeNode::getPercentage)
-                .sum();
-        boolean isValidPercentage = Math.abs(sum - 100.0) < 0.1;
+        long gapPpm = Weights.TOTAL_PPM - Weights.sumPpm(parent.getChildren());
         
-        if (isValidPercentage) {
+        if (gapPpm == 0) {
             return null; // Pas d'indicateur si tout est correct
         }
         
-        double gap = 100.0 - sum;
+        double gap = Weights.toPercentage(gapPpm);
         String gapText;
         String gapColor;
         
-        if (gap > 0.1) {
+        if (gapPpm > 0) {
             gapText = String.format("[-%.1f%%]", gap);
             gapColor = "#D08770"; // Orange pour manquant
         } else {
@@ -631,7 +751,7 @@ public class TreeDragDropController {
                             "-fx-border-width: 1;");
         
         // Tooltip explicatif
-        String tooltipText = gap > 0.1 ? 
+        String tooltipText = gapPpm > 0 ? 
             String.format("Il manque %.1f%% pour atteindre 100%%", gap) :
             String.format("Dépassement de %.1f%% par rapport à 100%%", Math.abs(gap));
         Tooltip gapTooltip = new Tooltip(tooltipText);
@@ -857,11 +977,11 @@ public class TreeDragDropController {
                 // Appliquer les modifications
                 String newName = nameField.getText().trim();
                 if (!newName.isEmpty()) {
-                    node.setName(newName);
-                    node.setPercentage(percentageSpinner.getValue());
-                    node.setColor(colorPicker.getValue().toString().replace("0x", "#"));
-                    
-                    configService.updateNode(node);
+                    configService.updateNode(node, n -> {
+                        n.setName(newName);
+                        n.setPercentage(percentageSpinner.getValue());
+                        n.setColor(colorPicker.getValue().toString().replace("0x", "#"));
+                    });
                     showModernAlert("Modification enregistrée", "#A3BE8C", "Les modifications ont été sauvegardées");
                 }
             } else if ("DELETE".equals(action)) {
@@ -1067,19 +1187,17 @@ public class TreeDragDropController {
         dialog.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
         
         dialog.setResultConverter(dialogButton -> {
-            if (dialogButton == ButtonType.OK) {
-                node.setName(nameField.getText().trim());
-                node.setPercentage(percentageSpinner.getValue());
-                node.setColor(colorPicker.getValue().toString().replace("0x", "#"));
-                return true;
-            }
-            return false;
+            return dialogButton == ButtonType.OK;
         });
         
         Optional<Boolean> result = dialog.showAndWait();
         result.ifPresent(modified -> {
             if (modified) {
-                configService.updateNode(node);
+                configService.updateNode(node, n -> {
+                    n.setName(nameField.getText().trim());
+                    n.setPercentage(percentageSpinner.getValue());
+                    n.setColor(colorPicker.getValue().toString().replace("0x", "#"));
+                });
                 showModernAlert("✅ Modification enregistrée", "#A3BE8C", 
                                "Élément modifié : " + node.getName());
             }
@@ -1120,22 +1238,6 @@ public class TreeDragDropController {
         }
     }
     
-    /**
-     * Développe ou réduit tous les nœuds récursivement
-     */
-    private void expandCollapseAll(TreeNode node, boolean expand) {
-        if (node != null) {
-            node.setExpanded(expand);
-            if (node.hasChildren()) {
-                for (TreeNode child : node.getChildren()) {
-                    expandCollapseAll(child, expand);
-                }
-            }
-            // Sauvegarder après chaque modification
-            configService.updateNode(node);
-        }
-    }
-    
     /**
      * Affiche une alerte moderne
      */
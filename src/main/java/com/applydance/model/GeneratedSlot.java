@@ -41,9 +41,10 @@ public class GeneratedSlot {
     
     public GeneratedSlot(String decisionPath, String selectedNodeId, String selectedNodeName) {
         this();
-        this.decisionPath = decisionPath;
-        this.selectedNodeId = selectedNodeId;
-        this.selectedNodeName = selectedNodeName;
+        // Chemins, identifiants et noms se répètent d'un slot à l'autre : instances partagées
+        this.decisionPath = StringPool.canonical(decisionPath);
+        this.selectedNodeId = StringPool.canonical(selectedNodeId);
+        this.selectedNodeName = StringPool.canonical(selectedNodeName);
     }
     
     // Getters et Setters
@@ -54,16 +55,19 @@ public class GeneratedSlot {
     public void setGeneratedAt(LocalDateTime generatedAt) { this.generatedAt = generatedAt; }
     
     public String getDecisionPath() { return decisionPath; }
-    public void setDecisionPath(String decisionPath) { this.decisionPath = decisionPath; }
+    public void setDecisionPath(String decisionPath) { this.decisionPath = StringPool.canonical(decisionPath); }
     
     public String getSelectedNodeId() { return selectedNodeId; }
-    public void setSelectedNodeId(String selectedNodeId) { this.selectedNodeId = selectedNodeId; }
+    public void setSelectedNodeId(String selectedNodeId) { this.selectedNodeId = StringPool.canonical(selectedNodeId); }
     
     public String getSelectedNodeName() { return selectedNodeName; }
-    public void setSelectedNodeName(String selectedNodeName) { this.selectedNodeName = selectedNodeName; }
+    public void setSelectedNodeName(String selectedNodeName) { this.selectedNodeName = StringPool.canonical(selectedNodeName); }
     
     public Map<String, Object> getMetadata() { return metadata; }
-    public void setMetadata(Map<String, Object> metadata) { this.metadata = metadata; }
+    public void setMetadata(Map<String, Object> metadata) {
+        StringPool.canonicalizeValues(metadata);
+        this.metadata = metadata;
+    }
     
     // Getters et Setters pour la propriété selected
     public boolean isSelected() { return selected.get(); }
@@ -72,7 +76,7 @@ public class GeneratedSlot {
     
     // Méthodes utilitaires pour les métadonnées
     public void addMetadata(String key, Object value) {
-        this.metadata.put(key, value);
+        this.metadata.put(key, StringPool.canonicalValue(value));
     }
     
     public Object getMetadata(String key) {
@@ -114,6 +118,13 @@ public class GeneratedSlot {
      */
     @JsonIgnore
     public String getMainCategory() {
+        return mainCategoryOf(decisionPath, selectedNodeName);
+    }
+    
+    /**
+     * Catégorie principale d'un chemin de décision (sans instancier de slot)
+     */
+    public static String mainCategoryOf(String decisionPath, String selectedNodeName) {
         if (decisionPath == null || !decisionPath.contains(" > ")) {
             return selectedNodeName;
         }
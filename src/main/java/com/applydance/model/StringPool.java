@@ -0,0 +1,164 @@
+package com.applydance.model;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pool de canonisation des chaînes répétées (libellés, emojis, couleurs, chemins de décision).
+ * Les chargeurs d'arbre et d'historique et la construction des slots remplacent chaque chaîne
+ * par l'instance canonique : des milliers de nœuds ou de slots partagent alors une seule copie.
+ * Les chaînes longues (descriptions, textes libres) ne sont pas conservées dans le pool.
+ *
+ * Le pool ne retient pas ses chaînes (références faibles) : une chaîne qui n'est plus utilisée
+ * par aucun arbre ni slot est libérée par le ramasse-miettes et son entrée retirée au passage suivant.
+ */
+public final class StringPool {
+
+    // Au-delà, la chaîne est probablement unique : la garder dans le pool coûterait plus qu'elle ne rapporte
+    public static final int MAX_LENGTH = 256;
+
+    // Clé et valeur sont la même entrée faible ; les recherches passent par une sonde (voir Probe)
+    private static final Map<Object, WeakEntry> POOL = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<String> CLEARED = new ReferenceQueue<>();
+
+    // Désactivable pour mesurer l'empreinte mémoire sans canonisation
+    private static volatile boolean enabled = true;
+
+    private StringPool() {
+    }
+
+    /**
+     * Retourne l'instance canonique de la chaîne (la chaîne elle-même à sa première apparition)
+     */
+    public static String canonical(String value) {
+        if (value == null || value.length() > MAX_LENGTH || !enabled) {
+            return value;
+        }
+        expungeCleared();
+        String existing = lookup(value);
+        if (existing != null) {
+            return existing;
+        }
+        WeakEntry created = new WeakEntry(value);
+        while (true) {
+            WeakEntry previous = POOL.putIfAbsent(created, created);
+            if (previous == null) {
+                return value;
+            }
+            existing = previous.get();
+            if (existing != null) {
+                return existing;
+            }
+            // Entrée libérée entre la comparaison et la lecture : elle sera retirée de la file
+            POOL.remove(previous, previous);
+        }
+    }
+
+    private static String lookup(String value) {
+        WeakEntry entry = POOL.get(new Probe(value));
+        return entry != null ? entry.get() : null;
+    }
+
+    /**
+     * Retire les entrées dont la chaîne a été libérée
+     */
+    private static void expungeCleared() {
+        Reference<? extends String> cleared;
+        while ((cleared = CLEARED.poll()) != null) {
+            POOL.remove(cleared, cleared);
+        }
+    }
+
+    /**
+     * Canonise une valeur de métadonnée si c'est une chaîne
+     */
+    public static Object canonicalValue(Object value) {
+        return value instanceof String ? canonical((String) value) : value;
+    }
+
+    /**
+     * Canonise sur place les valeurs textuelles d'une table de métadonnées modifiable
+     */
+    public static void canonicalizeValues(Map<String, Object> metadata) {
+        if (metadata != null) {
+            for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+                if (entry.getValue() instanceof String) {
+                    entry.setValue(canonical((String) entry.getValue()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Retourne true si la chaîne est l'instance canonique du pool
+     */
+    public static boolean isCanonical(String value) {
+        return value != null && lookup(value) == value;
+    }
+
+    /**
+     * Nombre d'entrées, y compris celles libérées depuis le dernier passage
+     */
+    public static int size() {
+        expungeCleared();
+        return POOL.size();
+    }
+
+    static void setEnabled(boolean enabled) {
+        StringPool.enabled = enabled;
+    }
+
+    /**
+     * Entrée du pool : référence faible vers la chaîne canonique, égale à toute entrée ou sonde
+     * de même contenu tant que la chaîne est vivante
+     */
+    private static final class WeakEntry extends WeakReference<String> {
+        private final int hash;
+
+        WeakEntry(String value) {
+            super(value, CLEARED);
+            this.hash = value.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof WeakEntry)) {
+                return false;
+            }
+            String value = get();
+            return value != null && value.equals(((WeakEntry) other).get());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Clé de recherche temporaire : évite de créer une référence faible pour une chaîne déjà présente
+     */
+    private static final class Probe {
+        private final String value;
+
+        Probe(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof WeakEntry && value.equals(((WeakEntry) other).get());
+        }
+
+        @Override
+        public int hashCode() {
+            return value.hashCode();
+        }
+    }
+}
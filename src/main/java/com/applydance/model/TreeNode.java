@@ -6,17 +6,23 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.*;
 
 /**
- * Nœud générique d'arbre de décision configurable
+ * Nœud générique d'arbre de décision configurable.
+ * Chaque nœud porte une empreinte de contenu (hash de Merkle, voir {@link #getContentHash()}) :
+ * les modifications doivent passer par les setters et les méthodes d'ajout/suppression d'enfants.
  */
 public class TreeNode {
+    // Métadonnée d'affichage (nœud développé ou réduit) : ni modification du contenu ni entrée d'annulation
+    public static final String EXPANDED_KEY = "expanded";
+
     @JsonProperty("id")
     private String id;
     
     @JsonProperty("label")
     private String label;
     
-    @JsonProperty("percentage")
-    private double percentage;
+    // Pondération en parties par million (voir Weights), exposée en JSON comme pourcentage décimal
+    @JsonIgnore
+    private int weightPpm;
     
     @JsonProperty("emoji")
     private String emoji;
@@ -33,6 +39,12 @@ public class TreeNode {
     @JsonProperty("metadata")
     private Map<String, Object> metadata;
 
+    // Révision du contenu du sous-arbre, incrémentée sur le chemin jusqu'à la racine à chaque modification
+    private volatile int revision;
+
+    // Empreinte calculée pour une révision donnée (paire immuable : lue sans verrou)
+    private volatile HashStamp hashStamp;
+
     // Constructeurs
     public TreeNode() {
         this.children = new ArrayList<>();
@@ -42,18 +54,18 @@ public class TreeNode {
     public TreeNode(String id, String label) {
         this();
         this.id = id;
-        this.label = label;
-        this.percentage = 0.0;
+        this.label = StringPool.canonical(label);
+        this.weightPpm = 0;
     }
 
     public TreeNode(String id, String label, double percentage) {
         this(id, label);
-        this.percentage = percentage;
+        this.weightPpm = Weights.toPpm(percentage);
     }
 
     public TreeNode(String id, String label, double percentage, String emoji) {
         this(id, label, percentage);
-        this.emoji = emoji;
+        this.emoji = StringPool.canonical(emoji);
     }
 
     // Getters et Setters
@@ -63,6 +75,7 @@ public class TreeNode {
 
     public void setId(String id) {
         this.id = id;
+        invalidateHash();
     }
 
     public String getLabel() {
@@ -70,15 +83,31 @@ public class TreeNode {
     }
 
     public void setLabel(String label) {
-        this.label = label;
+        // Libellés, emojis et couleurs se répètent d'un nœud à l'autre : instances partagées
+        this.label = StringPool.canonical(label);
+        invalidateHash();
     }
 
+    @JsonProperty("percentage")
     public double getPercentage() {
-        return percentage;
+        return Weights.toPercentage(weightPpm);
     }
 
+    @JsonProperty("percentage")
     public void setPercentage(double percentage) {
-        this.percentage = percentage;
+        this.weightPpm = Weights.toPpm(percentage);
+        invalidateHash();
+    }
+
+    @JsonIgnore
+    public int getWeightPpm() {
+        return weightPpm;
+    }
+
+    @JsonIgnore
+    public void setWeightPpm(int weightPpm) {
+        this.weightPpm = weightPpm;
+        invalidateHash();
     }
 
     public String getEmoji() {
@@ -86,7 +115,8 @@ public class TreeNode {
     }
 
     public void setEmoji(String emoji) {
-        this.emoji = emoji;
+        this.emoji = StringPool.canonical(emoji);
+        invalidateHash();
     }
 
     public String getDescription() {
@@ -95,6 +125,7 @@ public class TreeNode {
 
     public void setDescription(String description) {
         this.description = description;
+        invalidateHash();
     }
 
     public List<TreeNode> getChildren() {
@@ -107,6 +138,7 @@ public class TreeNode {
         for (TreeNode child : this.children) {
             child.setParent(this);
         }
+        invalidateHash();
     }
 
     public TreeNode getParent() {
@@ -123,6 +155,7 @@ public class TreeNode {
 
     public void setMetadata(Map<String, Object> metadata) {
         this.metadata = metadata != null ? metadata : new HashMap<>();
+        invalidateHash();
     }
 
     // Méthodes utilitaires
@@ -130,12 +163,27 @@ public class TreeNode {
         if (child != null) {
             this.children.add(child);
             child.setParent(this);
+            invalidateHash();
+        }
+    }
+
+    /**
+     * Insère un enfant à une position donnée (utilisé pour annuler une suppression ou un déplacement)
+     */
+    public void insertChild(int index, TreeNode child) {
+        if (child != null) {
+            int safeIndex = Math.max(0, Math.min(index, this.children.size()));
+            this.children.add(safeIndex, child);
+            child.setParent(this);
+            invalidateHash();
         }
     }
 
     public void removeChild(TreeNode child) {
         if (child != null) {
-            this.children.remove(child);
+            if (this.children.remove(child)) {
+                invalidateHash();
+            }
             child.setParent(null);
         }
     }
@@ -236,7 +284,8 @@ public class TreeNode {
     }
 
     public TreeNode clone() {
-        TreeNode cloned = new TreeNode(this.id, this.label, this.percentage, this.emoji);
+        TreeNode cloned = new TreeNode(this.id, this.label, 0.0, this.emoji);
+        cloned.setWeightPpm(this.weightPpm);
         cloned.setDescription(this.description);
         cloned.setMetadata(new HashMap<>(this.metadata));
         
@@ -250,6 +299,7 @@ public class TreeNode {
     // Méthodes de métadonnées
     public void setMetadata(String key, Object value) {
         this.metadata.put(key, value);
+        invalidateHash();
     }
 
     public Object getMetadata(String key) {
@@ -298,8 +348,8 @@ public class TreeNode {
             sb.append(emoji).append(" ");
         }
         sb.append(label);
-        if (percentage > 0) {
-            sb.append(" (").append(String.format("%.1f", percentage)).append("%)");
+        if (weightPpm > 0) {
+            sb.append(" (").append(String.format("%.1f", getPercentage())).append("%)");
         }
         return sb.toString();
     }
@@ -317,6 +367,97 @@ public class TreeNode {
         return Objects.hash(id);
     }
     
+    // ========================================
+    // EMPREINTE DE CONTENU
+    // ========================================
+
+    /**
+     * Empreinte 64 bits du sous-arbre : id, libellé, pondération, emoji, description, métadonnées
+     * et empreintes des enfants (dans l'ordre). Deux sous-arbres de même contenu ont la même
+     * empreinte ; après une modification, seuls les nœuds du chemin modifié sont recalculés.
+     * Comparaison en O(1) (« quelque chose a-t-il changé ? ») et clé de cache par sous-arbre,
+     * contrairement à {@link #equals(Object)} qui ne compare que l'identifiant.
+     */
+    @JsonIgnore
+    public long getContentHash() {
+        int current = revision;
+        HashStamp stamp = hashStamp;
+        if (stamp != null && stamp.revision == current) {
+            return stamp.hash;
+        }
+        long hash = computeContentHash();
+        // Une modification concurrente incrémente la révision : ce résultat sera alors ignoré
+        hashStamp = new HashStamp(current, hash);
+        return hash;
+    }
+
+    private long computeContentHash() {
+        long hash = combine(0x6A09E667F3BCC908L, hashString(id));
+        hash = combine(hash, hashString(label));
+        hash = combine(hash, weightPpm);
+        hash = combine(hash, hashString(emoji));
+        hash = combine(hash, hashString(description));
+        // Métadonnées : somme des entrées, indépendante de l'ordre de la table ; l'état d'affichage
+        // (développé/réduit) n'est pas du contenu et ne doit pas invalider les caches fondés sur l'empreinte
+        long metadataHash = 0;
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            if (isViewState(entry.getKey())) {
+                continue;
+            }
+            metadataHash += mix(hashString(entry.getKey()) * 31 + hashString(String.valueOf(entry.getValue())));
+        }
+        hash = combine(hash, metadataHash);
+        hash = combine(hash, children.size());
+        for (TreeNode child : children) {
+            hash = combine(hash, child.getContentHash());
+        }
+        return hash;
+    }
+
+    private void invalidateHash() {
+        // Pas d'arrêt anticipé : un calcul en cours sur un ancêtre doit être écarté
+        for (TreeNode node = this; node != null; node = node.parent) {
+            node.revision++;
+        }
+    }
+
+    private static long combine(long hash, long value) {
+        return mix(hash * 0x9E3779B97F4A7C15L + value);
+    }
+
+    // Finaliseur de MurmurHash3 (64 bits)
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    // FNV-1a 64 bits sur les caractères (plus discriminant que String.hashCode sur 32 bits)
+    private static long hashString(String value) {
+        if (value == null) {
+            return 0x9AE16A3B2F90404FL;
+        }
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    private static final class HashStamp {
+        final int revision;
+        final long hash;
+
+        HashStamp(int revision, long hash) {
+            this.revision = revision;
+            this.hash = hash;
+        }
+    }
+
     // Méthodes de compatibilité pour l'ancien système
     public String getName() {
         return getLabel();
@@ -333,7 +474,7 @@ public class TreeNode {
     public void setColor(String color) {
         // Valider et normaliser la couleur
         String validColor = validateColor(color);
-        setMetadata("color", validColor);
+        setMetadata("color", StringPool.canonical(validColor));
     }
     
     /**
@@ -380,11 +521,18 @@ public class TreeNode {
     }
     
     public boolean isExpanded() {
-        Object expanded = getMetadata("expanded");
+        Object expanded = getMetadata(EXPANDED_KEY);
         return expanded == null ? true : (Boolean) expanded;
     }
     
     public void setExpanded(boolean expanded) {
-        setMetadata("expanded", expanded);
+        setMetadata(EXPANDED_KEY, expanded);
+    }
+    
+    /**
+     * Retourne true pour les métadonnées d'affichage, propres à la vue et non au contenu de l'arbre
+     */
+    public static boolean isViewState(String key) {
+        return EXPANDED_KEY.equals(key);
     }
 } 
\ No newline at end of file
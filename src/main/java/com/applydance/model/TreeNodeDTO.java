@@ -148,7 +148,9 @@ public class TreeNodeDTO {
         node.setPercentage(this.getPercentage());
         node.setEmoji(this.getEmoji());
         node.setDescription(this.getDescription());
-        node.setMetadata(this.getMetadata() != null ? new HashMap<>(this.getMetadata()) : new HashMap<>());
+        Map<String, Object> metadata = this.getMetadata() != null ? new HashMap<>(this.getMetadata()) : new HashMap<>();
+        StringPool.canonicalizeValues(metadata);
+        node.setMetadata(metadata);
         node.setParent(parent);
         
         // Convertir récursivement les enfants et établir les références parent
@@ -0,0 +1,133 @@
+package com.applydance.model;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Pondérations en virgule fixe : les pourcentages sont stockés en parties par million
+ * (1 % = 10 000 ppm, 100 % = 1 000 000 ppm). Les sommes sont exactes et la répartition
+ * par plus forts restes garantit un total exact sans correction d'arrondi.
+ * La représentation JSON reste un pourcentage décimal ({@code "percentage": 33.3333}).
+ */
+public final class Weights {
+
+    public static final int PPM_PER_PERCENT = 10_000;
+    public static final int TOTAL_PPM = 100 * PPM_PER_PERCENT;
+
+    private Weights() {
+    }
+
+    /**
+     * Convertit un pourcentage décimal en ppm (arrondi au ppm le plus proche)
+     */
+    public static int toPpm(double percentage) {
+        if (Double.isNaN(percentage)) {
+            return 0;
+        }
+        long ppm = Math.round(percentage * PPM_PER_PERCENT);
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, ppm));
+    }
+
+    public static double toPercentage(long ppm) {
+        return ppm / (double) PPM_PER_PERCENT;
+    }
+
+    /**
+     * Somme exacte des pondérations d'une fratrie
+     */
+    public static long sumPpm(List<TreeNode> nodes) {
+        long sum = 0;
+        for (TreeNode node : nodes) {
+            sum += node.getWeightPpm();
+        }
+        return sum;
+    }
+
+    /**
+     * Retourne true si la fratrie totalise exactement 100 %
+     */
+    public static boolean isComplete(List<TreeNode> nodes) {
+        return sumPpm(nodes) == TOTAL_PPM;
+    }
+
+    /**
+     * Répartit {@code total} proportionnellement aux pondérations (méthode des plus forts restes) :
+     * un seul passage calcule les quotients et restes, puis les unités restantes (moins que le
+     * nombre d'éléments) vont aux plus forts restes. Pondérations toutes nulles : parts égales.
+     */
+    public static int[] distribute(int[] weights, int total) {
+        int count = weights.length;
+        int[] result = new int[count];
+        if (count == 0 || total <= 0) {
+            return result;
+        }
+
+        long sum = 0;
+        for (int weight : weights) {
+            sum += Math.max(0, weight);
+        }
+
+        long[] remainders = new long[count];
+        long assigned = 0;
+        for (int i = 0; i < count; i++) {
+            long weight = sum > 0 ? Math.max(0, weights[i]) : 1;
+            long numerator = weight * total;
+            long divisor = sum > 0 ? sum : count;
+            result[i] = (int) (numerator / divisor);
+            remainders[i] = numerator % divisor;
+            assigned += result[i];
+        }
+
+        int leftover = (int) (total - assigned);
+        if (leftover > 0) {
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            // Plus forts restes d'abord, à égalité l'ordre d'origine
+            Arrays.sort(order, Comparator.<Integer>comparingLong(i -> remainders[i]).reversed()
+                    .thenComparingInt(i -> i));
+            for (int i = 0; i < leftover; i++) {
+                result[order[i]]++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Redistribue {@code total} sur les nœuds proportionnellement à leurs pondérations actuelles
+     */
+    public static void distribute(List<TreeNode> nodes, int total) {
+        int[] weights = new int[nodes.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = nodes.get(i).getWeightPpm();
+        }
+        int[] distributed = distribute(weights, total);
+        for (int i = 0; i < distributed.length; i++) {
+            nodes.get(i).setWeightPpm(distributed[i]);
+        }
+    }
+
+    /**
+     * Corrige les résidus d'arrondi des configurations décimales existantes : une fratrie dont
+     * l'écart à 100 % ne dépasse pas 1 ppm par enfant est ramenée exactement à 100 %.
+     * Retourne le nombre de fratries corrigées.
+     */
+    public static int repairRounding(TreeNode node) {
+        if (node == null || !node.hasChildren()) {
+            return 0;
+        }
+        int repaired = 0;
+        List<TreeNode> children = node.getChildren();
+        long gap = Math.abs(sumPpm(children) - TOTAL_PPM);
+        if (gap != 0 && gap <= children.size()) {
+            distribute(children, TOTAL_PPM);
+            repaired++;
+        }
+        for (TreeNode child : children) {
+            repaired += repairRounding(child);
+        }
+        return repaired;
+    }
+}
@@ -0,0 +1,118 @@
+package com.applydance.service;
+
+import java.util.Random;
+
+/**
+ * Table d'alias (méthode de Vose) en arithmétique entière pour un tirage pondéré en O(1).
+ * Construite à partir des pondérations en ppm d'une fratrie : chaque colonne contient un
+ * seuil entier et un alias, de sorte que les probabilités obtenues sont exactement
+ * proportionnelles aux pondérations (aucune erreur d'arrondi flottant).
+ */
+public class AliasTable {
+
+    private final int[] threshold;
+    private final int[] alias;
+    private final int total;
+
+    /**
+     * Construit la table ; retourne null si aucune pondération n'est strictement positive
+     */
+    public static AliasTable build(int[] weights) {
+        int count = weights.length;
+        if (count == 0) {
+            return null;
+        }
+        long sum = 0;
+        for (int weight : weights) {
+            sum += Math.max(0, weight);
+        }
+        if (sum == 0) {
+            return null;
+        }
+        // Réduction éventuelle pour que n * total tienne dans un long et total dans un int
+        int shift = 0;
+        while ((sum >> shift) > Integer.MAX_VALUE / 2) {
+            shift++;
+        }
+        int[] scaled = new int[count];
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            scaled[i] = Math.max(0, weights[i]) >> shift;
+            total += scaled[i];
+        }
+        if (total == 0) {
+            return null;
+        }
+        return new AliasTable(scaled, (int) total);
+    }
+
+    private AliasTable(int[] weights, int total) {
+        int count = weights.length;
+        this.threshold = new int[count];
+        this.alias = new int[count];
+        this.total = total;
+
+        // Masse de chaque colonne multipliée par n : une colonne « pleine » vaut exactement total
+        long[] mass = new long[count];
+        int[] small = new int[count];
+        int[] large = new int[count];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < count; i++) {
+            mass[i] = (long) weights[i] * count;
+            if (mass[i] < total) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            threshold[less] = (int) mass[less];
+            alias[less] = more;
+            mass[more] -= total - mass[less];
+            if (mass[more] < total) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        while (largeCount > 0) {
+            int index = large[--largeCount];
+            threshold[index] = total;
+            alias[index] = index;
+        }
+        while (smallCount > 0) {
+            int index = small[--smallCount];
+            threshold[index] = total;
+            alias[index] = index;
+        }
+    }
+
+    /**
+     * Tire un indice : une colonne uniforme puis un seuil entier
+     */
+    public int sample(Random random) {
+        int column = random.nextInt(threshold.length);
+        return random.nextInt(total) < threshold[column] ? column : alias[column];
+    }
+
+    public int size() {
+        return threshold.length;
+    }
+
+    // Accès aux colonnes pour la sérialisation (voir CompiledTree)
+
+    int threshold(int column) {
+        return threshold[column];
+    }
+
+    int alias(int column) {
+        return alias[column];
+    }
+
+    int total() {
+        return total;
+    }
+}
@@ -531,31 +531,34 @@ public class AutomatedTestService {
             return;
         }
         
-        // Supprimer chaque nœud de test individuellement avec vérification
-        for (String testId : testNodeIds) {
-            TreeNode nodeToRemove = findNodeById(root, testId);
-            if (nodeToRemove != null) {
-                String nodeLabel = nodeToRemove.getLabel();
-                logger.info("🗑️ Suppression du nœud de test: {} ({})", nodeLabel, testId);
-                
-                try {
-                    configService.removeNode(nodeToRemove);
+        // Supprimer chaque nœud de test avec vérification, dans une seule transaction
+        // (une redistribution par parent, une sauvegarde et une notification pour tout le lot)
+        configService.edit("Nettoyage des nœuds de test", editor -> {
+            for (String testId : testNodeIds) {
+                TreeNode nodeToRemove = findNodeById(root, testId);
+                if (nodeToRemove != null) {
+                    String nodeLabel = nodeToRemove.getLabel();
+                    logger.info("🗑️ Suppression du nœud de test: {} ({})", nodeLabel, testId);
                     
-                    // Vérification immédiate de la suppression
-                    TreeNode checkNode = findNodeById(configService.getRootNode(), testId);
-                    if (checkNode == null) {
-                        logger.info("✅ Nœud '{}' supprimé avec succès", nodeLabel);
-                    } else {
-                        logger.warn("⚠️ Le nœud '{}' existe encore après suppression", nodeLabel);
+                    try {
+                        editor.remove(nodeToRemove);
+                        
+                        // Vérification immédiate de la suppression
+                        TreeNode checkNode = findNodeById(configService.getRootNode(), testId);
+                        if (checkNode == null) {
+                            logger.info("✅ Nœud '{}' supprimé avec succès", nodeLabel);
+                        } else {
+                            logger.warn("⚠️ Le nœud '{}' existe encore après suppression", nodeLabel);
+                        }
+                        
+                    } catch (Exception e) {
+                        logger.error("❌ Erreur lors de la suppression de '{}': {}", nodeLabel, e.getMessage());
                     }
-                    
-                } catch (Exception e) {
-                    logger.error("❌ Erreur lors de la suppression de '{}': {}", nodeLabel, e.getMessage());
+                } else {
+                    logger.warn("⚠️ Nœud avec ID {} introuvable lors du nettoyage", testId);
                 }
-            } else {
-                logger.warn("⚠️ Nœud avec ID {} introuvable lors du nettoyage", testId);
             }
-        }
+        });
         
         // Forcer la sauvegarde après chaque série de suppressions
         try {
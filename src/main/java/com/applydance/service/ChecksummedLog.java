@@ -0,0 +1,213 @@
+package com.applydance.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Fichier journal en ajout seul dont chaque enregistrement est protégé par une somme CRC32.
+ * Format d'une ligne : {@code <crc32 sur 8 caractères hexadécimaux> <contenu UTF-8>\n}.
+ * À la relecture, tout enregistrement incomplet ou corrompu (écriture interrompue) marque
+ * la fin du journal : il est tronqué à cet endroit et les enregistrements suivants sont ignorés.
+ * Le contenu ne doit pas contenir de saut de ligne (JSON compact).
+ */
+public class ChecksummedLog implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChecksummedLog.class);
+    private static final int CHECKSUM_LENGTH = 8;
+
+    private final Path path;
+    private FileChannel channel;
+
+    public ChecksummedLog(Path path) throws IOException {
+        this.path = path;
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        this.channel = open(path);
+    }
+
+    /**
+     * Relit les enregistrements valides et tronque le fichier après le dernier d'entre eux
+     */
+    public List<Record> recover() throws IOException {
+        List<Record> records = new ArrayList<>();
+        byte[] content = Files.readAllBytes(path);
+        int offset = 0;
+        while (offset < content.length) {
+            int end = indexOf(content, (byte) '\n', offset);
+            if (end < 0) {
+                break;
+            }
+            String payload = decode(content, offset, end);
+            if (payload == null) {
+                break;
+            }
+            records.add(new Record(payload, end + 1));
+            offset = end + 1;
+        }
+        if (offset < content.length) {
+            logger.warn("Journal {} : {} octets invalides ignorés après {} enregistrements (écriture interrompue)",
+                    path.getFileName(), content.length - offset, records.size());
+            channel.truncate(offset);
+            channel.force(true);
+        }
+        channel.position(channel.size());
+        return records;
+    }
+
+    /**
+     * Ajoute un enregistrement et retourne la position de fin du fichier après l'ajout.
+     * {@code force} = true attend que l'enregistrement soit physiquement écrit sur le disque.
+     */
+    public long append(String payload, boolean force) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(frame(payload));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (force) {
+            channel.force(false);
+        }
+        return channel.position();
+    }
+
+    /**
+     * Force l'écriture sur disque des enregistrements déjà ajoutés
+     */
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Supprime les enregistrements situés avant la position donnée (compaction).
+     * Le reste du journal est recopié dans un fichier temporaire renommé atomiquement.
+     */
+    public void discardBefore(long offset) throws IOException {
+        long size = channel.size();
+        if (offset <= 0) {
+            return;
+        }
+        if (offset >= size) {
+            channel.truncate(0);
+            channel.force(true);
+            channel.position(0);
+            return;
+        }
+        Path tempFile = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel target = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                long copied = 0;
+                while (copied < size - offset) {
+                    copied += channel.transferTo(offset + copied, size - offset - copied, target);
+                }
+                target.force(true);
+            }
+            channel.close();
+            try {
+                Files.move(tempFile, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+            if (!channel.isOpen()) {
+                channel = open(path);
+            }
+        }
+    }
+
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Construit la ligne encadrée (somme de contrôle + contenu) d'un enregistrement
+     */
+    public static byte[] frame(String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        byte[] checksum = String.format("%08x ", crc.getValue()).getBytes(StandardCharsets.US_ASCII);
+        byte[] line = new byte[checksum.length + bytes.length + 1];
+        System.arraycopy(checksum, 0, line, 0, checksum.length);
+        System.arraycopy(bytes, 0, line, checksum.length, bytes.length);
+        line[line.length - 1] = '\n';
+        return line;
+    }
+
+    /**
+     * Décode une ligne encadrée, retourne null si elle est malformée ou si la somme ne correspond pas
+     */
+    public static String decode(byte[] content, int start, int end) {
+        if (end - start < CHECKSUM_LENGTH + 1 || content[start + CHECKSUM_LENGTH] != ' ') {
+            return null;
+        }
+        long expected;
+        try {
+            expected = Long.parseLong(new String(content, start, CHECKSUM_LENGTH, StandardCharsets.US_ASCII), 16);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        int payloadStart = start + CHECKSUM_LENGTH + 1;
+        CRC32 crc = new CRC32();
+        crc.update(content, payloadStart, end - payloadStart);
+        if (crc.getValue() != expected) {
+            return null;
+        }
+        return new String(content, payloadStart, end - payloadStart, StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(byte[] content, byte value, int from) {
+        for (int i = from; i < content.length; i++) {
+            if (content[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+
+    // ========================================
+    // CLASSES AUXILIAIRES
+    // ========================================
+
+    /**
+     * Enregistrement relu : contenu et position de fin dans le fichier
+     */
+    public static class Record {
+        public final String payload;
+        public final long endOffset;
+
+        Record(String payload, long endOffset) {
+            this.payload = payload;
+            this.endOffset = endOffset;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.applydance.service;
+
+import com.applydance.model.GeneratedSlot;
+import com.applydance.model.StringPool;
+import com.applydance.model.TreeNode;
+import com.applydance.model.Weights;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * Arbre de génération compilé : tableaux plats, tables d'alias et table de chaînes dans un
+ * seul tampon, lu directement sans désérialisation. Le tampon peut être écrit dans un fichier
+ * puis projeté en mémoire ({@link #map(Path)}) par n'importe quel processus (interface,
+ * traitement par lots, tests) : les processus d'une même machine partagent une seule copie physique.
+ *
+ * Format (entiers 32 bits petit-boutistes) :
+ * <ul>
+ *   <li>en-tête : magie {@code ADCT}, version, nombre de nœuds, nombre de chaînes, CRC32 du reste</li>
+ *   <li>nœuds en largeur (fratries contiguës), {@value #NODE_INTS} entiers par nœud : identifiant,
+ *       nom, couleur, pondération ppm, niveau, premier enfant, nombre d'enfants, total de la
+ *       table d'alias des enfants, seuil et alias de la colonne du nœud dans la table de son parent</li>
+ *   <li>chaînes : positions de fin puis octets UTF-8</li>
+ * </ul>
+ * Instance immuable, utilisable simultanément depuis plusieurs threads.
+ */
+public final class CompiledTree {
+
+    public static final String FILE_SUFFIX = ".compiled";
+    public static final int VERSION = 1;
+    private static final int MAGIC = 0x54434441; // "ADCT" en petit-boutiste
+    private static final int HEADER_INTS = 5;
+    private static final int NODE_INTS = 10;
+
+    // Champs d'un nœud
+    private static final int ID = 0;
+    private static final int NAME = 1;
+    private static final int COLOR = 2;
+    private static final int WEIGHT = 3;
+    private static final int LEVEL = 4;
+    private static final int FIRST_CHILD = 5;
+    private static final int CHILD_COUNT = 6;
+    private static final int ALIAS_TOTAL = 7;
+    private static final int THRESHOLD = 8;
+    private static final int ALIAS = 9;
+
+    private final ByteBuffer buffer;
+    private final int nodeCount;
+    private final int stringCount;
+    private final int stringsOffset;
+    private final int stringBytesOffset;
+    // Chaînes décodées à la demande (propres au processus)
+    private final String[] decoded;
+
+    private CompiledTree(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (this.buffer.capacity() < HEADER_INTS * 4 || this.buffer.getInt(0) != MAGIC) {
+            throw new IOException("Arbre compilé invalide (signature)");
+        }
+        int version = this.buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Version d'arbre compilé non prise en charge : " + version);
+        }
+        this.nodeCount = this.buffer.getInt(8);
+        this.stringCount = this.buffer.getInt(12);
+        this.stringsOffset = HEADER_INTS * 4 + nodeCount * NODE_INTS * 4;
+        this.stringBytesOffset = stringsOffset + stringCount * 4;
+        if (nodeCount <= 0 || stringCount < 0 || stringBytesOffset > this.buffer.capacity()) {
+            throw new IOException("Arbre compilé invalide (dimensions)");
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer body = this.buffer.duplicate();
+        body.position(HEADER_INTS * 4);
+        crc.update(body);
+        if ((int) crc.getValue() != this.buffer.getInt(16)) {
+            throw new IOException("Arbre compilé corrompu (somme de contrôle)");
+        }
+        this.decoded = new String[stringCount];
+    }
+
+    // ========================================
+    // COMPILATION ET FICHIERS
+    // ========================================
+
+    /**
+     * Compile un arbre (à appeler sous lecture cohérente, voir TreeConfigurationService#readTree, ou sur une copie)
+     */
+    public static CompiledTree compile(TreeNode root) {
+        // Parcours en largeur : les enfants d'un nœud occupent des indices contigus
+        List<TreeNode> order = new ArrayList<>();
+        Deque<TreeNode> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty()) {
+            TreeNode node = queue.poll();
+            order.add(node);
+            queue.addAll(node.getChildren());
+        }
+
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        int[] records = new int[order.size() * NODE_INTS];
+        int nextChild = 1;
+        int[] levels = new int[order.size()];
+        for (int i = 0; i < order.size(); i++) {
+            TreeNode node = order.get(i);
+            List<TreeNode> children = node.getChildren();
+            int base = i * NODE_INTS;
+            records[base + ID] = intern(strings, node.getId());
+            records[base + NAME] = intern(strings, node.getName());
+            records[base + COLOR] = intern(strings, node.getColor());
+            records[base + WEIGHT] = node.getWeightPpm();
+            records[base + LEVEL] = levels[i];
+            records[base + FIRST_CHILD] = nextChild;
+            records[base + CHILD_COUNT] = children.size();
+
+            int[] weights = new int[children.size()];
+            for (int j = 0; j < weights.length; j++) {
+                weights[j] = children.get(j).getWeightPpm();
+                levels[nextChild + j] = levels[i] + 1;
+            }
+            AliasTable table = AliasTable.build(weights);
+            records[base + ALIAS_TOTAL] = table != null ? table.total() : 0;
+            for (int j = 0; j < weights.length; j++) {
+                int childBase = (nextChild + j) * NODE_INTS;
+                records[childBase + THRESHOLD] = table != null ? table.threshold(j) : 0;
+                records[childBase + ALIAS] = table != null ? table.alias(j) : j;
+            }
+            nextChild += children.size();
+        }
+
+        List<byte[]> encoded = new ArrayList<>(strings.size());
+        int stringBytes = 0;
+        for (String value : strings.keySet()) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            stringBytes += bytes.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((HEADER_INTS + records.length + encoded.size()) * 4 + stringBytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(order.size()).putInt(encoded.size()).putInt(0);
+        for (int value : records) {
+            buffer.putInt(value);
+        }
+        int end = 0;
+        for (byte[] bytes : encoded) {
+            end += bytes.length;
+            buffer.putInt(end);
+        }
+        for (byte[] bytes : encoded) {
+            buffer.put(bytes);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_INTS * 4, buffer.capacity() - HEADER_INTS * 4);
+        buffer.putInt(16, (int) crc.getValue());
+        buffer.clear();
+        try {
+            return new CompiledTree(buffer);
+        } catch (IOException e) {
+            throw new IllegalStateException("Arbre compilé incohérent", e);
+        }
+    }
+
+    private static int intern(Map<String, Integer> strings, String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer index = strings.get(value);
+        if (index == null) {
+            index = strings.size();
+            strings.put(value, index);
+        }
+        return index;
+    }
+
+    /**
+     * Chemin de l'arbre compilé associé à un fichier de configuration
+     */
+    public static Path pathFor(Path configPath) {
+        return configPath.resolveSibling(configPath.getFileName() + FILE_SUFFIX);
+    }
+
+    /**
+     * Écrit l'arbre compilé (remplacement atomique : les processus qui l'ont projeté gardent l'ancienne version)
+     */
+    public void writeTo(Path path) throws IOException {
+        // Arbre compilé en mémoire : tableau écrit tel quel, sans copie
+        boolean wholeArray = buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.array().length == buffer.capacity();
+        AtomicFiles.write(path, wholeArray ? buffer.array() : toByteArray());
+    }
+
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[buffer.capacity()];
+        ByteBuffer copy = buffer.duplicate();
+        copy.clear();
+        copy.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Projette un arbre compilé en mémoire, en lecture seule, sans le désérialiser
+     */
+    public static CompiledTree map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // La projection reste valide après la fermeture du canal
+            return new CompiledTree(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Relit un arbre compilé depuis un tableau d'octets (tests, transfert réseau)
+     */
+    public static CompiledTree wrap(byte[] bytes) throws IOException {
+        return new CompiledTree(ByteBuffer.wrap(bytes));
+    }
+
+    // ========================================
+    // GÉNÉRATION
+    // ========================================
+
+    /**
+     * Tire un slot : parcours pondéré depuis la racine jusqu'à une feuille (tables d'alias en O(1))
+     */
+    public GeneratedSlot generate(Random random) {
+        StringBuilder path = new StringBuilder();
+        int node = 0;
+        while (true) {
+            path.append(name(node));
+            int childCount = field(node, CHILD_COUNT);
+            if (childCount == 0) {
+                break;
+            }
+            path.append(" > ");
+            node = sampleChild(node, childCount, random);
+        }
+
+        GeneratedSlot slot = new GeneratedSlot(path.toString(), id(node), name(node));
+        slot.addMetadata("nodeLevel", field(node, LEVEL));
+        slot.addMetadata("nodeColor", string(field(node, COLOR)));
+        slot.addMetadata("finalPercentage", Weights.toPercentage(field(node, WEIGHT)));
+        return slot;
+    }
+
+    private int sampleChild(int parent, int childCount, Random random) {
+        int first = field(parent, FIRST_CHILD);
+        int column = random.nextInt(childCount);
+        int total = field(parent, ALIAS_TOTAL);
+        if (total == 0) {
+            // Aucune pondération positive : tirage uniforme
+            return first + column;
+        }
+        int candidate = first + column;
+        return random.nextInt(total) < field(candidate, THRESHOLD) ? candidate : first + field(candidate, ALIAS);
+    }
+
+    // ========================================
+    // ACCÈS
+    // ========================================
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public String id(int node) {
+        return string(field(node, ID));
+    }
+
+    public String name(int node) {
+        return string(field(node, NAME));
+    }
+
+    public int weightPpm(int node) {
+        return field(node, WEIGHT);
+    }
+
+    public int childCount(int node) {
+        return field(node, CHILD_COUNT);
+    }
+
+    public int firstChild(int node) {
+        return field(node, FIRST_CHILD);
+    }
+
+    private int field(int node, int field) {
+        return buffer.getInt((HEADER_INTS + node * NODE_INTS + field) * 4);
+    }
+
+    private String string(int index) {
+        if (index < 0) {
+            return null;
+        }
+        String value = decoded[index];
+        if (value == null) {
+            int start = index == 0 ? 0 : buffer.getInt(stringsOffset + (index - 1) * 4);
+            int end = buffer.getInt(stringsOffset + index * 4);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(stringBytesOffset + start);
+            slice.get(bytes);
+            // Course bénigne : deux threads peuvent décoder la même chaîne immuable
+            value = StringPool.canonical(new String(bytes, StandardCharsets.UTF_8));
+            decoded[index] = value;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,255 @@
+package com.applydance.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Écriture en arrière-plan de la configuration d'arbre.
+ * Les demandes de sauvegarde successives sont regroupées (seul le dernier instantané
+ * est encodé et écrit, sur le thread d'écriture) et le fichier est remplacé atomiquement (fichier temporaire + renommage),
+ * de sorte qu'un arrêt brutal ne laisse jamais un fichier tronqué.
+ * Les ajouts au journal d'écriture anticipée passent par le même thread : ils sont donc
+ * ordonnés avec les instantanés, et chaque instantané écrit compacte le journal qu'il intègre.
+ */
+public class ConfigurationWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConfigurationWriter.class);
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 250;
+
+    private final Path targetPath;
+    private final long debounceMillis;
+    private final ScheduledExecutorService executor;
+    private final AtomicLong writeCount = new AtomicLong();
+    // Sérialise les écritures disque sans bloquer le verrou des demandes (thread appelant)
+    private final Object writeLock = new Object();
+    private final TreeEditLog editLog;
+    // Instantané pris de façon cohérente par l'appelant, pas encore encodé
+    private Snapshot pending;
+    private boolean scheduled;
+
+    /**
+     * Instantané de configuration : copie prise sous lecture cohérente par l'appelant,
+     * encodée par le thread d'écriture
+     */
+    public interface Snapshot {
+        /**
+         * Dernière séquence du journal d'écriture anticipée intégrée à l'instantané
+         */
+        long sequence();
+
+        byte[] encodeJson() throws IOException;
+
+        /**
+         * Contenu de l'instantané binaire compagnon (null = JSON seul)
+         */
+        byte[] encodeBinary() throws IOException;
+
+        /**
+         * Arbre compilé projetable par d'autres processus (null = non écrit)
+         */
+        CompiledTree compile();
+    }
+
+    public ConfigurationWriter(Path targetPath, long debounceMillis) {
+        this(targetPath, debounceMillis, null);
+    }
+
+    /**
+     * Écrivain associé à un journal d'écriture anticipée (null = instantanés seuls)
+     */
+    public ConfigurationWriter(Path targetPath, long debounceMillis, TreeEditLog editLog) {
+        this.targetPath = targetPath;
+        this.editLog = editLog;
+        this.debounceMillis = Math.max(0, debounceMillis);
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "configuration-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Planifie l'écriture d'un instantané ; remplace l'instantané en attente s'il y en a un.
+     * {@code immediate} = true place l'écriture avant tout ajout ultérieur au journal
+     * (remplacement complet de l'arbre : les modifications suivantes portent sur le nouvel arbre).
+     */
+    public void submit(Snapshot snapshot, boolean immediate) {
+        synchronized (this) {
+            pending = snapshot;
+            if (scheduled && !immediate) {
+                return;
+            }
+            scheduled = true;
+        }
+        try {
+            if (immediate) {
+                executor.execute(this::writePending);
+            } else {
+                executor.schedule(this::writePending, debounceMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (Exception e) {
+            // Écrivain arrêté (fermeture en cours) : écriture directe
+            logger.debug("Écrivain de configuration arrêté, écriture synchrone");
+            writePending();
+        }
+    }
+
+    /**
+     * Ajoute un enregistrement au journal d'écriture anticipée (sans attendre l'écriture)
+     */
+    public void append(TreeEditLog.Record record) {
+        try {
+            executor.execute(() -> appendNow(record));
+        } catch (Exception e) {
+            logger.debug("Écrivain de configuration arrêté, ajout synchrone au journal");
+            appendNow(record);
+        }
+    }
+
+    /**
+     * Relit le journal d'écriture anticipée sur le thread d'écriture (après les écritures en cours)
+     */
+    public List<TreeEditLog.Record> recoverJournal() {
+        if (editLog == null) {
+            return Collections.emptyList();
+        }
+        Callable<List<TreeEditLog.Record>> recovery = () -> {
+            synchronized (writeLock) {
+                return editLog.recover();
+            }
+        };
+        try {
+            return executor.isShutdown() ? recovery.call() : executor.submit(recovery).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Erreur lors de la relecture du journal de configuration", e);
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Écrit immédiatement l'instantané en attente et attend la fin de l'écriture
+     */
+    public void flush() {
+        if (executor.isShutdown()) {
+            writePending();
+            return;
+        }
+        try {
+            executor.submit(this::writePending).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Attente de l'écriture de la configuration interrompue");
+        } catch (ExecutionException e) {
+            logger.error("Erreur lors de l'écriture de la configuration", e.getCause());
+        }
+    }
+
+    /**
+     * Écrit les modifications en attente puis arrête le thread d'écriture (fermeture de l'application)
+     */
+    public void shutdown() {
+        flush();
+        executor.shutdown();
+        if (editLog != null) {
+            synchronized (writeLock) {
+                try {
+                    editLog.close();
+                } catch (IOException e) {
+                    logger.error("Erreur lors de la fermeture du journal de configuration", e);
+                }
+            }
+        }
+        logger.info("Écrivain de configuration arrêté ({} écritures)", writeCount.get());
+    }
+
+    public boolean hasPendingWrite() {
+        synchronized (this) {
+            return pending != null;
+        }
+    }
+
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    private void writePending() {
+        synchronized (writeLock) {
+            Snapshot snapshot;
+            synchronized (this) {
+                snapshot = pending;
+                pending = null;
+                scheduled = false;
+            }
+            if (snapshot == null) {
+                return;
+            }
+            try {
+                byte[] json = snapshot.encodeJson();
+                AtomicFiles.write(targetPath, json);
+                writeCount.incrementAndGet();
+                logger.info("Configuration sauvegardée dans {}", targetPath);
+                writeBinary(snapshot, json);
+                writeCompiled(snapshot);
+                // L'instantané est durable : les enregistrements qu'il intègre sont inutiles
+                if (editLog != null) {
+                    editLog.discardUpTo(snapshot.sequence());
+                }
+            } catch (Exception e) {
+                logger.error("Erreur lors de la sauvegarde de la configuration", e);
+            }
+        }
+    }
+
+    /**
+     * L'instantané binaire n'est qu'un accélérateur : un échec laisse le JSON faire foi
+     */
+    private void writeBinary(Snapshot snapshot, byte[] json) {
+        try {
+            byte[] binarySnapshot = snapshot.encodeBinary();
+            if (binarySnapshot == null) {
+                return;
+            }
+            TreeBinarySnapshot.writeFor(targetPath, json, binarySnapshot);
+        } catch (IOException e) {
+            logger.warn("Instantané binaire non écrit, le prochain démarrage lira le JSON", e);
+        }
+    }
+
+    private void writeCompiled(Snapshot snapshot) {
+        try {
+            CompiledTree compiledTree = snapshot.compile();
+            if (compiledTree == null) {
+                return;
+            }
+            compiledTree.writeTo(CompiledTree.pathFor(targetPath));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Arbre compilé non écrit", e);
+        }
+    }
+
+    private void appendNow(TreeEditLog.Record record) {
+        if (editLog == null) {
+            return;
+        }
+        synchronized (writeLock) {
+            try {
+                editLog.append(record);
+            } catch (Exception e) {
+                logger.error("Erreur lors de l'ajout au journal de configuration", e);
+            }
+        }
+    }
+}
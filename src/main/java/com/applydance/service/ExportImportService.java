@@ -2,6 +2,7 @@ package com.applydance.service;
 
 import com.applydance.model.GeneratedSlot;
 import com.applydance.model.TreeNode;
+import com.applydance.model.Weights;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -41,7 +42,7 @@ public class ExportImportService {
     // ========================================
     
     public String exportSlotsToCSV() throws IOException {
-        return exportSlotsToCSV(historyService.getAllSlots(), null);
+        return exportSlotsToCSV(historyService.asList(), null);
     }
     
     public String exportSlotsToCSV(List<GeneratedSlot> slots, String customFileName) throws IOException {
@@ -77,7 +78,7 @@ public class ExportImportService {
     }
     
     public String exportSlotsToJSON() throws IOException {
-        return exportSlotsToJSON(historyService.getAllSlots(), null);
+        return exportSlotsToJSON(historyService.asList(), null);
     }
     
     public String exportToCSV() throws IOException {
@@ -111,7 +112,8 @@ public class ExportImportService {
         String fileName = customFileName != null ? customFileName : generateFileName("tree_config", "json");
         String filePath = EXPORT_DIR + File.separator + fileName;
         
-        TreeNode rootNode = configService.getRootNode();
+        // Copie cohérente prise sous lecture, sérialisée ensuite sans bloquer les modifications
+        TreeNode rootNode = configService.readTree(root -> root != null ? root.clone() : null);
         if (rootNode == null) {
             throw new IllegalStateException("Aucune configuration d'arbre disponible à exporter");
         }
@@ -147,6 +149,8 @@ public class ExportImportService {
                 return result;
             }
             
+            // Résidus d'arrondi des pourcentages décimaux ramenés exactement à 100%
+            Weights.repairRounding(importedConfig.rootNode);
             ValidationResult validation = validateTreeConfiguration(importedConfig.rootNode);
             result.validationResult = validation;
             
@@ -156,8 +160,9 @@ public class ExportImportService {
                 return result;
             }
             
-            configService.setRootNode(importedConfig.rootNode);
-            configService.saveConfiguration();
+            // Seules les différences sont appliquées (une transaction annulable, un événement delta),
+            // avec les pourcentages importés tels quels ; un remplacement complet est déjà sauvegardé
+            configService.patchTree("Import de configuration", importedConfig.rootNode);
             
             result.success = true;
             result.importedNodeCount = countNodes(importedConfig.rootNode);
@@ -178,56 +183,32 @@ public class ExportImportService {
     // VALIDATION AVANCÉE
     // ========================================
     
+    /**
+     * Valide un arbre quelconque (import, export) avec le moteur de validation partagé
+     */
     public ValidationResult validateTreeConfiguration(TreeNode rootNode) {
-        ValidationResult result = new ValidationResult();
-        
-        if (rootNode == null) {
-            result.isValid = false;
-            result.errors.add("Nœud racine manquant");
-            return result;
-        }
-        
-        validateNodeRecursively(rootNode, result, new HashSet<>(), "");
-        
-        if (Math.abs(rootNode.getPercentage() - 100.0) > 0.1) {
-            result.warnings.add("Le nœud racine devrait avoir 100% (actuel: " + rootNode.getPercentage() + "%)");
-        }
-        
-        result.isValid = result.errors.isEmpty();
-        return result;
+        return toValidationResult(configService.getValidator().validate(rootNode));
     }
     
+    /**
+     * Valide l'arbre courant (rapport partagé tant que l'arbre n'est pas modifié)
+     */
     public ValidationResult validateCurrentConfiguration() {
-        return validateTreeConfiguration(configService.getRootNode());
+        return toValidationResult(configService.getValidationReport());
     }
     
-    private void validateNodeRecursively(TreeNode node, ValidationResult result, Set<String> seenIds, String path) {
-        String currentPath = path.isEmpty() ? node.getName() : path + " > " + node.getName();
-        
-        if (seenIds.contains(node.getId())) {
-            result.errors.add("ID dupliqué détecté : " + node.getId() + " (chemin: " + currentPath + ")");
-        } else {
-            seenIds.add(node.getId());
-        }
-        
-        if (node.getPercentage() < 0 || node.getPercentage() > 100) {
-            result.errors.add("Pourcentage invalide pour " + currentPath + " : " + node.getPercentage() + "%");
-        }
-        
-        if (node.getChildren() != null && !node.getChildren().isEmpty()) {
-            double totalChildPercentage = node.getChildren().stream()
-                    .mapToDouble(TreeNode::getPercentage)
-                    .sum();
-            
-            if (Math.abs(totalChildPercentage - 100.0) > 0.1) {
-                result.errors.add("Somme des pourcentages des enfants de " + currentPath + 
-                        " != 100% (actuel: " + String.format("%.1f", totalChildPercentage) + "%)");
-            }
-            
-            for (TreeNode child : node.getChildren()) {
-                validateNodeRecursively(child, result, seenIds, currentPath);
+    private ValidationResult toValidationResult(TreeValidator.Report report) {
+        ValidationResult result = new ValidationResult();
+        for (TreeValidator.Diagnostic diagnostic : report.getDiagnostics()) {
+            String text = TreeValidator.ROOT_MISSING.equals(diagnostic.code) ? diagnostic.message : diagnostic.toString();
+            if (diagnostic.isError()) {
+                result.errors.add(text);
+            } else {
+                result.warnings.add(text);
             }
         }
+        result.isValid = result.errors.isEmpty();
+        return result;
     }
     
     // ========================================
@@ -0,0 +1,684 @@
+package com.applydance.service;
+
+import com.applydance.model.GeneratedSlot;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Journal d'historique découpé en segments JSON Lines de taille bornée.
+ * Chaque ligne est protégée par une somme CRC32 (format de {@link ChecksummedLog}) ;
+ * les lignes JSON sans somme des anciens segments restent lisibles.
+ * Les slots sont ajoutés au segment actif ; une suppression ajoute un enregistrement de
+ * suppression ({@code {"deleted":id}}) au lieu de réécrire l'historique. Les segments scellés
+ * dont la proportion d'enregistrements utiles passe sous {@link #COMPACTION_RATIO} sont
+ * réécrits individuellement par {@link #compact()} ; une suppression reste utile tant que
+ * le slot qu'elle annule est encore présent dans un segment.
+ *
+ * Les identifiants des slots vivants croissent dans l'ordre d'ajout : le segment d'un slot
+ * vivant est le dernier dont le plus petit identifiant ne le dépasse pas, sans table par slot.
+ *
+ * Les ajouts sont accumulés en mémoire et n'atteignent le disque qu'avec {@link #sync(long)} :
+ * un seul appel écrit et force sur disque tous les ajouts en attente, ceux des autres threads
+ * compris (validation groupée). Un segment est forcé sur disque avant d'être scellé.
+ */
+final class SegmentedHistoryLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentedHistoryLog.class);
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".jsonl";
+    static final double COMPACTION_RATIO = 0.5;
+    private static final String TOMBSTONE_PREFIX = "{\"deleted\":";
+
+    private final Path directory;
+    private final long segmentMaxBytes;
+    private final ObjectWriter lineWriter;
+    private final ObjectReader lineReader;
+    // Segments par numéro croissant ; le dernier est le segment actif
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    // Segment contenant encore l'enregistrement d'un slot supprimé (suppression pas encore compactée)
+    private final Map<Long, Segment> deadLocation = new HashMap<>();
+    // Segment contenant l'enregistrement de suppression d'un slot encore présent ailleurs
+    private final Map<Long, Segment> tombstoneLocation = new HashMap<>();
+    // Segment actif ouvert en ajout (null = pas encore ouvert)
+    private FileChannel channel;
+    private Segment channelSegment;
+    // Octets ajoutés au segment actif mais pas encore écrits
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    // Position logique : total des octets ajoutés, et part déjà forcée sur disque
+    private long appendedBytes;
+    private volatile long durableBytes;
+    private final AtomicLong forceCount = new AtomicLong();
+    // Un seul forçage à la fois ; les threads en attente trouvent souvent leur ajout déjà durable
+    private final Object syncLock = new Object();
+
+    SegmentedHistoryLog(Path directory, long segmentMaxBytes, ObjectWriter lineWriter, ObjectReader lineReader) {
+        this.directory = directory;
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.lineWriter = lineWriter;
+        this.lineReader = lineReader;
+    }
+
+    // ========================================
+    // CHARGEMENT
+    // ========================================
+
+    /**
+     * Destinataire de la relecture : slots dans l'ordre d'ajout et suppressions
+     */
+    interface Replay {
+        void slot(GeneratedSlot slot);
+
+        /**
+         * Supprime le slot vivant de cet identifiant ; faux s'il n'existe pas (suppression périmée)
+         */
+        boolean delete(long id);
+    }
+
+    /**
+     * Rejoue tous les segments, en flux, vers {@code replay}.
+     * Un enregistrement dont la somme de contrôle ne correspond pas est écarté : dans un segment
+     * scellé (forcé sur disque avant d'être scellé) il est ignoré et la lecture continue ; dans le
+     * segment actif il marque une écriture interrompue et le segment est tronqué à cet endroit.
+     */
+    synchronized void load(Replay replay) throws IOException {
+        Files.createDirectories(directory);
+        closeChannel();
+        segments.clear();
+        deadLocation.clear();
+        tombstoneLocation.clear();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                int number = segmentNumber(file);
+                if (number >= 0) {
+                    segments.put(number, new Segment(number, file));
+                }
+            }
+        }
+
+        int skipped = 0;
+        List<Segment> unreadable = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            boolean active = segment.number == segments.lastKey();
+            try {
+                skipped += replay(segment, active, replay);
+            } catch (IOException e) {
+                // Segment illisible : les autres segments restent relus
+                logger.error("Segment {} illisible, ignoré", segment.number, e);
+                unreadable.add(segment);
+            }
+        }
+        for (Segment segment : unreadable) {
+            segments.remove(segment.number);
+        }
+        if (skipped > 0) {
+            logger.warn("Historique : {} enregistrements corrompus ignorés", skipped);
+        }
+    }
+
+    /**
+     * Relit un segment octet par octet (un octet invalide n'empêche pas de lire la suite) ;
+     * retourne le nombre d'enregistrements ignorés
+     */
+    private int replay(Segment segment, boolean active, Replay replay) throws IOException {
+        int skipped = 0;
+        long validEnd = 0;
+        try (RecordScanner scanner = new RecordScanner(segment.path)) {
+            while (scanner.next()) {
+                String payload = scanner.terminated ? decodeLine(scanner.line, scanner.length) : null;
+                boolean valid = payload != null && (payload.isBlank() || apply(segment, payload, replay));
+                if (!valid) {
+                    if (active) {
+                        break;
+                    }
+                    skipped++;
+                }
+                validEnd = scanner.end;
+            }
+        }
+        segment.bytes = Files.size(segment.path);
+        if (active && validEnd < segment.bytes) {
+            truncate(segment, validEnd);
+        }
+        return skipped;
+    }
+
+    private boolean apply(Segment segment, String payload, Replay replay) {
+        Long tombstone = parseTombstone(payload);
+        if (tombstone != null) {
+            segment.records++;
+            if (replay.delete(tombstone)) {
+                markDead(tombstone, segment);
+            } else {
+                segment.garbage++;
+            }
+            return true;
+        }
+        GeneratedSlot slot;
+        try {
+            slot = lineReader.readValue(payload);
+        } catch (IOException e) {
+            return false;
+        }
+        segment.records++;
+        try {
+            replay.slot(slot);
+        } catch (RuntimeException e) {
+            // Enregistrement intact mais inutilisable (date hors limites...) : ignoré comme un
+            // enregistrement corrompu, sans tronquer le segment actif ni interrompre le chargement
+            logger.warn("Segment {} : slot {} ignoré ({})", segment.number, slot.getId(), e.toString());
+            return true;
+        }
+        segment.addSlotId(slot.getId());
+        return true;
+    }
+
+    /**
+     * Supprime la fin du segment actif à partir du premier enregistrement invalide (arrêt pendant
+     * un ajout) : sans cela, l'ajout suivant serait collé à une ligne tronquée
+     */
+    private static void truncate(Segment segment, long validEnd) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.WRITE)) {
+            logger.warn("Segment {} : {} octets invalides supprimés après le dernier enregistrement valide",
+                    segment.number, segment.bytes - validEnd);
+            channel.truncate(validEnd);
+            channel.force(true);
+        }
+        segment.bytes = validEnd;
+    }
+
+    // ========================================
+    // ÉCRITURE
+    // ========================================
+
+    /**
+     * Ajoute des slots au segment actif (une seule écriture) ; retourne la position logique
+     * à passer à {@link #sync(long)}
+     */
+    synchronized long append(Collection<GeneratedSlot> slots) throws IOException {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        for (GeneratedSlot slot : slots) {
+            lines.write(ChecksummedLog.frame(lineWriter.writeValueAsString(slot)));
+        }
+        Segment segment = write(lines.toByteArray(), slots.size());
+        for (GeneratedSlot slot : slots) {
+            segment.addSlotId(slot.getId());
+        }
+        return appendedBytes;
+    }
+
+    /**
+     * Enregistre la suppression de slots vivants : une ligne par slot ajoutée au segment actif, O(1) par slot ;
+     * retourne la position logique à passer à {@link #sync(long)}
+     */
+    synchronized long delete(Collection<Long> ids) throws IOException {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        List<Long> deleted = new ArrayList<>();
+        for (Long id : ids) {
+            if (id != null && !deadLocation.containsKey(id) && locate(id) != null) {
+                lines.write(ChecksummedLog.frame(TOMBSTONE_PREFIX + id + "}"));
+                deleted.add(id);
+            }
+        }
+        if (deleted.isEmpty()) {
+            return appendedBytes;
+        }
+        Segment segment = write(lines.toByteArray(), deleted.size());
+        for (Long id : deleted) {
+            markDead(id, segment);
+        }
+        return appendedBytes;
+    }
+
+    private void markDead(Long id, Segment tombstoneSegment) {
+        Segment location = locate(id);
+        if (location != null) {
+            location.garbage++;
+            deadLocation.put(id, location);
+            tombstoneLocation.put(id, tombstoneSegment);
+        }
+    }
+
+    /**
+     * Segment contenant le slot vivant de cet identifiant
+     */
+    private Segment locate(long id) {
+        for (Segment segment : segments.descendingMap().values()) {
+            if (segment.minSlotId <= id) {
+                return id <= segment.maxSlotId ? segment : null;
+            }
+        }
+        return null;
+    }
+
+    private Segment write(byte[] content, int records) throws IOException {
+        Segment active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        if (active == null || (active.bytes > 0 && active.bytes + content.length > segmentMaxBytes)) {
+            // Segment scellé : plus aucune écriture, il doit être durable avant d'être compactable
+            writePending();
+            if (channel != null) {
+                channel.force(false);
+                forceCount.incrementAndGet();
+            }
+            closeChannel();
+            int number = active == null ? 1 : active.number + 1;
+            active = new Segment(number, directory.resolve(segmentName(number)));
+            segments.put(number, active);
+            // Fichier créé dès maintenant : le segment scellé ne redevient jamais le dernier au chargement
+            // (il peut être partagé par lien physique avec une sauvegarde)
+            openChannel(active);
+        }
+        pending.write(content);
+        appendedBytes += content.length;
+        active.bytes += content.length;
+        active.records += records;
+        return active;
+    }
+
+    /**
+     * Écrit les ajouts en attente dans le segment actif (sans forçage sur disque)
+     */
+    private void writePending() throws IOException {
+        if (pending.size() == 0) {
+            return;
+        }
+        Segment active = segments.lastEntry().getValue();
+        if (channelSegment != active) {
+            openChannel(active);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        pending.reset();
+    }
+
+    private void openChannel(Segment active) throws IOException {
+        closeChannel();
+        channel = FileChannel.open(active.path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        channelSegment = active;
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+            channelSegment = null;
+        }
+    }
+
+    /**
+     * Rend durables tous les ajouts jusqu'à la position {@code position} : écriture des ajouts
+     * en attente puis forçage sur disque, hors du verrou des ajouts. Les threads arrivés pendant
+     * un forçage sont servis ensemble par le suivant.
+     */
+    void sync(long position) throws IOException {
+        if (durableBytes >= position) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (durableBytes >= position) {
+                return;
+            }
+            FileChannel target;
+            long upTo;
+            synchronized (this) {
+                writePending();
+                target = channel;
+                upTo = appendedBytes;
+            }
+            if (target != null) {
+                try {
+                    target.force(false);
+                    forceCount.incrementAndGet();
+                } catch (ClosedChannelException e) {
+                    // Segment scellé (donc forcé) ou historique vidé pendant le forçage
+                }
+            }
+            durableBytes = Math.max(durableBytes, upTo);
+        }
+    }
+
+    /**
+     * Rend durables tous les ajouts effectués
+     */
+    void sync() throws IOException {
+        long position;
+        synchronized (this) {
+            position = appendedBytes;
+        }
+        sync(position);
+    }
+
+    /**
+     * Écrit les ajouts en attente et ferme le segment actif (rouvert au prochain ajout)
+     */
+    void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                writePending();
+                if (channel != null) {
+                    channel.force(false);
+                    forceCount.incrementAndGet();
+                }
+                closeChannel();
+                durableBytes = appendedBytes;
+            }
+        }
+    }
+
+    /**
+     * Vide l'historique : suppression des fichiers de segments, sans réécriture
+     */
+    synchronized void clear() throws IOException {
+        pending.reset();
+        closeChannel();
+        durableBytes = appendedBytes;
+        for (Segment segment : segments.values()) {
+            Files.deleteIfExists(segment.path);
+        }
+        segments.clear();
+        deadLocation.clear();
+        tombstoneLocation.clear();
+    }
+
+    // ========================================
+    // SAUVEGARDE
+    // ========================================
+
+    /**
+     * Sauvegarde les segments dans {@code target} sans réécriture : un segment scellé n'est plus
+     * jamais modifié sur place (la compaction remplace le fichier), il est donc partagé par lien
+     * physique ; seul le segment actif est copié. Retourne le nombre de segments sauvegardés.
+     */
+    synchronized int backup(Path target) throws IOException {
+        writePending();
+        Files.createDirectories(target);
+        try (DirectoryStream<Path> previous = Files.newDirectoryStream(target, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : previous) {
+                Files.delete(file);
+            }
+        }
+        for (Segment segment : segments.values()) {
+            Path copy = target.resolve(segment.path.getFileName());
+            if (segment.number == segments.lastKey()) {
+                Files.copy(segment.path, copy);
+            } else {
+                link(segment.path, copy);
+            }
+        }
+        return segments.size();
+    }
+
+    private static void link(Path source, Path link) throws IOException {
+        try {
+            Files.createLink(link, source);
+        } catch (UnsupportedOperationException | IOException e) {
+            // Liens physiques non pris en charge ou autre volume : copie
+            Files.copy(source, link);
+        }
+    }
+
+    // ========================================
+    // COMPACTION
+    // ========================================
+
+    /**
+     * Vrai si un segment scellé est passé sous le seuil de compaction
+     */
+    synchronized boolean needsCompaction() {
+        for (Segment segment : segments.values()) {
+            if (segment.number != segments.lastKey() && segment.shouldCompact()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Réécrit uniquement les segments scellés sous le seuil ; retourne le nombre de segments traités
+     */
+    synchronized int compact() throws IOException {
+        if (segments.isEmpty()) {
+            return 0;
+        }
+        int active = segments.lastKey();
+        List<Segment> candidates = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            if (segment.number != active && segment.shouldCompact()) {
+                candidates.add(segment);
+            }
+        }
+        for (Segment segment : candidates) {
+            compact(segment);
+        }
+        return candidates.size();
+    }
+
+    private void compact(Segment segment) throws IOException {
+        // Les slots supprimés de ce segment disparaissent avec la réécriture :
+        // leurs enregistrements de suppression, où qu'ils soient, deviennent inutiles
+        Set<Long> dropped = new HashSet<>();
+        deadLocation.entrySet().removeIf(entry -> {
+            if (entry.getValue() == segment) {
+                dropped.add(entry.getKey());
+                return true;
+            }
+            return false;
+        });
+        for (Long id : dropped) {
+            Segment tombstoneSegment = tombstoneLocation.remove(id);
+            if (tombstoneSegment != null && tombstoneSegment != segment) {
+                tombstoneSegment.garbage++;
+            }
+        }
+
+        // Enregistrements corrompus écartés, anciennes lignes sans somme de contrôle réécrites avec
+        ByteArrayOutputStream kept = new ByteArrayOutputStream();
+        int records = 0;
+        try (RecordScanner scanner = new RecordScanner(segment.path)) {
+            while (scanner.next()) {
+                String payload = scanner.terminated ? decodeLine(scanner.line, scanner.length) : null;
+                if (payload == null || payload.isBlank()) {
+                    continue;
+                }
+                Long tombstone = parseTombstone(payload);
+                boolean keep;
+                if (tombstone != null) {
+                    // Suppression encore utile si le slot annulé subsiste dans un autre segment
+                    keep = deadLocation.containsKey(tombstone);
+                } else {
+                    Long id = idOf(payload);
+                    keep = id == null || !dropped.contains(id);
+                }
+                if (keep) {
+                    kept.write(ChecksummedLog.frame(payload));
+                    records++;
+                }
+            }
+        }
+
+        if (records == 0) {
+            Files.deleteIfExists(segment.path);
+            segments.remove(segment.number);
+        } else {
+            AtomicFiles.write(segment.path, kept.toByteArray());
+            segment.bytes = kept.size();
+            segment.records = records;
+            segment.garbage = 0;
+        }
+        logger.debug("Segment {} compacté : {} enregistrements conservés", segment.number, records);
+    }
+
+    private Long idOf(String line) {
+        try {
+            GeneratedSlot slot = lineReader.readValue(line);
+            return slot.getId();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // ========================================
+    // UTILITAIRES
+    // ========================================
+
+    /**
+     * Contenu d'une ligne : {@code <crc32> <json>} vérifié, ou ancienne ligne JSON sans somme
+     * de contrôle (validée à la lecture du JSON) ; null si la somme ne correspond pas
+     */
+    private static String decodeLine(byte[] line, int length) {
+        int start = 0;
+        while (start < length && (line[start] == ' ' || line[start] == '\r' || line[start] == '\t')) {
+            start++;
+        }
+        if (start == length) {
+            return "";
+        }
+        if (line[start] == '{') {
+            return new String(line, start, length - start, StandardCharsets.UTF_8);
+        }
+        return ChecksummedLog.decode(line, 0, length);
+    }
+
+    private static Long parseTombstone(String line) {
+        if (!line.startsWith(TOMBSTONE_PREFIX) || !line.endsWith("}")) {
+            return null;
+        }
+        try {
+            return Long.parseLong(line.substring(TOMBSTONE_PREFIX.length(), line.length() - 1).trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static String segmentName(int number) {
+        return String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX);
+    }
+
+    private static int segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    long forceCount() {
+        return forceCount.get();
+    }
+
+    synchronized long totalBytes() {
+        long total = 0;
+        for (Segment segment : segments.values()) {
+            total += segment.bytes;
+        }
+        return total;
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Lecture ligne par ligne d'un segment en octets bruts, avec la position de fin de chaque ligne
+     */
+    private static final class RecordScanner implements Closeable {
+        private final InputStream input;
+        byte[] line = new byte[512];
+        int length;
+        // Position suivant la ligne courante (saut de ligne compris)
+        long end;
+        // Faux pour une dernière ligne sans saut de ligne (écriture interrompue)
+        boolean terminated;
+
+        RecordScanner(Path path) throws IOException {
+            this.input = new BufferedInputStream(Files.newInputStream(path), 64 * 1024);
+        }
+
+        boolean next() throws IOException {
+            length = 0;
+            int value;
+            while ((value = input.read()) != -1) {
+                end++;
+                if (value == '\n') {
+                    terminated = true;
+                    return true;
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = (byte) value;
+            }
+            terminated = false;
+            return length > 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    /**
+     * Fichier de segment et compteurs : enregistrements (slots et suppressions) et enregistrements
+     * inutiles (slots supprimés, suppressions dont le slot a déjà disparu)
+     */
+    private static final class Segment {
+        final int number;
+        final Path path;
+        long bytes;
+        int records;
+        int garbage;
+        // Bornes des identifiants de slots écrits dans le segment
+        long minSlotId = Long.MAX_VALUE;
+        long maxSlotId = Long.MIN_VALUE;
+
+        Segment(int number, Path path) {
+            this.number = number;
+            this.path = path;
+        }
+
+        void addSlotId(Long id) {
+            if (id != null) {
+                minSlotId = Math.min(minSlotId, id);
+                maxSlotId = Math.max(maxSlotId, id);
+            }
+        }
+
+        boolean shouldCompact() {
+            return garbage > 0 && records - garbage < records * COMPACTION_RATIO;
+        }
+    }
+}
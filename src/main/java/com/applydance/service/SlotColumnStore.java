@@ -0,0 +1,1039 @@
+package com.applydance.service;
+
+import com.applydance.model.GeneratedSlot;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.IntToLongFunction;
+import java.util.function.Supplier;
+
+/**
+ * Historique en mémoire stocké par colonnes de types primitifs : identifiant, date de génération
+ * (millisecondes), feuille, chemin de décision et métadonnées. Feuilles, chemins et métadonnées
+ * se répètent d'un slot à l'autre : chaque colonne entière contient un code dans une table de
+ * valeurs distinctes. Un slot occupe ainsi une trentaine d'octets ; les {@link GeneratedSlot}
+ * ne sont construits qu'à la demande ({@link #view(int)}).
+ *
+ * Les lignes sont dans l'ordre d'ajout, avec des identifiants croissants : la recherche par
+ * identifiant est dichotomique. Les suppressions ne font que marquer les lignes ; les lectures
+ * par position ({@link #view(int)}, {@link #views(int, int)}) comptent les positions parmi les
+ * seuls slots vivants, grâce au nombre de lignes marquées de chaque bloc. {@link #purge()}
+ * compacte les colonnes en une passe, en arrière-plan une fois {@link #needsPurge()} atteint.
+ *
+ * Index secondaires, rattrapés par la première requête qui suit des ajouts et reconstruits
+ * après une purge : listes de lignes par feuille et par catégorie principale, et ordre
+ * chronologique (la colonne des dates elle-même tant que les ajouts sont chronologiques, sinon
+ * une permutation triée). Les requêtes coûtent O(log n + k) au lieu d'un parcours complet.
+ *
+ * Concurrence : les colonnes sont découpées en blocs de taille fixe, jamais réalloués. Un ajout
+ * réserve sa ligne (et son identifiant) par un compteur atomique, écrit dans son bloc sans
+ * exclusion mutuelle avec les autres ajouts, puis publie la taille visible dans l'ordre des
+ * réservations : les lecteurs voient toujours un préfixe complet. Seules les opérations qui
+ * décalent ou marquent les lignes (suppression, purge, vidage) sont exclusives ; les lectures
+ * sont optimistes.
+ */
+final class SlotColumnStore {
+
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    // Attentes actives avant de céder le processeur en attendant son tour de publication
+    private static final int SPINS_BEFORE_PARK = 128;
+    // Date absente
+    private static final long NO_TIME = Long.MIN_VALUE;
+    // Purge en arrière-plan dès qu'une ligne sur PURGE_RATIO est marquée supprimée
+    private static final int PURGE_RATIO = 4;
+
+    // Partagé par les ajouts et les requêtes, exclusif pour les décalages de lignes
+    private final StampedLock lock = new StampedLock();
+    private final AtomicReference<Chunk[]> chunks = new AtomicReference<>(new Chunk[16]);
+    // Lignes réservées par les ajouts en cours / lignes publiées (visibles des lecteurs)
+    private final AtomicInteger reserved = new AtomicInteger();
+    private volatile int published;
+    // Identifiant attribué à la ligne r : idBase + r (modifié uniquement sous verrou exclusif)
+    private volatile long idBase = 1;
+    private final AtomicLong maxId = new AtomicLong();
+    // Faux si un identifiant a été ajouté hors de l'ordre croissant (ancien journal) : recherche linéaire
+    private volatile boolean ordered = true;
+    // Incrémenté quand des slots disparaissent (curseurs ouverts invalidés) ; une purge conserve
+    // les positions des slots vivants et ne l'incrémente pas
+    private volatile int structureVersion;
+    // Lignes marquées supprimées en attendant la purge (modifiées sous verrou exclusif)
+    private final BitSet removed = new BitSet();
+    private volatile int removedCount;
+
+    private final Dictionary<Leaf> leafTable = new Dictionary<>();
+    private final Dictionary<String> pathTable = new Dictionary<>();
+    private final Dictionary<Map<String, Object>> metadataTable = new Dictionary<>();
+    // Index secondaires, protégés par leur propre moniteur
+    private final Indexes indexes = new Indexes();
+
+    // ========================================
+    // ÉCRITURE
+    // ========================================
+
+    /**
+     * Ajoute un slot qui a déjà son identifiant (chargement, conversion)
+     */
+    void append(GeneratedSlot slot) {
+        // Valeurs des colonnes calculées avant de réserver la ligne : une exception (date hors
+        // limites d'un ancien enregistrement) ne laisse jamais une ligne réservée non publiée
+        Encoded encoded = encode(slot);
+        long stamp = lock.readLock();
+        try {
+            int row = reserved.getAndIncrement();
+            long id = slot.getId() != null ? slot.getId() : 0;
+            write(row, id, encoded);
+            publish(row, id, slot, null);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Ajoute un nouveau slot et lui attribue son identifiant, sans exclusion mutuelle entre
+     * ajouts concurrents. {@code inOrder} est appelé juste avant la publication, dans l'ordre
+     * des identifiants (écriture au journal) ; retourne l'identifiant attribué.
+     */
+    long appendNew(GeneratedSlot slot, Consumer<GeneratedSlot> inOrder) {
+        Encoded encoded = encode(slot);
+        long stamp = lock.readLock();
+        try {
+            int row = reserved.getAndIncrement();
+            long id = idBase + row;
+            slot.setId(id);
+            write(row, id, encoded);
+            publish(row, id, slot, inOrder);
+            return id;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private Encoded encode(GeneratedSlot slot) {
+        Encoded encoded = new Encoded();
+        encoded.generatedAt = toMillis(slot.getGeneratedAt());
+        encoded.leaf = leafTable.code(new Leaf(slot.getSelectedNodeId(), slot.getSelectedNodeName()));
+        encoded.path = pathTable.code(slot.getDecisionPath());
+        encoded.metadata = metadataTable.code(frozen(slot.getMetadata()));
+        encoded.selected = slot.isSelected();
+        return encoded;
+    }
+
+    /**
+     * Recopie dans la ligne réservée des valeurs déjà calculées (aucune conversion susceptible d'échouer)
+     */
+    private void write(int row, long id, Encoded encoded) {
+        Chunk chunk = allocateChunk(row);
+        int offset = row & CHUNK_MASK;
+        chunk.ids[offset] = id;
+        chunk.generatedAt[offset] = encoded.generatedAt;
+        chunk.leaves[offset] = encoded.leaf;
+        chunk.paths[offset] = encoded.path;
+        chunk.metadata[offset] = encoded.metadata;
+        chunk.selected[offset] = encoded.selected;
+        maxId.accumulateAndGet(id, Math::max);
+    }
+
+    /**
+     * Attend la publication des lignes précédentes puis rend la ligne visible
+     */
+    private void publish(int row, long id, GeneratedSlot slot, Consumer<GeneratedSlot> inOrder) {
+        int spins = 0;
+        while (published != row) {
+            if (++spins < SPINS_BEFORE_PARK) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(1_000);
+            }
+        }
+        try {
+            if (row > 0 && id <= chunk(row - 1).ids[(row - 1) & CHUNK_MASK]) {
+                ordered = false;
+            }
+            if (inOrder != null) {
+                inOrder.accept(slot);
+            }
+        } finally {
+            published = row + 1;
+        }
+    }
+
+    /**
+     * Bloc de la ligne, créé au besoin (répertoire des blocs remplacé par compare-and-set)
+     */
+    private Chunk allocateChunk(int row) {
+        int index = row >>> CHUNK_BITS;
+        while (true) {
+            Chunk[] directory = chunks.get();
+            if (index < directory.length && directory[index] != null) {
+                return directory[index];
+            }
+            Chunk[] grown = Arrays.copyOf(directory, Math.max(directory.length, (index + 1) * 2));
+            if (grown[index] == null) {
+                grown[index] = new Chunk();
+            }
+            chunks.compareAndSet(directory, grown);
+        }
+    }
+
+    /**
+     * Bloc d'une ligne existante
+     */
+    private Chunk chunk(int row) {
+        return chunks.get()[row >>> CHUNK_BITS];
+    }
+
+    /**
+     * Fixe le prochain identifiant attribué par {@link #appendNew}
+     */
+    void setNextId(long nextId) {
+        long stamp = lock.writeLock();
+        try {
+            idBase = nextId - reserved.get();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Marque la ligne vivante de cet identifiant comme supprimée ; faux si elle n'existe pas
+     */
+    boolean markRemoved(long id) {
+        long stamp = lock.writeLock();
+        try {
+            if (!markRemovedLocked(id)) {
+                return false;
+            }
+            structureVersion++;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private boolean markRemovedLocked(long id) {
+        int row = findUnlocked(id);
+        if (row < 0) {
+            return false;
+        }
+        removed.set(row);
+        chunk(row).removed++;
+        removedCount++;
+        return true;
+    }
+
+    /**
+     * Vrai si assez de lignes sont marquées supprimées pour justifier une purge
+     */
+    boolean needsPurge() {
+        return removedCount > 0 && (long) removedCount * PURGE_RATIO >= published;
+    }
+
+    /**
+     * Supprime les lignes marquées en compactant les colonnes (une passe) ; retourne leur nombre.
+     * Les positions des slots vivants sont inchangées.
+     */
+    int purge() {
+        long stamp = lock.writeLock();
+        try {
+            return purgeLocked();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private int purgeLocked() {
+        if (removedCount == 0) {
+            return 0;
+        }
+        int size = published;
+        long nextId = idBase + size;
+        int target = 0;
+        for (int row = 0; row < size; row++) {
+            if (removed.get(row)) {
+                continue;
+            }
+            if (target != row) {
+                Chunk from = chunk(row);
+                Chunk to = chunk(target);
+                int source = row & CHUNK_MASK;
+                int destination = target & CHUNK_MASK;
+                to.ids[destination] = from.ids[source];
+                to.generatedAt[destination] = from.generatedAt[source];
+                to.leaves[destination] = from.leaves[source];
+                to.paths[destination] = from.paths[source];
+                to.metadata[destination] = from.metadata[source];
+                to.selected[destination] = from.selected[source];
+            }
+            target++;
+        }
+        for (Chunk chunk : chunks.get()) {
+            if (chunk != null) {
+                chunk.removed = 0;
+            }
+        }
+        removed.clear();
+        removedCount = 0;
+        reserved.set(target);
+        published = target;
+        idBase = nextId - target;
+        indexes.reset();
+        return size - target;
+    }
+
+    /**
+     * Supprime les slots de ces identifiants en marquant leurs lignes (la purge est différée,
+     * voir {@link #needsPurge()}) ; {@code removedIds} reçoit, sous verrou exclusif, les
+     * identifiants effectivement supprimés (écriture au journal). Retourne ces identifiants.
+     */
+    List<Long> removeAll(Collection<Long> idsToRemove, Consumer<List<Long>> removedIds) {
+        long stamp = lock.writeLock();
+        try {
+            List<Long> done = new ArrayList<>();
+            for (Long id : idsToRemove) {
+                if (id != null && markRemovedLocked(id)) {
+                    done.add(id);
+                }
+            }
+            if (!done.isEmpty()) {
+                structureVersion++;
+                if (removedIds != null) {
+                    removedIds.accept(done);
+                }
+            }
+            return done;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    List<Long> removeAll(Collection<Long> idsToRemove) {
+        return removeAll(idsToRemove, null);
+    }
+
+    /**
+     * Vide le stockage ; {@code underLock} est exécuté sous verrou exclusif (vidage du journal)
+     */
+    void clear(Runnable underLock) {
+        long stamp = lock.writeLock();
+        try {
+            reserved.set(0);
+            published = 0;
+            idBase = 1;
+            maxId.set(0);
+            ordered = true;
+            removed.clear();
+            removedCount = 0;
+            chunks.set(new Chunk[16]);
+            leafTable.clear();
+            pathTable.clear();
+            metadataTable.clear();
+            structureVersion++;
+            indexes.reset();
+            if (underLock != null) {
+                underLock.run();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void clear() {
+        clear(null);
+    }
+
+    // ========================================
+    // LECTURE
+    // ========================================
+
+    /**
+     * Lecture optimiste : refaite sous verrou partagé si une purge ou un vidage l'a invalidée
+     */
+    private <T> T read(Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // Une exception pendant une lecture invalidée vient de la modification concurrente
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Nombre de slots vivants publiés
+     */
+    int size() {
+        return published - removedCount;
+    }
+
+    /**
+     * Plus grand identifiant ajouté depuis le chargement, lignes supprimées comprises
+     */
+    long maxId() {
+        return maxId.get();
+    }
+
+    private long idAt(int row) {
+        return chunk(row).ids[row & CHUNK_MASK];
+    }
+
+    /**
+     * Position du slot vivant de cet identifiant, ou -1
+     */
+    int find(long id) {
+        return read(() -> {
+            int row = findUnlocked(id);
+            return row < 0 ? -1 : indexOfRow(row);
+        });
+    }
+
+    private int findUnlocked(long id) {
+        int size = published;
+        if (ordered) {
+            int row = lowerBound(this::idAt, size, id);
+            return row < size && idAt(row) == id && !removed.get(row) ? row : -1;
+        }
+        for (int row = size - 1; row >= 0; row--) {
+            if (idAt(row) == id && !removed.get(row)) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Position du premier slot vivant dont l'identifiant est supérieur ou égal à {@code id}
+     * (size() si aucun)
+     */
+    int firstIndexFrom(long id) {
+        return read(() -> {
+            int size = published;
+            int row = size;
+            if (ordered) {
+                row = lowerBound(this::idAt, size, id);
+            } else {
+                for (int candidate = 0; candidate < size; candidate++) {
+                    if (idAt(candidate) >= id) {
+                        row = candidate;
+                        break;
+                    }
+                }
+            }
+            return indexOfRow(row);
+        });
+    }
+
+    /**
+     * Ligne du slot vivant à cette position : les blocs sont sautés d'après leur nombre de
+     * lignes marquées, seules les marques du bloc atteint sont parcourues
+     */
+    private int rowOfIndex(int index) {
+        if (removedCount == 0) {
+            return index;
+        }
+        Chunk[] directory = chunks.get();
+        int size = published;
+        int remaining = index;
+        for (int c = 0; c < directory.length && (c << CHUNK_BITS) < size; c++) {
+            int start = c << CHUNK_BITS;
+            int live = Math.min(CHUNK_SIZE, size - start) - directory[c].removed;
+            if (remaining >= live) {
+                remaining -= live;
+                continue;
+            }
+            int row = start + remaining;
+            for (int marked = removed.nextSetBit(start); marked >= 0 && marked <= row; marked = removed.nextSetBit(marked + 1)) {
+                row++;
+            }
+            return row;
+        }
+        return size;
+    }
+
+    /**
+     * Nombre de slots vivants avant cette ligne (sa position si elle est vivante)
+     */
+    private int indexOfRow(int row) {
+        if (removedCount == 0) {
+            return row;
+        }
+        Chunk[] directory = chunks.get();
+        int start = row & ~CHUNK_MASK;
+        int before = 0;
+        for (int c = 0; (c << CHUNK_BITS) < start; c++) {
+            before += directory[c].removed;
+        }
+        for (int marked = removed.nextSetBit(start); marked >= 0 && marked < row; marked = removed.nextSetBit(marked + 1)) {
+            before++;
+        }
+        return row - before;
+    }
+
+    int structureVersion() {
+        return structureVersion;
+    }
+
+    /**
+     * Construit le slot vivant à cette position (0 à size() - 1)
+     */
+    GeneratedSlot view(int index) {
+        return read(() -> {
+            if (index < 0 || index >= published - removedCount) {
+                throw new IndexOutOfBoundsException("Position " + index + " hors de l'historique");
+            }
+            return viewUnlocked(rowOfIndex(index));
+        });
+    }
+
+    private GeneratedSlot viewUnlocked(int row) {
+        if (row < 0 || row >= published) {
+            throw new IndexOutOfBoundsException("Ligne " + row + " hors de l'historique");
+        }
+        Chunk chunk = chunk(row);
+        int offset = row & CHUNK_MASK;
+        GeneratedSlot slot = new GeneratedSlot();
+        Leaf leaf = leafTable.get(chunk.leaves[offset]);
+        slot.setId(chunk.ids[offset]);
+        slot.setGeneratedAt(toDateTime(chunk.generatedAt[offset]));
+        slot.setDecisionPath(pathTable.get(chunk.paths[offset]));
+        slot.setSelectedNodeId(leaf.id);
+        slot.setSelectedNodeName(leaf.name);
+        slot.setMetadata(new HashMap<>(metadataTable.get(chunk.metadata[offset])));
+        slot.setSelected(chunk.selected[offset]);
+        return slot;
+    }
+
+    /**
+     * Slots vivants des positions {@code from} (incluse) à {@code to} (exclue)
+     */
+    List<GeneratedSlot> views(int from, int to) {
+        return read(() -> {
+            int count = Math.min(to, published - removedCount) - from;
+            List<GeneratedSlot> views = new ArrayList<>(Math.max(0, count));
+            int row = count > 0 ? rowOfIndex(from) : published;
+            for (; views.size() < count && row < published; row++) {
+                if (removedCount == 0 || !removed.get(row)) {
+                    views.add(viewUnlocked(row));
+                }
+            }
+            return views;
+        });
+    }
+
+    // ========================================
+    // REQUÊTES INDEXÉES
+    // ========================================
+
+    /**
+     * Slots dont la feuille porte ce nom, dans l'ordre d'ajout
+     */
+    List<GeneratedSlot> viewsOfLeafName(String leafName) {
+        return query(() -> indexes.rowsOfLeafName(leafName));
+    }
+
+    /**
+     * Slots de cette catégorie principale, dans l'ordre d'ajout
+     */
+    List<GeneratedSlot> viewsOfCategory(String category) {
+        return query(() -> indexes.rowsOfCategory(category));
+    }
+
+    /**
+     * Slots générés entre les deux dates incluses (millisecondes), dans l'ordre d'ajout
+     */
+    List<GeneratedSlot> viewsBetween(long fromMillis, long toMillis) {
+        return query(() -> indexes.rowsBetween(fromMillis, toMillis));
+    }
+
+    /**
+     * Requête indexée sous verrou partagé : les ajouts continuent, les purges attendent
+     */
+    private List<GeneratedSlot> query(Supplier<IntList> rowsSupplier) {
+        long stamp = lock.readLock();
+        try {
+            IntList rows;
+            synchronized (indexes) {
+                indexes.catchUp(published);
+                rows = rowsSupplier.get();
+            }
+            List<GeneratedSlot> views = new ArrayList<>(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                int row = rows.get(i);
+                if (!removed.get(row)) {
+                    views.add(viewUnlocked(row));
+                }
+            }
+            return views;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Effectifs par valeur distincte, comptés en une passe sur les colonnes de codes pour une
+     * taille figée au début du parcours : les ajouts publiés pendant le comptage sont ignorés
+     */
+    Tally tally() {
+        long stamp = lock.readLock();
+        try {
+            int size = published;
+            // Lues après la taille : les codes des lignes publiées sont tous dans les tables
+            int pathCount = pathTable.size();
+            int[] pathCounts = new int[pathCount];
+            // Feuille du premier slot vu pour chaque chemin ; les autres couples (rares) vont dans une table
+            int[] leafOfPath = new int[pathCount];
+            Arrays.fill(leafOfPath, -1);
+            Map<Long, Integer> otherPairs = new HashMap<>();
+            int[] metadataCounts = new int[metadataTable.size()];
+            Tally tally = new Tally();
+            long day = NO_TIME;
+            int dayRun = 0;
+            for (int row = 0; row < size; row++) {
+                if (removedCount > 0 && removed.get(row)) {
+                    continue;
+                }
+                Chunk chunk = chunk(row);
+                int offset = row & CHUNK_MASK;
+                int pathCode = chunk.paths[offset];
+                int leafCode = chunk.leaves[offset];
+                if (leafOfPath[pathCode] < 0) {
+                    leafOfPath[pathCode] = leafCode;
+                }
+                if (leafOfPath[pathCode] == leafCode) {
+                    pathCounts[pathCode]++;
+                } else {
+                    otherPairs.merge(((long) pathCode << 32) | leafCode, 1, Integer::sum);
+                }
+                metadataCounts[chunk.metadata[offset]]++;
+                tally.size++;
+
+                long time = chunk.generatedAt[offset];
+                if (time == NO_TIME) {
+                    continue;
+                }
+                if (tally.firstMillis == NO_TIME || time < tally.firstMillis) {
+                    tally.firstMillis = time;
+                }
+                if (tally.lastMillis == NO_TIME || time > tally.lastMillis) {
+                    tally.lastMillis = time;
+                }
+                tally.hours[(int) Math.floorMod(Math.floorDiv(time, 3_600_000L), 24L)]++;
+                // Ajouts chronologiques : les jours arrivent par séries, comptées sans table
+                long slotDay = Math.floorDiv(time, 86_400_000L);
+                if (slotDay != day) {
+                    if (dayRun > 0) {
+                        tally.days.merge(day, dayRun, Integer::sum);
+                    }
+                    day = slotDay;
+                    dayRun = 0;
+                }
+                dayRun++;
+            }
+            if (dayRun > 0) {
+                tally.days.merge(day, dayRun, Integer::sum);
+            }
+
+            for (int pathCode = 0; pathCode < pathCount; pathCode++) {
+                if (pathCounts[pathCode] > 0) {
+                    tally.addGroup(pathTable.get(pathCode), leafTable.get(leafOfPath[pathCode]), pathCounts[pathCode]);
+                }
+            }
+            for (Map.Entry<Long, Integer> pair : otherPairs.entrySet()) {
+                long key = pair.getKey();
+                tally.addGroup(pathTable.get((int) (key >>> 32)), leafTable.get((int) key), pair.getValue());
+            }
+            for (int code = 0; code < metadataCounts.length; code++) {
+                if (metadataCounts[code] > 0) {
+                    tally.metadata.put(metadataTable.get(code), metadataCounts[code]);
+                }
+            }
+            return tally;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    int distinctPaths() {
+        return pathTable.size();
+    }
+
+    int distinctLeaves() {
+        return leafTable.size();
+    }
+
+    /**
+     * Premier indice dont la valeur est supérieure ou égale à {@code value}
+     */
+    private static int lowerBound(IntToLongFunction valueAt, int count, long value) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (valueAt.applyAsLong(mid) < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // ========================================
+    // CONVERSIONS
+    // ========================================
+
+    static long toMillis(LocalDateTime time) {
+        return time == null ? NO_TIME : time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    static LocalDateTime toDateTime(long millis) {
+        if (millis == NO_TIME) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L),
+                (int) Math.floorMod(millis, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    private static Map<String, Object> frozen(Map<String, Object> values) {
+        if (values == null || values.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(new HashMap<>(values));
+    }
+
+    /**
+     * Valeurs des colonnes d'un slot, calculées avant la réservation de sa ligne
+     */
+    private static final class Encoded {
+        long generatedAt;
+        int leaf;
+        int path;
+        int metadata;
+        boolean selected;
+    }
+
+    /**
+     * Bloc de lignes : ses colonnes ne sont jamais réallouées
+     */
+    private static final class Chunk {
+        final long[] ids = new long[CHUNK_SIZE];
+        final long[] generatedAt = new long[CHUNK_SIZE];
+        final int[] leaves = new int[CHUNK_SIZE];
+        final int[] paths = new int[CHUNK_SIZE];
+        final int[] metadata = new int[CHUNK_SIZE];
+        final boolean[] selected = new boolean[CHUNK_SIZE];
+        // Lignes du bloc marquées supprimées (modifié sous verrou exclusif)
+        int removed;
+    }
+
+    /**
+     * Index secondaires, rattrapés jusqu'à la taille publiée à chaque requête
+     */
+    private final class Indexes {
+        private final Dictionary<String> categoryTable = new Dictionary<>();
+        // Catégorie principale par couple (chemin, feuille) : le chemin n'est découpé qu'une fois
+        private final Map<Long, Integer> categoryByPathAndLeaf = new HashMap<>();
+        // Lignes par code de feuille et par code de catégorie, croissantes
+        private final List<IntList> leafPostings = new ArrayList<>();
+        private final List<IntList> categoryPostings = new ArrayList<>();
+        private int indexedRows;
+        // Vrai tant que la colonne des dates est croissante (dates absentes exclues)
+        private boolean chronological = true;
+        // Lignes triées par date si la colonne ne l'est pas (null = à reconstruire)
+        private IntList timeOrder;
+
+        void catchUp(int size) {
+            for (int row = indexedRows; row < size; row++) {
+                index(row);
+            }
+            indexedRows = Math.max(indexedRows, size);
+        }
+
+        private void index(int row) {
+            Chunk chunk = chunk(row);
+            int offset = row & CHUNK_MASK;
+            int leafCode = chunk.leaves[offset];
+            int pathCode = chunk.paths[offset];
+            posting(leafPostings, leafCode).add(row);
+            long pair = ((long) pathCode << 32) | leafCode;
+            Integer category = categoryByPathAndLeaf.get(pair);
+            if (category == null) {
+                category = categoryTable.code(GeneratedSlot.mainCategoryOf(pathTable.get(pathCode), leafTable.get(leafCode).name));
+                categoryByPathAndLeaf.put(pair, category);
+            }
+            posting(categoryPostings, category).add(row);
+
+            long time = chunk.generatedAt[offset];
+            if (chronological && (time == NO_TIME || (row > 0 && time < timeAt(row - 1)))) {
+                chronological = false;
+            }
+            if (timeOrder != null && time != NO_TIME) {
+                if (timeOrder.size() == 0 || time >= timeAt(timeOrder.get(timeOrder.size() - 1))) {
+                    timeOrder.add(row);
+                } else {
+                    timeOrder = null;
+                }
+            }
+        }
+
+        private long timeAt(int row) {
+            return chunk(row).generatedAt[row & CHUNK_MASK];
+        }
+
+        synchronized void reset() {
+            leafPostings.clear();
+            categoryPostings.clear();
+            categoryTable.clear();
+            categoryByPathAndLeaf.clear();
+            indexedRows = 0;
+            chronological = true;
+            timeOrder = null;
+        }
+
+        IntList rowsOfLeafName(String leafName) {
+            IntList rows = new IntList();
+            int matching = 0;
+            for (int code = 0; code < leafPostings.size(); code++) {
+                if (Objects.equals(leafName, leafTable.get(code).name)) {
+                    rows.addAll(leafPostings.get(code));
+                    matching++;
+                }
+            }
+            if (matching > 1) {
+                rows.sort();
+            }
+            return rows;
+        }
+
+        IntList rowsOfCategory(String category) {
+            int code = categoryTable.find(category);
+            IntList rows = new IntList();
+            if (code >= 0 && code < categoryPostings.size()) {
+                rows.addAll(categoryPostings.get(code));
+            }
+            return rows;
+        }
+
+        IntList rowsBetween(long fromMillis, long toMillis) {
+            IntList rows = new IntList();
+            if (chronological) {
+                int from = lowerBound(this::timeAt, indexedRows, fromMillis);
+                int to = lowerBound(this::timeAt, indexedRows, toMillis + 1);
+                for (int row = from; row < to; row++) {
+                    rows.add(row);
+                }
+                return rows;
+            }
+            if (timeOrder == null) {
+                timeOrder = buildTimeOrder();
+            }
+            IntList order = timeOrder;
+            int from = lowerBound(i -> timeAt(order.get(i)), order.size(), fromMillis);
+            int to = lowerBound(i -> timeAt(order.get(i)), order.size(), toMillis + 1);
+            for (int i = from; i < to; i++) {
+                rows.add(order.get(i));
+            }
+            rows.sort();
+            return rows;
+        }
+
+        private IntList buildTimeOrder() {
+            List<Integer> rows = new ArrayList<>();
+            for (int row = 0; row < indexedRows; row++) {
+                if (timeAt(row) != NO_TIME) {
+                    rows.add(row);
+                }
+            }
+            rows.sort((a, b) -> timeAt(a) != timeAt(b) ? Long.compare(timeAt(a), timeAt(b)) : Integer.compare(a, b));
+            IntList order = new IntList();
+            rows.forEach(order::add);
+            return order;
+        }
+    }
+
+    private static IntList posting(List<IntList> postings, int code) {
+        while (postings.size() <= code) {
+            postings.add(new IntList());
+        }
+        return postings.get(code);
+    }
+
+    /**
+     * Résultat de {@link #tally()} : effectifs par couple (chemin, feuille), par jeu de
+     * métadonnées, par jour (jour epoch) et par heure, bornes de dates (millisecondes)
+     */
+    static final class Tally {
+        int size;
+        long firstMillis = NO_TIME;
+        long lastMillis = NO_TIME;
+        final List<Group> groups = new ArrayList<>();
+        final Map<Map<String, Object>, Integer> metadata = new HashMap<>();
+        final Map<Long, Integer> days = new HashMap<>();
+        final int[] hours = new int[24];
+
+        private void addGroup(String path, Leaf leaf, int count) {
+            groups.add(new Group(path, leaf.id, leaf.name, count));
+        }
+    }
+
+    /**
+     * Nombre de slots partageant un chemin de décision et une feuille
+     */
+    static final class Group {
+        final String path;
+        final String leafId;
+        final String leafName;
+        final int count;
+
+        Group(String path, String leafId, String leafName, int count) {
+            this.path = path;
+            this.leafId = leafId;
+            this.leafName = leafName;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Feuille sélectionnée (identifiant et nom)
+     */
+    private static final class Leaf {
+        final String id;
+        final String name;
+
+        Leaf(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Leaf)) {
+                return false;
+            }
+            Leaf leaf = (Leaf) other;
+            return Objects.equals(id, leaf.id) && Objects.equals(name, leaf.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, name);
+        }
+    }
+
+    /**
+     * Table de valeurs distinctes : chaque valeur reçoit un code entier à sa première apparition.
+     * Un code connu se lit sans verrou ; seul l'ajout d'une nouvelle valeur est exclusif.
+     */
+    private static final class Dictionary<T> {
+        // Clé de la valeur null (refusée par ConcurrentHashMap)
+        private static final Object NULL_KEY = new Object();
+
+        private final Map<Object, Integer> codes = new ConcurrentHashMap<>();
+        private volatile Object[] values = new Object[16];
+        private volatile int size;
+
+        int code(T value) {
+            Object key = value != null ? value : NULL_KEY;
+            Integer code = codes.get(key);
+            if (code != null) {
+                return code;
+            }
+            synchronized (this) {
+                code = codes.get(key);
+                if (code == null) {
+                    code = size;
+                    if (code == values.length) {
+                        values = Arrays.copyOf(values, code * 2);
+                    }
+                    values[code] = value;
+                    size = code + 1;
+                    codes.put(key, code);
+                }
+                return code;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        T get(int code) {
+            return (T) values[code];
+        }
+
+        int find(T value) {
+            Integer code = codes.get(value != null ? value : NULL_KEY);
+            return code != null ? code : -1;
+        }
+
+        int size() {
+            return size;
+        }
+
+        synchronized void clear() {
+            codes.clear();
+            values = new Object[16];
+            size = 0;
+        }
+    }
+
+    /**
+     * Liste d'entiers extensible (lignes d'un index)
+     */
+    private static final class IntList {
+        private int[] values = new int[8];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(IntList other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void sort() {
+            Arrays.sort(values, 0, size);
+        }
+    }
+}
@@ -1,50 +1,144 @@
 package com.applydance.service;
 
 import com.applydance.model.GeneratedSlot;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Service de gestion de l'historique des slots générés.
  * Adaptée pour le nouveau système générique avec GeneratedSlot.
+ * 
+ * En mémoire, l'historique est stocké par colonnes (voir {@link SlotColumnStore}) : les slots
+ * retournés sont des copies construites à la demande. Plusieurs threads peuvent générer et
+ * ajouter des slots en même temps ; les lecteurs parcourent sans verrou un préfixe complet.
+ * 
+ * Persistance en journal JSON Lines découpé en segments (voir {@link SegmentedHistoryLog}) :
+ * un slot généré coûte l'écriture d'une ligne, une suppression aussi (enregistrement de
+ * suppression). Chaque enregistrement porte une somme CRC32 : un octet corrompu ne fait perdre
+ * que son enregistrement. Les segments majoritairement supprimés sont compactés en arrière-plan.
+ * Le niveau de durabilité ({@link Durability}) choisit quand un ajout est forcé sur disque.
+ * Les anciens fichiers {@code slot_history.jsonl} et {@code slot_history.json} (tableau JSON
+ * complet) sont convertis une seule fois.
  */
 public class SlotHistoryService {
     
     private static final Logger logger = LoggerFactory.getLogger(SlotHistoryService.class);
     private static final String HISTORY_DIR = "data";
-    private static final String HISTORY_FILE = "slot_history.json";
+    private static final String HISTORY_SEGMENTS_DIR = "slot_history";
+    public static final String HISTORY_FILE = "slot_history.jsonl";
+    public static final String LEGACY_HISTORY_FILE = "slot_history.json";
+    // Suffixe de l'ancien fichier conservé après conversion
+    public static final String MIGRATED_SUFFIX = ".migrated";
+    // Sauvegardes de l'ancien format, relues si l'ancien historique est abîmé
+    public static final List<String> LEGACY_BACKUP_FILES =
+            List.of("slot_history_backup.json", "slot_history_emergency_backup.json");
+    // Taille maximale d'un segment avant ouverture du suivant
+    public static final long DEFAULT_SEGMENT_MAX_BYTES = 1024 * 1024;
+    // Slots convertis par écriture lors de la conversion de l'ancien format
+    private static final int MIGRATION_BATCH = 10_000;
+    public static final Durability DEFAULT_DURABILITY = Durability.GROUP;
+    // Intervalle d'écriture des ajouts en mode ASYNC
+    public static final long DEFAULT_FLUSH_MILLIS = 100;
     
-    private final List<GeneratedSlot> slots;
+    /**
+     * Moment où un ajout (slot ou suppression) devient durable
+     */
+    public enum Durability {
+        /** Ajouts accumulés en mémoire, écrits et forcés sur disque toutes les N millisecondes */
+        ASYNC,
+        /** Chaque appel attend le forçage sur disque, partagé avec les ajouts concurrents */
+        GROUP,
+        /** Chaque ajout est écrit et forcé sur disque individuellement */
+        SYNC
+    }
+    
+    private final SlotColumnStore slots;
     private final ObjectMapper objectMapper;
-    private final Path historyPath;
-    private final AtomicLong nextId;
+    private final ObjectReader lineReader;
+    private final SegmentedHistoryLog log;
+    private final ExecutorService compactor;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final AtomicBoolean purgeScheduled = new AtomicBoolean();
+    private final Durability durability;
+    // Écriture périodique du mode ASYNC (null dans les autres modes)
+    private final ScheduledExecutorService flusher;
+    private final List<GeneratedSlot> liveView = new LiveView();
     
     public SlotHistoryService() {
-        this.slots = new ArrayList<>();
+        this(Paths.get(HISTORY_DIR, HISTORY_SEGMENTS_DIR));
+    }
+    
+    /**
+     * {@code historyDirectory} : répertoire des segments ; les anciens fichiers d'historique
+     * sont cherchés dans le répertoire parent
+     */
+    public SlotHistoryService(Path historyDirectory) {
+        this(historyDirectory, DEFAULT_SEGMENT_MAX_BYTES);
+    }
+    
+    public SlotHistoryService(Path historyDirectory, long segmentMaxBytes) {
+        this(historyDirectory, segmentMaxBytes, DEFAULT_DURABILITY, DEFAULT_FLUSH_MILLIS);
+    }
+    
+    public SlotHistoryService(Path historyDirectory, long segmentMaxBytes, Durability durability) {
+        this(historyDirectory, segmentMaxBytes, durability, DEFAULT_FLUSH_MILLIS);
+    }
+    
+    /**
+     * {@code flushMillis} : intervalle d'écriture des ajouts, utilisé seulement en mode ASYNC
+     */
+    public SlotHistoryService(Path historyDirectory, long segmentMaxBytes, Durability durability, long flushMillis) {
+        this.durability = durability;
+        this.slots = new SlotColumnStore();
         this.objectMapper = new ObjectMapper();
         this.objectMapper.registerModule(new JavaTimeModule());
-        this.historyPath = Paths.get(HISTORY_DIR, HISTORY_FILE);
-        this.nextId = new AtomicLong(1);
-        
-        // Créer le répertoire data s'il n'existe pas
-        try {
-            Files.createDirectories(historyPath.getParent());
-        } catch (IOException e) {
-            logger.error("Erreur création répertoire historique", e);
+        this.lineReader = objectMapper.readerFor(GeneratedSlot.class);
+        this.log = new SegmentedHistoryLog(historyDirectory, segmentMaxBytes,
+                objectMapper.writerFor(GeneratedSlot.class), lineReader);
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "history-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (durability == Durability.ASYNC) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "history-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushLog, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
         }
         
         // Charger l'historique existant
@@ -60,40 +154,121 @@ public class SlotHistoryService {
             return;
         }
         
-        // Assigner un ID unique
-        slot.setId(nextId.getAndIncrement());
-        
-        slots.add(slot);
+        // Assigner un ID unique ; sauvegarde automatique : une ligne ajoutée au journal,
+        // dans l'ordre des identifiants, avant que le slot ne devienne visible
+        long[] position = new long[1];
+        slots.appendNew(slot, added -> position[0] = appendToLog(added));
+        awaitDurable(position[0]);
         logger.info("Slot ajouté à l'historique : {}", slot);
-        
-        // Sauvegarder automatiquement
-        saveHistory();
+    }
+    
+    private long appendToLog(GeneratedSlot slot) {
+        try {
+            long position = log.append(List.of(slot));
+            if (durability == Durability.SYNC) {
+                log.sync(position);
+            }
+            return position;
+        } catch (IOException e) {
+            logger.error("Erreur lors de l'ajout au journal d'historique", e);
+            return 0;
+        }
+    }
+    
+    /**
+     * Attend que le journal soit durable jusqu'à {@code position} (sauf en mode ASYNC actif).
+     * En mode GROUP, le forçage a lieu hors du tour de publication : les ajouts concurrents
+     * publiés entre-temps sont forcés sur disque ensemble.
+     */
+    private void awaitDurable(long position) {
+        if (durability == Durability.ASYNC && !flusher.isShutdown()) {
+            return;
+        }
+        try {
+            log.sync(position);
+        } catch (IOException e) {
+            logger.error("Erreur lors de l'écriture du journal d'historique", e);
+        }
+    }
+    
+    private void flushLog() {
+        try {
+            log.sync();
+        } catch (IOException e) {
+            logger.error("Erreur lors de l'écriture du journal d'historique", e);
+        }
+    }
+    
+    public Durability getDurability() {
+        return durability;
     }
     
     /**
-     * Retourne tous les slots
+     * Retourne tous les slots (copie complète : préférer {@link #asList()} ou {@link #page(int, int)})
      */
     public List<GeneratedSlot> getAllSlots() {
-        return new ArrayList<>(slots);
+        return slots.views(0, slots.size());
+    }
+    
+    // ========================================
+    // PARCOURS SANS COPIE
+    // ========================================
+    
+    /**
+     * Retourne une page de slots dans l'ordre d'ajout
+     */
+    public List<GeneratedSlot> page(int offset, int limit) {
+        int from = Math.max(0, Math.min(offset, slots.size()));
+        int to = (int) Math.min(slots.size(), (long) from + Math.max(0, limit));
+        return slots.views(from, to);
+    }
+    
+    /**
+     * Parcourt, dans l'ordre d'ajout, les slots d'identifiant supérieur ou égal à {@code id}
+     * (les slots ajoutés pendant le parcours sont inclus)
+     */
+    public Iterator<GeneratedSlot> iterateFrom(long id) {
+        return new Cursor(slots.firstIndexFrom(id), true);
+    }
+    
+    /**
+     * Parcourt les slots du plus récent au plus ancien
+     */
+    public Iterator<GeneratedSlot> newestFirst() {
+        return new Cursor(slots.size() - 1, false);
+    }
+    
+    /**
+     * Vue en lecture seule de l'historique, toujours à jour : chaque accès construit le slot demandé
+     */
+    public List<GeneratedSlot> asList() {
+        return liveView;
+    }
+    
+    /**
+     * Effectifs de l'historique comptés en une passe sur les colonnes, pour une taille figée
+     */
+    SlotColumnStore.Tally tally() {
+        return slots.tally();
     }
     
     /**
      * Retourne les N derniers slots
      */
     public List<GeneratedSlot> getLastSlots(int count) {
-        if (count <= 0 || slots.isEmpty()) {
+        if (count <= 0 || slots.size() == 0) {
             return new ArrayList<>();
         }
         
         int fromIndex = Math.max(0, slots.size() - count);
-        return new ArrayList<>(slots.subList(fromIndex, slots.size()));
+        return slots.views(fromIndex, slots.size());
     }
     
     /**
      * Retourne le dernier slot généré
      */
     public GeneratedSlot getLastSlot() {
-        return slots.isEmpty() ? null : slots.get(slots.size() - 1);
+        return slots.size() == 0 ? null : slots.view(slots.size() - 1);
     }
     
     /**
@@ -104,106 +279,347 @@ public class SlotHistoryService {
     }
     
     /**
-     * Filtre les slots par catégorie principale
+     * Filtre les slots par catégorie principale (index secondaire, sans parcours complet)
      */
     public List<GeneratedSlot> getSlotsByMainCategory(String category) {
-        return slots.stream()
-                .filter(slot -> category.equals(slot.getMainCategory()))
-                .collect(Collectors.toList());
+        return slots.viewsOfCategory(category);
     }
     
     /**
-     * Filtre les slots par nœud sélectionné
+     * Filtre les slots par nœud sélectionné (index secondaire, sans parcours complet)
      */
     public List<GeneratedSlot> getSlotsBySelectedNode(String nodeName) {
-        return slots.stream()
-                .filter(slot -> nodeName.equals(slot.getSelectedNodeName()))
-                .collect(Collectors.toList());
+        return slots.viewsOfLeafName(nodeName);
     }
     
     /**
-     * Filtre les slots par période
+     * Filtre les slots par période (index secondaire, sans parcours complet)
      */
     public List<GeneratedSlot> getSlotsByDateRange(LocalDateTime from, LocalDateTime to) {
-        return slots.stream()
-                .filter(slot -> {
-                    LocalDateTime slotDate = slot.getGeneratedAt();
-                    return slotDate != null && 
-                           !slotDate.isBefore(from) && 
-                           !slotDate.isAfter(to);
-                })
-                .collect(Collectors.toList());
+        return slots.viewsBetween(SlotColumnStore.toMillis(from), SlotColumnStore.toMillis(to));
     }
     
     /**
      * Supprime un slot par ID
      */
     public boolean removeSlot(Long id) {
-        boolean removed = slots.removeIf(slot -> id.equals(slot.getId()));
-        if (removed) {
-            logger.info("Slot supprimé : {}", id);
-            saveHistory();
+        return removeSlots(List.of(id)) > 0;
+    }
+    
+    /**
+     * Supprime plusieurs slots : un seul ajout au journal pour tout le lot ;
+     * retourne le nombre de slots supprimés
+     */
+    public int removeSlots(Collection<Long> ids) {
+        // Suppressions écrites au journal avant tout ajout ultérieur
+        long[] position = new long[1];
+        List<Long> removed = slots.removeAll(new LinkedHashSet<>(ids), done -> {
+            try {
+                position[0] = log.delete(done);
+            } catch (IOException e) {
+                logger.error("Erreur lors de l'enregistrement des suppressions", e);
+            }
+        });
+        if (removed.isEmpty()) {
+            return 0;
         }
-        return removed;
+        awaitDurable(position[0]);
+        logger.info("Slots supprimés : {}", removed.size());
+        schedulePurge();
+        scheduleCompaction();
+        return removed.size();
     }
     
     /**
      * Vide complètement l'historique
      */
     public void clearHistory() {
-        slots.clear();
-        nextId.set(1);
+        slots.clear(() -> {
+            try {
+                log.clear();
+            } catch (IOException e) {
+                logger.error("Erreur lors de la suppression de l'historique", e);
+            }
+        });
         logger.info("Historique vidé complètement");
-        saveHistory();
     }
     
     /**
-     * Charge l'historique depuis le fichier
+     * Arrête le compacteur (une compaction en cours se termine) et rend durables les ajouts en attente ;
+     * les ajouts suivants sont forcés sur disque à chaque appel
+     */
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            logger.error("Erreur lors de la fermeture du journal d'historique", e);
+        }
+    }
+    
+    // ========================================
+    // JOURNAL SEGMENTÉ
+    // ========================================
+    
+    /**
+     * Charge l'historique : conversion unique des anciens formats puis relecture des segments
      */
     private void loadHistory() {
-        File historyFile = historyPath.toFile();
+        try {
+            boolean hadSegments = hasSegments();
+            if (!hadSegments) {
+                adoptSingleLog();
+            }
+            log.load(new SegmentedHistoryLog.Replay() {
+                @Override
+                public void slot(GeneratedSlot slot) {
+                    slots.append(slot);
+                }
+                
+                @Override
+                public boolean delete(long id) {
+                    return slots.markRemoved(id);
+                }
+            });
+            slots.purge();
+            if (!hadSegments && slots.size() == 0) {
+                convertLegacyArray();
+            }
+        } catch (IOException e) {
+            // Les slots déjà relus sont conservés
+            logger.error("Erreur lors du chargement de l'historique", e);
+        }
+        
+        // Mettre à jour le compteur d'ID (slots supprimés compris : un identifiant n'est pas réattribué
+        // tant que l'ancien enregistrement subsiste dans le journal)
+        slots.setNextId(slots.maxId() + 1);
         
-        if (!historyFile.exists()) {
-            logger.info("Aucun fichier d'historique trouvé, démarrage avec historique vide");
+        logger.info("Historique chargé : {} slots trouvés ({} segments)", slots.size(), log.segmentCount());
+        scheduleCompaction();
+    }
+    
+    /**
+     * L'ancien journal unique {@code slot_history.jsonl} du répertoire parent devient le premier segment
+     */
+    private void adoptSingleLog() throws IOException {
+        Path parent = log.getDirectory().toAbsolutePath().getParent();
+        Path singleLog = parent != null ? parent.resolve(HISTORY_FILE) : null;
+        if (singleLog != null && Files.exists(singleLog)) {
+            Files.move(singleLog, log.getDirectory().resolve(SegmentedHistoryLog.segmentName(1)));
+            logger.info("Ancien journal d'historique repris comme premier segment");
+        }
+    }
+    
+    /**
+     * Convertit l'ancien historique (tableau JSON) du répertoire parent, une seule fois : le tableau
+     * est lu en flux et ajouté par lots, puis l'ancien fichier est renommé. S'il est abîmé, les slots
+     * lisibles avant le défaut sont gardés et les sauvegardes de l'ancien format fournissent les suivants.
+     */
+    private void convertLegacyArray() throws IOException {
+        Path parent = log.getDirectory().toAbsolutePath().getParent();
+        Path legacyPath = parent != null ? parent.resolve(LEGACY_HISTORY_FILE) : null;
+        if (legacyPath == null || !Files.exists(legacyPath)) {
             return;
         }
-        
-        try {
-            List<GeneratedSlot> loadedSlots = objectMapper.readValue(
-                historyFile, 
-                new TypeReference<List<GeneratedSlot>>() {}
-            );
-            
-            slots.clear();
-            slots.addAll(loadedSlots);
-            
-            // Mettre à jour le compteur d'ID
-            long maxId = slots.stream()
-                    .mapToLong(slot -> slot.getId() != null ? slot.getId() : 0)
-                    .max()
-                    .orElse(0);
-            nextId.set(maxId + 1);
-            
-            logger.info("Historique chargé : {} slots trouvés", slots.size());
-            
-        } catch (Exception e) {
-            logger.error("Erreur lors du chargement de l'historique", e);
-            slots.clear();
-            nextId.set(1);
+        boolean complete = convertLegacyFile(legacyPath);
+        for (String backupName : LEGACY_BACKUP_FILES) {
+            if (complete) {
+                break;
+            }
+            Path backupPath = parent.resolve(backupName);
+            if (Files.exists(backupPath)) {
+                complete = convertLegacyFile(backupPath);
+            }
         }
+        // L'ancien fichier n'est écarté qu'une fois la conversion durable
+        log.sync();
+        Files.move(legacyPath, legacyPath.resolveSibling(LEGACY_HISTORY_FILE + MIGRATED_SUFFIX),
+                StandardCopyOption.REPLACE_EXISTING);
+        logger.info("Ancien historique converti en journal : {} slots", slots.size());
     }
     
     /**
-     * Sauvegarde l'historique dans le fichier
+     * Ajoute les slots d'un ancien fichier plus récents que ceux déjà convertis ;
+     * faux si le fichier est illisible à partir d'un certain point
      */
-    private void saveHistory() {
+    private boolean convertLegacyFile(Path path) throws IOException {
+        long converted = slots.maxId();
+        List<GeneratedSlot> batch = new ArrayList<>();
+        boolean complete = true;
+        try (InputStream input = Files.newInputStream(path);
+             JsonParser parser = objectMapper.createParser(input)) {
+            if (parser.nextToken() == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    GeneratedSlot slot = lineReader.readValue(parser);
+                    if (slot.getId() == null || slot.getId() > converted) {
+                        batch.add(slot);
+                    }
+                    if (batch.size() == MIGRATION_BATCH) {
+                        appendLegacy(batch);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Ancien historique {} illisible après {} slots : {}", path.getFileName(),
+                    slots.size() + batch.size(), e.getMessage());
+            complete = false;
+        }
+        appendLegacy(batch);
+        return complete;
+    }
+    
+    private void appendLegacy(List<GeneratedSlot> batch) throws IOException {
+        log.append(batch);
+        for (GeneratedSlot slot : batch) {
+            slots.append(slot);
+        }
+        batch.clear();
+    }
+    
+    private boolean hasSegments() throws IOException {
+        Files.createDirectories(log.getDirectory());
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(log.getDirectory(),
+                SegmentedHistoryLog.SEGMENT_PREFIX + "*" + SegmentedHistoryLog.SEGMENT_SUFFIX)) {
+            return files.iterator().hasNext();
+        }
+    }
+    
+    /**
+     * Sauvegarde l'historique dans {@code targetDirectory} (rechargeable avec
+     * {@code new SlotHistoryService(targetDirectory)}) : les segments scellés y sont liés
+     * physiquement, seul le segment actif est copié
+     */
+    public boolean backup(Path targetDirectory) {
         try {
-            objectMapper.writerWithDefaultPrettyPrinter()
-                    .writeValue(historyPath.toFile(), slots);
-            logger.debug("Historique sauvegardé : {} slots", slots.size());
-            
+            int count = log.backup(targetDirectory);
+            logger.info("Historique sauvegardé dans {} ({} segments)", targetDirectory, count);
+            return true;
         } catch (IOException e) {
             logger.error("Erreur lors de la sauvegarde de l'historique", e);
+            return false;
+        }
+    }
+    
+    /**
+     * Planifie une compaction en arrière-plan si un segment scellé est majoritairement supprimé
+     */
+    private void scheduleCompaction() {
+        if (!log.needsCompaction() || !compactionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            compactor.execute(() -> {
+                compactionScheduled.set(false);
+                compactNow();
+            });
+        } catch (RejectedExecutionException e) {
+            // Service fermé : la compaction aura lieu au prochain chargement
+            compactionScheduled.set(false);
+        }
+    }
+    
+    /**
+     * Planifie en arrière-plan la purge des lignes supprimées du stockage en mémoire
+     * (décalage de toutes les colonnes) quand leur proportion dépasse le seuil
+     */
+    private void schedulePurge() {
+        if (!slots.needsPurge() || !purgeScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            compactor.execute(() -> {
+                purgeScheduled.set(false);
+                int purged = slots.purge();
+                logger.debug("Historique en mémoire purgé : {} lignes", purged);
+            });
+        } catch (RejectedExecutionException e) {
+            // Service fermé : les lignes marquées restent ignorées par les lectures
+            purgeScheduled.set(false);
+        }
+    }
+    
+    /**
+     * Compacte immédiatement les segments sous le seuil
+     */
+    int compactNow() {
+        try {
+            return log.compact();
+        } catch (IOException e) {
+            logger.error("Erreur lors de la compaction de l'historique", e);
+            return 0;
+        }
+    }
+    
+    int getSegmentCount() {
+        return log.segmentCount();
+    }
+    
+    long getLogBytes() {
+        return log.totalBytes();
+    }
+    
+    long getForceCount() {
+        return log.forceCount();
+    }
+    
+    /**
+     * Curseur sur les positions des slots vivants ; une suppression pendant le parcours l'invalide
+     * (une purge, qui conserve les positions, ne l'invalide pas)
+     */
+    private final class Cursor implements Iterator<GeneratedSlot> {
+        private final boolean forward;
+        private final int expectedVersion = slots.structureVersion();
+        private int index;
+        
+        Cursor(int index, boolean forward) {
+            this.index = index;
+            this.forward = forward;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            checkVersion();
+            return forward ? index < slots.size() : index >= 0;
+        }
+        
+        @Override
+        public GeneratedSlot next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            GeneratedSlot slot = slots.view(index);
+            index += forward ? 1 : -1;
+            return slot;
+        }
+        
+        private void checkVersion() {
+            if (slots.structureVersion() != expectedVersion) {
+                throw new ConcurrentModificationException("Historique modifié pendant le parcours");
+            }
+        }
+    }
+    
+    /**
+     * Vue liste en lecture seule sur le stockage en colonnes
+     */
+    private final class LiveView extends AbstractList<GeneratedSlot> implements RandomAccess {
+        @Override
+        public GeneratedSlot get(int index) {
+            Objects.checkIndex(index, slots.size());
+            return slots.view(index);
+        }
+        
+        @Override
+        public int size() {
+            return slots.size();
         }
     }
-} 
\ No newline at end of file
+}
@@ -4,10 +4,10 @@ import com.applydance.model.GeneratedSlot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Service de calcul des statistiques génériques sur les slots générés.
@@ -27,164 +27,116 @@ public class StatisticsService {
      * Calcule et retourne les statistiques générales
      */
     public StatisticsReport getGeneralStatistics() {
-        List<GeneratedSlot> allSlots = historyService.getAllSlots();
+        // Une passe sur les colonnes de codes, pour une taille figée : tous les effectifs portent
+        // sur les mêmes slots, sans construire de GeneratedSlot
+        SlotColumnStore.Tally tally = historyService.tally();
         
-        if (allSlots.isEmpty()) {
+        if (tally.size == 0) {
             return new StatisticsReport();
         }
         
         StatisticsReport report = new StatisticsReport();
-        report.totalSlots = allSlots.size();
+        report.totalSlots = tally.size;
         
-        // Calculer les statistiques par catégorie principale
-        report.mainCategoryStats = calculateMainCategoryStats(allSlots);
-        
-        // Calculer les statistiques par nœud final sélectionné
-        report.selectedNodeStats = calculateSelectedNodeStats(allSlots);
-        
-        // Calculer les statistiques par chemin de décision
-        report.decisionPathStats = calculateDecisionPathStats(allSlots);
+        // Catégorie principale, nœud final et chemin : une fois par couple (chemin, feuille) distinct
+        for (SlotColumnStore.Group group : tally.groups) {
+            String category = GeneratedSlot.mainCategoryOf(group.path, group.leafName);
+            if (category != null) {
+                report.mainCategoryStats.merge(category, group.count, Integer::sum);
+            }
+            if (group.leafName != null) {
+                report.selectedNodeStats.merge(selectedNodeKey(group.path, group.leafName, group.leafId),
+                        group.count, Integer::sum);
+            }
+            if (group.path != null) {
+                report.decisionPathStats.merge(group.path, group.count, Integer::sum);
+            }
+        }
         
         // Calculer les statistiques temporelles
-        report.temporalStats = calculateTemporalStats(allSlots);
+        report.temporalStats = calculateTemporalStats(tally);
         
         // Calculer les métadonnées statistiques
-        report.metadataStats = calculateMetadataStats(allSlots);
+        report.metadataStats = calculateMetadataStats(tally);
         
-        logger.info("Statistiques générales calculées pour {} slots", allSlots.size());
+        logger.info("Statistiques générales calculées pour {} slots", tally.size);
         return report;
     }
     
     /**
-     * Calcule les statistiques par catégorie principale
-     */
-    private Map<String, Integer> calculateMainCategoryStats(List<GeneratedSlot> slots) {
-        return slots.stream()
-                .filter(slot -> slot.getMainCategory() != null)
-                .collect(Collectors.groupingBy(
-                        GeneratedSlot::getMainCategory,
-                        Collectors.collectingAndThen(Collectors.counting(), Math::toIntExact)
-                ));
-    }
-    
-    /**
-     * Calcule les statistiques par nœud final sélectionné (avec différenciation par ID unique)
-     */
-    private Map<String, Integer> calculateSelectedNodeStats(List<GeneratedSlot> slots) {
-        return slots.stream()
-                .filter(slot -> slot.getSelectedNodeName() != null)
-                .collect(Collectors.groupingBy(
-                        slot -> {
-                            // Créer une clé INTERNE unique basée sur l'ID et le chemin complet
-                            String path = slot.getDecisionPath();
-                            String nodeName = slot.getSelectedNodeName();
-                            String nodeId = slot.getSelectedNodeId();
-                            
-                            // Créer la clé interne unique avec l'ID
-                            String internalKey = nodeId != null ? nodeId : nodeName;
-                            
-                            // Créer le LABEL d'affichage sans l'ID (seulement nom + chemin parent)
-                            String displayLabel;
-                            if (path != null && path.contains(" > ")) {
-                                String[] parts = path.split(" > ");
-                                if (parts.length >= 3) {
-                                    // Créer un label descriptif avec le chemin parent
-                                    StringBuilder pathBuilder = new StringBuilder();
-                                    for (int i = 1; i < parts.length - 1; i++) { // Skip racine et inclure jusqu'à l'avant-dernier
-                                        if (pathBuilder.length() > 0) pathBuilder.append(" > ");
-                                        pathBuilder.append(parts[i].replaceAll("[\\p{So}\\p{Cn}]", "").trim());
-                                    }
-                                    
-                                    String cleanNodeName = nodeName.replaceAll("[\\p{So}\\p{Cn}]", "").trim();
-                                    
-                                    if (pathBuilder.length() > 0) {
-                                        // Format: "NomNœud [Chemin Parent]" - SANS l'ID
-                                        displayLabel = cleanNodeName + " [" + pathBuilder.toString() + "]";
-                                    } else {
-                                        displayLabel = cleanNodeName;
-                                    }
-                                } else {
-                                    displayLabel = nodeName.replaceAll("[\\p{So}\\p{Cn}]", "").trim();
-                                }
-                            } else {
-                                displayLabel = nodeName.replaceAll("[\\p{So}\\p{Cn}]", "").trim();
-                            }
-                            
-                            // Retourner la combinaison clé interne + label d'affichage
-                            return internalKey + "|" + displayLabel;
-                        },
-                        Collectors.collectingAndThen(Collectors.counting(), Math::toIntExact)
-                ));
-    }
-    
-    /**
-     * Calcule les statistiques par chemin de décision
+     * Clé du nœud final sélectionné (avec différenciation par ID unique)
      */
-    private Map<String, Integer> calculateDecisionPathStats(List<GeneratedSlot> slots) {
-        return slots.stream()
-                .filter(slot -> slot.getDecisionPath() != null)
-                .collect(Collectors.groupingBy(
-                        GeneratedSlot::getDecisionPath,
-                        Collectors.collectingAndThen(Collectors.counting(), Math::toIntExact)
-                ));
+    private static String selectedNodeKey(String path, String nodeName, String nodeId) {
+        // Créer la clé interne unique avec l'ID
+        String internalKey = nodeId != null ? nodeId : nodeName;
+        
+        // Créer le LABEL d'affichage sans l'ID (seulement nom + chemin parent)
+        String displayLabel;
+        if (path != null && path.contains(" > ")) {
+            String[] parts = path.split(" > ");
+            if (parts.length >= 3) {
+                // Créer un label descriptif avec le chemin parent
+                StringBuilder pathBuilder = new StringBuilder();
+                for (int i = 1; i < parts.length - 1; i++) { // Skip racine et inclure jusqu'à l'avant-dernier
+                    if (pathBuilder.length() > 0) pathBuilder.append(" > ");
+                    pathBuilder.append(parts[i].replaceAll("[\\p{So}\\p{Cn}]", "").trim());
+                }
+                
+                String cleanNodeName = nodeName.replaceAll("[\\p{So}\\p{Cn}]", "").trim();
+                
+                if (pathBuilder.length() > 0) {
+                    // Format: "NomNœud [Chemin Parent]" - SANS l'ID
+                    displayLabel = cleanNodeName + " [" + pathBuilder.toString() + "]";
+                } else {
+                    displayLabel = cleanNodeName;
+                }
+            } else {
+                displayLabel = nodeName.replaceAll("[\\p{So}\\p{Cn}]", "").trim();
+            }
+        } else {
+            displayLabel = nodeName.replaceAll("[\\p{So}\\p{Cn}]", "").trim();
+        }
+        
+        // Retourner la combinaison clé interne + label d'affichage
+        return internalKey + "|" + displayLabel;
     }
     
     /**
      * Calcule les statistiques temporelles
      */
-    private TemporalStatistics calculateTemporalStats(List<GeneratedSlot> slots) {
+    private TemporalStatistics calculateTemporalStats(SlotColumnStore.Tally tally) {
         TemporalStatistics stats = new TemporalStatistics();
+        stats.firstSlotDate = SlotColumnStore.toDateTime(tally.firstMillis);
+        stats.lastSlotDate = SlotColumnStore.toDateTime(tally.lastMillis);
         
-        if (slots.isEmpty()) {
-            return stats;
-        }
-        
-        // Trouver les dates min et max
-        List<LocalDateTime> dates = slots.stream()
-                .map(GeneratedSlot::getGeneratedAt)
-                .filter(Objects::nonNull)
-                .sorted()
-                .collect(Collectors.toList());
-        
-        if (!dates.isEmpty()) {
-            stats.firstSlotDate = dates.get(0);
-            stats.lastSlotDate = dates.get(dates.size() - 1);
-            
-            // Calculer la répartition par jour
-            stats.dailyDistribution = slots.stream()
-                    .filter(slot -> slot.getGeneratedAt() != null)
-                    .collect(Collectors.groupingBy(
-                            slot -> slot.getGeneratedAt().toLocalDate().toString(),
-                            Collectors.collectingAndThen(Collectors.counting(), Math::toIntExact)
-                    ));
-            
-            // Calculer la répartition par heure
-            stats.hourlyDistribution = slots.stream()
-                    .filter(slot -> slot.getGeneratedAt() != null)
-                    .collect(Collectors.groupingBy(
-                            slot -> String.valueOf(slot.getGeneratedAt().getHour()),
-                            Collectors.collectingAndThen(Collectors.counting(), Math::toIntExact)
-                    ));
+        if (stats.firstSlotDate != null) {
+            // Répartition par jour et par heure
+            for (Map.Entry<Long, Integer> day : tally.days.entrySet()) {
+                stats.dailyDistribution.put(LocalDate.ofEpochDay(day.getKey()).toString(), day.getValue());
+            }
+            for (int hour = 0; hour < tally.hours.length; hour++) {
+                if (tally.hours[hour] > 0) {
+                    stats.hourlyDistribution.put(String.valueOf(hour), tally.hours[hour]);
+                }
+            }
         }
         
         return stats;
     }
     
     /**
-     * Calcule les statistiques des métadonnées
+     * Calcule les statistiques des métadonnées (une fois par jeu de métadonnées distinct)
      */
-    private Map<String, Map<String, Integer>> calculateMetadataStats(List<GeneratedSlot> slots) {
+    private Map<String, Map<String, Integer>> calculateMetadataStats(SlotColumnStore.Tally tally) {
         Map<String, Map<String, Integer>> metadataStats = new HashMap<>();
         
-        for (GeneratedSlot slot : slots) {
-            if (slot.getMetadata() != null) {
-                for (Map.Entry<String, Object> entry : slot.getMetadata().entrySet()) {
-                    String key = entry.getKey();
-                    String value = String.valueOf(entry.getValue());
-                    
-                    metadataStats.computeIfAbsent(key, k -> new HashMap<>())
-                            .merge(value, 1, Integer::sum);
-                }
+        for (Map.Entry<Map<String, Object>, Integer> metadata : tally.metadata.entrySet()) {
+            for (Map.Entry<String, Object> entry : metadata.getKey().entrySet()) {
+                String key = entry.getKey();
+                String value = String.valueOf(entry.getValue());
+                
+                metadataStats.computeIfAbsent(key, k -> new HashMap<>())
+                        .merge(value, metadata.getValue(), Integer::sum);
             }
         }
         
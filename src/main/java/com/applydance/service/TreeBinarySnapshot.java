@@ -0,0 +1,383 @@
+package com.applydance.service;
+
+import com.applydance.model.StringPool;
+import com.applydance.model.TreeNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Instantané binaire compact de l'arbre de configuration, maintenu à côté du JSON
+ * (qui reste le format d'échange et la référence en cas de doute).
+ *
+ * Format : en-tête {@code ADTB}, version, empreinte du JSON source (taille, date de
+ * modification et CRC32 de son contenu), longueur et CRC32 ; puis une table de chaînes (libellés, emojis, couleurs,
+ * clés de métadonnées) et les nœuds en préfixe, entiers encodés en varint et pondérations en ppm.
+ * L'instantané n'est utilisé que si l'empreinte correspond au JSON présent sur disque.
+ */
+public class TreeBinarySnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(TreeBinarySnapshot.class);
+    public static final String FILE_SUFFIX = ".bin";
+    public static final int VERSION = 2;
+    private static final byte[] MAGIC = {'A', 'D', 'T', 'B'};
+    // Magie + version + taille JSON + date JSON + CRC32 JSON + longueur du contenu + CRC32
+    private static final int HEADER_SIZE = 4 + 2 + 8 + 8 + 4 + 4 + 4;
+
+    // Types des valeurs de métadonnées
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_TRUE = 2;
+    private static final int TAG_FALSE = 3;
+    private static final int TAG_INT = 4;
+    private static final int TAG_LONG = 5;
+    private static final int TAG_DOUBLE = 6;
+    private static final int TAG_JSON = 7;
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * {@code objectMapper} encode les valeurs de métadonnées composées (listes, objets)
+     */
+    public TreeBinarySnapshot(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Chemin de l'instantané binaire associé à un fichier de configuration JSON
+     */
+    public static Path pathFor(Path jsonPath) {
+        return jsonPath.resolveSibling(jsonPath.getFileName() + FILE_SUFFIX);
+    }
+
+    // ========================================
+    // ENCODAGE
+    // ========================================
+
+    /**
+     * Encode l'arbre (table de chaînes puis nœuds), sans en-tête
+     */
+    public byte[] encode(TreeNode root) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        ByteArrayOutputStream nodes = new ByteArrayOutputStream(4096);
+        writeNode(root, nodes, strings);
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(nodes.size() + strings.size() * 16);
+        writeVarint(payload, strings.size());
+        for (String value : strings.keySet()) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(payload, bytes.length);
+            payload.write(bytes);
+        }
+        nodes.writeTo(payload);
+        return payload.toByteArray();
+    }
+
+    /**
+     * Ajoute l'en-tête (version, empreinte du JSON source, somme de contrôle) au contenu encodé
+     */
+    public static byte[] frame(byte[] payload, long jsonSize, long jsonModifiedMillis, int jsonChecksum) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        buffer.put(MAGIC);
+        buffer.putShort((short) VERSION);
+        buffer.putLong(jsonSize);
+        buffer.putLong(jsonModifiedMillis);
+        buffer.putInt(jsonChecksum);
+        buffer.putInt(payload.length);
+        buffer.putInt((int) checksum(jsonSize, jsonModifiedMillis, jsonChecksum, payload));
+        buffer.put(payload);
+        return buffer.array();
+    }
+
+    /**
+     * Écrit l'instantané binaire d'un JSON qui vient d'être écrit avec le contenu {@code json}
+     * (taille et date relues sur disque)
+     */
+    public static void writeFor(Path jsonPath, byte[] json, byte[] payload) throws IOException {
+        long size = Files.size(jsonPath);
+        long modified = Files.getLastModifiedTime(jsonPath).toMillis();
+        AtomicFiles.write(pathFor(jsonPath), frame(payload, size, modified, jsonChecksum(json)));
+    }
+
+    /**
+     * CRC32 du contenu JSON source, comparé au chargement en plus de sa taille et de sa date
+     */
+    public static int jsonChecksum(byte[] json) {
+        CRC32 crc = new CRC32();
+        crc.update(json);
+        return (int) crc.getValue();
+    }
+
+    private void writeNode(TreeNode node, ByteArrayOutputStream out, Map<String, Integer> strings) throws IOException {
+        writeString(out, strings, node.getId());
+        writeString(out, strings, node.getLabel());
+        writeString(out, strings, node.getEmoji());
+        writeString(out, strings, node.getDescription());
+        writeVarint(out, zigzag(node.getWeightPpm()));
+
+        Map<String, Object> metadata = node.getMetadata();
+        writeVarint(out, metadata.size());
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            writeString(out, strings, entry.getKey());
+            writeValue(out, strings, entry.getValue());
+        }
+
+        List<TreeNode> children = node.getChildren();
+        writeVarint(out, children.size());
+        for (TreeNode child : children) {
+            writeNode(child, out, strings);
+        }
+    }
+
+    private void writeValue(ByteArrayOutputStream out, Map<String, Integer> strings, Object value) throws IOException {
+        if (value == null) {
+            out.write(TAG_NULL);
+        } else if (value instanceof String) {
+            out.write(TAG_STRING);
+            writeString(out, strings, (String) value);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            out.write(TAG_INT);
+            writeVarint(out, zigzag(((Number) value).longValue()));
+        } else if (value instanceof Long) {
+            out.write(TAG_LONG);
+            writeVarint(out, zigzag((Long) value));
+        } else if (value instanceof Double || value instanceof Float) {
+            out.write(TAG_DOUBLE);
+            long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.write((int) (bits >>> shift));
+            }
+        } else {
+            // Valeur composée (liste, objet) : conservée sous forme JSON dans la table de chaînes
+            out.write(TAG_JSON);
+            writeString(out, strings, objectMapper.writeValueAsString(value));
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, Map<String, Integer> strings, String value) {
+        // 0 = null, sinon indice + 1 dans la table de chaînes
+        if (value == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        Integer index = strings.get(value);
+        if (index == null) {
+            index = strings.size();
+            strings.put(value, index);
+        }
+        writeVarint(out, index + 1L);
+    }
+
+    // ========================================
+    // DÉCODAGE
+    // ========================================
+
+    /**
+     * Charge l'instantané binaire s'il est présent, intact et à jour par rapport au JSON ;
+     * retourne null sinon (le JSON doit alors être lu)
+     */
+    public TreeNode readIfFresh(Path jsonPath) {
+        Path binaryPath = pathFor(jsonPath);
+        try {
+            byte[] content = Files.readAllBytes(binaryPath);
+            byte[] json = Files.readAllBytes(jsonPath);
+            long modified = Files.getLastModifiedTime(jsonPath).toMillis();
+            TreeNode root = decode(content, json.length, modified, jsonChecksum(json));
+            if (root != null) {
+                logger.info("Configuration chargée depuis l'instantané binaire {}", binaryPath.getFileName());
+            }
+            return root;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Instantané binaire illisible, lecture du JSON : {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Décode un instantané complet ; null si l'en-tête, la somme ou l'empreinte ne correspondent pas
+     */
+    public TreeNode decode(byte[] content, long jsonSize, long jsonModifiedMillis, int jsonChecksum) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        if (content.length < HEADER_SIZE) {
+            return null;
+        }
+        for (byte expected : MAGIC) {
+            if (buffer.get() != expected) {
+                return null;
+            }
+        }
+        int version = buffer.getShort();
+        long size = buffer.getLong();
+        long modified = buffer.getLong();
+        int jsonCrc = buffer.getInt();
+        int length = buffer.getInt();
+        int crc = buffer.getInt();
+        if (version != VERSION) {
+            logger.info("Instantané binaire en version {} ignoré (version attendue {})", version, VERSION);
+            return null;
+        }
+        if (size != jsonSize || modified != jsonModifiedMillis || jsonCrc != jsonChecksum) {
+            logger.debug("Instantané binaire périmé par rapport au JSON");
+            return null;
+        }
+        if (length != buffer.remaining()) {
+            logger.warn("Instantané binaire tronqué ({} octets sur {})", buffer.remaining(), length);
+            return null;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(payload);
+        if ((int) checksum(size, modified, jsonCrc, payload) != crc) {
+            logger.warn("Somme de contrôle de l'instantané binaire invalide");
+            return null;
+        }
+        return decode(ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * Décode le contenu (table de chaînes puis nœuds)
+     */
+    public TreeNode decode(ByteBuffer payload) throws IOException {
+        try {
+            int count = (int) readVarint(payload);
+            String[] strings = new String[count];
+            for (int i = 0; i < count; i++) {
+                int length = (int) readVarint(payload);
+                strings[i] = StringPool.canonical(new String(payload.array(),
+                        payload.arrayOffset() + payload.position(), length, StandardCharsets.UTF_8));
+                payload.position(payload.position() + length);
+            }
+            return readNode(payload, strings, null);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Instantané binaire malformé", e);
+        }
+    }
+
+    private TreeNode readNode(ByteBuffer in, String[] strings, TreeNode parent) throws IOException {
+        TreeNode node = new TreeNode();
+        node.setId(readString(in, strings));
+        node.setLabel(readString(in, strings));
+        node.setEmoji(readString(in, strings));
+        node.setDescription(readString(in, strings));
+        node.setWeightPpm((int) unzigzag(readVarint(in)));
+
+        int metadataCount = (int) readVarint(in);
+        Map<String, Object> metadata = new HashMap<>(Math.max(4, metadataCount * 2));
+        for (int i = 0; i < metadataCount; i++) {
+            String key = readString(in, strings);
+            metadata.put(key, readValue(in, strings));
+        }
+        node.setMetadata(metadata);
+        if (parent != null) {
+            parent.addChild(node);
+        }
+
+        int childCount = (int) readVarint(in);
+        for (int i = 0; i < childCount; i++) {
+            readNode(in, strings, node);
+        }
+        return node;
+    }
+
+    private Object readValue(ByteBuffer in, String[] strings) throws IOException {
+        int tag = in.get();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return readString(in, strings);
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_INT:
+                return (int) unzigzag(readVarint(in));
+            case TAG_LONG:
+                return unzigzag(readVarint(in));
+            case TAG_DOUBLE:
+                return Double.longBitsToDouble(in.getLong());
+            case TAG_JSON:
+                return objectMapper.readValue(readString(in, strings), Object.class);
+            default:
+                throw new IOException("Type de métadonnée inconnu : " + tag);
+        }
+    }
+
+    private static String readString(ByteBuffer in, String[] strings) {
+        int index = (int) readVarint(in);
+        return index == 0 ? null : strings[index - 1];
+    }
+
+    // ========================================
+    // ENTIERS VARIABLES
+    // ========================================
+
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Entier variable trop long");
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long checksum(long jsonSize, long jsonModifiedMillis, int jsonChecksum, byte[] payload) {
+        CRC32 crc = new CRC32();
+        ByteBuffer header = ByteBuffer.allocate(20).putLong(jsonSize).putLong(jsonModifiedMillis).putInt(jsonChecksum);
+        crc.update(header.array());
+        crc.update(payload);
+        return crc.getValue();
+    }
+
+    /**
+     * Chaînes de la table d'un contenu encodé, dans l'ordre (diagnostic)
+     */
+    static List<String> stringTable(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        int count = (int) readVarint(buffer);
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[(int) readVarint(buffer)];
+            buffer.get(bytes);
+            strings.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return strings;
+    }
+}
@@ -0,0 +1,156 @@
+package com.applydance.service;
+
+import javafx.application.Platform;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diffusion coalescée et asynchrone des événements de modification de l'arbre.
+ * Chaque abonnement accumule les événements reçus pendant une rafale (jusqu'à
+ * l'exécution effective sur son exécuteur, ou pendant une fenêtre configurable)
+ * et ne reçoit qu'une seule notification portant le delta fusionné.
+ */
+public class TreeChangeDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(TreeChangeDispatcher.class);
+
+    /**
+     * Exécuteur du thread JavaFX : les événements d'une même frame sont regroupés.
+     * Sans toolkit JavaFX (mode sans interface, tests), la notification est exécutée directement.
+     */
+    public static final Executor FX_EXECUTOR = runnable -> {
+        try {
+            Platform.runLater(runnable);
+        } catch (IllegalStateException e) {
+            logger.debug("Toolkit JavaFX non initialisé, notification exécutée directement");
+            runnable.run();
+        }
+    };
+
+    private final List<Subscription> subscriptions;
+    private final ExecutorService backgroundExecutor;
+    private final ScheduledExecutorService scheduler;
+
+    public TreeChangeDispatcher() {
+        this.subscriptions = new CopyOnWriteArrayList<>();
+        this.backgroundExecutor = Executors.newSingleThreadExecutor(daemonThreads("tree-change-listener"));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("tree-change-window"));
+    }
+
+    /**
+     * Abonne un listener exécuté sur l'exécuteur donné.
+     * {@code windowMillis} = 0 coalesce jusqu'à l'exécution de la notification ;
+     * une valeur positive retarde la notification pour absorber une rafale plus longue.
+     */
+    public void subscribe(TreeChangeListener listener, Executor executor, long windowMillis) {
+        subscriptions.add(new Subscription(listener, executor, Math.max(0, windowMillis)));
+    }
+
+    /**
+     * Abonne un listener d'interface (thread JavaFX, regroupement par frame)
+     */
+    public void subscribeOnFxThread(TreeChangeListener listener) {
+        subscribe(listener, FX_EXECUTOR, 0);
+    }
+
+    /**
+     * Abonne un listener hors interface sur le thread de notification en arrière-plan
+     */
+    public void subscribeInBackground(TreeChangeListener listener, long windowMillis) {
+        subscribe(listener, backgroundExecutor, windowMillis);
+    }
+
+    public void unsubscribe(TreeChangeListener listener) {
+        subscriptions.removeIf(subscription -> subscription.listener.equals(listener));
+    }
+
+    /**
+     * Publie un événement : il est fusionné avec les événements en attente de chaque abonnement
+     */
+    public void publish(TreeChangeEvent event) {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    /**
+     * Arrête les threads de notification (fermeture de l'application)
+     */
+    public void shutdown() {
+        scheduler.shutdown();
+        backgroundExecutor.shutdown();
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Abonnement : delta en attente et indicateur de notification planifiée
+     */
+    private final class Subscription {
+        private final TreeChangeListener listener;
+        private final Executor executor;
+        private final long windowMillis;
+        // Rafale en attente, fusionnée au fil des publications
+        private final TreeChangeEvent.Accumulator pending = new TreeChangeEvent.Accumulator();
+        private boolean scheduled;
+
+        Subscription(TreeChangeListener listener, Executor executor, long windowMillis) {
+            this.listener = listener;
+            this.executor = executor;
+            this.windowMillis = windowMillis;
+        }
+
+        void offer(TreeChangeEvent event) {
+            synchronized (this) {
+                pending.add(event);
+                if (scheduled) {
+                    return;
+                }
+                scheduled = true;
+            }
+            try {
+                if (windowMillis > 0) {
+                    scheduler.schedule(() -> executor.execute(this::flush), windowMillis, TimeUnit.MILLISECONDS);
+                } else {
+                    executor.execute(this::flush);
+                }
+            } catch (Exception e) {
+                synchronized (this) {
+                    scheduled = false;
+                }
+                logger.error("Impossible de planifier la notification du listener", e);
+            }
+        }
+
+        void flush() {
+            TreeChangeEvent event;
+            synchronized (this) {
+                event = pending.drain();
+                scheduled = false;
+            }
+            if (event == null) {
+                return;
+            }
+            try {
+                listener.onTreeChanged(event);
+            } catch (Exception e) {
+                logger.error("Erreur lors de la notification du listener", e);
+            }
+        }
+    }
+}
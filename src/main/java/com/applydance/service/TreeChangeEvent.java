@@ -0,0 +1,274 @@
+package com.applydance.service;
+
+import com.applydance.model.TreeNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Événement de modification de l'arbre de configuration.
+ * Transporte uniquement les identifiants touchés (delta) pour permettre aux listeners
+ * de se mettre à jour de façon incrémentale ; un rafraîchissement complet n'est signalé
+ * qu'au chargement, à la réinitialisation ou à l'import.
+ */
+public class TreeChangeEvent {
+
+    /**
+     * Type de modification élémentaire
+     */
+    public enum Type {
+        NODE_ADDED,
+        NODE_REMOVED,
+        NODE_MOVED,
+        NODE_UPDATED,
+        WEIGHTS_CHANGED
+    }
+
+    /**
+     * Modification élémentaire : nœud concerné et parent(s) impactés
+     */
+    public static class Change {
+        public final Type type;
+        public final String nodeId;
+        public final String parentId;
+        public final String oldParentId;
+        // Références directes (utiles pour parcourir un sous-arbre ajouté ou supprimé sans recherche)
+        public final TreeNode node;
+        public final TreeNode parent;
+        public final TreeNode oldParent;
+
+        Change(Type type, TreeNode node, TreeNode parent, TreeNode oldParent) {
+            this.type = type;
+            this.node = node;
+            this.parent = parent;
+            this.oldParent = oldParent;
+            this.nodeId = node != null ? node.getId() : null;
+            this.parentId = parent != null ? parent.getId() : null;
+            this.oldParentId = oldParent != null ? oldParent.getId() : null;
+        }
+
+        String idempotentKey() {
+            if (type == Type.WEIGHTS_CHANGED) {
+                return "W:" + parentId;
+            }
+            if (type == Type.NODE_UPDATED) {
+                return "U:" + nodeId;
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return type + "(" + (type == Type.WEIGHTS_CHANGED ? parentId : nodeId) + ")";
+        }
+    }
+
+    private final TreeNode rootNode;
+    private final List<Change> changes;
+    private final boolean fullRefresh;
+
+    private TreeChangeEvent(TreeNode rootNode, List<Change> changes, boolean fullRefresh) {
+        this.rootNode = rootNode;
+        this.changes = Collections.unmodifiableList(changes);
+        this.fullRefresh = fullRefresh;
+    }
+
+    /**
+     * Événement de remplacement complet de l'arbre (chargement, import, réinitialisation)
+     */
+    public static TreeChangeEvent fullRefresh(TreeNode rootNode) {
+        return new TreeChangeEvent(rootNode, Collections.emptyList(), true);
+    }
+
+    /**
+     * Événement incrémental construit à partir des opérations du journal.
+     * {@code forward} vaut false lorsque les opérations viennent d'être annulées.
+     */
+    public static TreeChangeEvent of(TreeNode rootNode, List<TreeEditJournal.Operation> operations, boolean forward) {
+        List<Change> changes = new ArrayList<>();
+        if (forward) {
+            for (TreeEditJournal.Operation operation : operations) {
+                operation.describe(true, changes);
+            }
+        } else {
+            for (int i = operations.size() - 1; i >= 0; i--) {
+                operations.get(i).describe(false, changes);
+            }
+        }
+        return new TreeChangeEvent(rootNode, changes, false);
+    }
+
+    /**
+     * Événement incrémental de mise à jour de nœuds modifiés hors journal (état d'affichage)
+     */
+    public static TreeChangeEvent updated(TreeNode rootNode, List<TreeNode> nodes) {
+        List<Change> changes = new ArrayList<>(nodes.size());
+        for (TreeNode node : nodes) {
+            changes.add(nodeUpdated(node));
+        }
+        return new TreeChangeEvent(rootNode, changes, false);
+    }
+
+    /**
+     * Fusionne deux événements successifs en un seul (rafale de modifications coalescée).
+     * Un rafraîchissement complet absorbe tous les deltas.
+     */
+    public static TreeChangeEvent merge(TreeChangeEvent first, TreeChangeEvent second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        Accumulator accumulator = new Accumulator();
+        accumulator.add(first);
+        accumulator.add(second);
+        return accumulator.drain();
+    }
+
+    /**
+     * Fusion incrémentale d'une rafale d'événements : chaque ajout coûte la taille de l'événement
+     * reçu (liste et clés idempotentes maintenues en place) ; l'événement fusionné n'est construit
+     * qu'une fois, par {@link #drain()}
+     */
+    static final class Accumulator {
+        private TreeNode rootNode;
+        private boolean fullRefresh;
+        // Premier événement reçu, rendu tel quel s'il est seul
+        private TreeChangeEvent single;
+        private List<Change> changes;
+        private final Set<String> idempotentKeys = new HashSet<>();
+
+        void add(TreeChangeEvent event) {
+            if (event == null) {
+                return;
+            }
+            if (single == null && changes == null && !fullRefresh) {
+                single = event;
+                rootNode = event.rootNode;
+                fullRefresh = event.fullRefresh;
+                return;
+            }
+            if (fullRefresh || event.fullRefresh || event.rootNode != rootNode) {
+                rootNode = event.rootNode;
+                fullRefresh = true;
+                single = null;
+                changes = null;
+                idempotentKeys.clear();
+                return;
+            }
+            if (single != null) {
+                // Deuxième événement : le premier est recopié une seule fois
+                changes = new ArrayList<>(single.changes);
+                for (Change change : single.changes) {
+                    String key = change.idempotentKey();
+                    if (key != null) {
+                        idempotentKeys.add(key);
+                    }
+                }
+                single = null;
+            }
+            // Les mises à jour et redistributions sont idempotentes : inutile de les répéter
+            for (Change change : event.changes) {
+                String key = change.idempotentKey();
+                if (key == null || idempotentKeys.add(key)) {
+                    changes.add(change);
+                }
+            }
+        }
+
+        /**
+         * Événement fusionné (null si rien n'a été reçu) ; l'accumulateur est vidé
+         */
+        TreeChangeEvent drain() {
+            TreeChangeEvent event;
+            if (single != null) {
+                event = single;
+            } else if (fullRefresh) {
+                event = fullRefresh(rootNode);
+            } else if (changes != null) {
+                event = new TreeChangeEvent(rootNode, changes, false);
+            } else {
+                event = null;
+            }
+            rootNode = null;
+            fullRefresh = false;
+            single = null;
+            changes = null;
+            idempotentKeys.clear();
+            return event;
+        }
+    }
+
+    static Change nodeAdded(TreeNode node, TreeNode parent) {
+        return new Change(Type.NODE_ADDED, node, parent, null);
+    }
+
+    static Change nodeRemoved(TreeNode node, TreeNode parent) {
+        return new Change(Type.NODE_REMOVED, node, parent, null);
+    }
+
+    static Change nodeMoved(TreeNode node, TreeNode newParent, TreeNode oldParent) {
+        return new Change(Type.NODE_MOVED, node, newParent, oldParent);
+    }
+
+    static Change nodeUpdated(TreeNode node) {
+        return new Change(Type.NODE_UPDATED, node, node.getParent(), null);
+    }
+
+    static Change weightsChanged(TreeNode parent) {
+        return new Change(Type.WEIGHTS_CHANGED, null, parent, null);
+    }
+
+    public TreeNode getRootNode() {
+        return rootNode;
+    }
+
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    public boolean isFullRefresh() {
+        return fullRefresh;
+    }
+
+    /**
+     * Retourne true si l'événement modifie la structure (ajout, suppression ou déplacement)
+     */
+    public boolean isStructural() {
+        if (fullRefresh) {
+            return true;
+        }
+        for (Change change : changes) {
+            if (change.type == Type.NODE_ADDED || change.type == Type.NODE_REMOVED || change.type == Type.NODE_MOVED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Identifiants des parents dont la fratrie a changé (structure ou pondérations)
+     */
+    public Set<String> getAffectedParentIds() {
+        Set<String> parentIds = new LinkedHashSet<>();
+        for (Change change : changes) {
+            if (change.parentId != null) {
+                parentIds.add(change.parentId);
+            }
+            if (change.oldParentId != null) {
+                parentIds.add(change.oldParentId);
+            }
+        }
+        return parentIds;
+    }
+
+    @Override
+    public String toString() {
+        return fullRefresh ? "TreeChangeEvent{FULL_REFRESH}" : "TreeChangeEvent" + changes;
+    }
+}
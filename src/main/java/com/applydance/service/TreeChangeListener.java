@@ -0,0 +1,10 @@
+package com.applydance.service;
+
+/**
+ * Listener des modifications de l'arbre de configuration (événements delta)
+ */
+@FunctionalInterface
+public interface TreeChangeListener {
+
+    void onTreeChanged(TreeChangeEvent event);
+}
@@ -1,7 +1,7 @@
 package com.applydance.service;
 
 import com.applydance.model.TreeNode;
-import com.applydance.model.TreeNodeDTO;
+import com.applydance.model.Weights;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -16,32 +16,76 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.StampedLock;
 import java.util.function.Consumer;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 /**
  * Service de gestion de la configuration d'arbre générique avec sauvegarde automatique.
  * Remplace l'ancien système spécifique VIE/ville/job.
+ * 
+ * Concurrence : les modifications (transactions, annulation, chargement) prennent le verrou
+ * d'écriture d'un {@link StampedLock} ; les lectures hors du thread d'édition (génération,
+ * sauvegarde, export) passent par {@link #readTree(Function)} en lecture optimiste, sans
+ * bloquer ni être bloquées tant qu'aucune modification n'est en cours.
  */
 public class TreeConfigurationService {
     
     private static final Logger logger = LoggerFactory.getLogger(TreeConfigurationService.class);
     private static final String CONFIG_DIR = "data";
     private static final String CONFIG_FILE = "tree_configuration.json";
+    // Nombre de modifications journalisées avant compaction en instantané complet
+    private static final int JOURNAL_COMPACTION_THRESHOLD = 200;
     
     private final ObjectMapper objectMapper;
+    private final TreeJsonCodec codec;
+    private final TreeBinarySnapshot binarySnapshot;
     private final Path configPath;
-    private TreeNode rootNode;
-    private final List<Consumer<TreeNode>> changeListeners;
+    private volatile TreeNode rootNode;
+    private final TreeChangeDispatcher dispatcher;
+    private final TreeEditJournal journal;
+    private final ConfigurationWriter writer;
+    private final TreeEditLog editLog;
+    private long editSequence;
+    private int recordsSinceSnapshot;
+    private Transaction transaction;
+    // Verrou de l'arbre : non réentrant, le thread propriétaire de l'écriture est mémorisé
+    private final StampedLock treeLock = new StampedLock();
+    private volatile Thread writeOwner;
+    // Incrémentée à chaque libération du verrou d'écriture (invalide le rapport de validation)
+    private volatile long treeVersion;
+    private final TreeValidator validator = new TreeValidator();
+    private volatile CachedReport validationCache;
     
     public TreeConfigurationService() {
+        this(Paths.get(CONFIG_DIR, CONFIG_FILE));
+    }
+    
+    /**
+     * Constructeur avec un fichier de configuration spécifique (tests, profils alternatifs)
+     */
+    public TreeConfigurationService(Path configPath) {
+        this(configPath, ConfigurationWriter.DEFAULT_DEBOUNCE_MILLIS);
+    }
+    
+    /**
+     * Constructeur avec un délai de regroupement des sauvegardes spécifique
+     */
+    public TreeConfigurationService(Path configPath, long saveDebounceMillis) {
         this.objectMapper = new ObjectMapper();
         this.objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
+        this.codec = new TreeJsonCodec(objectMapper);
+        this.binarySnapshot = new TreeBinarySnapshot(objectMapper);
         
-        this.configPath = Paths.get(CONFIG_DIR, CONFIG_FILE);
-        this.changeListeners = new ArrayList<>();
+        this.configPath = configPath;
+        this.dispatcher = new TreeChangeDispatcher();
+        this.journal = new TreeEditJournal();
         
         // Créer le répertoire data s'il n'existe pas
         try {
@@ -50,70 +94,206 @@ public class TreeConfigurationService {
             logger.error("Erreur création répertoire configuration", e);
         }
         
+        this.editLog = openEditLog(configPath);
+        this.writer = new ConfigurationWriter(configPath, saveDebounceMillis, editLog);
+        
         // Charger la configuration au démarrage
         loadConfiguration();
     }
     
     /**
-     * Charge la configuration depuis le fichier ou crée une configuration par défaut
+     * Ouvre le journal d'écriture anticipée ; sans journal, chaque modification réécrit l'instantané
+     */
+    private static TreeEditLog openEditLog(Path configPath) {
+        try {
+            return new TreeEditLog(TreeEditLog.pathFor(configPath));
+        } catch (IOException e) {
+            logger.error("Journal de configuration indisponible, sauvegarde par instantanés complets", e);
+            return null;
+        }
+    }
+    
+    /**
+     * Charge la configuration depuis le fichier ou crée une configuration par défaut,
+     * puis rejoue les modifications journalisées depuis le dernier instantané
      */
     public void loadConfiguration() {
+        // Une sauvegarde en attente doit être écrite avant de relire le fichier
+        writer.flush();
+        List<TreeEditLog.Record> records = writer.recoverJournal();
+        
+        // L'arbre est reconstruit hors verrou puis remplacé d'un seul coup
+        TreeNode loadedRoot;
+        boolean snapshotNeeded = !records.isEmpty();
         try {
             File configFile = configPath.toFile();
             
             if (configFile.exists()) {
                 logger.info("Chargement de la configuration depuis {}", configPath);
                 
-                // Charger le DTO depuis le fichier JSON
-                TreeNodeDTO rootDTO = objectMapper.readValue(configFile, TreeNodeDTO.class);
+                // Instantané binaire s'il est à jour, sinon lecture en flux du JSON (une seule passe)
+                loadedRoot = binarySnapshot.readIfFresh(configPath);
+                if (loadedRoot == null) {
+                    loadedRoot = codec.read(configPath);
+                    // Premier démarrage ou JSON modifié à la main : régénérer l'instantané binaire
+                    snapshotNeeded = true;
+                }
                 
-                // Convertir le DTO en TreeNode avec reconstruction automatique des références parent
-                rootNode = rootDTO.toTreeNode();
+                // Les pourcentages décimaux existants peuvent laisser un résidu d'arrondi d'un ppm
+                if (Weights.repairRounding(loadedRoot) > 0) {
+                    snapshotNeeded = true;
+                }
                 
                 logger.info("Configuration chargée avec succès");
             } else {
                 logger.info("Aucune configuration trouvée, création de la configuration par défaut");
-                createDefaultConfiguration();
+                loadedRoot = createDefaultConfiguration();
                 // Sauvegarder immédiatement la configuration par défaut
-                saveConfiguration();
+                snapshotNeeded = true;
             }
             
-            // Notifier les listeners
-            notifyChangeListeners();
-            
+            if (!records.isEmpty()) {
+                int steps = TreeEditLog.replay(loadedRoot, records);
+                logger.info("Journal de configuration rejoué : {} modifications, {} étapes", records.size(), steps);
+            }
         } catch (IOException e) {
             logger.error("Erreur lors du chargement de la configuration", e);
-            createDefaultConfiguration();
+            replaceRoot(createDefaultConfiguration(), false);
+            return;
+        }
+        
+        long stamp = acquireWrite();
+        try {
+            if (!records.isEmpty()) {
+                editSequence = Math.max(editSequence, records.get(records.size() - 1).sequence);
+            }
+            // Compaction : le journal rejoué est intégré à un nouvel instantané
+            replaceRoot(loadedRoot, snapshotNeeded);
+        } finally {
+            releaseWrite(stamp);
+        }
+        
+        // Notifier les listeners (remplacement complet de l'arbre)
+        notifyChangeListeners(TreeChangeEvent.fullRefresh(loadedRoot));
+    }
+    
+    /**
+     * Remplace l'arbre sous verrou d'écriture ; le journal d'annulation référence les nœuds de l'ancien arbre
+     */
+    private void replaceRoot(TreeNode newRoot, boolean snapshot) {
+        long stamp = acquireWrite();
+        try {
+            rootNode = newRoot;
+            journal.reset();
+            if (snapshot) {
+                saveSnapshotNow();
+            }
+        } finally {
+            releaseWrite(stamp);
         }
     }
     
     /**
-     * Sauvegarde automatique de la configuration
+     * Sauvegarde automatique de la configuration.
+     * L'instantané (copie de l'arbre) est pris sur le thread appelant ; l'encodage et l'écriture
+     * (regroupées et atomiques) sont faits par le thread d'écriture.
      */
     public void saveConfiguration() {
+        submitSnapshot(false);
+    }
+    
+    /**
+     * Instantané écrit avant toute modification ultérieure (remplacement complet de l'arbre)
+     */
+    private void saveSnapshotNow() {
+        submitSnapshot(true);
+    }
+    
+    private void submitSnapshot(boolean immediate) {
         try {
-            // Créer le dossier s'il n'existe pas
-            Files.createDirectories(configPath.getParent());
-            
-            // Convertir TreeNode en TreeNodeDTO pour éviter les références circulaires
-            TreeNodeDTO rootDTO = TreeNodeDTO.fromTreeNode(rootNode);
-            
-            // Sauvegarder le DTO (sans références circulaires)
-            objectMapper.writeValue(configPath.toFile(), rootDTO);
-            logger.info("Configuration sauvegardée dans {}", configPath);
-            
+            // Copie sous lecture cohérente : l'arbre et son numéro de séquence sont lus ensemble,
+            // les encodages (JSON, binaire, arbre compilé) et l'écriture disque se font ensuite sur le thread d'écriture
+            TreeSnapshot snapshot = readTree(root -> new TreeSnapshot(root.clone(), editSequence));
+            writer.submit(snapshot, immediate);
+            recordsSinceSnapshot = 0;
         } catch (Exception e) {
             logger.error("Erreur lors de la sauvegarde de la configuration", e);
         }
     }
     
+    /**
+     * Copie de l'arbre à sauvegarder, indépendante des modifications ultérieures
+     */
+    private final class TreeSnapshot implements ConfigurationWriter.Snapshot {
+        private final TreeNode root;
+        private final long sequence;
+        
+        TreeSnapshot(TreeNode root, long sequence) {
+            this.root = root;
+            this.sequence = sequence;
+        }
+        
+        @Override
+        public long sequence() {
+            return sequence;
+        }
+        
+        @Override
+        public byte[] encodeJson() throws IOException {
+            return codec.writeAsBytes(root);
+        }
+        
+        @Override
+        public byte[] encodeBinary() throws IOException {
+            return binarySnapshot.encode(root);
+        }
+        
+        @Override
+        public CompiledTree compile() {
+            return CompiledTree.compile(root);
+        }
+    }
+    
+    /**
+     * Persiste une modification : ajout au journal d'écriture anticipée (coût proportionnel
+     * à la modification), compacté périodiquement en instantané complet
+     */
+    private void persist(String description, List<TreeEditLog.Step> steps) {
+        if (editLog == null) {
+            saveConfiguration();
+            return;
+        }
+        editSequence++;
+        writer.append(new TreeEditLog.Record(editSequence, description, steps));
+        if (++recordsSinceSnapshot >= JOURNAL_COMPACTION_THRESHOLD) {
+            saveConfiguration();
+        }
+    }
+    
+    /**
+     * Attend l'écriture sur disque de la dernière sauvegarde demandée
+     */
+    public void flush() {
+        writer.flush();
+    }
+    
+    /**
+     * Écrit les sauvegardes en attente et arrête les threads du service (fermeture de l'application)
+     */
+    public void shutdown() {
+        // Compaction finale : le journal est intégré à l'instantané
+        saveConfiguration();
+        writer.shutdown();
+        dispatcher.shutdown();
+    }
+    
     /**
      * Crée une configuration par défaut générique
      */
-    private void createDefaultConfiguration() {
+    private TreeNode createDefaultConfiguration() {
         logger.info("Création de la configuration par défaut");
         
-        rootNode = new TreeNode("root", "🌳 Arbre Principal", 100.0, "🌳");
+        TreeNode rootNode = new TreeNode("root", "🌳 Arbre Principal", 100.0, "🌳");
         rootNode.setColor("#2E3440");
         
         // Branche A
@@ -140,6 +320,7 @@ public class TreeConfigurationService {
         rootNode.addChild(brancheB);
         
         logger.info("Configuration par défaut créée avec couleurs");
+        return rootNode;
     }
     
     /**
@@ -147,14 +328,7 @@ public class TreeConfigurationService {
      */
     public void addChildNode(TreeNode parent, TreeNode child) {
         if (parent != null && child != null) {
-            parent.addChild(child);
-            
-            // Redistribution automatique pour que la somme = 100%
-            redistributeToHundredPercent(parent);
-            
-            // Sauvegarde automatique
-            saveConfiguration();
-            notifyChangeListeners();
+            edit("Ajout de " + child.getLabel(), editor -> editor.addChild(parent, child));
             
             logger.info("Nœud ajouté : {} sous {} - Redistribution automatique effectuée", 
                        child.getLabel(), parent.getLabel());
@@ -167,11 +341,7 @@ public class TreeConfigurationService {
      */
     public void addChildNodeWithoutRedistribution(TreeNode parent, TreeNode child) {
         if (parent != null && child != null) {
-            parent.addChild(child);
-            
-            // Sauvegarde automatique (sans redistribution)
-            saveConfiguration();
-            notifyChangeListeners();
+            edit("Ajout de " + child.getLabel(), editor -> editor.addChildWithoutRedistribution(parent, child));
             
             logger.info("Nœud ajouté : {} sous {} - SANS redistribution automatique", 
                        child.getLabel(), parent.getLabel());
@@ -183,20 +353,10 @@ public class TreeConfigurationService {
      */
     public void removeNode(TreeNode nodeToRemove) {
         if (nodeToRemove != null && !nodeToRemove.isRoot()) {
-            TreeNode parent = findParent(rootNode, nodeToRemove);
-            if (parent != null) {
-                parent.removeChild(nodeToRemove);
-                
-                // Redistribution automatique pour que la somme = 100%
-                redistributeToHundredPercent(parent);
-                
-                // Sauvegarde automatique
-                saveConfiguration();
-                notifyChangeListeners();
-                
-                logger.info("Nœud supprimé : {} - Redistribution automatique effectuée", 
-                           nodeToRemove.getLabel());
-            }
+            edit("Suppression de " + nodeToRemove.getLabel(), editor -> editor.remove(nodeToRemove));
+            
+            logger.info("Nœud supprimé : {} - Redistribution automatique effectuée", 
+                       nodeToRemove.getLabel());
         }
     }
     
@@ -205,26 +365,8 @@ public class TreeConfigurationService {
      */
     public void moveNode(TreeNode nodeToMove, TreeNode newParent) {
         if (nodeToMove != null && newParent != null && !nodeToMove.isRoot()) {
-            // Supprimer de l'ancien parent
-            TreeNode oldParent = findParent(rootNode, nodeToMove);
-            if (oldParent != null) {
-                oldParent.removeChild(nodeToMove);
-                // Redistribuer l'ancien parent
-                redistributeToHundredPercent(oldParent);
-            }
-            
-            // Ajouter au nouveau parent
-            newParent.addChild(nodeToMove);
-            
-            // Ajuster le niveau (pas nécessaire car TreeNode n'a pas de level)
-            // updateLevels(nodeToMove, newParent.getDepth() + 1);
-            
-            // Redistribuer le nouveau parent
-            redistributeToHundredPercent(newParent);
-            
-            // Sauvegarde automatique
-            saveConfiguration();
-            notifyChangeListeners();
+            TreeNode oldParent = nodeToMove.getParent();
+            edit("Déplacement de " + nodeToMove.getLabel(), editor -> editor.move(nodeToMove, newParent));
             
             logger.info("Nœud déplacé : {} de {} vers {} - Redistribution automatique effectuée", 
                        nodeToMove.getLabel(),
@@ -234,23 +376,392 @@ public class TreeConfigurationService {
     }
     
     /**
-     * Met à jour un nœud existant avec redistribution automatique à 100%
+     * Modifie les propriétés d'un nœud sous verrou d'écriture, avec redistribution automatique à 100% :
+     * les lecteurs concurrents ne voient jamais une modification partielle
      */
-    public void updateNode(TreeNode node) {
+    public void updateNode(TreeNode node, Consumer<TreeNode> changes) {
         if (node != null) {
             // Si le nœud a des frères/sœurs, redistribuer pour que la somme = 100%
             // MAIS en préservant le pourcentage du nœud qui vient d'être modifié
-            TreeNode parent = findParent(rootNode, node);
-            if (parent != null) {
-                redistributeToHundredPercentExcluding(parent, node);
+            edit("Modification de " + node.getLabel(), editor -> editor.update(node, changes));
+            
+            logger.debug("Nœud mis à jour : {} - Redistribution automatique effectuée (nœud modifié préservé)", node.getLabel());
+        }
+    }
+    
+    /**
+     * Développe ou réduit un nœud, ou tout son sous-arbre si {@code subtree} : état d'affichage
+     * appliqué sans redistribution ni entrée d'annulation, avec une seule étape au journal d'écriture
+     * anticipée (aucune copie de l'arbre) et un événement pour le lot
+     */
+    public void setExpanded(TreeNode node, boolean expanded, boolean subtree) {
+        if (node == null) {
+            return;
+        }
+        List<TreeNode> changed = new ArrayList<>();
+        long stamp = acquireWrite();
+        try {
+            applyExpanded(node, expanded, subtree, changed);
+            if (changed.isEmpty()) {
+                return;
+            }
+            persist(expanded ? "Développement" : "Réduction",
+                    List.of(TreeEditLog.expanded(node, expanded, subtree)));
+        } finally {
+            releaseWrite(stamp);
+        }
+        notifyChangeListeners(TreeChangeEvent.updated(rootNode, changed));
+        logger.debug("{} nœud(s) {}", changed.size(), expanded ? "développé(s)" : "réduit(s)");
+    }
+    
+    private static void applyExpanded(TreeNode node, boolean expanded, boolean subtree, List<TreeNode> changed) {
+        if (node.isExpanded() != expanded) {
+            node.setExpanded(expanded);
+            changed.add(node);
+        }
+        if (subtree) {
+            for (TreeNode child : node.getChildren()) {
+                applyExpanded(child, expanded, true, changed);
+            }
+        }
+    }
+    
+    // ========================================
+    // TRANSACTIONS D'ÉDITION
+    // ========================================
+    
+    /**
+     * Applique un lot de modifications en une seule transaction : une redistribution par parent
+     * touché, une sauvegarde et un événement. En cas d'exception (ou d'erreur), le lot est annulé.
+     */
+    public void edit(String description, Consumer<TreeEditor> edits) {
+        TreeEditor editor = begin(description);
+        boolean outermost = transaction.depth == 1;
+        boolean applied = false;
+        try {
+            edits.accept(editor);
+            applied = true;
+        } finally {
+            if (!applied) {
+                abandon(outermost);
+            }
+        }
+        commit();
+    }
+    
+    /**
+     * Abandonne un lot interrompu : seule la transaction englobante décide de l'annulation,
+     * une transaction imbriquée rend simplement la main
+     */
+    private void abandon(boolean outermost) {
+        if (outermost) {
+            rollback();
+        } else {
+            transaction.depth--;
+        }
+    }
+    
+    /**
+     * Ouvre une transaction d'édition (ou rejoint la transaction en cours du même thread).
+     * Le verrou d'écriture est conservé jusqu'au commit ou à l'annulation de la transaction englobante.
+     */
+    public TreeEditor begin(String description) {
+        if (transaction == null || !holdsWriteLock()) {
+            long stamp = acquireWrite();
+            transaction = new Transaction(description, stamp);
+        }
+        transaction.depth++;
+        return transaction;
+    }
+    
+    /**
+     * Valide la transaction : redistribue chaque parent touché, journalise, sauvegarde et notifie une fois.
+     * Si la validation échoue, toutes les opérations sont annulées avant de rendre le verrou.
+     */
+    public void commit() {
+        Transaction current = requireTransaction();
+        if (--current.depth > 0) {
+            return;
+        }
+        transaction = null;
+        
+        List<TreeEditJournal.Operation> operations = current.operations;
+        TreeChangeEvent event = null;
+        boolean recorded = false;
+        boolean committed = false;
+        try {
+            for (Map.Entry<TreeNode, Set<TreeNode>> touched : current.touchedParents.entrySet()) {
+                TreeNode parent = touched.getKey();
+                if (!current.redistribute || !parent.hasChildren()) {
+                    continue;
+                }
+                // Solveur sous contraintes : nœuds figés, bornes et valeurs saisies par l'utilisateur conservées
+                TreeEditJournal.WeightCapture weights = TreeEditJournal.captureWeights(parent);
+                try {
+                    if (!WeightSolver.solve(parent.getChildren(), touched.getValue())) {
+                        current.unsatisfiedParents.add(parent.getId());
+                        logger.warn("Contraintes incompatibles pour les enfants de {} : meilleure approximation appliquée",
+                                   parent.getLabel());
+                    }
+                } finally {
+                    // Même partielle, la redistribution doit pouvoir être annulée
+                    if (weights.changed()) {
+                        current.applied(weights.done());
+                    }
+                }
             }
             
-            // Sauvegarde automatique
-            saveConfiguration();
-            notifyChangeListeners();
+            if (operations.isEmpty()) {
+                committed = true;
+                return;
+            }
+            journal.record(current.description, operations);
+            recorded = true;
             
-            logger.debug("Nœud mis à jour : {} - Redistribution automatique effectuée (nœud modifié préservé)", node.getLabel());
+            // Sauvegarde automatique (ajout au journal d'écriture anticipée)
+            persist(current.description, current.logSteps);
+            event = TreeChangeEvent.of(rootNode, operations, true);
+            committed = true;
+        } finally {
+            try {
+                if (!committed) {
+                    if (recorded) {
+                        journal.discardLatest();
+                    }
+                    revert(operations);
+                    logger.error("Échec de la validation de la transaction '{}' : {} opérations annulées",
+                               current.description, operations.size());
+                }
+            } finally {
+                releaseWrite(current.stamp);
+            }
         }
+        // Notification hors verrou : un listener peut ouvrir une nouvelle transaction
+        notifyChangeListeners(event);
+        
+        logger.debug("Transaction '{}' validée : {} opérations, {} parents redistribués",
+                    current.description, operations.size(), current.touchedParents.size());
+    }
+    
+    /**
+     * Annule toutes les modifications de la transaction en cours (aucune sauvegarde ni notification)
+     */
+    public void rollback() {
+        Transaction current = requireTransaction();
+        transaction = null;
+        try {
+            revert(current.operations);
+        } finally {
+            releaseWrite(current.stamp);
+        }
+        logger.info("Transaction '{}' annulée ({} opérations)", current.description, current.operations.size());
+    }
+    
+    private static void revert(List<TreeEditJournal.Operation> operations) {
+        for (int i = operations.size() - 1; i >= 0; i--) {
+            operations.get(i).revert();
+        }
+    }
+    
+    /**
+     * Normalise toutes les fratries de l'arbre en respectant les contraintes (nœuds figés, bornes)
+     * dans une seule transaction : une sauvegarde, une notification et une entrée d'annulation.
+     * Retourne les identifiants des parents dont les contraintes sont incompatibles.
+     */
+    public List<String> normalizeTree() {
+        Transaction current = (Transaction) begin("Normalisation de l'arbre");
+        boolean outermost = current.depth == 1;
+        boolean applied = false;
+        try {
+            normalizeSubtree(current, rootNode);
+            applied = true;
+        } finally {
+            if (!applied) {
+                abandon(outermost);
+            }
+        }
+        commit();
+        logger.info("Arbre normalisé : {} fratries, {} contraintes incompatibles",
+                   current.touchedParents.size(), current.unsatisfiedParents.size());
+        return new ArrayList<>(current.unsatisfiedParents);
+    }
+    
+    private void normalizeSubtree(TreeEditor editor, TreeNode node) {
+        if (node == null || !node.hasChildren()) {
+            return;
+        }
+        editor.normalize(node);
+        for (TreeNode child : node.getChildren()) {
+            normalizeSubtree(editor, child);
+        }
+    }
+    
+    /**
+     * Retourne true si le thread appelant a une transaction d'édition en cours
+     */
+    public boolean isInTransaction() {
+        return holdsWriteLock() && transaction != null;
+    }
+    
+    private Transaction requireTransaction() {
+        if (!isInTransaction()) {
+            throw new IllegalStateException("Aucune transaction d'édition en cours");
+        }
+        return transaction;
+    }
+    
+    /**
+     * Parent d'un nœud via la référence directe, avec repli sur une recherche dans l'arbre
+     */
+    private TreeNode parentOf(TreeNode node) {
+        TreeNode parent = node.getParent();
+        return parent != null ? parent : findParent(rootNode, node);
+    }
+    
+    /**
+     * Transaction en cours : opérations appliquées et parents à redistribuer au commit
+     */
+    private final class Transaction implements TreeEditor {
+        private final String description;
+        // Tampon du verrou d'écriture pris par la transaction (0 si déjà détenu par l'appelant)
+        private final long stamp;
+        private final List<TreeEditJournal.Operation> operations = new ArrayList<>();
+        private final List<TreeEditLog.Step> logSteps = new ArrayList<>();
+        // Parent touché -> enfants dont le pourcentage saisi doit être conservé lors de la redistribution
+        private final Map<TreeNode, Set<TreeNode>> touchedParents = new LinkedHashMap<>();
+        private final List<String> unsatisfiedParents = new ArrayList<>();
+        // Faux pour un correctif : les pourcentages de la cible sont appliqués tels quels au commit
+        private boolean redistribute = true;
+        private int depth;
+        
+        Transaction(String description, long stamp) {
+            this.description = description;
+            this.stamp = stamp;
+        }
+        
+        @Override
+        public void addChild(TreeNode parent, TreeNode child) {
+            addChildWithoutRedistribution(parent, child);
+            touchedParents.computeIfAbsent(parent, key -> new HashSet<>());
+        }
+        
+        @Override
+        public void addChildWithoutRedistribution(TreeNode parent, TreeNode child) {
+            TreeEditJournal.Operation operation = TreeEditJournal.inserted(parent, child, parent.getChildren().size());
+            parent.addChild(child);
+            applied(operation);
+        }
+        
+        @Override
+        public void insertChild(TreeNode parent, TreeNode child, int index) {
+            int safeIndex = Math.max(0, Math.min(index, parent.getChildren().size()));
+            TreeEditJournal.Operation operation = TreeEditJournal.inserted(parent, child, safeIndex);
+            parent.insertChild(safeIndex, child);
+            applied(operation);
+            touchedParents.computeIfAbsent(parent, key -> new HashSet<>());
+        }
+        
+        @Override
+        public void remove(TreeNode node) {
+            TreeNode parent = parentOf(node);
+            if (parent == null) {
+                return;
+            }
+            TreeEditJournal.Operation operation = TreeEditJournal.removed(parent, node, parent.getChildren().indexOf(node));
+            parent.removeChild(node);
+            applied(operation);
+            touchedParents.computeIfAbsent(parent, key -> new HashSet<>());
+        }
+        
+        @Override
+        public void move(TreeNode node, TreeNode newParent) {
+            TreeNode oldParent = parentOf(node);
+            move(node, newParent, newParent.getChildren().size() - (oldParent == newParent ? 1 : 0));
+        }
+        
+        @Override
+        public void move(TreeNode node, TreeNode newParent, int index) {
+            TreeNode oldParent = parentOf(node);
+            int oldIndex = oldParent != null ? oldParent.getChildren().indexOf(node) : -1;
+            if (oldParent != null) {
+                oldParent.removeChild(node);
+                touchedParents.computeIfAbsent(oldParent, key -> new HashSet<>());
+            }
+            int safeIndex = Math.max(0, Math.min(index, newParent.getChildren().size()));
+            TreeEditJournal.Operation operation = TreeEditJournal.moved(node, oldParent, oldIndex, newParent, safeIndex);
+            newParent.insertChild(safeIndex, node);
+            applied(operation);
+            touchedParents.computeIfAbsent(newParent, key -> new HashSet<>());
+        }
+        
+        @Override
+        public void update(TreeNode node, Consumer<TreeNode> changes) {
+            // État d'avant capturé au moment de la modification, sous verrou d'écriture
+            TreeEditJournal.NodeState before = TreeEditJournal.NodeState.of(node);
+            changes.accept(node);
+            applied(TreeEditJournal.changed(node, before));
+            TreeNode parent = parentOf(node);
+            if (parent != null) {
+                touchedParents.computeIfAbsent(parent, key -> new HashSet<>()).add(node);
+            }
+        }
+        
+        /**
+         * Mémorise une opération qui vient d'être appliquée (journal d'annulation et journal d'écriture)
+         */
+        private void applied(TreeEditJournal.Operation operation) {
+            operations.add(operation);
+            operation.log(true, logSteps);
+        }
+        
+        @Override
+        public void normalize(TreeNode parent) {
+            if (parent != null && parent.hasChildren()) {
+                touchedParents.computeIfAbsent(parent, key -> new HashSet<>());
+            }
+        }
+        
+        @Override
+        public TreeNode getRootNode() {
+            return rootNode;
+        }
+    }
+    
+    /**
+     * Amène l'arbre courant au contenu de {@code target} par un script d'édition minimal
+     * ({@link TreeDiff}) appliqué en une seule transaction : une sauvegarde, une entrée d'annulation
+     * et un événement delta. Remplacement complet si les arbres ne sont pas appariables
+     * (racines d'identifiants différents, identifiants dupliqués). Les pourcentages de la cible
+     * sont repris tels quels : aucune fratrie n'est redistribuée au commit.
+     */
+    public TreeDiff patchTree(String description, TreeNode target) {
+        Weights.repairRounding(target);
+        TreeEditor editor = begin(description);
+        boolean outermost = transaction.depth == 1;
+        if (outermost) {
+            transaction.redistribute = false;
+        }
+        TreeDiff diff;
+        boolean applied = false;
+        try {
+            diff = TreeDiff.compute(rootNode, target);
+            if (!diff.requiresReplacement()) {
+                diff.applyTo(editor);
+            }
+            applied = true;
+        } finally {
+            if (!applied) {
+                abandon(outermost);
+            }
+        }
+        commit();
+        
+        if (diff.requiresReplacement()) {
+            setRootNode(target);
+        }
+        logger.info("Correctif '{}' appliqué : {}", description,
+                   diff.requiresReplacement() ? "remplacement complet" : diff.size() + " éditions");
+        return diff;
     }
     
     /**
@@ -258,9 +769,61 @@ public class TreeConfigurationService {
      */
     public void resetToDefault() {
         logger.info("Réinitialisation de la configuration");
-        createDefaultConfiguration();
-        saveConfiguration();
-        notifyChangeListeners();
+        TreeNode defaultRoot = createDefaultConfiguration();
+        replaceRoot(defaultRoot, true);
+        notifyChangeListeners(TreeChangeEvent.fullRefresh(defaultRoot));
+    }
+    
+    /**
+     * Annule la dernière modification de l'arbre (sans relire le fichier)
+     */
+    public boolean undo() {
+        List<TreeEditLog.Step> steps = new ArrayList<>();
+        TreeEditJournal.Entry entry;
+        long stamp = acquireWrite();
+        try {
+            entry = journal.undo(steps);
+            if (entry == null) {
+                return false;
+            }
+            persist("Annulation : " + entry.description, steps);
+        } finally {
+            releaseWrite(stamp);
+        }
+        notifyChangeListeners(TreeChangeEvent.of(rootNode, entry.operations, false));
+        return true;
+    }
+    
+    /**
+     * Rétablit la dernière modification annulée
+     */
+    public boolean redo() {
+        List<TreeEditLog.Step> steps = new ArrayList<>();
+        TreeEditJournal.Entry entry;
+        long stamp = acquireWrite();
+        try {
+            entry = journal.redo(steps);
+            if (entry == null) {
+                return false;
+            }
+            persist("Rétablissement : " + entry.description, steps);
+        } finally {
+            releaseWrite(stamp);
+        }
+        notifyChangeListeners(TreeChangeEvent.of(rootNode, entry.operations, true));
+        return true;
+    }
+    
+    public boolean canUndo() {
+        return journal.canUndo();
+    }
+    
+    public boolean canRedo() {
+        return journal.canRedo();
+    }
+    
+    public TreeEditJournal getJournal() {
+        return journal;
     }
     
     /**
@@ -291,250 +854,225 @@ public class TreeConfigurationService {
     }
     
     /**
-     * Ajoute un listener pour les changements de configuration
+     * Ajoute un listener recevant l'arbre complet à chaque changement (compatibilité).
+     * Préférer {@link #addTreeChangeListener(TreeChangeListener)} pour recevoir les deltas.
      */
     public void addChangeListener(Consumer<TreeNode> listener) {
-        changeListeners.add(listener);
+        dispatcher.subscribeOnFxThread(new RootListenerAdapter(listener));
     }
     
     /**
      * Supprime un listener
      */
     public void removeChangeListener(Consumer<TreeNode> listener) {
-        changeListeners.remove(listener);
+        dispatcher.unsubscribe(new RootListenerAdapter(listener));
     }
     
     /**
-     * Notifie tous les listeners des changements
+     * Ajoute un listener d'interface recevant les événements delta sur le thread JavaFX.
+     * Les modifications d'une même frame sont regroupées en une seule notification.
      */
-    private void notifyChangeListeners() {
-        for (Consumer<TreeNode> listener : changeListeners) {
-            try {
-                // Vérifier si on est sur le thread JavaFX
-                if (javafx.application.Platform.isFxApplicationThread()) {
-                    // Exécuter directement si on est déjà sur le thread JavaFX
-                    listener.accept(rootNode);
-                } else {
-                    // Sinon, déléguer au thread JavaFX
-                    javafx.application.Platform.runLater(() -> {
-                        try {
-                            listener.accept(rootNode);
-                        } catch (Exception e) {
-                            logger.error("Erreur lors de la notification du listener (thread JavaFX)", e);
-                        }
-                    });
-                }
-            } catch (Exception e) {
-                logger.error("Erreur lors de la notification du listener", e);
-            }
-        }
+    public void addTreeChangeListener(TreeChangeListener listener) {
+        dispatcher.subscribeOnFxThread(listener);
     }
     
     /**
-     * Redistribue automatiquement les pourcentages des enfants pour que leur somme = 100%
+     * Ajoute un listener hors interface notifié en arrière-plan, les rafales étant
+     * regroupées sur une fenêtre de {@code windowMillis} millisecondes
      */
-    private void redistributeToHundredPercent(TreeNode parent) {
-        if (parent == null || !parent.hasChildren()) {
+    public void addBackgroundTreeChangeListener(TreeChangeListener listener, long windowMillis) {
+        dispatcher.subscribeInBackground(listener, windowMillis);
+    }
+    
+    /**
+     * Ajoute un listener notifié sur un exécuteur arbitraire
+     */
+    public void addTreeChangeListener(TreeChangeListener listener, Executor executor, long windowMillis) {
+        dispatcher.subscribe(listener, executor, windowMillis);
+    }
+    
+    public void removeTreeChangeListener(TreeChangeListener listener) {
+        dispatcher.unsubscribe(listener);
+    }
+    
+    /**
+     * Notifie tous les listeners des changements (notification coalescée et asynchrone)
+     */
+    private void notifyChangeListeners(TreeChangeEvent event) {
+        if (event == null) {
             return;
         }
+        logger.debug("Notification des listeners : {}", event);
+        dispatcher.publish(event);
+    }
+    
+    /**
+     * Adapte un listener historique (arbre complet) au flux d'événements delta
+     */
+    private static final class RootListenerAdapter implements TreeChangeListener {
+        private final Consumer<TreeNode> delegate;
         
-        List<TreeNode> children = parent.getChildren();
-        if (children.isEmpty()) {
-            return;
+        RootListenerAdapter(Consumer<TreeNode> delegate) {
+            this.delegate = delegate;
         }
         
-        // Calculer la somme actuelle
-        double currentSum = children.stream()
-                .mapToDouble(TreeNode::getPercentage)
-                .sum();
-        
-        logger.debug("Redistribution pour {} : somme actuelle = {}, enfants = {}", 
-                    parent.getLabel(), currentSum, children.size());
-        
-        if (currentSum > 0.01) { // Éviter division par zéro et pourcentages très faibles
-            // Redistribuer proportionnellement pour arriver à 100%
-            double factor = 100.0 / currentSum;
-            for (TreeNode child : children) {
-                double oldPercentage = child.getPercentage();
-                double newPercentage = oldPercentage * factor;
-                child.setPercentage(newPercentage);
-                logger.debug("  {} : {}% -> {}%", child.getLabel(), 
-                           oldPercentage, newPercentage);
-            }
-        } else {
-            // Si tous sont à 0 ou très proches de 0, répartir équitablement
-            double equalPercentage = 100.0 / children.size();
-            for (TreeNode child : children) {
-                child.setPercentage(equalPercentage);
-                logger.debug("  {} : répartition équitable -> {}%", 
-                           child.getLabel(), equalPercentage);
-            }
+        @Override
+        public void onTreeChanged(TreeChangeEvent event) {
+            delegate.accept(event.getRootNode());
         }
         
-        // Correction des erreurs d'arrondi pour s'assurer que la somme = exactement 100%
-        double finalSum = children.stream()
-                .mapToDouble(TreeNode::getPercentage)
-                .sum();
-                
-        if (Math.abs(finalSum - 100.0) > 0.001) {
-            // Ajuster le premier enfant pour compenser l'erreur d'arrondi
-            TreeNode firstChild = children.get(0);
-            double adjustment = 100.0 - finalSum;
-            firstChild.setPercentage(firstChild.getPercentage() + adjustment);
-            logger.debug("  Correction arrondi: {} ajusté de {}%", 
-                        firstChild.getLabel(), adjustment);
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof RootListenerAdapter && ((RootListenerAdapter) obj).delegate.equals(delegate);
         }
         
-        // Vérification finale
-        double verificationSum = children.stream()
-                .mapToDouble(TreeNode::getPercentage)
-                .sum();
-        
-                logger.debug("Redistribution terminée pour {} : somme finale = {}%", 
-                    parent.getLabel(), verificationSum);
-    }
-
-    /**
-     * Redistribue automatiquement les pourcentages des enfants pour que leur somme = 100%
-     * MAIS en excluant un nœud spécifique (généralement celui qui vient d'être modifié par l'utilisateur)
-     */
-    private void redistributeToHundredPercentExcluding(TreeNode parent, TreeNode excludedNode) {
-        if (parent == null || !parent.hasChildren()) {
-            return;
-        }
-
-        List<TreeNode> children = parent.getChildren();
-        if (children.isEmpty()) {
-            return;
-        }
-
-        // Filtrer les enfants pour exclure le nœud spécifié
-        List<TreeNode> childrenToRedistribute = children.stream()
-                .filter(child -> !child.getId().equals(excludedNode.getId()))
-                .collect(Collectors.toList());
-
-        if (childrenToRedistribute.isEmpty()) {
-            logger.debug("Aucun enfant à redistribuer pour {} (nœud exclu : {})", 
-                        parent.getLabel(), excludedNode.getLabel());
-            return;
-        }
-
-        // Calculer l'espace disponible pour la redistribution (100% - pourcentage du nœud exclu)
-        double excludedPercentage = excludedNode.getPercentage();
-        double availablePercentage = 100.0 - excludedPercentage;
-
-        // Calculer la somme actuelle des nœuds à redistribuer
-        double currentSumToRedistribute = childrenToRedistribute.stream()
-                .mapToDouble(TreeNode::getPercentage)
-                .sum();
-
-        logger.debug("Redistribution pour {} (excluant {}) : espace disponible = {}%, somme actuelle des autres = {}%", 
-                    parent.getLabel(), excludedNode.getLabel(), availablePercentage, currentSumToRedistribute);
-
-        if (availablePercentage <= 0.001) {
-            // Si le nœud exclu prend 100% ou plus, mettre tous les autres à 0
-            for (TreeNode child : childrenToRedistribute) {
-                child.setPercentage(0.0);
-                logger.debug("  {} : mis à 0% (espace insuffisant)", child.getLabel());
-            }
-        } else if (currentSumToRedistribute > 0.01) {
-            // Redistribuer proportionnellement dans l'espace disponible
-            double factor = availablePercentage / currentSumToRedistribute;
-            for (TreeNode child : childrenToRedistribute) {
-                double oldPercentage = child.getPercentage();
-                double newPercentage = oldPercentage * factor;
-                child.setPercentage(newPercentage);
-                logger.debug("  {} : {}% -> {}%", child.getLabel(), 
-                           oldPercentage, newPercentage);
-            }
-        } else {
-            // Si tous les autres sont à 0, répartir équitablement l'espace disponible
-            double equalPercentage = availablePercentage / childrenToRedistribute.size();
-            for (TreeNode child : childrenToRedistribute) {
-                child.setPercentage(equalPercentage);
-                logger.debug("  {} : répartition équitable -> {}%", 
-                           child.getLabel(), equalPercentage);
-            }
+        @Override
+        public int hashCode() {
+            return delegate.hashCode();
         }
-
-        // Correction des erreurs d'arrondi pour s'assurer que la somme totale = exactement 100%
-        double finalSumOthers = childrenToRedistribute.stream()
-                .mapToDouble(TreeNode::getPercentage)
-                .sum();
-        double totalSum = finalSumOthers + excludedPercentage;
-        
-        if (Math.abs(totalSum - 100.0) > 0.001 && !childrenToRedistribute.isEmpty()) {
-            // Ajuster le premier enfant (non exclu) pour compenser l'erreur d'arrondi
-            TreeNode firstChild = childrenToRedistribute.get(0);
-            double adjustment = 100.0 - totalSum;
-            firstChild.setPercentage(firstChild.getPercentage() + adjustment);
-            logger.debug("  Correction arrondi: {} ajusté de {}%", 
-                        firstChild.getLabel(), adjustment);
-        }
-
-        // Vérification finale
-        double verificationSum = children.stream()
-                .mapToDouble(TreeNode::getPercentage)
-                .sum();
-        
-        logger.debug("Redistribution terminée pour {} (excluant {}) : somme finale = {}%", 
-                    parent.getLabel(), excludedNode.getLabel(), verificationSum);
     }
-
+    
     /**
-     * Valide que la somme des pourcentages des enfants = 100%
+     * Valide que la somme des pourcentages des enfants = 100% (exactement, en ppm)
      */
     public boolean validatePercentages(TreeNode parent) {
         if (parent == null || !parent.hasChildren()) {
             return true;
         }
-        
-        double sum = parent.getChildren().stream()
-                .mapToDouble(TreeNode::getPercentage)
-                .sum();
-        
-        // Tolérance de 0.1% pour les erreurs d'arrondi
-        return Math.abs(sum - 100.0) < 0.1;
+        return Weights.isComplete(parent.getChildren());
     }
     
     /**
-     * Valide récursivement tout l'arbre
+     * Valide tout l'arbre (résultat partagé pour la version courante, voir {@link #getValidationReport()})
      */
     public boolean validateEntireTree() {
-        return validateNodeRecursively(rootNode);
+        TreeValidator.Report report = getValidationReport();
+        if (!report.isValid()) {
+            logger.warn("Validation échouée : {}", report.getErrors().get(0));
+        }
+        return report.isValid();
     }
     
-    private boolean validateNodeRecursively(TreeNode node) {
-        if (node == null) {
-            return true;
+    /**
+     * Rapport de validation de l'arbre courant, calculé en un seul parcours puis partagé
+     * par tous les appelants tant que le contenu de l'arbre (empreinte de la racine) est inchangé
+     */
+    public TreeValidator.Report getValidationReport() {
+        long version = treeVersion;
+        int rulesRevision = validator.getRulesRevision();
+        CachedReport cached = validationCache;
+        if (cached != null && cached.version == version && cached.rulesRevision == rulesRevision) {
+            return cached.report;
         }
+        boolean parallel = cached != null && cached.report.getNodeCount() >= TreeValidator.PARALLEL_THRESHOLD;
+        CachedReport fresh = readTree(root -> {
+            long contentHash = root != null ? root.getContentHash() : 0;
+            // Contenu identique (annulation, modification sans effet) : le rapport est réutilisé
+            if (cached != null && cached.contentHash == contentHash && cached.rulesRevision == rulesRevision) {
+                return new CachedReport(version, rulesRevision, contentHash, cached.report);
+            }
+            return new CachedReport(version, rulesRevision, contentHash, validator.validate(root, parallel));
+        });
+        // Une modification concurrente rend simplement ce rapport obsolète : il sera recalculé
+        validationCache = fresh;
+        return fresh.report;
+    }
+    
+    /**
+     * Moteur de validation partagé (enregistrement de règles supplémentaires)
+     */
+    public TreeValidator getValidator() {
+        return validator;
+    }
+    
+    private static final class CachedReport {
+        final long version;
+        final int rulesRevision;
+        final long contentHash;
+        final TreeValidator.Report report;
         
-        // Valider ce nœud
-        if (!validatePercentages(node)) {
-            logger.warn("Validation échouée pour {} : somme des enfants != 100%", node.getLabel());
-            return false;
+        CachedReport(long version, int rulesRevision, long contentHash, TreeValidator.Report report) {
+            this.version = version;
+            this.rulesRevision = rulesRevision;
+            this.contentHash = contentHash;
+            this.report = report;
         }
-        
-        // Valider récursivement les enfants
-        if (node.hasChildren()) {
-            for (TreeNode child : node.getChildren()) {
-                if (!validateNodeRecursively(child)) {
-                    return false;
+    }
+    
+    // ========================================
+    // VERROU DE L'ARBRE
+    // ========================================
+    
+    /**
+     * Exécute une lecture cohérente de l'arbre depuis n'importe quel thread.
+     * Lecture optimiste sans verrou, relancée sous verrou de lecture si une modification
+     * a eu lieu pendant la lecture : {@code reader} doit donc être sans effet de bord
+     * et ne pas conserver de références vers les nœuds au-delà de son résultat.
+     */
+    public <T> T readTree(Function<TreeNode, T> reader) {
+        if (holdsWriteLock()) {
+            return reader.apply(rootNode);
+        }
+        long stamp = treeLock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = reader.apply(rootNode);
+                if (treeLock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // Une exception pendant une lecture invalidée vient de la modification concurrente
+                if (treeLock.validate(stamp)) {
+                    throw e;
                 }
             }
         }
-        
-        return true;
+        stamp = treeLock.readLock();
+        try {
+            return reader.apply(rootNode);
+        } finally {
+            treeLock.unlockRead(stamp);
+        }
+    }
+    
+    private boolean holdsWriteLock() {
+        return writeOwner == Thread.currentThread();
+    }
+    
+    /**
+     * Prend le verrou d'écriture ; retourne 0 si le thread appelant le détient déjà
+     */
+    private long acquireWrite() {
+        if (holdsWriteLock()) {
+            return 0;
+        }
+        long stamp = treeLock.writeLock();
+        writeOwner = Thread.currentThread();
+        return stamp;
+    }
+    
+    private void releaseWrite(long stamp) {
+        if (stamp != 0) {
+            treeVersion++;
+            writeOwner = null;
+            treeLock.unlockWrite(stamp);
+        }
     }
     
     // Getters
+    
+    /**
+     * Arbre vivant : à parcourir depuis le thread d'édition (JavaFX) ; les autres threads
+     * utilisent {@link #readTree(Function)}
+     */
     public TreeNode getRootNode() {
         return rootNode;
     }
     
     public void setRootNode(TreeNode rootNode) {
-        this.rootNode = rootNode;
-        saveConfiguration();
+        Weights.repairRounding(rootNode);
+        replaceRoot(rootNode, true);
+        notifyChangeListeners(TreeChangeEvent.fullRefresh(rootNode));
     }
     
     public Path getConfigPath() {
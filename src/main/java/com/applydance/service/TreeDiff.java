@@ -0,0 +1,368 @@
+package com.applydance.service;
+
+import com.applydance.model.TreeNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Différence entre deux arbres appariés par identifiant : script d'édition minimal (ajouts,
+ * suppressions, déplacements, modifications de nœud) qui amène l'arbre courant au contenu
+ * de l'arbre cible. Les sous-arbres de même empreinte de contenu sont ignorés sans parcours ;
+ * dans une fratrie, seuls les enfants hors de la plus longue sous-suite déjà ordonnée sont déplacés.
+ *
+ * Le script s'applique dans une transaction ({@link #applyTo(TreeEditor)}, voir
+ * {@link TreeConfigurationService#patchTree(String, TreeNode)}) : une sauvegarde, une entrée
+ * d'annulation et un seul événement delta au lieu d'un remplacement complet de la racine.
+ */
+public final class TreeDiff {
+
+    public enum Type {
+        ADD,
+        REMOVE,
+        MOVE,
+        UPDATE
+    }
+
+    /**
+     * Édition élémentaire ; les positions sont relatives au frère précédent dans l'arbre cible
+     */
+    public static final class Edit {
+        public final Type type;
+        public final String nodeId;
+        // ADD et MOVE : nouveau parent et frère précédent (null = premier enfant)
+        public final String parentId;
+        public final String afterId;
+        // ADD : copie détachée du sous-arbre cible ; UPDATE : état cible du nœud
+        private final TreeNode subtree;
+        private final TreeEditJournal.NodeState state;
+
+        private Edit(Type type, String nodeId, String parentId, String afterId,
+                     TreeNode subtree, TreeEditJournal.NodeState state) {
+            this.type = type;
+            this.nodeId = nodeId;
+            this.parentId = parentId;
+            this.afterId = afterId;
+            this.subtree = subtree;
+            this.state = state;
+        }
+
+        @Override
+        public String toString() {
+            switch (type) {
+                case ADD:
+                case MOVE:
+                    return type + " " + nodeId + " -> " + parentId + (afterId != null ? " après " + afterId : " en tête");
+                default:
+                    return type + " " + nodeId;
+            }
+        }
+    }
+
+    private final List<Edit> edits;
+    private final boolean replacement;
+
+    private TreeDiff(List<Edit> edits, boolean replacement) {
+        this.edits = Collections.unmodifiableList(edits);
+        this.replacement = replacement;
+    }
+
+    // ========================================
+    // CALCUL
+    // ========================================
+
+    /**
+     * Calcule le script qui transforme {@code current} en {@code target} (à appeler sous lecture
+     * cohérente de l'arbre courant). Si les racines n'ont pas le même identifiant ou si un arbre
+     * contient des identifiants dupliqués, aucun appariement n'est possible :
+     * {@link #requiresReplacement()} est alors vrai.
+     */
+    public static TreeDiff compute(TreeNode current, TreeNode target) {
+        if (current == null || target == null || !Objects.equals(current.getId(), target.getId())) {
+            return new TreeDiff(new ArrayList<>(), true);
+        }
+        Map<String, TreeNode> currentById = index(current);
+        Map<String, TreeNode> targetById = index(target);
+        if (currentById == null || targetById == null) {
+            return new TreeDiff(new ArrayList<>(), true);
+        }
+
+        List<Edit> edits = new ArrayList<>();
+        if (current.getContentHash() != target.getContentHash()) {
+            diffNode(current, target, currentById, edits);
+            // Suppressions en dernier : les descendants conservés ont déjà été déplacés
+            collectRemovals(current, targetById, edits);
+        }
+        return new TreeDiff(edits, false);
+    }
+
+    private static void diffNode(TreeNode node, TreeNode target, Map<String, TreeNode> currentById, List<Edit> edits) {
+        if (!sameState(node, target)) {
+            edits.add(new Edit(Type.UPDATE, target.getId(), null, null, null, TreeEditJournal.NodeState.of(target)));
+        }
+        if (node.getContentHash() == target.getContentHash()) {
+            return;
+        }
+        diffChildren(node.getChildren(), target, currentById, edits);
+    }
+
+    private static void diffChildren(List<TreeNode> currentChildren, TreeNode target,
+                                     Map<String, TreeNode> currentById, List<Edit> edits) {
+        List<TreeNode> targetChildren = target.getChildren();
+        Set<String> stationary = stationaryChildren(currentChildren, targetChildren);
+        String previousId = null;
+        for (TreeNode targetChild : targetChildren) {
+            TreeNode existing = currentById.get(targetChild.getId());
+            if (existing == null) {
+                if (hasExistingDescendant(targetChild, currentById)) {
+                    // Nouveau nœud qui reprend des nœuds existants : ajouté seul, ses enfants sont appariés ensuite
+                    edits.add(new Edit(Type.ADD, targetChild.getId(), target.getId(), previousId, shell(targetChild), null));
+                    diffChildren(Collections.emptyList(), targetChild, currentById, edits);
+                } else {
+                    edits.add(new Edit(Type.ADD, targetChild.getId(), target.getId(), previousId, targetChild.clone(), null));
+                }
+            } else {
+                if (!stationary.contains(existing.getId())) {
+                    edits.add(new Edit(Type.MOVE, existing.getId(), target.getId(), previousId, null, null));
+                }
+                diffNode(existing, targetChild, currentById, edits);
+            }
+            previousId = targetChild.getId();
+        }
+    }
+
+    /**
+     * Enfants déjà présents sous le même parent et laissés en place : la plus longue sous-suite
+     * croissante de leurs positions cibles (les autres sont déplacés)
+     */
+    private static Set<String> stationaryChildren(List<TreeNode> currentChildren, List<TreeNode> targetChildren) {
+        Map<String, Integer> targetPositions = new HashMap<>();
+        for (int i = 0; i < targetChildren.size(); i++) {
+            targetPositions.put(targetChildren.get(i).getId(), i);
+        }
+        List<TreeNode> kept = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (TreeNode child : currentChildren) {
+            Integer position = targetPositions.get(child.getId());
+            if (position != null) {
+                kept.add(child);
+                positions.add(position);
+            }
+        }
+
+        // Plus longue sous-suite croissante en O(n log n) (patience)
+        int[] tails = new int[positions.size()];
+        int[] previous = new int[positions.size()];
+        int length = 0;
+        for (int i = 0; i < positions.size(); i++) {
+            int low = 0;
+            int high = length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (positions.get(tails[mid]) < positions.get(i)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == length) {
+                length++;
+            }
+        }
+        Set<String> stationary = new HashSet<>();
+        for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+            stationary.add(kept.get(i).getId());
+        }
+        return stationary;
+    }
+
+    /**
+     * Un nœud absent de la cible est supprimé avec son sous-arbre si son parent est conservé ;
+     * le parcours descend aussi sous les nœuds conservés déplacés hors d'un sous-arbre supprimé
+     */
+    private static void collectRemovals(TreeNode node, Map<String, TreeNode> targetById, List<Edit> edits) {
+        boolean kept = targetById.containsKey(node.getId());
+        for (TreeNode child : node.getChildren()) {
+            if (kept && !targetById.containsKey(child.getId())) {
+                edits.add(new Edit(Type.REMOVE, child.getId(), null, null, null, null));
+            }
+            collectRemovals(child, targetById, edits);
+        }
+    }
+
+    private static boolean sameState(TreeNode node, TreeNode target) {
+        return Objects.equals(node.getLabel(), target.getLabel())
+                && node.getWeightPpm() == target.getWeightPpm()
+                && Objects.equals(node.getEmoji(), target.getEmoji())
+                && Objects.equals(node.getDescription(), target.getDescription())
+                && sameMetadata(node.getMetadata(), target.getMetadata());
+    }
+
+    /**
+     * Égalité des métadonnées de contenu : l'état d'affichage (développé/réduit) est ignoré
+     */
+    private static boolean sameMetadata(Map<String, Object> current, Map<String, Object> target) {
+        int compared = 0;
+        for (Map.Entry<String, Object> entry : current.entrySet()) {
+            if (TreeNode.isViewState(entry.getKey())) {
+                continue;
+            }
+            if (!target.containsKey(entry.getKey()) || !Objects.equals(entry.getValue(), target.get(entry.getKey()))) {
+                return false;
+            }
+            compared++;
+        }
+        for (String key : target.keySet()) {
+            if (!TreeNode.isViewState(key)) {
+                compared--;
+            }
+        }
+        return compared == 0;
+    }
+
+    private static boolean hasExistingDescendant(TreeNode node, Map<String, TreeNode> currentById) {
+        for (TreeNode child : node.getChildren()) {
+            if (currentById.containsKey(child.getId()) || hasExistingDescendant(child, currentById)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static TreeNode shell(TreeNode node) {
+        TreeNode copy = new TreeNode(node.getId(), node.getLabel());
+        TreeEditJournal.NodeState.of(node).restore(copy);
+        if (node.getMetadata().containsKey(TreeNode.EXPANDED_KEY)) {
+            copy.setExpanded(node.isExpanded());
+        }
+        return copy;
+    }
+
+    /**
+     * Index des nœuds par identifiant, ou null si un identifiant est dupliqué
+     */
+    private static Map<String, TreeNode> index(TreeNode root) {
+        Map<String, TreeNode> nodes = new HashMap<>();
+        List<TreeNode> pending = new ArrayList<>(Arrays.asList(root));
+        while (!pending.isEmpty()) {
+            TreeNode node = pending.remove(pending.size() - 1);
+            if (nodes.put(node.getId(), node) != null) {
+                return null;
+            }
+            pending.addAll(node.getChildren());
+        }
+        return nodes;
+    }
+
+    // ========================================
+    // APPLICATION
+    // ========================================
+
+    /**
+     * Applique le script dans la transaction de {@code editor} ; une édition qui ne correspond
+     * plus à l'arbre lève {@link IllegalStateException} (l'appelant annule la transaction)
+     */
+    public void applyTo(TreeEditor editor) {
+        if (replacement) {
+            throw new IllegalStateException("Arbres non appariables : remplacement complet nécessaire");
+        }
+        Map<String, TreeNode> nodes = index(editor.getRootNode());
+        if (nodes == null) {
+            throw new IllegalStateException("Identifiants dupliqués dans l'arbre courant");
+        }
+        for (Edit edit : edits) {
+            switch (edit.type) {
+                case ADD: {
+                    TreeNode parent = require(nodes, edit.parentId);
+                    TreeNode added = edit.subtree.clone();
+                    editor.insertChild(parent, added, position(parent, edit.afterId, null));
+                    for (TreeNode node : added.getAllNodes()) {
+                        nodes.put(node.getId(), node);
+                    }
+                    break;
+                }
+                case MOVE: {
+                    TreeNode node = require(nodes, edit.nodeId);
+                    TreeNode parent = require(nodes, edit.parentId);
+                    editor.move(node, parent, position(parent, edit.afterId, node));
+                    break;
+                }
+                case UPDATE: {
+                    TreeNode node = require(nodes, edit.nodeId);
+                    editor.update(node, edit.state::restore);
+                    break;
+                }
+                case REMOVE:
+                    editor.remove(require(nodes, edit.nodeId));
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static TreeNode require(Map<String, TreeNode> nodes, String id) {
+        TreeNode node = nodes.get(id);
+        if (node == null) {
+            throw new IllegalStateException("Nœud introuvable pour le correctif : " + id);
+        }
+        return node;
+    }
+
+    /**
+     * Position d'insertion juste après le frère {@code afterId}, sans compter le nœud déplacé
+     */
+    private static int position(TreeNode parent, String afterId, TreeNode moving) {
+        if (afterId == null) {
+            return 0;
+        }
+        int index = 0;
+        for (TreeNode child : parent.getChildren()) {
+            if (child == moving) {
+                continue;
+            }
+            index++;
+            if (afterId.equals(child.getId())) {
+                return index;
+            }
+        }
+        throw new IllegalStateException("Frère introuvable pour le correctif : " + afterId);
+    }
+
+    // ========================================
+    // ACCÈS
+    // ========================================
+
+    public List<Edit> getEdits() {
+        return edits;
+    }
+
+    public boolean isEmpty() {
+        return edits.isEmpty();
+    }
+
+    public int size() {
+        return edits.size();
+    }
+
+    /**
+     * Vrai si les arbres ne sont pas appariables (racines différentes, identifiants dupliqués)
+     */
+    public boolean requiresReplacement() {
+        return replacement;
+    }
+
+    @Override
+    public String toString() {
+        return replacement ? "TreeDiff[remplacement complet]" : "TreeDiff" + edits;
+    }
+}
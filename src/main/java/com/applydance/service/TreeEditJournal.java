@@ -0,0 +1,484 @@
+package com.applydance.service;
+
+import com.applydance.model.TreeNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Journal d'annulation/rétablissement des modifications de l'arbre de configuration.
+ * Chaque modification est enregistrée sous forme d'opérations réversibles compactes
+ * (références directes aux nœuds, pourcentages avant/après) : annuler ou rétablir
+ * ne coûte que la taille de la modification, jamais celle de l'arbre.
+ */
+public class TreeEditJournal {
+
+    private static final Logger logger = LoggerFactory.getLogger(TreeEditJournal.class);
+    public static final int DEFAULT_CAPACITY = 100;
+
+    private final int capacity;
+    private final Deque<Entry> undoStack;
+    private final Deque<Entry> redoStack;
+
+    public TreeEditJournal() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TreeEditJournal(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("La capacité du journal doit être positive : " + capacity);
+        }
+        this.capacity = capacity;
+        this.undoStack = new ArrayDeque<>();
+        this.redoStack = new ArrayDeque<>();
+    }
+
+    /**
+     * Vide le journal (chargement, import, réinitialisation)
+     */
+    public void reset() {
+        undoStack.clear();
+        redoStack.clear();
+    }
+
+    /**
+     * Enregistre une modification déjà appliquée à l'arbre et invalide la pile de rétablissement
+     */
+    public void record(String description, List<Operation> operations) {
+        if (operations == null || operations.isEmpty()) {
+            return;
+        }
+        Entry entry = new Entry(description, operations);
+        undoStack.push(entry);
+        redoStack.clear();
+        while (undoStack.size() > capacity) {
+            undoStack.removeLast();
+        }
+        logger.debug("Modification journalisée : {} ({} opérations)", description, operations.size());
+    }
+
+    /**
+     * Retire la dernière entrée enregistrée sans toucher à l'arbre : l'appelant a déjà annulé
+     * ses opérations (validation de transaction échouée après l'enregistrement)
+     */
+    void discardLatest() {
+        Entry entry = undoStack.poll();
+        if (entry == null) {
+            return;
+        }
+        logger.debug("Entrée abandonnée : {}", entry.description);
+    }
+
+    /**
+     * Annule la dernière modification, retourne null si rien à annuler
+     */
+    public Entry undo() {
+        return undo(null);
+    }
+
+    /**
+     * Annule la dernière modification en ajoutant ses étapes de journal d'écriture à {@code logSteps}
+     */
+    public Entry undo(List<TreeEditLog.Step> logSteps) {
+        Entry entry = undoStack.poll();
+        if (entry == null) {
+            return null;
+        }
+        for (int i = entry.operations.size() - 1; i >= 0; i--) {
+            Operation operation = entry.operations.get(i);
+            operation.revert();
+            if (logSteps != null) {
+                operation.log(false, logSteps);
+            }
+        }
+        redoStack.push(entry);
+        logger.info("Modification annulée : {}", entry.description);
+        return entry;
+    }
+
+    /**
+     * Rétablit la dernière modification annulée, retourne null si rien à rétablir
+     */
+    public Entry redo() {
+        return redo(null);
+    }
+
+    /**
+     * Rétablit la dernière modification annulée en ajoutant ses étapes de journal d'écriture à {@code logSteps}
+     */
+    public Entry redo(List<TreeEditLog.Step> logSteps) {
+        Entry entry = redoStack.poll();
+        if (entry == null) {
+            return null;
+        }
+        for (Operation operation : entry.operations) {
+            operation.apply();
+            if (logSteps != null) {
+                operation.log(true, logSteps);
+            }
+        }
+        undoStack.push(entry);
+        logger.info("Modification rétablie : {}", entry.description);
+        return entry;
+    }
+
+    public boolean canUndo() {
+        return !undoStack.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
+    public String getUndoDescription() {
+        Entry entry = undoStack.peek();
+        return entry != null ? entry.description : null;
+    }
+
+    public String getRedoDescription() {
+        Entry entry = redoStack.peek();
+        return entry != null ? entry.description : null;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // ========================================
+    // FABRIQUES D'OPÉRATIONS
+    // ========================================
+
+    /**
+     * Enfant inséré sous un parent à la position donnée
+     */
+    public static Operation inserted(TreeNode parent, TreeNode child, int index) {
+        return new ChildInserted(parent, child, index);
+    }
+
+    /**
+     * Enfant retiré d'un parent depuis la position donnée
+     */
+    public static Operation removed(TreeNode parent, TreeNode child, int index) {
+        return new Inverse(new ChildInserted(parent, child, index));
+    }
+
+    /**
+     * Enfant déplacé d'un parent vers un autre
+     */
+    public static Operation moved(TreeNode child, TreeNode oldParent, int oldIndex, TreeNode newParent, int newIndex) {
+        return new ChildMoved(child, oldParent, oldIndex, newParent, newIndex);
+    }
+
+    /**
+     * Champs d'un nœud modifiés (libellé, pourcentage, emoji, description, métadonnées)
+     */
+    public static Operation changed(TreeNode node, NodeState before) {
+        return new NodeChanged(node, before, NodeState.of(node));
+    }
+
+    /**
+     * Capture les pourcentages des enfants d'un parent avant une redistribution.
+     * Appeler {@link WeightCapture#done()} après la redistribution pour obtenir l'opération.
+     */
+    public static WeightCapture captureWeights(TreeNode parent) {
+        return new WeightCapture(parent);
+    }
+
+    // ========================================
+    // CLASSES AUXILIAIRES
+    // ========================================
+
+    /**
+     * Opération réversible élémentaire
+     */
+    public interface Operation {
+        void apply();
+        void revert();
+
+        /**
+         * Décrit l'opération sous forme d'événements delta ({@code forward} = false après annulation)
+         */
+        void describe(boolean forward, List<TreeChangeEvent.Change> changes);
+
+        /**
+         * Ajoute les étapes absolues du journal d'écriture, juste après application ({@code forward})
+         * ou annulation de l'opération
+         */
+        void log(boolean forward, List<TreeEditLog.Step> steps);
+    }
+
+    /**
+     * Entrée du journal : une action utilisateur composée de plusieurs opérations
+     */
+    public static class Entry {
+        public final String description;
+        public final List<Operation> operations;
+
+        Entry(String description, List<Operation> operations) {
+            this.description = description;
+            this.operations = Collections.unmodifiableList(new ArrayList<>(operations));
+        }
+    }
+
+    /**
+     * État sauvegardable d'un nœud (sans ses enfants), immuable, capturé au moment de la modification
+     */
+    public static class NodeState {
+        public final String label;
+        public final int weightPpm;
+        public final String emoji;
+        public final String description;
+        public final Map<String, Object> metadata;
+
+        private NodeState(String label, int weightPpm, String emoji, String description, Map<String, Object> metadata) {
+            this.label = label;
+            this.weightPpm = weightPpm;
+            this.emoji = emoji;
+            this.description = description;
+            this.metadata = metadata;
+        }
+
+        public static NodeState of(TreeNode node) {
+            // L'état d'affichage (développé/réduit) n'est ni annulé ni rétabli
+            Map<String, Object> metadata = new HashMap<>(node.getMetadata());
+            metadata.keySet().removeIf(TreeNode::isViewState);
+            return new NodeState(node.getLabel(), node.getWeightPpm(), node.getEmoji(),
+                    node.getDescription(), Collections.unmodifiableMap(metadata));
+        }
+
+        void restore(TreeNode node) {
+            node.setLabel(label);
+            node.setWeightPpm(weightPpm);
+            node.setEmoji(emoji);
+            node.setDescription(description);
+            Map<String, Object> restored = new HashMap<>(metadata);
+            for (Map.Entry<String, Object> entry : node.getMetadata().entrySet()) {
+                if (TreeNode.isViewState(entry.getKey())) {
+                    restored.put(entry.getKey(), entry.getValue());
+                }
+            }
+            node.setMetadata(restored);
+        }
+    }
+
+    /**
+     * Capture en deux temps des pourcentages d'une fratrie autour d'une redistribution
+     */
+    public static class WeightCapture {
+        private final TreeNode parent;
+        private final TreeNode[] children;
+        private final int[] before;
+
+        private WeightCapture(TreeNode parent) {
+            this.parent = parent;
+            this.children = parent.getChildren().toArray(new TreeNode[0]);
+            this.before = new int[children.length];
+            for (int i = 0; i < children.length; i++) {
+                before[i] = children[i].getWeightPpm();
+            }
+        }
+
+        /**
+         * Retourne true si au moins un pourcentage a changé depuis la capture
+         */
+        public boolean changed() {
+            for (int i = 0; i < children.length; i++) {
+                if (children[i].getWeightPpm() != before[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public Operation done() {
+            int[] after = new int[children.length];
+            for (int i = 0; i < children.length; i++) {
+                after[i] = children[i].getWeightPpm();
+            }
+            return new WeightsChanged(parent, children, before, after);
+        }
+    }
+
+    private static class ChildInserted implements Operation {
+        private final TreeNode parent;
+        private final TreeNode child;
+        private final int index;
+
+        ChildInserted(TreeNode parent, TreeNode child, int index) {
+            this.parent = parent;
+            this.child = child;
+            this.index = index;
+        }
+
+        @Override
+        public void apply() {
+            parent.insertChild(index, child);
+        }
+
+        @Override
+        public void revert() {
+            parent.removeChild(child);
+        }
+
+        @Override
+        public void describe(boolean forward, List<TreeChangeEvent.Change> changes) {
+            changes.add(forward ? TreeChangeEvent.nodeAdded(child, parent) : TreeChangeEvent.nodeRemoved(child, parent));
+        }
+
+        @Override
+        public void log(boolean forward, List<TreeEditLog.Step> steps) {
+            steps.add(forward ? TreeEditLog.inserted(parent, child, parent.getChildren().indexOf(child))
+                              : TreeEditLog.removed(child));
+        }
+    }
+
+    private static class Inverse implements Operation {
+        private final Operation operation;
+
+        Inverse(Operation operation) {
+            this.operation = operation;
+        }
+
+        @Override
+        public void apply() {
+            operation.revert();
+        }
+
+        @Override
+        public void revert() {
+            operation.apply();
+        }
+
+        @Override
+        public void describe(boolean forward, List<TreeChangeEvent.Change> changes) {
+            operation.describe(!forward, changes);
+        }
+
+        @Override
+        public void log(boolean forward, List<TreeEditLog.Step> steps) {
+            operation.log(!forward, steps);
+        }
+    }
+
+    private static class ChildMoved implements Operation {
+        private final TreeNode child;
+        private final TreeNode oldParent;
+        private final int oldIndex;
+        private final TreeNode newParent;
+        private final int newIndex;
+
+        ChildMoved(TreeNode child, TreeNode oldParent, int oldIndex, TreeNode newParent, int newIndex) {
+            this.child = child;
+            this.oldParent = oldParent;
+            this.oldIndex = oldIndex;
+            this.newParent = newParent;
+            this.newIndex = newIndex;
+        }
+
+        @Override
+        public void apply() {
+            if (oldParent != null) {
+                oldParent.removeChild(child);
+            }
+            newParent.insertChild(newIndex, child);
+        }
+
+        @Override
+        public void revert() {
+            newParent.removeChild(child);
+            if (oldParent != null) {
+                oldParent.insertChild(oldIndex, child);
+            }
+        }
+
+        @Override
+        public void describe(boolean forward, List<TreeChangeEvent.Change> changes) {
+            changes.add(forward ? TreeChangeEvent.nodeMoved(child, newParent, oldParent)
+                                : TreeChangeEvent.nodeMoved(child, oldParent, newParent));
+        }
+
+        @Override
+        public void log(boolean forward, List<TreeEditLog.Step> steps) {
+            TreeNode parent = child.getParent();
+            steps.add(parent != null ? TreeEditLog.moved(child, parent, parent.getChildren().indexOf(child))
+                                     : TreeEditLog.removed(child));
+        }
+    }
+
+    private static class NodeChanged implements Operation {
+        private final TreeNode node;
+        private final NodeState before;
+        private final NodeState after;
+
+        NodeChanged(TreeNode node, NodeState before, NodeState after) {
+            this.node = node;
+            this.before = before;
+            this.after = after;
+        }
+
+        @Override
+        public void apply() {
+            after.restore(node);
+        }
+
+        @Override
+        public void revert() {
+            before.restore(node);
+        }
+
+        @Override
+        public void describe(boolean forward, List<TreeChangeEvent.Change> changes) {
+            changes.add(TreeChangeEvent.nodeUpdated(node));
+        }
+
+        @Override
+        public void log(boolean forward, List<TreeEditLog.Step> steps) {
+            steps.add(TreeEditLog.changed(node));
+        }
+    }
+
+    private static class WeightsChanged implements Operation {
+        private final TreeNode parent;
+        private final TreeNode[] children;
+        private final int[] before;
+        private final int[] after;
+
+        WeightsChanged(TreeNode parent, TreeNode[] children, int[] before, int[] after) {
+            this.parent = parent;
+            this.children = children;
+            this.before = before;
+            this.after = after;
+        }
+
+        @Override
+        public void apply() {
+            for (int i = 0; i < children.length; i++) {
+                children[i].setWeightPpm(after[i]);
+            }
+        }
+
+        @Override
+        public void revert() {
+            for (int i = 0; i < children.length; i++) {
+                children[i].setWeightPpm(before[i]);
+            }
+        }
+
+        @Override
+        public void describe(boolean forward, List<TreeChangeEvent.Change> changes) {
+            changes.add(TreeChangeEvent.weightsChanged(parent));
+        }
+
+        @Override
+        public void log(boolean forward, List<TreeEditLog.Step> steps) {
+            steps.add(TreeEditLog.weights(parent));
+        }
+    }
+}
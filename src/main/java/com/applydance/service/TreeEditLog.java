@@ -0,0 +1,333 @@
+package com.applydance.service;
+
+import com.applydance.model.TreeNode;
+import com.applydance.model.TreeNodeDTO;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Journal d'écriture anticipée (write-ahead) des modifications de l'arbre de configuration.
+ * Chaque modification validée est ajoutée au journal sous forme d'étapes absolues et
+ * idempotentes (identifiants, positions et valeurs finales) : le coût d'écriture est celui
+ * de la modification et non celui de l'arbre. La compaction remplace le début du journal
+ * par un instantané complet ; au démarrage, l'instantané est chargé puis la fin du journal rejouée.
+ */
+public class TreeEditLog implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TreeEditLog.class);
+    public static final String FILE_SUFFIX = ".journal";
+
+    private final ChecksummedLog log;
+    private final ObjectMapper objectMapper;
+    // Numéro de séquence et position de fin de chaque enregistrement encore présent dans le fichier
+    private final Deque<long[]> offsets = new ArrayDeque<>();
+
+    public TreeEditLog(Path path) throws IOException {
+        this.log = new ChecksummedLog(path);
+        this.objectMapper = new ObjectMapper();
+        this.objectMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    }
+
+    /**
+     * Chemin du journal associé à un fichier de configuration
+     */
+    public static Path pathFor(Path configPath) {
+        return configPath.resolveSibling(configPath.getFileName() + FILE_SUFFIX);
+    }
+
+    /**
+     * Relit les enregistrements valides du journal (la fin corrompue éventuelle est tronquée)
+     */
+    public List<Record> recover() throws IOException {
+        offsets.clear();
+        List<Record> records = new ArrayList<>();
+        for (ChecksummedLog.Record raw : log.recover()) {
+            try {
+                Record record = objectMapper.readValue(raw.payload, Record.class);
+                records.add(record);
+                offsets.add(new long[] {record.sequence, raw.endOffset});
+            } catch (IOException e) {
+                logger.error("Enregistrement illisible dans le journal, relecture arrêtée", e);
+                break;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Ajoute un enregistrement au journal et force son écriture sur disque
+     */
+    public void append(Record record) throws IOException {
+        long end = log.append(objectMapper.writeValueAsString(record), true);
+        offsets.add(new long[] {record.sequence, end});
+    }
+
+    /**
+     * Supprime les enregistrements inclus dans un instantané (séquence inférieure ou égale)
+     */
+    public void discardUpTo(long sequence) throws IOException {
+        long cut = 0;
+        while (!offsets.isEmpty() && offsets.peekFirst()[0] <= sequence) {
+            cut = offsets.pollFirst()[1];
+        }
+        if (cut == 0) {
+            return;
+        }
+        log.discardBefore(cut);
+        for (long[] entry : offsets) {
+            entry[1] -= cut;
+        }
+        logger.debug("Journal compacté jusqu'à la séquence {}", sequence);
+    }
+
+    /**
+     * Nombre d'enregistrements non encore intégrés à un instantané
+     */
+    public int size() {
+        return offsets.size();
+    }
+
+    public long lastSequence() {
+        return offsets.isEmpty() ? 0 : offsets.peekLast()[0];
+    }
+
+    public Path getPath() {
+        return log.getPath();
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    /**
+     * Rejoue des enregistrements sur un arbre ; retourne le nombre d'étapes appliquées
+     */
+    public static int replay(TreeNode rootNode, List<Record> records) {
+        Map<String, TreeNode> index = new HashMap<>();
+        indexSubtree(rootNode, index);
+        int applied = 0;
+        for (Record record : records) {
+            for (Step step : record.steps) {
+                if (step.applyTo(index)) {
+                    applied++;
+                }
+            }
+        }
+        return applied;
+    }
+
+    private static void indexSubtree(TreeNode node, Map<String, TreeNode> index) {
+        index.put(node.getId(), node);
+        for (TreeNode child : node.getChildren()) {
+            indexSubtree(child, index);
+        }
+    }
+
+    private static void unindexSubtree(TreeNode node, Map<String, TreeNode> index) {
+        index.remove(node.getId());
+        for (TreeNode child : node.getChildren()) {
+            unindexSubtree(child, index);
+        }
+    }
+
+    private static void expand(TreeNode node, boolean expanded, boolean subtree) {
+        node.setExpanded(expanded);
+        if (subtree) {
+            for (TreeNode child : node.getChildren()) {
+                expand(child, expanded, true);
+            }
+        }
+    }
+
+    // ========================================
+    // FABRIQUES D'ÉTAPES
+    // ========================================
+
+    static Step inserted(TreeNode parent, TreeNode child, int index) {
+        Step step = new Step(Step.INSERT, child.getId());
+        step.parentId = parent.getId();
+        step.index = index;
+        step.node = TreeNodeDTO.fromTreeNode(child);
+        return step;
+    }
+
+    static Step removed(TreeNode child) {
+        return new Step(Step.REMOVE, child.getId());
+    }
+
+    static Step moved(TreeNode child, TreeNode parent, int index) {
+        Step step = new Step(Step.MOVE, child.getId());
+        step.parentId = parent.getId();
+        step.index = index;
+        return step;
+    }
+
+    static Step changed(TreeNode node) {
+        Step step = new Step(Step.SET, node.getId());
+        step.label = node.getLabel();
+        step.percentage = node.getPercentage();
+        step.emoji = node.getEmoji();
+        step.description = node.getDescription();
+        step.metadata = new HashMap<>(node.getMetadata());
+        return step;
+    }
+
+    static Step expanded(TreeNode node, boolean expanded, boolean subtree) {
+        Step step = new Step(Step.EXPAND, node.getId());
+        step.expanded = expanded;
+        step.subtree = subtree ? Boolean.TRUE : null;
+        return step;
+    }
+
+    static Step weights(TreeNode parent) {
+        Step step = new Step(Step.WEIGHTS, parent.getId());
+        step.childIds = new ArrayList<>();
+        step.percentages = new ArrayList<>();
+        for (TreeNode child : parent.getChildren()) {
+            step.childIds.add(child.getId());
+            step.percentages.add(child.getPercentage());
+        }
+        return step;
+    }
+
+    // ========================================
+    // CLASSES AUXILIAIRES
+    // ========================================
+
+    /**
+     * Enregistrement du journal : une modification validée (transaction, annulation ou rétablissement)
+     */
+    public static class Record {
+        public long sequence;
+        public String description;
+        public List<Step> steps = new ArrayList<>();
+
+        public Record() {
+        }
+
+        public Record(long sequence, String description, List<Step> steps) {
+            this.sequence = sequence;
+            this.description = description;
+            this.steps = steps;
+        }
+    }
+
+    /**
+     * Étape élémentaire absolue : rejouer une étape déjà appliquée ne change pas l'arbre
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Step {
+        public static final String INSERT = "INSERT";
+        public static final String REMOVE = "REMOVE";
+        public static final String MOVE = "MOVE";
+        public static final String SET = "SET";
+        public static final String WEIGHTS = "WEIGHTS";
+        // État d'affichage (développé/réduit) d'un nœud ou de tout son sous-arbre
+        public static final String EXPAND = "EXPAND";
+
+        public String op;
+        public String nodeId;
+        public String parentId;
+        public Integer index;
+        public TreeNodeDTO node;
+        public String label;
+        public Double percentage;
+        public String emoji;
+        public String description;
+        public Map<String, Object> metadata;
+        public List<String> childIds;
+        public List<Double> percentages;
+        public Boolean expanded;
+        public Boolean subtree;
+
+        public Step() {
+        }
+
+        Step(String op, String nodeId) {
+            this.op = op;
+            this.nodeId = nodeId;
+        }
+
+        boolean applyTo(Map<String, TreeNode> index) {
+            TreeNode target = index.get(nodeId);
+            switch (op) {
+                case INSERT: {
+                    TreeNode parent = index.get(parentId);
+                    if (target != null || parent == null || node == null) {
+                        return false;
+                    }
+                    TreeNode child = node.toTreeNode();
+                    parent.insertChild(this.index != null ? this.index : parent.getChildren().size(), child);
+                    indexSubtree(child, index);
+                    return true;
+                }
+                case REMOVE: {
+                    if (target == null || target.getParent() == null) {
+                        return false;
+                    }
+                    target.getParent().removeChild(target);
+                    unindexSubtree(target, index);
+                    return true;
+                }
+                case MOVE: {
+                    TreeNode parent = index.get(parentId);
+                    if (target == null || parent == null) {
+                        return false;
+                    }
+                    if (target.getParent() != null) {
+                        target.getParent().removeChild(target);
+                    }
+                    parent.insertChild(this.index != null ? this.index : parent.getChildren().size(), target);
+                    return true;
+                }
+                case SET: {
+                    if (target == null) {
+                        return false;
+                    }
+                    target.setLabel(label);
+                    target.setPercentage(percentage != null ? percentage : target.getPercentage());
+                    target.setEmoji(emoji);
+                    target.setDescription(description);
+                    target.setMetadata(metadata != null ? new HashMap<>(metadata) : new HashMap<>());
+                    return true;
+                }
+                case WEIGHTS: {
+                    if (target == null || childIds == null || percentages == null) {
+                        return false;
+                    }
+                    for (int i = 0; i < childIds.size() && i < percentages.size(); i++) {
+                        TreeNode child = index.get(childIds.get(i));
+                        if (child != null) {
+                            child.setPercentage(percentages.get(i));
+                        }
+                    }
+                    return true;
+                }
+                case EXPAND: {
+                    if (target == null || expanded == null) {
+                        return false;
+                    }
+                    expand(target, expanded, Boolean.TRUE.equals(subtree));
+                    return true;
+                }
+                default:
+                    logger.warn("Étape de journal inconnue ignorée : {}", op);
+                    return false;
+            }
+        }
+    }
+}
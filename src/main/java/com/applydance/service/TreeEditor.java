@@ -0,0 +1,59 @@
+package com.applydance.service;
+
+import com.applydance.model.TreeNode;
+
+import java.util.function.Consumer;
+
+/**
+ * Modifications de l'arbre applicables dans une transaction de {@link TreeConfigurationService}.
+ * Les redistributions sont différées au commit (une seule par parent touché), suivies
+ * d'une unique sauvegarde et d'un unique événement de modification.
+ */
+public interface TreeEditor {
+
+    /**
+     * Ajoute un enfant ; la fratrie sera redistribuée à 100% au commit
+     */
+    void addChild(TreeNode parent, TreeNode child);
+
+    /**
+     * Ajoute un enfant sans redistribution de la fratrie
+     */
+    void addChildWithoutRedistribution(TreeNode parent, TreeNode child);
+
+    /**
+     * Insère un enfant à une position donnée ; la fratrie sera redistribuée à 100% au commit
+     */
+    void insertChild(TreeNode parent, TreeNode child, int index);
+
+    /**
+     * Supprime un nœud (et son sous-arbre)
+     */
+    void remove(TreeNode node);
+
+    /**
+     * Déplace un nœud sous un nouveau parent
+     */
+    void move(TreeNode node, TreeNode newParent);
+
+    /**
+     * Déplace un nœud sous un parent, à une position donnée (calculée sans le nœud déplacé)
+     */
+    void move(TreeNode node, TreeNode newParent, int index);
+
+    /**
+     * Modifie les propriétés d'un nœud ({@code changes}) en capturant son état juste avant ;
+     * son pourcentage est préservé lors de la redistribution de la fratrie
+     */
+    void update(TreeNode node, Consumer<TreeNode> changes);
+
+    /**
+     * Demande la normalisation des enfants d'un parent au commit (contraintes respectées)
+     */
+    void normalize(TreeNode parent);
+    
+    /**
+     * Racine de l'arbre en cours d'édition
+     */
+    TreeNode getRootNode();
+}
@@ -6,8 +6,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Moteur de génération générique basé sur l'arbre de configuration.
@@ -15,14 +18,22 @@ import java.util.Random;
  * 
  * MISE À JOUR : S'abonne maintenant aux changements de configuration pour 
  * une synchronisation en temps réel.
+ * 
+ * Utilisable depuis plusieurs threads : chaque génération lit l'arbre via
+ * {@link TreeConfigurationService#readTree} et tire avec un générateur propre au thread.
  */
 public class TreeGenerationEngine {
     
     private static final Logger logger = LoggerFactory.getLogger(TreeGenerationEngine.class);
     
-    private final Random random = new Random();
     private final TreeConfigurationService configService;
-    private TreeNode cachedRootNode; // Cache local de l'arbre pour éviter les appels répétés
+    private volatile TreeNode cachedRootNode; // Cache local de l'arbre pour éviter les appels répétés
+    private volatile int cachedNodeCount; // Nombre de nœuds, maintenu incrémentalement à partir des deltas
+    // Tables d'alias entières par parent, valables pour une empreinte de contenu du parent ;
+    // les événements de modification ne font que libérer les tables périmées
+    private final Map<String, CachedTable> aliasTables = new ConcurrentHashMap<>();
+    // Dernier arbre compilé, réutilisé tant que l'empreinte de contenu de la racine est inchangée
+    private volatile CompiledEntry compiledEntry;
     
     public TreeGenerationEngine(TreeConfigurationService configService) {
         this.configService = configService;
@@ -30,8 +41,8 @@ public class TreeGenerationEngine {
         // Cache initial de l'arbre
         refreshTreeCache(configService.getRootNode());
         
-        // S'abonner aux changements de configuration pour la synchronisation en temps réel
-        configService.addChangeListener(this::refreshTreeCache);
+        // S'abonner aux changements de configuration (hors thread JavaFX, rafales regroupées)
+        configService.addBackgroundTreeChangeListener(this::onTreeChanged, 0);
         
         logger.info("TreeGenerationEngine initialisé avec synchronisation automatique");
     }
@@ -42,8 +53,33 @@ public class TreeGenerationEngine {
      */
     private void refreshTreeCache(TreeNode newRootNode) {
         this.cachedRootNode = newRootNode;
-        logger.info("🔄 Cache de l'arbre de génération mis à jour - {} nœuds disponibles", 
-                    newRootNode != null ? countTotalNodes(newRootNode) : 0);
+        this.aliasTables.clear();
+        // Comptage sous lecture cohérente : l'arbre peut être modifié par le thread d'édition
+        this.cachedNodeCount = newRootNode != null ? configService.readTree(root -> countTotalNodes(newRootNode)) : 0;
+        logger.info("🔄 Cache de l'arbre de génération mis à jour - {} nœuds disponibles", cachedNodeCount);
+    }
+    
+    /**
+     * Applique un événement de modification : recalcul complet uniquement au chargement/import,
+     * sinon simple ajustement du compteur à partir des sous-arbres ajoutés ou supprimés.
+     */
+    private void onTreeChanged(TreeChangeEvent event) {
+        if (event.isFullRefresh() || event.getRootNode() != cachedRootNode) {
+            refreshTreeCache(event.getRootNode());
+            return;
+        }
+        
+        for (String parentId : event.getAffectedParentIds()) {
+            aliasTables.remove(parentId);
+        }
+        for (TreeChangeEvent.Change change : event.getChanges()) {
+            if (change.type == TreeChangeEvent.Type.NODE_ADDED) {
+                cachedNodeCount += countTotalNodes(change.node);
+            } else if (change.type == TreeChangeEvent.Type.NODE_REMOVED) {
+                cachedNodeCount -= countTotalNodes(change.node);
+            }
+        }
+        logger.debug("Cache de génération ajusté ({}) - {} nœuds disponibles", event, cachedNodeCount);
     }
     
     /**
@@ -52,21 +88,56 @@ public class TreeGenerationEngine {
     public GeneratedSlot generateSlot() {
         logger.info("Génération d'un nouveau slot générique");
         
+        // La notification étant asynchrone, l'arbre a pu être remplacé (chargement, import) entre-temps
+        if (cachedRootNode != configService.getRootNode()) {
+            refreshTreeCache(configService.getRootNode());
+        }
+        
         if (cachedRootNode == null) {
             logger.error("Aucun arbre de configuration disponible en cache");
             return null;
         }
         
+        // Lecture cohérente : relancée si une modification a lieu pendant le parcours.
+        // Les tables construites ne sont mises en cache qu'avec le résultat d'une lecture validée.
+        Draw draw = configService.readTree(this::drawFrom);
+        aliasTables.putAll(draw.builtTables);
+        GeneratedSlot slot = draw.slot;
+        
+        if (slot == null) {
+            logger.error("Impossible de parcourir l'arbre de configuration");
+            return null;
+        }
+        
+        logger.info("Slot généré : {}", slot);
+        return slot;
+    }
+    
+    private Draw drawFrom(TreeNode rootNode) {
+        Map<String, CachedTable> builtTables = new HashMap<>();
+        return new Draw(generateSlotFrom(rootNode, builtTables), builtTables);
+    }
+    
+    /**
+     * Parcourt l'arbre donné et construit le slot (sans effet de bord : les tables d'alias
+     * construites sont ajoutées à {@code builtTables})
+     */
+    private GeneratedSlot generateSlotFrom(TreeNode rootNode, Map<String, CachedTable> builtTables) {
+        if (rootNode == null) {
+            return null;
+        }
+        
         // Debug : afficher la structure de l'arbre actuel
-        logger.debug("Structure de l'arbre au moment de la génération :");
-        logTreeStructure(cachedRootNode, "");
+        if (logger.isDebugEnabled()) {
+            logger.debug("Structure de l'arbre au moment de la génération :");
+            logTreeStructure(rootNode, "");
+        }
         
         // Parcourir l'arbre selon les probabilités jusqu'à un nœud feuille
         List<String> path = new ArrayList<>();
-        TreeNode selectedNode = traverseTree(cachedRootNode, path);
+        TreeNode selectedNode = traverseTree(rootNode, path, builtTables);
         
         if (selectedNode == null) {
-            logger.error("Impossible de parcourir l'arbre de configuration");
             return null;
         }
         
@@ -79,15 +150,13 @@ public class TreeGenerationEngine {
         slot.addMetadata("nodeLevel", selectedNode.getLevel());
         slot.addMetadata("nodeColor", selectedNode.getColor());
         slot.addMetadata("finalPercentage", selectedNode.getPercentage());
-        
-        logger.info("Slot généré : {}", slot);
         return slot;
     }
     
     /**
      * Parcourt récursivement l'arbre selon les probabilités.
      */
-    private TreeNode traverseTree(TreeNode currentNode, List<String> path) {
+    private TreeNode traverseTree(TreeNode currentNode, List<String> path, Map<String, CachedTable> builtTables) {
         path.add(currentNode.getName());
         
         // Si c'est un nœud feuille (pas d'enfants), on le retourne
@@ -97,52 +166,106 @@ public class TreeGenerationEngine {
         }
         
         // Sinon, choisir un enfant selon les probabilités
-        TreeNode selectedChild = selectChildByProbability(currentNode.getChildren());
+        TreeNode selectedChild = selectChildByProbability(currentNode, builtTables);
         if (selectedChild == null) {
             logger.warn("Aucun enfant sélectionnable pour le nœud : {}", currentNode.getName());
             return currentNode; // Retourner le nœud actuel comme fallback
         }
         
         // Continuer récursivement
-        return traverseTree(selectedChild, path);
+        return traverseTree(selectedChild, path, builtTables);
     }
     
     /**
-     * Sélectionne un enfant selon sa probabilité.
+     * Sélectionne un enfant selon sa probabilité (table d'alias entière, tirage en O(1)).
+     * Une table en cache n'est utilisée que pour l'empreinte de contenu exacte du parent :
+     * une modification des pondérations ou de l'ordre des enfants est prise en compte
+     * dès la génération suivante, sans attendre l'événement de modification.
      */
-    private TreeNode selectChildByProbability(List<TreeNode> children) {
+    private TreeNode selectChildByProbability(TreeNode parent, Map<String, CachedTable> builtTables) {
+        List<TreeNode> children = parent.getChildren();
         if (children.isEmpty()) {
             return null;
         }
         
-        // Calculer la somme totale des pourcentages (normalisation)
-        double totalPercentage = children.stream()
-                .mapToDouble(TreeNode::getPercentage)
-                .sum();
+        long contentHash = parent.getContentHash();
+        CachedTable cached = aliasTables.get(parent.getId());
+        AliasTable table;
+        if (cached != null && cached.contentHash == contentHash) {
+            table = cached.table;
+        } else {
+            table = buildAliasTable(children);
+            if (table != null) {
+                builtTables.put(parent.getId(), new CachedTable(contentHash, table));
+            }
+        }
         
-        if (totalPercentage <= 0) {
+        if (table == null) {
             // Si aucun pourcentage valide, sélection aléatoire uniforme
             logger.debug("Aucun pourcentage valide, sélection aléatoire uniforme");
-            return children.get(random.nextInt(children.size()));
+            return children.get(ThreadLocalRandom.current().nextInt(children.size()));
         }
         
-        // Générer un nombre aléatoire entre 0 et la somme totale
-        double randomValue = random.nextDouble() * totalPercentage;
-        double cumulativePercentage = 0.0;
+        TreeNode child = children.get(table.sample(ThreadLocalRandom.current()));
+        logger.debug("Enfant sélectionné : {} ({}%)", child.getName(), child.getPercentage());
+        return child;
+    }
+    
+    private static AliasTable buildAliasTable(List<TreeNode> children) {
+        int[] weights = new int[children.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = children.get(i).getWeightPpm();
+        }
+        return AliasTable.build(weights);
+    }
+    
+    /**
+     * Compile l'arbre actuel pour une génération sans verrou ni accès à l'arbre (traitements par lots).
+     * L'arbre compilé de la dernière sauvegarde est aussi disponible à côté du fichier de configuration
+     * ({@link CompiledTree#pathFor}), projetable par d'autres processus avec {@link CompiledTree#map}.
+     */
+    public CompiledTree compileTree() {
+        CompiledEntry cached = compiledEntry;
+        CompiledEntry entry = configService.readTree(root -> {
+            long contentHash = root.getContentHash();
+            return cached != null && cached.contentHash == contentHash
+                    ? cached : new CompiledEntry(contentHash, CompiledTree.compile(root));
+        });
+        compiledEntry = entry;
+        return entry.tree;
+    }
+    
+    private static final class CachedTable {
+        final long contentHash;
+        final AliasTable table;
+        
+        CachedTable(long contentHash, AliasTable table) {
+            this.contentHash = contentHash;
+            this.table = table;
+        }
+    }
+    
+    /**
+     * Résultat d'un parcours : slot tiré et tables d'alias construites pendant ce parcours
+     */
+    private static final class Draw {
+        final GeneratedSlot slot;
+        final Map<String, CachedTable> builtTables;
         
-        // Sélectionner selon la probabilité cumulative
-        for (TreeNode child : children) {
-            cumulativePercentage += child.getPercentage();
-            if (randomValue <= cumulativePercentage) {
-                logger.debug("Enfant sélectionné : {} ({}%)", child.getName(), child.getPercentage());
-                return child;
-            }
+        Draw(GeneratedSlot slot, Map<String, CachedTable> builtTables) {
+            this.slot = slot;
+            this.builtTables = builtTables;
         }
+    }
+    
+    private static final class CompiledEntry {
+        final long contentHash;
+        final CompiledTree tree;
         
-        // Fallback : retourner le dernier enfant
-        TreeNode fallback = children.get(children.size() - 1);
-        logger.debug("Fallback : enfant sélectionné : {}", fallback.getName());
-        return fallback;
+        CompiledEntry(long contentHash, CompiledTree tree) {
+            this.contentHash = contentHash;
+            this.tree = tree;
+        }
     }
     
     /**
@@ -166,7 +289,10 @@ public class TreeGenerationEngine {
      * Retourne les statistiques de l'arbre de configuration.
      */
     public String getTreeStatistics() {
-        TreeNode rootNode = configService.getRootNode();
+        return configService.readTree(this::buildTreeStatistics);
+    }
+    
+    private String buildTreeStatistics(TreeNode rootNode) {
         if (rootNode == null) {
             return "Aucun arbre de configuration disponible.";
         }
@@ -0,0 +1,170 @@
+package com.applydance.service;
+
+import com.applydance.model.StringPool;
+import com.applydance.model.TreeNode;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lecture et écriture en flux (Jackson streaming) du JSON de configuration d'arbre.
+ * Les {@link TreeNode} sont construits directement avec leurs références parent, en une
+ * seule passe et sans graphe intermédiaire ({@code TreeNodeDTO}). Le format est celui
+ * de {@code TreeNodeDTO} : id, label, percentage, emoji, description, children, metadata.
+ */
+public class TreeJsonCodec {
+
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<Map<String, Object>>() {};
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * {@code objectMapper} fournit la fabrique de flux, le codec des métadonnées et l'indentation
+     */
+    public TreeJsonCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    // ========================================
+    // LECTURE
+    // ========================================
+
+    public TreeNode read(Path path) throws IOException {
+        try (InputStream input = Files.newInputStream(path)) {
+            return read(input);
+        }
+    }
+
+    public TreeNode read(InputStream input) throws IOException {
+        try (JsonParser parser = objectMapper.createParser(input)) {
+            return read(parser);
+        }
+    }
+
+    public TreeNode read(byte[] content) throws IOException {
+        try (JsonParser parser = objectMapper.createParser(content)) {
+            return read(parser);
+        }
+    }
+
+    /**
+     * Lit le nœud racine à partir de la position courante du parseur
+     */
+    public TreeNode read(JsonParser parser) throws IOException {
+        if (parser.currentToken() == null) {
+            parser.nextToken();
+        }
+        return readNode(parser, null);
+    }
+
+    private TreeNode readNode(JsonParser parser, TreeNode parent) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Nœud d'arbre attendu, trouvé : " + parser.currentToken());
+        }
+        TreeNode node = new TreeNode();
+        if (parent != null) {
+            parent.addChild(node);
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id":
+                    node.setId(textValue(parser));
+                    break;
+                case "label":
+                    node.setLabel(textValue(parser));
+                    break;
+                case "percentage":
+                    node.setPercentage(parser.getValueAsDouble());
+                    break;
+                case "emoji":
+                    node.setEmoji(textValue(parser));
+                    break;
+                case "description":
+                    node.setDescription(textValue(parser));
+                    break;
+                case "children":
+                    if (value == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            readNode(parser, node);
+                        }
+                    }
+                    break;
+                case "metadata":
+                    if (value == JsonToken.START_OBJECT) {
+                        Map<String, Object> metadata = parser.readValueAs(METADATA_TYPE);
+                        StringPool.canonicalizeValues(metadata);
+                        node.setMetadata(metadata != null ? metadata : new HashMap<>());
+                    }
+                    break;
+                default:
+                    // Champ inconnu (format plus récent) : ignoré avec ses éventuels sous-éléments
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        return node;
+    }
+
+    private static String textValue(JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+    }
+
+    // ========================================
+    // ÉCRITURE
+    // ========================================
+
+    public byte[] writeAsBytes(TreeNode root) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(8192);
+        write(root, output);
+        return output.toByteArray();
+    }
+
+    public void write(TreeNode root, OutputStream output) throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+            if (objectMapper.isEnabled(SerializationFeature.INDENT_OUTPUT)) {
+                generator.useDefaultPrettyPrinter();
+            }
+            write(root, generator);
+        }
+    }
+
+    /**
+     * Écrit un nœud et son sous-arbre avec le générateur donné
+     */
+    public void write(TreeNode node, JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", node.getId());
+        generator.writeStringField("label", node.getLabel());
+        generator.writeNumberField("percentage", node.getPercentage());
+        generator.writeStringField("emoji", node.getEmoji());
+        generator.writeStringField("description", node.getDescription());
+        generator.writeArrayFieldStart("children");
+        for (TreeNode child : node.getChildren()) {
+            write(child, generator);
+        }
+        generator.writeEndArray();
+        generator.writeFieldName("metadata");
+        generator.writeStartObject();
+        for (Map.Entry<String, Object> entry : node.getMetadata().entrySet()) {
+            generator.writeFieldName(entry.getKey());
+            generator.writeObject(entry.getValue());
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+}
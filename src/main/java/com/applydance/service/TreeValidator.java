@@ -0,0 +1,365 @@
+package com.applydance.service;
+
+import com.applydance.model.TreeNode;
+import com.applydance.model.Weights;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Moteur de validation de l'arbre : des règles enregistrées vérifient chaque nœud et toutes
+ * s'exécutent au cours d'un seul parcours (réparti en fork/join pour les grands arbres).
+ * Le résultat est une liste de diagnostics structurés (code, gravité, nœud, chemin, message)
+ * que la configuration, l'import/export et la validation temps réel partagent.
+ */
+public class TreeValidator {
+
+    // Codes des règles standard
+    public static final String DUPLICATE_ID = "DUPLICATE_ID";
+    public static final String PERCENTAGE_RANGE = "PERCENTAGE_RANGE";
+    public static final String PERCENTAGE_BOUNDS = "PERCENTAGE_BOUNDS";
+    public static final String CHILDREN_SUM = "CHILDREN_SUM";
+    public static final String ROOT_PERCENTAGE = "ROOT_PERCENTAGE";
+    public static final String ROOT_MISSING = "ROOT_MISSING";
+
+    // En deçà, le parcours séquentiel est plus rapide que la répartition des tâches
+    public static final int PARALLEL_THRESHOLD = 20_000;
+
+    private final List<Rule> rules = new CopyOnWriteArrayList<>();
+    // Incrémentée à chaque changement de règles (invalide les rapports mis en cache)
+    private volatile int rulesRevision;
+
+    /**
+     * Moteur avec les règles standard (bornes, somme des enfants, pourcentage de la racine)
+     */
+    public TreeValidator() {
+        addRule(TreeValidator::checkPercentage);
+        addRule(TreeValidator::checkChildrenSum);
+        addRule(TreeValidator::checkRootPercentage);
+    }
+
+    /**
+     * Enregistre une règle supplémentaire, exécutée sur chaque nœud lors des validations suivantes
+     */
+    public void addRule(Rule rule) {
+        rules.add(rule);
+        rulesRevision++;
+    }
+
+    public void removeRule(Rule rule) {
+        if (rules.remove(rule)) {
+            rulesRevision++;
+        }
+    }
+
+    public int getRulesRevision() {
+        return rulesRevision;
+    }
+
+    // ========================================
+    // VALIDATION
+    // ========================================
+
+    /**
+     * Valide un arbre complet (à appeler sous lecture cohérente pour l'arbre courant)
+     */
+    public Report validate(TreeNode root) {
+        return validate(root, false);
+    }
+
+    /**
+     * Valide un arbre complet ; {@code parallel} répartit le parcours sur le pool commun
+     */
+    public Report validate(TreeNode root, boolean parallel) {
+        if (root == null) {
+            return new Report(Collections.singletonList(
+                    Diagnostic.error(ROOT_MISSING, null, "Nœud racine manquant")), 0);
+        }
+        List<Rule> snapshot = new ArrayList<>(rules);
+        Traversal traversal = new Traversal(root, snapshot, parallel);
+        Partial partial = parallel ? ForkJoinPool.commonPool().invoke(traversal) : traversal.compute();
+        return new Report(Collections.unmodifiableList(partial.diagnostics), partial.nodeCount);
+    }
+
+    /**
+     * Diagnostics d'un seul nœud (sans la détection des doublons, qui dépend de tout l'arbre)
+     */
+    public List<Diagnostic> checkNode(TreeNode node) {
+        List<Diagnostic> diagnostics = new ArrayList<>(1);
+        for (Rule rule : rules) {
+            rule.check(node, diagnostics);
+        }
+        return diagnostics;
+    }
+
+    /**
+     * Parcours d'un sous-arbre : les grandes fratries sont réparties en sous-tâches,
+     * les diagnostics sont fusionnés dans l'ordre du parcours en profondeur. Chaque tâche
+     * détecte les doublons de son sous-arbre ; ceux d'un sous-arbre à l'autre le sont à la
+     * fusion, dans l'ordre du parcours : le résultat ne dépend pas de l'ordonnancement.
+     */
+    private static final class Traversal extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L;
+
+        private final TreeNode node;
+        private final List<Rule> rules;
+        private final boolean parallel;
+
+        Traversal(TreeNode node, List<Rule> rules, boolean parallel) {
+            this.node = node;
+            this.rules = rules;
+            this.parallel = parallel;
+        }
+
+        @Override
+        protected Partial compute() {
+            Partial partial = new Partial();
+            walk(node, partial);
+            return partial;
+        }
+
+        private void walk(TreeNode current, Partial partial) {
+            visit(current, partial);
+            List<TreeNode> children = current.getChildren();
+            // Répartition adaptative : seulement tant que le pool manque de tâches en attente
+            if (parallel && children.size() > 1 && getSurplusQueuedTaskCount() < 3) {
+                List<Traversal> tasks = new ArrayList<>(children.size());
+                for (TreeNode child : children) {
+                    tasks.add(new Traversal(child, rules, true));
+                }
+                invokeAll(tasks);
+                for (Traversal task : tasks) {
+                    partial.merge(task.join());
+                }
+                return;
+            }
+            for (TreeNode child : children) {
+                walk(child, partial);
+            }
+        }
+
+        private void visit(TreeNode current, Partial partial) {
+            Occurrence first = partial.firstOccurrences.putIfAbsent(current.getId(),
+                    new Occurrence(current, partial.diagnostics.size(), partial.nodeCount));
+            partial.nodeCount++;
+            if (first != null) {
+                partial.diagnostics.add(Diagnostic.error(DUPLICATE_ID, current, "ID dupliqué"));
+            }
+            for (Rule rule : rules) {
+                rule.check(current, partial.diagnostics);
+            }
+        }
+    }
+
+    /**
+     * Résultat d'un sous-arbre ; {@code firstOccurrences} : première occurrence de chaque identifiant
+     */
+    private static final class Partial {
+        final List<Diagnostic> diagnostics = new ArrayList<>();
+        final Map<String, Occurrence> firstOccurrences = new HashMap<>();
+        int nodeCount;
+
+        /**
+         * Ajoute le résultat du sous-arbre suivant dans l'ordre du parcours : ses premières
+         * occurrences d'identifiants déjà vus ici deviennent des doublons, signalés à la place
+         * qu'ils auraient eue dans un parcours séquentiel (avant les diagnostics du nœud)
+         */
+        void merge(Partial other) {
+            List<Occurrence> duplicates = new ArrayList<>();
+            for (Map.Entry<String, Occurrence> entry : other.firstOccurrences.entrySet()) {
+                if (firstOccurrences.containsKey(entry.getKey())) {
+                    duplicates.add(entry.getValue());
+                }
+            }
+            duplicates.sort(Comparator.comparingInt(occurrence -> occurrence.ordinal));
+
+            int offset = diagnostics.size();
+            int from = 0;
+            for (Occurrence duplicate : duplicates) {
+                diagnostics.addAll(other.diagnostics.subList(from, duplicate.position));
+                diagnostics.add(Diagnostic.error(DUPLICATE_ID, duplicate.node, "ID dupliqué"));
+                from = duplicate.position;
+            }
+            diagnostics.addAll(other.diagnostics.subList(from, other.diagnostics.size()));
+
+            int[] duplicateOrdinals = new int[duplicates.size()];
+            for (int i = 0; i < duplicateOrdinals.length; i++) {
+                duplicateOrdinals[i] = duplicates.get(i).ordinal;
+            }
+            for (Map.Entry<String, Occurrence> entry : other.firstOccurrences.entrySet()) {
+                Occurrence occurrence = entry.getValue();
+                if (!firstOccurrences.containsKey(entry.getKey())) {
+                    // Décalée des diagnostics qui la précèdent et des doublons insérés avant elle
+                    int insertedBefore = -Arrays.binarySearch(duplicateOrdinals, occurrence.ordinal) - 1;
+                    firstOccurrences.put(entry.getKey(), new Occurrence(occurrence.node,
+                            offset + occurrence.position + insertedBefore, nodeCount + occurrence.ordinal));
+                }
+            }
+            nodeCount += other.nodeCount;
+        }
+    }
+
+    /**
+     * Occurrence d'un nœud : position de ses diagnostics et rang dans le parcours du sous-arbre
+     */
+    private static final class Occurrence {
+        final TreeNode node;
+        final int position;
+        final int ordinal;
+
+        Occurrence(TreeNode node, int position, int ordinal) {
+            this.node = node;
+            this.position = position;
+            this.ordinal = ordinal;
+        }
+    }
+
+    // ========================================
+    // RÈGLES STANDARD
+    // ========================================
+
+    private static void checkPercentage(TreeNode node, List<Diagnostic> diagnostics) {
+        if (node.getWeightPpm() < 0) {
+            diagnostics.add(Diagnostic.error(PERCENTAGE_RANGE, node, "Pourcentage négatif"));
+        } else if (node.getWeightPpm() > Weights.TOTAL_PPM) {
+            diagnostics.add(Diagnostic.error(PERCENTAGE_RANGE, node, "Pourcentage > 100%"));
+        } else if (!WeightSolver.withinBounds(node)) {
+            diagnostics.add(Diagnostic.error(PERCENTAGE_BOUNDS, node, String.format(
+                    "Pourcentage hors bornes [%.1f%% - %.1f%%]",
+                    Weights.toPercentage(WeightSolver.minPpm(node)), Weights.toPercentage(WeightSolver.maxPpm(node)))));
+        }
+    }
+
+    private static void checkChildrenSum(TreeNode node, List<Diagnostic> diagnostics) {
+        if (node.hasChildren()) {
+            // Pondérations entières : la somme est exacte, aucune tolérance d'arrondi
+            long totalChildPpm = Weights.sumPpm(node.getChildren());
+            if (totalChildPpm != Weights.TOTAL_PPM) {
+                diagnostics.add(Diagnostic.error(CHILDREN_SUM, node, String.format(
+                        "Enfants totalisent %.1f%% au lieu de 100%%", Weights.toPercentage(totalChildPpm))));
+            }
+        }
+    }
+
+    private static void checkRootPercentage(TreeNode node, List<Diagnostic> diagnostics) {
+        if (node.getParent() == null && node.getWeightPpm() != Weights.TOTAL_PPM) {
+            diagnostics.add(Diagnostic.warning(ROOT_PERCENTAGE, node,
+                    "Le nœud racine devrait avoir 100% (actuel: " + node.getPercentage() + "%)"));
+        }
+    }
+
+    // ========================================
+    // TYPES
+    // ========================================
+
+    /**
+     * Vérification appliquée à chaque nœud ; sans effet de bord (exécutée en parallèle et
+     * éventuellement relancée par une lecture optimiste)
+     */
+    @FunctionalInterface
+    public interface Rule {
+        void check(TreeNode node, List<Diagnostic> diagnostics);
+    }
+
+    public enum Severity {
+        ERROR,
+        WARNING
+    }
+
+    /**
+     * Diagnostic structuré ; le chemin est calculé à la création, les nœuds ne sont pas retenus
+     */
+    public static final class Diagnostic {
+        public final String code;
+        public final Severity severity;
+        public final String nodeId;
+        public final String path;
+        public final String message;
+
+        public Diagnostic(String code, Severity severity, TreeNode node, String message) {
+            this.code = code;
+            this.severity = severity;
+            this.nodeId = node != null ? node.getId() : null;
+            this.path = node != null ? pathOf(node) : "";
+            this.message = message;
+        }
+
+        public static Diagnostic error(String code, TreeNode node, String message) {
+            return new Diagnostic(code, Severity.ERROR, node, message);
+        }
+
+        public static Diagnostic warning(String code, TreeNode node, String message) {
+            return new Diagnostic(code, Severity.WARNING, node, message);
+        }
+
+        public boolean isError() {
+            return severity == Severity.ERROR;
+        }
+
+        private static String pathOf(TreeNode node) {
+            StringBuilder path = new StringBuilder(node.getName());
+            for (TreeNode parent = node.getParent(); parent != null; parent = parent.getParent()) {
+                path.insert(0, " > ").insert(0, parent.getName());
+            }
+            return path.toString();
+        }
+
+        @Override
+        public String toString() {
+            return message + " (chemin: " + path + ")";
+        }
+    }
+
+    /**
+     * Résultat d'une validation complète (immuable)
+     */
+    public static final class Report {
+        private final List<Diagnostic> diagnostics;
+        private final int nodeCount;
+
+        Report(List<Diagnostic> diagnostics, int nodeCount) {
+            this.diagnostics = diagnostics;
+            this.nodeCount = nodeCount;
+        }
+
+        public List<Diagnostic> getDiagnostics() {
+            return diagnostics;
+        }
+
+        public int getNodeCount() {
+            return nodeCount;
+        }
+
+        public boolean isValid() {
+            return diagnostics.stream().noneMatch(Diagnostic::isError);
+        }
+
+        public List<Diagnostic> getErrors() {
+            List<Diagnostic> errors = new ArrayList<>();
+            for (Diagnostic diagnostic : diagnostics) {
+                if (diagnostic.isError()) {
+                    errors.add(diagnostic);
+                }
+            }
+            return errors;
+        }
+
+        public List<Diagnostic> getWarnings() {
+            List<Diagnostic> warnings = new ArrayList<>();
+            for (Diagnostic diagnostic : diagnostics) {
+                if (!diagnostic.isError()) {
+                    warnings.add(diagnostic);
+                }
+            }
+            return warnings;
+        }
+    }
+}
@@ -1,29 +1,52 @@
 package com.applydance.service;
 
 import com.applydance.model.TreeNode;
+import com.applydance.model.Weights;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
 
 /**
  * Service de validation en temps réel pour l'arbre de configuration.
  * Fournit un feedback visuel immédiat sur les erreurs de pourcentage et de structure.
+ * 
+ * Validation incrémentale : les résultats sont conservés par nœud et seuls les nœuds
+ * signalés par les événements de modification (nœud modifié, son parent et la fratrie
+ * redistribuée) sont revalidés ; l'index des identifiants détecte les doublons au fil
+ * des ajouts et suppressions. Une validation après une modification coûte O(fratrie).
  */
 public class ValidationService {
     
     private static final Logger logger = LoggerFactory.getLogger(ValidationService.class);
-    private static final double TOLERANCE = 0.1; // Tolérance pour les comparaisons de pourcentages
+    private static final String DUPLICATE_SUFFIX = "_duplicate";
     
     private final TreeConfigurationService configService;
     private final List<Consumer<ValidationStatus>> listeners;
     private ValidationStatus lastStatus;
     
+    // Cache de validation (accès synchronisés sur this) ; les statuts publiés en portent un instantané
+    private final Map<String, NodeValidationResult> results = new HashMap<>();
+    // Dernier instantané publié et clés modifiées depuis (null = à reconstruire entièrement)
+    private ResultSnapshot published;
+    private final Set<String> changedKeys = new HashSet<>();
+    private final Map<String, List<TreeNode>> idIndex = new HashMap<>();
+    private final Set<TreeNode> dirtyNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+    private boolean fullValidationNeeded = true;
+    private boolean missingRoot;
+    private boolean resultsChanged;
+    private int errorCount;
+    private int warningCount;
+    private int lastValidatedCount;
+    
     public ValidationService(TreeConfigurationService configService) {
         this.configService = configService;
-        this.listeners = new ArrayList<>();
+        this.listeners = new CopyOnWriteArrayList<>();
         this.lastStatus = new ValidationStatus();
+        // Notification directe : le traitement se limite à marquer les nœuds à revalider
+        configService.addTreeChangeListener(this::onTreeChanged, Runnable::run, 0);
     }
     
     /**
@@ -41,18 +64,34 @@ public class ValidationService {
     }
     
     /**
-     * Valide l'arbre complet et notifie les listeners
+     * Valide l'arbre (uniquement les nœuds modifiés depuis la dernière validation)
+     * et notifie les listeners si un résultat a changé
      */
     public ValidationStatus validateTree() {
-        TreeNode rootNode = configService.getRootNode();
-        ValidationStatus status = performValidation(rootNode);
-        
-        // Notifier les listeners si le statut a changé
-        if (!status.equals(lastStatus)) {
+        ValidationStatus status;
+        synchronized (this) {
+            if (fullValidationNeeded) {
+                fullValidationNeeded = false;
+                dirtyNodes.clear();
+                revalidateAll();
+            } else if (!dirtyNodes.isEmpty()) {
+                List<TreeNode> nodes = new ArrayList<>(dirtyNodes);
+                dirtyNodes.clear();
+                revalidate(nodes);
+            } else {
+                lastValidatedCount = 0;
+            }
+            
+            if (!resultsChanged) {
+                return lastStatus;
+            }
+            resultsChanged = false;
+            status = buildStatus();
             lastStatus = status;
-            notifyListeners(status);
         }
         
+        // Notifier les listeners (le statut a changé)
+        notifyListeners(status);
         return status;
     }
     
@@ -64,48 +103,18 @@ public class ValidationService {
             return new NodeValidationResult(false, "Nœud manquant", ValidationLevel.ERROR);
         }
         
-        NodeValidationResult result = new NodeValidationResult();
-        
-        // Validation du pourcentage individuel
-        if (node.getPercentage() < 0) {
-            result.isValid = false;
-            result.message = "Pourcentage négatif";
-            result.level = ValidationLevel.ERROR;
-            return result;
-        }
-        
-        if (node.getPercentage() > 100) {
-            result.isValid = false;
-            result.message = "Pourcentage > 100%";
-            result.level = ValidationLevel.ERROR;
-            return result;
+        // Règles communes du moteur de validation : le premier diagnostic l'emporte
+        List<TreeValidator.Diagnostic> diagnostics = configService.getValidator().checkNode(node);
+        if (diagnostics.isEmpty()) {
+            return new NodeValidationResult(true, "Valide", ValidationLevel.VALID);
         }
         
-        // Validation des enfants si présents
-        if (node.getChildren() != null && !node.getChildren().isEmpty()) {
-            double totalChildPercentage = node.getChildren().stream()
-                    .mapToDouble(TreeNode::getPercentage)
-                    .sum();
-            
-            double difference = Math.abs(totalChildPercentage - 100.0);
-            
-            if (difference > TOLERANCE) {
-                result.isValid = false;
-                result.message = String.format("Enfants totalisent %.1f%% au lieu de 100%%", totalChildPercentage);
-                result.level = ValidationLevel.ERROR;
-                result.suggestedPercentage = calculateSuggestedPercentage(node, totalChildPercentage);
-                return result;
-            } else if (difference > 0.01) {
-                result.isValid = true;
-                result.message = String.format("Léger décalage: %.2f%%", difference);
-                result.level = ValidationLevel.WARNING;
-                return result;
-            }
+        TreeValidator.Diagnostic diagnostic = diagnostics.get(0);
+        NodeValidationResult result = new NodeValidationResult(!diagnostic.isError(), diagnostic.message,
+                diagnostic.isError() ? ValidationLevel.ERROR : ValidationLevel.WARNING);
+        if (TreeValidator.CHILDREN_SUM.equals(diagnostic.code)) {
+            result.suggestedPercentage = calculateSuggestedPercentage(node);
         }
-        
-        result.isValid = true;
-        result.message = "Valide";
-        result.level = ValidationLevel.VALID;
         return result;
     }
     
@@ -119,17 +128,14 @@ public class ValidationService {
             return corrections;
         }
         
-        double totalCurrent = parentNode.getChildren().stream()
-                .mapToDouble(TreeNode::getPercentage)
-                .sum();
-        
-        if (Math.abs(totalCurrent - 100.0) > TOLERANCE) {
-            // Calcul proportionnel
-            for (TreeNode child : parentNode.getChildren()) {
-                double currentPercentage = child.getPercentage();
-                double correctedPercentage = (currentPercentage / totalCurrent) * 100.0;
-                
-                if (Math.abs(correctedPercentage - currentPercentage) > 0.01) {
+        if (!Weights.isComplete(parentNode.getChildren())) {
+            // Calcul exact par le solveur (nœuds figés et bornes respectés)
+            int[] corrected = solvedCorrection(parentNode);
+            for (int i = 0; i < corrected.length; i++) {
+                TreeNode child = parentNode.getChildren().get(i);
+                if (corrected[i] != child.getWeightPpm()) {
+                    double currentPercentage = child.getPercentage();
+                    double correctedPercentage = Weights.toPercentage(corrected[i]);
                     corrections.add(new PercentageCorrection(
                             child.getId(),
                             child.getName(),
@@ -145,7 +151,7 @@ public class ValidationService {
     }
     
     /**
-     * Applique automatiquement les corrections suggérées
+     * Applique automatiquement les corrections suggérées (une modification annulable)
      */
     public boolean applyCorrections(TreeNode parentNode) {
         List<PercentageCorrection> corrections = getSuggestedCorrections(parentNode);
@@ -154,87 +160,262 @@ public class ValidationService {
             return false;
         }
         
-        boolean applied = false;
-        for (PercentageCorrection correction : corrections) {
-            TreeNode childNode = findNodeById(parentNode.getChildren(), correction.nodeId);
-            if (childNode != null) {
-                childNode.setPercentage(correction.correctedPercentage);
-                applied = true;
-                logger.info("Correction appliquée sur {} : {:.1f}% -> {:.1f}%", 
-                        childNode.getName(), correction.currentPercentage, correction.correctedPercentage);
+        configService.edit("Correction des pourcentages de " + parentNode.getName(),
+                editor -> editor.normalize(parentNode));
+        logger.info("{} corrections appliquées sous {}", corrections.size(), parentNode.getName());
+        validateTree(); // Revalider après correction
+        return true;
+    }
+    
+    /**
+     * Corrige toutes les fratries de l'arbre en une seule passe (import cassé par exemple) :
+     * une sauvegarde et une notification. Retourne les parents dont les contraintes sont incompatibles.
+     */
+    public List<String> applyAllCorrections() {
+        List<String> unsatisfied = configService.normalizeTree();
+        validateTree();
+        return unsatisfied;
+    }
+    
+    // ========================================
+    // VALIDATION INCRÉMENTALE
+    // ========================================
+    
+    /**
+     * Marque les nœuds touchés par une modification ; l'index des identifiants suit la structure
+     */
+    private synchronized void onTreeChanged(TreeChangeEvent event) {
+        if (event.isFullRefresh()) {
+            fullValidationNeeded = true;
+            dirtyNodes.clear();
+            return;
+        }
+        if (fullValidationNeeded) {
+            return;
+        }
+        for (TreeChangeEvent.Change change : event.getChanges()) {
+            switch (change.type) {
+                case NODE_ADDED:
+                    indexSubtree(change.node);
+                    markDirty(change.parent);
+                    break;
+                case NODE_REMOVED:
+                    unindexSubtree(change.node);
+                    markDirty(change.parent);
+                    break;
+                case NODE_MOVED:
+                    markDirty(change.node);
+                    markDirty(change.parent);
+                    markDirty(change.oldParent);
+                    break;
+                case NODE_UPDATED:
+                    markDirty(change.node);
+                    markDirty(change.parent);
+                    break;
+                case WEIGHTS_CHANGED:
+                    // Fratrie redistribuée : le parent (somme) et chaque enfant (bornes)
+                    markDirty(change.parent);
+                    if (change.parent != null) {
+                        dirtyNodes.addAll(change.parent.getChildren());
+                    }
+                    break;
+                default:
+                    break;
             }
         }
-        
-        if (applied) {
-            configService.saveConfiguration();
-            validateTree(); // Revalider après correction
+    }
+    
+    private void markDirty(TreeNode node) {
+        if (node != null) {
+            dirtyNodes.add(node);
+        }
+    }
+    
+    private void indexSubtree(TreeNode node) {
+        List<TreeNode> nodes = idIndex.computeIfAbsent(node.getId(), id -> new ArrayList<>(1));
+        nodes.add(node);
+        updateDuplicate(node.getId(), nodes.size());
+        dirtyNodes.add(node);
+        for (TreeNode child : node.getChildren()) {
+            indexSubtree(child);
+        }
+    }
+    
+    private void unindexSubtree(TreeNode node) {
+        List<TreeNode> nodes = idIndex.get(node.getId());
+        if (nodes != null) {
+            nodes.removeIf(indexed -> indexed == node);
+            dirtyNodes.remove(node);
+            if (nodes.isEmpty()) {
+                idIndex.remove(node.getId());
+                removeResult(node.getId());
+            } else {
+                // Un homonyme subsiste : il reprend l'entrée de l'identifiant
+                dirtyNodes.add(nodes.get(0));
+            }
+            updateDuplicate(node.getId(), nodes.size());
+        }
+        for (TreeNode child : node.getChildren()) {
+            unindexSubtree(child);
+        }
+    }
+    
+    private void updateDuplicate(String id, int occurrences) {
+        if (occurrences > 1) {
+            putResult(id + DUPLICATE_SUFFIX, new NodeValidationResult(false, "ID dupliqué", ValidationLevel.ERROR));
+        } else {
+            removeResult(id + DUPLICATE_SUFFIX);
         }
-        
-        return applied;
     }
     
     /**
-     * Validation complète de l'arbre
+     * Revalide les nœuds donnés encore présents dans l'arbre (lecture cohérente, sans effet de bord)
      */
-    private ValidationStatus performValidation(TreeNode rootNode) {
-        ValidationStatus status = new ValidationStatus();
-        
-        if (rootNode == null) {
-            status.globalLevel = ValidationLevel.ERROR;
-            status.globalMessage = "Aucun arbre de configuration";
-            status.nodeValidations.put("root", new NodeValidationResult(false, "Nœud racine manquant", ValidationLevel.ERROR));
-            return status;
+    private void revalidate(List<TreeNode> nodes) {
+        List<NodeValidationResult> computed = configService.readTree(root -> {
+            List<NodeValidationResult> list = new ArrayList<>(nodes.size());
+            for (TreeNode node : nodes) {
+                list.add(isIndexed(node) ? validateNode(node) : null);
+            }
+            return list;
+        });
+        int validated = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            if (computed.get(i) != null) {
+                putResult(nodes.get(i).getId(), computed.get(i));
+                validated++;
+            }
         }
+        lastValidatedCount = validated;
+    }
+    
+    private boolean isIndexed(TreeNode node) {
+        List<TreeNode> nodes = idIndex.get(node.getId());
+        return nodes != null && nodes.stream().anyMatch(indexed -> indexed == node);
+    }
+    
+    /**
+     * Validation complète (démarrage, chargement, import) : reconstruit l'index et le cache
+     */
+    private void revalidateAll() {
+        Map<String, List<TreeNode>> index = new HashMap<>();
+        Map<String, NodeValidationResult> validations = configService.readTree(root -> {
+            index.clear();
+            missingRoot = false;
+            Map<String, NodeValidationResult> fresh = new HashMap<>();
+            if (root == null) {
+                missingRoot = true;
+                fresh.put("root", new NodeValidationResult(false, "Nœud racine manquant", ValidationLevel.ERROR));
+            } else {
+                validateNodeRecursively(root, fresh, index);
+            }
+            return fresh;
+        });
         
-        // Validation récursive
-        Map<String, NodeValidationResult> validations = new HashMap<>();
-        validateNodeRecursively(rootNode, validations, new HashSet<>());
-        
-        status.nodeValidations = validations;
-        
-        // Déterminer le niveau global
-        boolean hasErrors = validations.values().stream()
-                .anyMatch(v -> v.level == ValidationLevel.ERROR);
-        boolean hasWarnings = validations.values().stream()
-                .anyMatch(v -> v.level == ValidationLevel.WARNING);
-        
-        if (hasErrors) {
-            status.globalLevel = ValidationLevel.ERROR;
-            status.globalMessage = "Erreurs détectées dans l'arbre";
-        } else if (hasWarnings) {
-            status.globalLevel = ValidationLevel.WARNING;
-            status.globalMessage = "Avertissements détectés";
-        } else {
-            status.globalLevel = ValidationLevel.VALID;
-            status.globalMessage = "Configuration valide";
+        if (!validations.equals(results)) {
+            resultsChanged = true;
         }
-        
-        return status;
+        published = null;
+        changedKeys.clear();
+        results.clear();
+        idIndex.clear();
+        idIndex.putAll(index);
+        errorCount = 0;
+        warningCount = 0;
+        for (Map.Entry<String, NodeValidationResult> entry : validations.entrySet()) {
+            results.put(entry.getKey(), entry.getValue());
+            count(entry.getValue(), 1);
+        }
+        lastValidatedCount = validations.size();
     }
     
     /**
      * Validation récursive des nœuds
      */
-    private void validateNodeRecursively(TreeNode node, Map<String, NodeValidationResult> validations, Set<String> seenIds) {
-        NodeValidationResult nodeResult = validateNode(node);
-        validations.put(node.getId(), nodeResult);
+    private void validateNodeRecursively(TreeNode node, Map<String, NodeValidationResult> validations,
+                                         Map<String, List<TreeNode>> index) {
+        validations.put(node.getId(), validateNode(node));
         
         // Vérifier l'unicité des IDs
-        if (seenIds.contains(node.getId())) {
-            validations.put(node.getId() + "_duplicate", 
+        List<TreeNode> homonyms = index.computeIfAbsent(node.getId(), id -> new ArrayList<>(1));
+        homonyms.add(node);
+        if (homonyms.size() > 1) {
+            validations.put(node.getId() + DUPLICATE_SUFFIX, 
                     new NodeValidationResult(false, "ID dupliqué", ValidationLevel.ERROR));
-        } else {
-            seenIds.add(node.getId());
         }
         
         // Validation récursive des enfants
         if (node.getChildren() != null) {
             for (TreeNode child : node.getChildren()) {
-                validateNodeRecursively(child, validations, seenIds);
+                validateNodeRecursively(child, validations, index);
             }
         }
     }
     
+    private void putResult(String key, NodeValidationResult result) {
+        NodeValidationResult previous = results.put(key, result);
+        changedKeys.add(key);
+        if (previous != null) {
+            count(previous, -1);
+        }
+        count(result, 1);
+        if (!result.equals(previous)) {
+            resultsChanged = true;
+        }
+    }
+    
+    private void removeResult(String key) {
+        NodeValidationResult previous = results.remove(key);
+        if (previous != null) {
+            changedKeys.add(key);
+            count(previous, -1);
+            resultsChanged = true;
+        }
+    }
+    
+    private void count(NodeValidationResult result, int delta) {
+        if (result.level == ValidationLevel.ERROR) {
+            errorCount += delta;
+        } else if (result.level == ValidationLevel.WARNING) {
+            warningCount += delta;
+        }
+    }
+    
+    /**
+     * Statut global à partir des compteurs ; appelé seulement si les résultats ont changé :
+     * nodeValidations est alors un instantané immuable, qu'aucune validation ultérieure ne modifie
+     */
+    private ValidationStatus buildStatus() {
+        ValidationStatus status = new ValidationStatus();
+        if (published == null || published.isOvergrown(results.size())) {
+            published = ResultSnapshot.of(results);
+        } else {
+            published = published.with(changedKeys, results);
+        }
+        changedKeys.clear();
+        status.nodeValidations = published;
+        
+        // Déterminer le niveau global
+        if (errorCount > 0) {
+            status.globalLevel = ValidationLevel.ERROR;
+            status.globalMessage = missingRoot ? "Aucun arbre de configuration" : "Erreurs détectées dans l'arbre";
+        } else if (warningCount > 0) {
+            status.globalLevel = ValidationLevel.WARNING;
+            status.globalMessage = "Avertissements détectés";
+        } else {
+            status.globalLevel = ValidationLevel.VALID;
+            status.globalMessage = "Configuration valide";
+        }
+        return status;
+    }
+    
+    /**
+     * Nombre de nœuds revalidés lors du dernier appel à {@link #validateTree()} (diagnostic)
+     */
+    synchronized int getLastValidatedCount() {
+        return lastValidatedCount;
+    }
+    
     /**
      * Notifie tous les listeners du changement de statut
      */
@@ -251,25 +432,161 @@ public class ValidationService {
     /**
      * Méthodes utilitaires
      */
-    private double calculateSuggestedPercentage(TreeNode parent, double currentTotal) {
+    private double calculateSuggestedPercentage(TreeNode parent) {
         if (parent.getChildren() == null || parent.getChildren().isEmpty()) {
             return 0.0;
         }
         
-        return parent.getChildren().get(0).getPercentage() * (100.0 / currentTotal);
+        return Weights.toPercentage(solvedCorrection(parent)[0]);
     }
     
-    private TreeNode findNodeById(List<TreeNode> nodes, String id) {
-        return nodes.stream()
-                .filter(node -> id.equals(node.getId()))
-                .findFirst()
-                .orElse(null);
+    /**
+     * Résultat du solveur sur des copies légères des enfants (l'arbre n'est pas modifié)
+     */
+    private int[] solvedCorrection(TreeNode parent) {
+        List<TreeNode> copies = new ArrayList<>();
+        for (TreeNode child : parent.getChildren()) {
+            TreeNode copy = new TreeNode(child.getId(), child.getLabel());
+            copy.setWeightPpm(child.getWeightPpm());
+            copy.setMetadata(child.getMetadata());
+            copies.add(copy);
+        }
+        WeightSolver.solve(copies, Collections.emptySet());
+        int[] corrected = new int[copies.size()];
+        for (int i = 0; i < corrected.length; i++) {
+            corrected[i] = copies.get(i).getWeightPpm();
+        }
+        return corrected;
     }
     
     // ========================================
     // CLASSES AUXILIAIRES
     // ========================================
     
+    /**
+     * Instantané immuable des résultats, réparti par hachage en compartiments copiés à l'écriture :
+     * un nouvel instantané partage les compartiments inchangés du précédent et ne recopie que
+     * ceux des clés modifiées. Environ √n compartiments : une publication coûte O(√n) par
+     * compartiment touché au lieu d'une copie complète de l'arbre.
+     */
+    private static final class ResultSnapshot extends AbstractMap<String, NodeValidationResult> {
+        private static final int MIN_BUCKETS = 16;
+        
+        private final Map<String, NodeValidationResult>[] buckets;
+        private final int size;
+        private Set<Map.Entry<String, NodeValidationResult>> entries;
+        
+        private ResultSnapshot(Map<String, NodeValidationResult>[] buckets, int size) {
+            this.buckets = buckets;
+            this.size = size;
+        }
+        
+        /**
+         * Instantané complet (après une validation complète ou si les compartiments sont devenus trop gros)
+         */
+        static ResultSnapshot of(Map<String, NodeValidationResult> results) {
+            int count = MIN_BUCKETS;
+            while ((long) count * count < results.size()) {
+                count <<= 1;
+            }
+            Map<String, NodeValidationResult>[] buckets = newBuckets(count);
+            for (Map.Entry<String, NodeValidationResult> entry : results.entrySet()) {
+                int index = indexOf(entry.getKey(), count);
+                if (buckets[index].isEmpty()) {
+                    buckets[index] = new HashMap<>();
+                }
+                buckets[index].put(entry.getKey(), entry.getValue());
+            }
+            for (int i = 0; i < count; i++) {
+                buckets[i] = Collections.unmodifiableMap(buckets[i]);
+            }
+            return new ResultSnapshot(buckets, results.size());
+        }
+        
+        /**
+         * Nouvel instantané : seuls les compartiments des clés modifiées sont recopiés
+         */
+        ResultSnapshot with(Set<String> changedKeys, Map<String, NodeValidationResult> results) {
+            Map<String, NodeValidationResult>[] copy = buckets.clone();
+            Set<Integer> copied = new HashSet<>();
+            for (String key : changedKeys) {
+                int index = indexOf(key, copy.length);
+                if (copied.add(index)) {
+                    copy[index] = new HashMap<>(buckets[index]);
+                }
+                NodeValidationResult result = results.get(key);
+                if (result != null) {
+                    copy[index].put(key, result);
+                } else {
+                    copy[index].remove(key);
+                }
+            }
+            for (int index : copied) {
+                copy[index] = Collections.unmodifiableMap(copy[index]);
+            }
+            return new ResultSnapshot(copy, results.size());
+        }
+        
+        /**
+         * Vrai si les compartiments ont dépassé quatre fois la taille visée (arbre qui a grandi)
+         */
+        boolean isOvergrown(int resultCount) {
+            return resultCount > 4L * buckets.length * buckets.length;
+        }
+        
+        @SuppressWarnings("unchecked")
+        private static Map<String, NodeValidationResult>[] newBuckets(int count) {
+            Map<String, NodeValidationResult>[] buckets = new Map[count];
+            Arrays.fill(buckets, Collections.emptyMap());
+            return buckets;
+        }
+        
+        private static int indexOf(Object key, int count) {
+            int hash = key.hashCode();
+            return (hash ^ (hash >>> 16)) & (count - 1);
+        }
+        
+        @Override
+        public NodeValidationResult get(Object key) {
+            return key == null ? null : buckets[indexOf(key, buckets.length)].get(key);
+        }
+        
+        @Override
+        public boolean containsKey(Object key) {
+            return key != null && buckets[indexOf(key, buckets.length)].containsKey(key);
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+        
+        @Override
+        public NodeValidationResult remove(Object key) {
+            throw new UnsupportedOperationException("Instantané de validation immuable");
+        }
+        
+        @Override
+        public Set<Map.Entry<String, NodeValidationResult>> entrySet() {
+            if (entries == null) {
+                entries = new AbstractSet<Map.Entry<String, NodeValidationResult>>() {
+                    @Override
+                    public Iterator<Map.Entry<String, NodeValidationResult>> iterator() {
+                        return Arrays.stream(buckets)
+                                .flatMap(bucket -> bucket.entrySet().stream())
+                                .iterator();
+                    }
+                    
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+                };
+            }
+            return entries;
+        }
+    }
+    
     /**
      * Statut global de validation
      */
@@ -0,0 +1,212 @@
+package com.applydance.service;
+
+import com.applydance.model.TreeNode;
+import com.applydance.model.Weights;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Solveur de redistribution sous contraintes d'une fratrie.
+ * Contraintes lues dans les métadonnées des nœuds :
+ * <ul>
+ *   <li>{@code locked} : pourcentage figé, jamais modifié par une redistribution</li>
+ *   <li>{@code minPercentage} / {@code maxPercentage} : bornes du pourcentage</li>
+ * </ul>
+ * Les nœuds figés (et ceux que l'utilisateur vient de modifier) sont conservés, le reste
+ * est réparti proportionnellement en une passe triée sur les bornes : un nœud qui atteindrait
+ * une borne y est fixé et les autres se partagent le reste (voir {@link #fill}).
+ */
+public final class WeightSolver {
+
+    public static final String LOCKED_KEY = "locked";
+    public static final String MIN_KEY = "minPercentage";
+    public static final String MAX_KEY = "maxPercentage";
+
+    private WeightSolver() {
+    }
+
+    public static boolean isLocked(TreeNode node) {
+        Object value = node.getMetadata(LOCKED_KEY);
+        return value instanceof Boolean ? (Boolean) value : "true".equalsIgnoreCase(String.valueOf(value));
+    }
+
+    public static int minPpm(TreeNode node) {
+        Double min = node.getMetadataAsDouble(MIN_KEY);
+        return min != null ? Math.max(0, Weights.toPpm(min)) : 0;
+    }
+
+    public static int maxPpm(TreeNode node) {
+        Double max = node.getMetadataAsDouble(MAX_KEY);
+        return max != null ? Math.min(Weights.TOTAL_PPM, Weights.toPpm(max)) : Weights.TOTAL_PPM;
+    }
+
+    /**
+     * Vérifie les bornes d'un nœud (pourcentage dans [min, max])
+     */
+    public static boolean withinBounds(TreeNode node) {
+        int weight = node.getWeightPpm();
+        return weight >= minPpm(node) && weight <= maxPpm(node);
+    }
+
+    /**
+     * Ramène la fratrie à exactement 100% en respectant les contraintes.
+     * {@code pinned} : nœuds à conserver en plus des nœuds figés (valeur saisie par l'utilisateur).
+     * Retourne false si les contraintes sont incompatibles (meilleure approximation appliquée).
+     */
+    public static boolean solve(List<TreeNode> children, Collection<TreeNode> pinned) {
+        int count = children.size();
+        if (count == 0) {
+            return true;
+        }
+        int[] weights = new int[count];
+        int[] lower = new int[count];
+        int[] upper = new int[count];
+        boolean[] fixed = new boolean[count];
+        long target = Weights.TOTAL_PPM;
+
+        for (int i = 0; i < count; i++) {
+            TreeNode child = children.get(i);
+            lower[i] = minPpm(child);
+            upper[i] = Math.max(lower[i], maxPpm(child));
+            weights[i] = child.getWeightPpm();
+            if (isLocked(child) || (pinned != null && pinned.contains(child))) {
+                weights[i] = clamp(weights[i], lower[i], upper[i]);
+                fixed[i] = true;
+                target -= weights[i];
+            }
+        }
+
+        boolean satisfied = fill(weights, lower, upper, fixed, target);
+
+        for (int i = 0; i < count; i++) {
+            children.get(i).setWeightPpm(weights[i]);
+        }
+        return satisfied;
+    }
+
+    /**
+     * Répartit {@code target} sur les nœuds libres : chacun reçoit clamp(λ × poids, min, max),
+     * λ étant le facteur pour lequel la somme atteint la cible. Cette somme croît par morceaux
+     * linéaires de λ ; ses points de rupture (min / poids et max / poids) sont triés puis
+     * parcourus une fois, en fractions exactes, jusqu'au segment qui contient la cible :
+     * O(n log n). Les nœuds restés entre leurs bornes se partagent le reste proportionnellement.
+     * Retourne false si la cible est hors d'atteinte (nœuds laissés à leurs bornes).
+     */
+    private static boolean fill(int[] weights, int[] lower, int[] upper, boolean[] fixed, long target) {
+        List<Integer> free = new ArrayList<>();
+        boolean anyWeight = false;
+        for (int i = 0; i < weights.length; i++) {
+            if (!fixed[i]) {
+                free.add(i);
+                anyWeight |= weights[i] > 0;
+            }
+        }
+        if (free.isEmpty()) {
+            return target == 0;
+        }
+        if (target < 0) {
+            // Les nœuds conservés dépassent déjà 100% : les autres prennent leur minimum
+            for (int index : free) {
+                weights[index] = lower[index];
+            }
+            return false;
+        }
+
+        // Poids de répartition (tous nuls : parts égales, comme Weights.distribute)
+        long[] base = new long[weights.length];
+        List<Breakpoint> breakpoints = new ArrayList<>(2 * free.size());
+        long constant = 0;
+        long reachable = 0;
+        for (int index : free) {
+            base[index] = anyWeight ? Math.max(0, weights[index]) : 1;
+            constant += lower[index];
+            if (base[index] > 0) {
+                breakpoints.add(new Breakpoint(index, lower[index], base[index], false));
+                breakpoints.add(new Breakpoint(index, upper[index], base[index], true));
+                reachable += upper[index];
+            } else {
+                reachable += lower[index];
+            }
+        }
+        if (target < constant || target > reachable) {
+            for (int index : free) {
+                weights[index] = target < constant || base[index] == 0 ? lower[index] : upper[index];
+            }
+            return false;
+        }
+        breakpoints.sort(null);
+
+        // Parcours : constant = somme des nœuds à une borne, slope = somme des poids entre leurs bornes
+        boolean[] interior = new boolean[weights.length];
+        boolean[] atUpper = new boolean[weights.length];
+        long slope = 0;
+        for (Breakpoint breakpoint : breakpoints) {
+            // La cible est atteinte avant ce point de rupture : constant + slope × λ >= target
+            if (constant * breakpoint.denominator + slope * breakpoint.numerator >= target * breakpoint.denominator) {
+                break;
+            }
+            int index = breakpoint.index;
+            if (breakpoint.upper) {
+                interior[index] = false;
+                atUpper[index] = true;
+                constant += upper[index];
+                slope -= base[index];
+            } else {
+                interior[index] = true;
+                constant -= lower[index];
+                slope += base[index];
+            }
+        }
+
+        List<Integer> shared = new ArrayList<>();
+        for (int index : free) {
+            if (interior[index]) {
+                shared.add(index);
+            } else {
+                weights[index] = atUpper[index] ? upper[index] : lower[index];
+            }
+        }
+        if (!shared.isEmpty()) {
+            int[] sharedWeights = new int[shared.size()];
+            for (int j = 0; j < sharedWeights.length; j++) {
+                sharedWeights[j] = (int) base[shared.get(j)];
+            }
+            // Parts exactes strictement entre les bornes : l'arrondi (plancher ou +1) les y laisse
+            int[] distributed = Weights.distribute(sharedWeights, (int) (target - constant));
+            for (int j = 0; j < distributed.length; j++) {
+                weights[shared.get(j)] = distributed[j];
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Valeur de λ (fraction bound / poids) à laquelle un nœud atteint une borne ; à valeur égale,
+     * les sorties par le minimum précèdent les arrivées au maximum
+     */
+    private static final class Breakpoint implements Comparable<Breakpoint> {
+        final int index;
+        final long numerator;
+        final long denominator;
+        final boolean upper;
+
+        Breakpoint(int index, long numerator, long denominator, boolean upper) {
+            this.index = index;
+            this.numerator = numerator;
+            this.denominator = denominator;
+            this.upper = upper;
+        }
+
+        @Override
+        public int compareTo(Breakpoint other) {
+            int order = Long.compare(numerator * other.denominator, other.numerator * denominator);
+            return order != 0 ? order : Boolean.compare(upper, other.upper);
+        }
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
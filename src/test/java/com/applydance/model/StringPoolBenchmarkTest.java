@@ -0,0 +1,186 @@
+package com.applydance.model;
+
+import com.applydance.service.TreeJsonCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Mesure de l'empreinte mémoire économisée par le pool de chaînes.
+ * L'empreinte est estimée à partir des instances distinctes réellement retenues
+ * (en-tête et tableau d'octets d'une String compacte), puis mesurée sur le tas (MemoryMXBean).
+ * Hors de la suite par défaut (dépend du ramasse-miettes) :
+ * {@code mvn test -Dtest=StringPoolBenchmarkTest -Dbenchmark=true}
+ */
+@DisplayName("StringPool - Empreinte mémoire")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class StringPoolBenchmarkTest {
+
+    private static final String[] BOARDS = {"Linkedin", "Apec", "Indeed", "Welcome to the Jungle", "Hellowork"};
+    private static final String[] EMOJIS = {"🔹", "🔸", "📊", "📈"};
+    private static final String[] COLORS = {"#5E81AC", "#81A1C1", "#88C0D0", "#A3BE8C"};
+
+    @Test
+    @DisplayName("Un arbre de 100 000 nœuds chargé en flux : octets de chaînes avec et sans pool")
+    void loadedTreeStringBytes() throws Exception {
+        // Given: Un arbre synthétique de 100 000 nœuds sérialisé en JSON
+        TreeJsonCodec codec = new TreeJsonCodec(new ObjectMapper());
+        byte[] json = codec.writeAsBytes(syntheticTree(100_000, false));
+
+        // When: Rechargement par le chargeur en flux (chaque valeur lue est une nouvelle chaîne)
+        TreeNode loaded = codec.read(json);
+
+        // Then
+        Set<String> retained = Collections.newSetFromMap(new IdentityHashMap<>());
+        long withoutPool = 0;
+        int nodes = 0;
+        Deque<TreeNode> pending = new ArrayDeque<>();
+        pending.add(loaded);
+        while (!pending.isEmpty()) {
+            TreeNode node = pending.poll();
+            nodes++;
+            for (String value : new String[] {node.getLabel(), node.getEmoji(), node.getColor()}) {
+                if (value != null) {
+                    withoutPool += estimateBytes(value);
+                    retained.add(value);
+                }
+            }
+            pending.addAll(node.getChildren());
+        }
+        long withPool = retained.stream().mapToLong(StringPoolBenchmarkTest::estimateBytes).sum();
+        System.out.printf("Arbre de %d nœuds : %d octets de chaînes sans pool, %d avec pool%n",
+                nodes, withoutPool, withPool);
+        assertEquals(100_000, nodes);
+        assertTrue(withPool * 100 < withoutPool, "Réduction attendue d'au moins 99 %");
+    }
+
+    @Test
+    @DisplayName("Un historique d'un million de slots : octets de chaînes avec et sans pool")
+    void millionSlotsStringBytes() {
+        // Given/When: Des slots construits à partir de chaînes fraîches (comme après désérialisation)
+        Set<String> retained = Collections.newSetFromMap(new IdentityHashMap<>());
+        long withoutPool = 0;
+        for (int i = 0; i < 1_000_000; i++) {
+            String board = BOARDS[i % BOARDS.length];
+            GeneratedSlot slot = new GeneratedSlot(new String("Racine > Branche > " + board),
+                    new String("leaf" + (i % 20)), new String(board));
+            slot.addMetadata("nodeColor", new String(COLORS[i % COLORS.length]));
+            for (String value : new String[] {slot.getDecisionPath(), slot.getSelectedNodeId(),
+                    slot.getSelectedNodeName(), (String) slot.getMetadata("nodeColor")}) {
+                withoutPool += estimateBytes(value);
+                retained.add(value);
+            }
+        }
+
+        // Then
+        long withPool = retained.stream().mapToLong(StringPoolBenchmarkTest::estimateBytes).sum();
+        System.out.printf("Historique de 1 000 000 slots : %d octets de chaînes sans pool, %d avec pool%n",
+                withoutPool, withPool);
+        assertTrue(withPool * 1000 < withoutPool, "Réduction attendue d'au moins 99,9 %");
+    }
+
+    @Test
+    @DisplayName("Mémoire retenue après chargement (MemoryMXBean) : moindre avec le pool, qui ne retient pas les chaînes libérées")
+    void poolReducesRetainedHeapAndReleasesUnusedStrings() throws Exception {
+        // Given
+        TreeJsonCodec codec = new TreeJsonCodec(new ObjectMapper());
+        byte[] repeated = codec.writeAsBytes(syntheticTree(100_000, false));
+        byte[] unique = codec.writeAsBytes(syntheticTree(20_000, true));
+
+        // When: Mémoire retenue par l'arbre chargé, pool désactivé puis activé
+        long withoutPool;
+        long withPool;
+        try {
+            StringPool.setEnabled(false);
+            withoutPool = retainedAfterLoad(codec, repeated);
+        } finally {
+            StringPool.setEnabled(true);
+        }
+        withPool = retainedAfterLoad(codec, repeated);
+        System.out.printf("Arbre de 100 000 nœuds : %d octets retenus sans pool, %d avec pool%n", withoutPool, withPool);
+
+        // Then: Les libellés, emojis et couleurs ne sont plus dupliqués
+        assertTrue(withPool < withoutPool - 100_000L * 3 * 40,
+                "Au moins les 300 000 chaînes répétées (40 octets chacune) doivent être économisées");
+
+        // When: Un arbre aux libellés uniques est chargé puis abandonné
+        TreeNode loaded = codec.read(unique);
+        int whileLoaded = StringPool.size();
+        assertTrue(StringPool.isCanonical(loaded.findById("n19999").getLabel()));
+        loaded = null;
+        int afterRelease = whileLoaded;
+        for (int attempt = 0; attempt < 20 && afterRelease > whileLoaded - 19_000; attempt++) {
+            System.gc();
+            Thread.sleep(50);
+            afterRelease = StringPool.size();
+        }
+        System.out.printf("Pool : %d entrées avec l'arbre chargé, %d après libération%n", whileLoaded, afterRelease);
+
+        // Then: Ses libellés ont quitté le pool
+        assertTrue(afterRelease <= whileLoaded - 19_000,
+                () -> "Pool : " + whileLoaded + " entrées avec l'arbre chargé, " + StringPool.size() + " après");
+    }
+
+    /**
+     * Octets de tas encore occupés après le chargement, l'arbre chargé étant toujours référencé
+     */
+    private static long retainedAfterLoad(TreeJsonCodec codec, byte[] json) throws Exception {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long before = settledHeapUsed(memory);
+        TreeNode loaded = codec.read(json);
+        long after = settledHeapUsed(memory);
+        assertEquals("Racine", loaded.getLabel());
+        Reference.reachabilityFence(loaded);
+        return after - before;
+    }
+
+    private static long settledHeapUsed(MemoryMXBean memory) throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Arbre de {@code size} nœuds, 10 enfants par nœud ; libellés répétés ou tous distincts
+     */
+    private static TreeNode syntheticTree(int size, boolean uniqueLabels) {
+        TreeNode root = new TreeNode("root", "Racine", 100.0, "🌳");
+        int created = 1;
+        Deque<TreeNode> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (created < size) {
+            TreeNode parent = queue.poll();
+            for (int i = 0; i < 10 && created < size; i++, created++) {
+                String label = uniqueLabels ? "Libellé unique " + created : BOARDS[created % BOARDS.length];
+                TreeNode child = new TreeNode("n" + created, label, 10.0, EMOJIS[created % EMOJIS.length]);
+                child.setColor(COLORS[created % COLORS.length]);
+                parent.addChild(child);
+                queue.add(child);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Taille approximative d'une String compacte : objet (24 octets) + tableau (16 octets + contenu), aligné sur 8
+     */
+    private static long estimateBytes(String value) {
+        boolean latin1 = value.chars().allMatch(c -> c < 256);
+        long array = 16 + (long) value.length() * (latin1 ? 1 : 2);
+        return 24 + ((array + 7) / 8) * 8;
+    }
+}
@@ -0,0 +1,108 @@
+package com.applydance.model;
+
+import com.applydance.service.TreeJsonCodec;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests du pool de canonisation des chaînes répétées.
+ * Seule l'identité des instances est vérifiée ici ; l'empreinte mémoire est mesurée
+ * par {@link StringPoolBenchmarkTest}.
+ */
+@DisplayName("StringPool - Déduplication des chaînes")
+class StringPoolTest {
+
+    @Test
+    @DisplayName("Des chaînes de même contenu partagent l'instance canonique")
+    void equalStringsShareCanonicalInstance() {
+        // Given
+        String first = StringPool.canonical(new String("Welcome to the Jungle"));
+
+        // When
+        String second = StringPool.canonical(new String("Welcome to the Jungle"));
+
+        // Then
+        assertSame(first, second);
+        assertTrue(StringPool.isCanonical(first));
+        assertFalse(StringPool.isCanonical(new String("Welcome to the Jungle")));
+    }
+
+    @Test
+    @DisplayName("Les chaînes longues ne sont pas conservées dans le pool")
+    void longStringsAreNotPooled() {
+        // Given
+        String text = "x".repeat(StringPool.MAX_LENGTH + 1);
+
+        // When
+        String result = StringPool.canonical(text);
+
+        // Then
+        assertSame(text, result);
+        assertFalse(StringPool.isCanonical(text));
+    }
+
+    @Test
+    @DisplayName("Un arbre chargé en flux partage ses libellés, emojis et couleurs")
+    void loadedTreeSharesRepeatedStrings() throws Exception {
+        // Given: Deux nœuds aux valeurs identiques sérialisés en JSON
+        TreeJsonCodec codec = new TreeJsonCodec(new ObjectMapper());
+        TreeNode root = new TreeNode("root", "Racine", 100.0, "🌳");
+        for (String id : new String[] {"a", "b"}) {
+            TreeNode child = new TreeNode(id, "Apec", 50.0, "🔹");
+            child.setColor("#81A1C1");
+            root.addChild(child);
+        }
+
+        // When: Rechargement par le chargeur en flux (chaque valeur lue est une nouvelle chaîne)
+        TreeNode loaded = codec.read(codec.writeAsBytes(root));
+
+        // Then
+        TreeNode a = loaded.findById("a");
+        TreeNode b = loaded.findById("b");
+        assertSame(a.getLabel(), b.getLabel());
+        assertSame(a.getEmoji(), b.getEmoji());
+        assertSame(a.getColor(), b.getColor());
+        assertTrue(StringPool.isCanonical(a.getLabel()));
+    }
+
+    @Test
+    @DisplayName("Les slots construits à partir de chaînes fraîches retiennent les instances canoniques")
+    void slotsShareRepeatedStrings() {
+        // Given/When: Deux slots construits à partir de copies distinctes (comme après désérialisation)
+        GeneratedSlot first = new GeneratedSlot(new String("Racine > Apec"), new String("leaf1"), new String("Apec"));
+        first.addMetadata("nodeColor", new String("#81A1C1"));
+        GeneratedSlot second = new GeneratedSlot(new String("Racine > Apec"), new String("leaf1"), new String("Apec"));
+        second.addMetadata("nodeColor", new String("#81A1C1"));
+
+        // Then
+        assertSame(first.getDecisionPath(), second.getDecisionPath());
+        assertSame(first.getSelectedNodeId(), second.getSelectedNodeId());
+        assertSame(first.getSelectedNodeName(), second.getSelectedNodeName());
+        assertSame(first.getMetadata("nodeColor"), second.getMetadata("nodeColor"));
+        assertTrue(StringPool.isCanonical(first.getDecisionPath()));
+    }
+
+    @Test
+    @DisplayName("Le chargement JSON de l'historique canonise les chaînes des slots")
+    void historyDeserializationCanonicalizesStrings() throws Exception {
+        // Given
+        ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        String json = "[{\"decisionPath\":\"Racine > Apec\",\"selectedNodeName\":\"Apec\",\"metadata\":{\"nodeColor\":\"#81A1C1\"}},"
+                + "{\"decisionPath\":\"Racine > Apec\",\"selectedNodeName\":\"Apec\",\"metadata\":{\"nodeColor\":\"#81A1C1\"}}]";
+
+        // When
+        List<GeneratedSlot> slots = mapper.readValue(json, new TypeReference<List<GeneratedSlot>>() {});
+
+        // Then
+        assertSame(slots.get(0).getDecisionPath(), slots.get(1).getDecisionPath());
+        assertSame(slots.get(0).getSelectedNodeName(), slots.get(1).getSelectedNodeName());
+        assertSame(slots.get(0).getMetadata("nodeColor"), slots.get(1).getMetadata("nodeColor"));
+    }
+}
@@ -0,0 +1,123 @@
+package com.applydance.model;
+
+import com.applydance.service.TreeConfigurationService;
+import com.applydance.service.TreeGenerationEngine;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests de l'empreinte de contenu (hash de Merkle) des nœuds.
+ */
+@DisplayName("TreeNode - Empreinte de contenu")
+class TreeNodeContentHashTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static TreeNode sampleTree() {
+        TreeNode root = new TreeNode("root", "Racine", 100.0, "🌳");
+        TreeNode branchA = new TreeNode("a", "Branche A", 60.0);
+        branchA.addChild(new TreeNode("a1", "A1", 50.0));
+        branchA.addChild(new TreeNode("a2", "A2", 50.0));
+        TreeNode branchB = new TreeNode("b", "Branche B", 40.0);
+        branchB.addChild(new TreeNode("b1", "B1", 100.0));
+        root.addChild(branchA);
+        root.addChild(branchB);
+        return root;
+    }
+
+    @Test
+    @DisplayName("Une modification change l'empreinte du chemin modifié et laisse les autres sous-arbres intacts")
+    void editChangesOnlyEditedPath() {
+        // Given
+        TreeNode root = sampleTree();
+        TreeNode branchA = root.findById("a");
+        TreeNode branchB = root.findById("b");
+        long rootHash = root.getContentHash();
+        long branchAHash = branchA.getContentHash();
+        long branchBHash = branchB.getContentHash();
+
+        // When
+        root.findById("a1").setLabel("A1 modifié");
+
+        // Then
+        assertNotEquals(rootHash, root.getContentHash());
+        assertNotEquals(branchAHash, branchA.getContentHash());
+        assertEquals(branchBHash, branchB.getContentHash());
+
+        // When: Retour au contenu initial
+        root.findById("a1").setLabel("A1");
+
+        // Then
+        assertEquals(rootHash, root.getContentHash());
+    }
+
+    @Test
+    @DisplayName("Deux arbres de même contenu ont la même empreinte, quel que soit l'ordre des métadonnées")
+    void sameContentSameHash() {
+        // Given
+        TreeNode first = sampleTree();
+        TreeNode second = first.clone();
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("locked", true);
+        metadata.put("color", "#5E81AC");
+        Map<String, Object> reversed = new LinkedHashMap<>();
+        reversed.put("color", "#5E81AC");
+        reversed.put("locked", true);
+
+        // When
+        first.findById("b1").setMetadata(metadata);
+        second.findById("b1").setMetadata(reversed);
+
+        // Then
+        assertEquals(first.getContentHash(), second.getContentHash());
+        second.findById("b1").setWeightPpm(999_999);
+        assertNotEquals(first.getContentHash(), second.getContentHash());
+        // Ordre des enfants significatif
+        TreeNode reordered = sampleTree();
+        TreeNode a = reordered.findById("a");
+        reordered.removeChild(a);
+        reordered.addChild(a);
+        assertNotEquals(sampleTree().getContentHash(), reordered.getContentHash());
+    }
+
+    @Test
+    @DisplayName("L'état développé/réduit ne change pas l'empreinte")
+    void expandedStateIsNotContent() {
+        // Given
+        TreeNode root = sampleTree();
+        long rootHash = root.getContentHash();
+
+        // When
+        root.findById("a").setExpanded(false);
+
+        // Then
+        assertEquals(rootHash, root.getContentHash());
+    }
+
+    @Test
+    @DisplayName("L'arbre compilé est réutilisé tant que le contenu est inchangé")
+    void compiledTreeIsCachedByContentHash() {
+        // Given
+        TreeConfigurationService configService = new TreeConfigurationService(tempDir.resolve("tree_configuration.json"));
+        try {
+            TreeGenerationEngine engine = new TreeGenerationEngine(configService);
+
+            // When/Then
+            assertSame(engine.compileTree(), engine.compileTree());
+            TreeNode subA1 = configService.getRootNode().findById("subA1");
+            Object before = engine.compileTree();
+            configService.updateNode(subA1, node -> node.setLabel("Renommé"));
+            assertNotSame(before, engine.compileTree());
+        } finally {
+            configService.shutdown();
+        }
+    }
+}
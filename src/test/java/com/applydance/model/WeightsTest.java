@@ -0,0 +1,65 @@
+package com.applydance.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests des pondérations en virgule fixe (ppm).
+ */
+@DisplayName("Weights - Pondérations entières")
+class WeightsTest {
+
+    @Test
+    @DisplayName("La répartition par plus forts restes totalise exactement 100%")
+    void distributeSumsExactly() {
+        // Given: Trois parts égales (100 / 3 n'est pas représentable)
+        int[] result = Weights.distribute(new int[] {1, 1, 1}, Weights.TOTAL_PPM);
+
+        // Then: 333 334 + 333 333 + 333 333, l'unité restante va au premier
+        assertArrayEquals(new int[] {333_334, 333_333, 333_333}, result);
+        assertEquals(Weights.TOTAL_PPM, Arrays.stream(result).sum());
+    }
+
+    @Test
+    @DisplayName("Des pondérations nulles sont réparties équitablement")
+    void zeroWeightsAreSplitEqually() {
+        int[] result = Weights.distribute(new int[] {0, 0, 0, 0}, 500_000);
+        assertArrayEquals(new int[] {125_000, 125_000, 125_000, 125_000}, result);
+    }
+
+    @Test
+    @DisplayName("Le JSON reste un pourcentage décimal")
+    void jsonKeepsDecimalPercentage() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        TreeNode node = new TreeNode("n", "Nœud", 33.3333);
+
+        String json = mapper.writeValueAsString(node);
+        assertTrue(json.contains("\"percentage\":33.3333"));
+        assertFalse(json.contains("weightPpm"));
+
+        TreeNode read = mapper.readValue("{\"id\":\"n\",\"label\":\"Nœud\",\"percentage\":12.5}", TreeNode.class);
+        assertEquals(125_000, read.getWeightPpm());
+    }
+
+    @Test
+    @DisplayName("Les résidus d'arrondi des configurations décimales sont corrigés")
+    void legacyRoundingIsRepaired() {
+        // Given: 3 x 33.33333333 = 999 999 ppm après conversion
+        TreeNode parent = new TreeNode("p", "Parent", 100.0);
+        for (int i = 0; i < 3; i++) {
+            parent.addChild(new TreeNode("c" + i, "Enfant " + i, 100.0 / 3));
+        }
+        assertFalse(Weights.isComplete(parent.getChildren()));
+
+        // When
+        assertEquals(1, Weights.repairRounding(parent));
+
+        // Then
+        assertTrue(Weights.isComplete(parent.getChildren()));
+    }
+}
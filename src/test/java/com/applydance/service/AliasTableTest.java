@@ -0,0 +1,43 @@
+package com.applydance.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests de la table d'alias entière utilisée par le moteur de génération.
+ */
+@DisplayName("AliasTable - Tirage pondéré entier")
+class AliasTableTest {
+
+    @Test
+    @DisplayName("Les fréquences observées suivent les pondérations")
+    void frequenciesFollowWeights() {
+        // Given: 70% / 20% / 10% / 0%
+        AliasTable table = AliasTable.build(new int[] {700_000, 200_000, 100_000, 0});
+        Random random = new Random(42);
+        int[] counts = new int[4];
+
+        // When
+        int draws = 200_000;
+        for (int i = 0; i < draws; i++) {
+            counts[table.sample(random)]++;
+        }
+
+        // Then
+        assertEquals(0.70, counts[0] / (double) draws, 0.01);
+        assertEquals(0.20, counts[1] / (double) draws, 0.01);
+        assertEquals(0.10, counts[2] / (double) draws, 0.01);
+        assertEquals(0, counts[3]);
+    }
+
+    @Test
+    @DisplayName("Aucune pondération positive : pas de table")
+    void noPositiveWeightGivesNoTable() {
+        assertNull(AliasTable.build(new int[] {0, 0}));
+        assertNull(AliasTable.build(new int[0]));
+    }
+}
@@ -0,0 +1,99 @@
+package com.applydance.service;
+
+import com.applydance.model.GeneratedSlot;
+import com.applydance.model.TreeNode;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests de l'arbre de génération compilé et projeté en mémoire.
+ */
+@DisplayName("CompiledTree - Arbre compilé projetable")
+class CompiledTreeTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Un arbre projeté depuis un fichier génère selon les pondérations")
+    void mappedTreeGeneratesAccordingToWeights() throws Exception {
+        // Given
+        TreeNode root = new TreeNode("root", "Racine", 100.0);
+        TreeNode branch = new TreeNode("branch", "Branche", 75.0);
+        branch.setColor("#5E81AC");
+        branch.addChild(new TreeNode("leafA", "Feuille A", 50.0));
+        branch.addChild(new TreeNode("leafB", "Feuille B", 50.0));
+        root.addChild(branch);
+        root.addChild(new TreeNode("other", "Autre", 25.0));
+        Path file = tempDir.resolve("tree.compiled");
+        CompiledTree.compile(root).writeTo(file);
+
+        // When
+        CompiledTree mapped = CompiledTree.map(file);
+        Map<String, Integer> counts = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 40_000; i++) {
+            counts.merge(mapped.generate(random).getSelectedNodeId(), 1, Integer::sum);
+        }
+
+        // Then: 37,5 % / 37,5 % / 25 % à la précision statistique près
+        assertEquals(5, mapped.nodeCount());
+        assertEquals(0.375, counts.get("leafA") / 40_000.0, 0.02);
+        assertEquals(0.375, counts.get("leafB") / 40_000.0, 0.02);
+        assertEquals(0.25, counts.get("other") / 40_000.0, 0.02);
+        GeneratedSlot slot = mapped.generate(new Random(1));
+        assertTrue(slot.getDecisionPath().startsWith("Racine > "));
+    }
+
+    @Test
+    @DisplayName("Une fratrie sans pondération est tirée uniformément et un fichier corrompu est refusé")
+    void zeroWeightsAreUniformAndCorruptionIsRejected() throws Exception {
+        // Given
+        TreeNode root = new TreeNode("root", "Racine", 100.0);
+        root.addChild(new TreeNode("a", "A", 0.0));
+        root.addChild(new TreeNode("b", "B", 0.0));
+        byte[] bytes = CompiledTree.compile(root).toByteArray();
+
+        // When
+        CompiledTree tree = CompiledTree.wrap(bytes);
+        int a = 0;
+        Random random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            if ("a".equals(tree.generate(random).getSelectedNodeId())) {
+                a++;
+            }
+        }
+
+        // Then
+        assertEquals(0.5, a / 10_000.0, 0.03);
+        bytes[bytes.length - 1] ^= 0x01;
+        assertThrows(IOException.class, () -> CompiledTree.wrap(bytes));
+    }
+
+    @Test
+    @DisplayName("Le service écrit l'arbre compilé à côté de la configuration")
+    void serviceWritesCompiledTree() throws Exception {
+        // Given
+        Path config = tempDir.resolve("tree_configuration.json");
+        TreeConfigurationService service = new TreeConfigurationService(config);
+        service.shutdown();
+
+        // When
+        CompiledTree mapped = CompiledTree.map(CompiledTree.pathFor(config));
+
+        // Then: Même structure que l'arbre par défaut (7 nœuds)
+        assertTrue(Files.exists(CompiledTree.pathFor(config)));
+        assertEquals(7, mapped.nodeCount());
+        assertEquals("root", mapped.id(0));
+    }
+}
@@ -0,0 +1,93 @@
+package com.applydance.service;
+
+import com.applydance.model.TreeNode;
+import com.applydance.model.TreeNodeDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests de l'écriture en arrière-plan de la configuration.
+ */
+@DisplayName("ConfigurationWriter - Sauvegarde regroupée et atomique")
+class ConfigurationWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Une rafale de sauvegardes ne produit qu'une écriture du dernier instantané")
+    void burstIsWrittenOnceWithLatestSnapshot() throws IOException {
+        // Given: Un délai de regroupement long pour que toutes les demandes soient en attente
+        Path target = tempDir.resolve("tree.json");
+        ObjectMapper mapper = new ObjectMapper();
+        ConfigurationWriter writer = new ConfigurationWriter(target, 60_000);
+        AtomicInteger encodings = new AtomicInteger();
+
+        // When: 50 demandes successives puis vidage explicite
+        for (int i = 1; i <= 50; i++) {
+            TreeNodeDTO version = new TreeNodeDTO("root", "Version " + i, 100.0, "🌳");
+            writer.submit(new ConfigurationWriter.Snapshot() {
+                @Override
+                public long sequence() {
+                    return 0;
+                }
+
+                @Override
+                public byte[] encodeJson() throws IOException {
+                    encodings.incrementAndGet();
+                    return mapper.writeValueAsBytes(version);
+                }
+
+                @Override
+                public byte[] encodeBinary() {
+                    return null;
+                }
+
+                @Override
+                public CompiledTree compile() {
+                    return null;
+                }
+            }, false);
+        }
+        assertTrue(writer.hasPendingWrite());
+        writer.flush();
+
+        // Then: Un seul encodage et une seule écriture, contenant la dernière version, sans fichier temporaire restant
+        assertEquals(1, encodings.get());
+        assertEquals(1, writer.getWriteCount());
+        assertFalse(writer.hasPendingWrite());
+        assertEquals("Version 50", mapper.readValue(target.toFile(), TreeNodeDTO.class).getLabel());
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+        writer.shutdown();
+    }
+
+    @Test
+    @DisplayName("L'arrêt du service écrit les modifications en attente")
+    void shutdownFlushesPendingEdits() {
+        // Given
+        Path configPath = tempDir.resolve("tree_configuration.json");
+        TreeConfigurationService configService = new TreeConfigurationService(configPath, 60_000);
+        TreeNode brancheB = configService.getRootNode().findById("brancheB");
+
+        // When: Modification puis fermeture avant l'expiration du délai
+        configService.addChildNode(brancheB, new TreeNode("subB3", "B3", 50.0));
+        configService.shutdown();
+
+        // Then: Un nouveau service relit la modification
+        TreeConfigurationService reloaded = new TreeConfigurationService(configPath);
+        assertNotNull(reloaded.getRootNode().findById("subB3"));
+        reloaded.shutdown();
+    }
+}
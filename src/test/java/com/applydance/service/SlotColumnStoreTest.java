@@ -0,0 +1,177 @@
+package com.applydance.service;
+
+import com.applydance.model.GeneratedSlot;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests du stockage en colonnes de l'historique.
+ */
+@DisplayName("SlotColumnStore - Historique en colonnes")
+class SlotColumnStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static GeneratedSlot slot(long id, String leaf, LocalDateTime generatedAt) {
+        GeneratedSlot slot = new GeneratedSlot("Racine > Branche > " + leaf, leaf, leaf);
+        slot.setId(id);
+        slot.setGeneratedAt(generatedAt);
+        slot.addMetadata("nodeColor", "#5E81AC");
+        slot.addMetadata("nodeLevel", 2);
+        return slot;
+    }
+
+    @Test
+    @DisplayName("Un slot construit à la demande restitue tous ses champs et reste indépendant du stockage")
+    void viewRestoresSlot() {
+        // Given
+        SlotColumnStore store = new SlotColumnStore();
+        LocalDateTime time = LocalDateTime.of(2024, 5, 1, 10, 30, 15, 123_456_789);
+        store.append(slot(7, "a", time));
+
+        // When
+        GeneratedSlot view = store.view(0);
+        view.addMetadata("nodeColor", "#000000");
+
+        // Then
+        assertEquals(7L, view.getId());
+        assertEquals("Racine > Branche > a", view.getDecisionPath());
+        assertEquals("a", view.getSelectedNodeId());
+        assertEquals(LocalDateTime.of(2024, 5, 1, 10, 30, 15, 123_000_000), view.getGeneratedAt());
+        assertEquals(2, view.getMetadata("nodeLevel"));
+        assertEquals("#5E81AC", store.view(0).getMetadata("nodeColor"));
+    }
+
+    @Test
+    @DisplayName("Chemins et feuilles répétés ne sont stockés qu'une fois ; les suppressions préservent l'ordre")
+    void repeatedValuesAreSharedAndRemovalKeepsOrder() {
+        // Given
+        SlotColumnStore store = new SlotColumnStore();
+        LocalDateTime time = LocalDateTime.of(2024, 5, 1, 10, 0);
+        for (int i = 1; i <= 100_000; i++) {
+            store.append(slot(i, "leaf" + (i % 5), time.plusSeconds(i)));
+        }
+
+        // When
+        List<Long> removed = store.removeAll(List.of(2L, 50_000L, 99L, 123_456L));
+
+        // Then
+        assertEquals(5, store.distinctPaths());
+        assertEquals(5, store.distinctLeaves());
+        assertEquals(List.of(2L, 50_000L, 99L), removed);
+        assertEquals(99_997, store.size());
+        assertEquals(3L, store.view(1).getId());
+        assertEquals(-1, store.find(50_000L));
+        assertEquals(50_001L, store.view(store.find(50_001L)).getId());
+        assertEquals(100_000L, store.maxId());
+
+        // Then: Purge différée (sous le seuil), positions inchangées après compactage
+        int position = store.find(50_001L);
+        assertFalse(store.needsPurge());
+        assertEquals(3, store.purge());
+        assertEquals(position, store.find(50_001L));
+        assertEquals(3L, store.view(1).getId());
+        assertEquals(99_997, store.size());
+    }
+
+    @Test
+    @DisplayName("Les filtres du service travaillent sur les colonnes et un identifiant supprimé n'est pas réattribué")
+    void serviceQueriesUseColumns() {
+        // Given
+        Path historyDir = tempDir.resolve("slot_history");
+        SlotHistoryService service = new SlotHistoryService(historyDir);
+        LocalDateTime time = LocalDateTime.of(2024, 5, 1, 10, 0);
+        for (int i = 0; i < 10; i++) {
+            GeneratedSlot slot = new GeneratedSlot("Racine > " + (i % 2 == 0 ? "Pair" : "Impair") + " > f" + i, "f" + i, "f" + i);
+            slot.setGeneratedAt(time.plusHours(i));
+            service.addSlot(slot);
+        }
+
+        // When
+        service.removeSlot(10L);
+        SlotHistoryService reloaded = new SlotHistoryService(historyDir);
+
+        // Then
+        assertEquals(5, reloaded.getSlotsByMainCategory("Pair").size());
+        assertEquals(4, reloaded.getSlotsByMainCategory("Impair").size());
+        assertEquals(1, reloaded.getSlotsBySelectedNode("f3").size());
+        assertEquals(3, reloaded.getSlotsByDateRange(time.plusHours(2), time.plusHours(4)).size());
+        assertEquals(List.of(8L, 9L), reloaded.getLastSlots(2).stream().map(GeneratedSlot::getId).collect(Collectors.toList()));
+        reloaded.addSlot(new GeneratedSlot("Racine > Pair > g", "g", "g"));
+        assertEquals(11L, reloaded.getLastSlot().getId());
+    }
+
+    @Test
+    @DisplayName("Les index restent exacts après suppressions et avec des dates hors d'ordre chronologique")
+    void indexesFollowRemovalsAndUnorderedTimes() {
+        // Given: Dates ajoutées dans le désordre (ancien historique importé)
+        SlotColumnStore store = new SlotColumnStore();
+        LocalDateTime time = LocalDateTime.of(2024, 5, 1, 10, 0);
+        int[] hours = {5, 1, 9, 3, 7, 2, 8};
+        for (int i = 0; i < hours.length; i++) {
+            store.append(slot(i + 1, i % 2 == 0 ? "pair" : "impair", time.plusHours(hours[i])));
+        }
+
+        // When
+        store.removeAll(List.of(4L));
+        List<GeneratedSlot> between = store.viewsBetween(SlotColumnStore.toMillis(time.plusHours(2)),
+                SlotColumnStore.toMillis(time.plusHours(7)));
+        store.append(slot(8, "pair", time.plusHours(4)));
+
+        // Then: Ordre d'ajout conservé, slot supprimé absent
+        assertEquals(List.of(1L, 5L, 6L), ids(between));
+        assertEquals(List.of(1L, 3L, 5L, 7L, 8L), ids(store.viewsOfLeafName("pair")));
+        assertEquals(List.of(2L, 6L), ids(store.viewsOfLeafName("impair")));
+        assertEquals(7, store.viewsOfCategory("Branche").size());
+        assertTrue(store.viewsOfCategory("Inconnue").isEmpty());
+        assertEquals(List.of(1L, 5L, 6L, 8L), ids(store.viewsBetween(SlotColumnStore.toMillis(time.plusHours(2)),
+                SlotColumnStore.toMillis(time.plusHours(7)))));
+    }
+
+    @Test
+    @DisplayName("Les statistiques sont comptées en une passe sur les colonnes et portent toutes sur les mêmes slots")
+    void statisticsAreTalliedFromColumns() {
+        // Given: Deux jours, un chemin partagé par deux feuilles d'identifiants différents
+        SlotHistoryService service = new SlotHistoryService(tempDir.resolve("slot_history"));
+        LocalDateTime time = LocalDateTime.of(2024, 5, 1, 22, 0);
+        for (int i = 0; i < 6; i++) {
+            String leaf = i < 4 ? "a" : "b";
+            GeneratedSlot slot = new GeneratedSlot("Racine > Branche > Feuille", leaf, "Feuille");
+            slot.setGeneratedAt(time.plusHours(i));
+            slot.addMetadata("nodeLevel", i % 2);
+            service.addSlot(slot);
+        }
+        service.removeSlot(1L);
+
+        // When
+        StatisticsService.StatisticsReport report = new StatisticsService(service).getGeneralStatistics();
+
+        // Then
+        assertEquals(5, report.totalSlots);
+        assertEquals(5, report.mainCategoryStats.get("Branche"));
+        assertEquals(5, report.decisionPathStats.get("Racine > Branche > Feuille"));
+        assertEquals(3, report.selectedNodeStats.get("a|Feuille [Branche]"));
+        assertEquals(2, report.selectedNodeStats.get("b|Feuille [Branche]"));
+        assertEquals(1, report.temporalStats.dailyDistribution.get("2024-05-01"));
+        assertEquals(4, report.temporalStats.dailyDistribution.get("2024-05-02"));
+        assertEquals(1, report.temporalStats.hourlyDistribution.get("3"));
+        assertNull(report.temporalStats.hourlyDistribution.get("22"));
+        assertEquals(time.plusHours(1), report.temporalStats.firstSlotDate);
+        assertEquals(time.plusHours(5), report.temporalStats.lastSlotDate);
+        assertEquals(2, report.metadataStats.get("nodeLevel").get("0"));
+        assertEquals(3, report.metadataStats.get("nodeLevel").get("1"));
+    }
+
+    private static List<Long> ids(List<GeneratedSlot> slots) {
+        return slots.stream().map(GeneratedSlot::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,520 @@
+package com.applydance.service;
+
+import com.applydance.model.GeneratedSlot;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests de la persistance de l'historique en journal JSON Lines segmenté.
+ */
+@DisplayName("SlotHistoryService - Journal d'historique")
+class SlotHistoryServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path historyDir() {
+        return tempDir.resolve("slot_history");
+    }
+
+    private Path firstSegment() {
+        return historyDir().resolve(SegmentedHistoryLog.segmentName(1));
+    }
+
+    private static GeneratedSlot slot(String leaf) {
+        GeneratedSlot slot = new GeneratedSlot("Racine > " + leaf, leaf, leaf);
+        slot.addMetadata("nodeColor", "#5E81AC");
+        return slot;
+    }
+
+    @Test
+    @DisplayName("Chaque slot ajoute une ligne au journal et l'historique est relu à l'identique")
+    void appendsOneLinePerSlot() throws Exception {
+        // Given
+        SlotHistoryService service = new SlotHistoryService(historyDir());
+        Path log = firstSegment();
+
+        // When
+        for (int i = 0; i < 50; i++) {
+            service.addSlot(slot("leaf" + i));
+        }
+        long sizeAfter50 = Files.size(log);
+        service.addSlot(slot("leaf50"));
+
+        // Then: Le dernier ajout n'a écrit qu'une ligne
+        List<String> lines = Files.readAllLines(log, StandardCharsets.UTF_8);
+        assertEquals(51, lines.size());
+        assertTrue(Files.size(log) - sizeAfter50 < sizeAfter50 / 10);
+        SlotHistoryService reloaded = new SlotHistoryService(historyDir());
+        assertEquals(51, reloaded.getTotalCount());
+        assertEquals("leaf50", reloaded.getLastSlot().getSelectedNodeId());
+        assertEquals("#5E81AC", reloaded.getLastSlot().getMetadata("nodeColor"));
+        reloaded.addSlot(slot("next"));
+        assertEquals(52L, reloaded.getLastSlot().getId());
+    }
+
+    @Test
+    @DisplayName("L'ancien historique JSON est converti une seule fois")
+    void legacyHistoryIsMigratedOnce() throws Exception {
+        // Given: Un ancien fichier au format tableau JSON indenté
+        Path legacy = tempDir.resolve(SlotHistoryService.LEGACY_HISTORY_FILE);
+        Files.writeString(legacy, "[ {\n  \"id\" : 7,\n  \"generatedAt\" : \"2024-05-01 10:00:00\",\n"
+                + "  \"decisionPath\" : \"Racine > A\",\n  \"selectedNodeId\" : \"a\",\n  \"selectedNodeName\" : \"A\",\n"
+                + "  \"metadata\" : { }\n}, {\n  \"id\" : 8,\n  \"decisionPath\" : \"Racine > B\",\n"
+                + "  \"selectedNodeId\" : \"b\",\n  \"selectedNodeName\" : \"B\"\n} ]");
+
+        // When
+        SlotHistoryService service = new SlotHistoryService(historyDir());
+
+        // Then
+        assertEquals(2, service.getTotalCount());
+        assertEquals(2, Files.readAllLines(firstSegment()).size());
+        assertFalse(Files.exists(legacy));
+        assertTrue(Files.exists(tempDir.resolve(SlotHistoryService.LEGACY_HISTORY_FILE + SlotHistoryService.MIGRATED_SUFFIX)));
+        service.addSlot(slot("c"));
+        assertEquals(9L, service.getLastSlot().getId());
+        assertEquals(3, new SlotHistoryService(historyDir()).getTotalCount());
+    }
+
+    @Test
+    @DisplayName("Une dernière ligne tronquée est écartée sans corrompre les ajouts suivants")
+    void tornTailIsDiscarded() throws Exception {
+        // Given
+        SlotHistoryService service = new SlotHistoryService(historyDir());
+        Path log = firstSegment();
+        service.addSlot(slot("a"));
+        service.addSlot(slot("b"));
+        Files.write(log, "{\"id\":3,\"decisionPa".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        // When
+        SlotHistoryService recovered = new SlotHistoryService(historyDir());
+        recovered.addSlot(slot("c"));
+        recovered.removeSlot(1L);
+
+        // Then
+        SlotHistoryService reloaded = new SlotHistoryService(historyDir());
+        assertEquals(2, reloaded.getTotalCount());
+        assertEquals("b", reloaded.getAllSlots().get(0).getSelectedNodeId());
+        assertEquals("c", reloaded.getLastSlot().getSelectedNodeId());
+    }
+
+    @Test
+    @DisplayName("Une suppression ajoute un enregistrement sans réécrire l'historique")
+    void deletionAppendsTombstone() throws Exception {
+        // Given
+        SlotHistoryService service = new SlotHistoryService(historyDir());
+        for (int i = 0; i < 20; i++) {
+            service.addSlot(slot("leaf" + i));
+        }
+        Path log = firstSegment();
+        List<String> before = Files.readAllLines(log, StandardCharsets.UTF_8);
+
+        // When
+        assertEquals(2, service.removeSlots(List.of(3L, 4L, 99L)));
+
+        // Then: Les lignes existantes sont intactes, deux suppressions ajoutées
+        List<String> after = Files.readAllLines(log, StandardCharsets.UTF_8);
+        assertEquals(before, after.subList(0, before.size()));
+        assertEquals(List.of(framed("{\"deleted\":3}"), framed("{\"deleted\":4}")), after.subList(before.size(), after.size()));
+        SlotHistoryService reloaded = new SlotHistoryService(historyDir());
+        assertEquals(18, reloaded.getTotalCount());
+        assertTrue(reloaded.getAllSlots().stream().noneMatch(slot -> slot.getId() == 3L || slot.getId() == 4L));
+    }
+
+    @Test
+    @DisplayName("La compaction ne réécrit que les segments majoritairement supprimés")
+    void compactionRewritesOnlySparseSegments() throws Exception {
+        // Given: Segments de petite taille
+        SlotHistoryService service = new SlotHistoryService(historyDir(), 2048);
+        for (int i = 0; i < 60; i++) {
+            service.addSlot(slot("leaf" + i));
+        }
+        int segmentsBefore = service.getSegmentCount();
+        assertTrue(segmentsBefore >= 4);
+        long bytesBefore = service.getLogBytes();
+        List<Long> firstHalf = new ArrayList<>();
+        for (long id = 1; id <= 30; id++) {
+            firstHalf.add(id);
+        }
+
+        // When
+        service.removeSlots(firstHalf);
+        service.close();
+        service.compactNow();
+
+        // Then: Les slots supprimés et leurs suppressions ont disparu
+        assertTrue(service.getSegmentCount() < segmentsBefore);
+        assertTrue(service.getLogBytes() < bytesBefore);
+        assertEquals(0, service.compactNow());
+        SlotHistoryService reloaded = new SlotHistoryService(historyDir(), 2048);
+        assertEquals(30, reloaded.getTotalCount());
+        assertEquals(31L, reloaded.getAllSlots().get(0).getId());
+        assertEquals("leaf59", reloaded.getLastSlot().getSelectedNodeId());
+    }
+
+    @Test
+    @DisplayName("Pages, curseurs et vue en lecture seule parcourent l'historique sans le copier")
+    void pagesAndCursorsReadWithoutCopy() {
+        // Given
+        SlotHistoryService service = new SlotHistoryService(historyDir());
+        for (int i = 0; i < 10; i++) {
+            service.addSlot(slot("leaf" + i));
+        }
+        List<GeneratedSlot> view = service.asList();
+        Iterator<GeneratedSlot> fromSeven = service.iterateFrom(7);
+
+        // When
+        service.addSlot(slot("leaf10"));
+
+        // Then
+        assertEquals(List.of(4L, 5L, 6L), ids(service.page(3, 3)));
+        assertTrue(service.page(20, 5).isEmpty());
+        assertEquals(List.of(7L, 8L, 9L, 10L, 11L), ids(fromSeven));
+        assertEquals(List.of(11L, 10L, 9L), ids(service.newestFirst()).subList(0, 3));
+        assertEquals(11, view.size());
+        assertEquals("leaf10", view.get(10).getSelectedNodeId());
+        assertThrows(UnsupportedOperationException.class, () -> view.add(slot("x")));
+        Iterator<GeneratedSlot> cursor = service.newestFirst();
+        service.removeSlot(1L);
+        assertThrows(ConcurrentModificationException.class, cursor::hasNext);
+    }
+
+    @Test
+    @DisplayName("Les slots supprimés restent marqués jusqu'à la purge, invisibles des lectures par position")
+    void removedRowsAreSkippedUntilPurged() {
+        // Given
+        SlotHistoryService service = new SlotHistoryService(historyDir());
+        for (int i = 1; i <= 40; i++) {
+            service.addSlot(slot("leaf" + (i % 4)));
+        }
+
+        // When: Peu de suppressions, sous le seuil de purge
+        service.removeSlots(List.of(2L, 5L, 6L, 40L));
+
+        // Then: Positions comptées parmi les seuls slots vivants
+        assertEquals(36, service.getTotalCount());
+        assertEquals(List.of(1L, 3L, 4L, 7L, 8L), ids(service.page(0, 5)));
+        assertEquals(List.of(7L, 8L), ids(service.page(3, 2)));
+        assertEquals(List.of(7L, 8L, 9L), ids(service.iterateFrom(5)).subList(0, 3));
+        assertEquals(List.of(39L, 38L), ids(service.newestFirst()).subList(0, 2));
+        assertEquals(List.of(38L, 39L), ids(service.getLastSlots(2)));
+        assertEquals(4L, service.asList().get(2).getId());
+        assertEquals(39L, service.getLastSlot().getId());
+        assertTrue(service.getSlotsBySelectedNode("leaf2").stream().noneMatch(slot -> slot.getId() == 2L || slot.getId() == 6L));
+
+        // When: Assez de suppressions pour déclencher la purge en arrière-plan, attendue à la fermeture
+        List<Long> many = new ArrayList<>();
+        for (long id = 10; id <= 20; id++) {
+            many.add(id);
+        }
+        service.removeSlots(many);
+        service.close();
+
+        // Then: Mêmes positions après la purge
+        assertEquals(25, service.getTotalCount());
+        assertEquals(List.of(7L, 8L, 9L, 21L), ids(service.page(3, 4)));
+        assertEquals(List.of(9L, 21L, 22L), ids(service.iterateFrom(9)).subList(0, 3));
+        assertEquals(List.of(22L, 26L, 30L, 34L, 38L), ids(service.getSlotsBySelectedNode("leaf2")));
+    }
+
+    @Test
+    @DisplayName("Des ajouts concurrents produisent des identifiants uniques, publiés et journalisés dans l'ordre")
+    void concurrentAppendsStayConsistent() throws Exception {
+        // Given
+        SlotHistoryService service = new SlotHistoryService(historyDir(), 16 * 1024);
+        int writers = 4;
+        int perWriter = 500;
+        AtomicBoolean running = new AtomicBoolean(true);
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        Thread reader = new Thread(() -> {
+            try {
+                while (running.get()) {
+                    // Préfixe complet : identifiants strictement croissants, aucun trou
+                    List<Long> seen = ids(service.asList().iterator());
+                    for (int i = 0; i < seen.size(); i++) {
+                        assertEquals(i + 1L, seen.get(i));
+                    }
+                }
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+        reader.start();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < writers; t++) {
+            int writer = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < perWriter; i++) {
+                        service.addSlot(slot("w" + writer + "_" + i));
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        // When
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        running.set(false);
+        reader.join(TimeUnit.SECONDS.toMillis(10));
+
+        // Then
+        assertTrue(failures.isEmpty(), () -> "Échec concurrent : " + failures.peek());
+        int total = writers * perWriter;
+        assertEquals(total, service.getTotalCount());
+        assertEquals(1, service.getSlotsBySelectedNode("w3_499").size());
+        SlotHistoryService reloaded = new SlotHistoryService(historyDir(), 16 * 1024);
+        List<Long> reloadedIds = ids(reloaded.asList());
+        assertEquals(total, reloadedIds.size());
+        for (int i = 0; i < total; i++) {
+            assertEquals(i + 1L, reloadedIds.get(i));
+        }
+    }
+
+    @Test
+    @DisplayName("Le niveau de durabilité choisit quand les ajouts atteignent le disque")
+    void durabilityLevelsControlForcing() throws Exception {
+        // Given
+        SlotHistoryService sync = new SlotHistoryService(tempDir.resolve("sync"),
+                SlotHistoryService.DEFAULT_SEGMENT_MAX_BYTES, SlotHistoryService.Durability.SYNC);
+        SlotHistoryService async = new SlotHistoryService(tempDir.resolve("async"),
+                SlotHistoryService.DEFAULT_SEGMENT_MAX_BYTES, SlotHistoryService.Durability.ASYNC, 60_000);
+        Path asyncSegment = tempDir.resolve("async").resolve(SegmentedHistoryLog.segmentName(1));
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            sync.addSlot(slot("leaf" + i));
+            async.addSlot(slot("leaf" + i));
+        }
+        sync.removeSlot(1L);
+
+        // Then: SYNC force chaque ajout, ASYNC n'a encore rien écrit
+        assertEquals(6, sync.getForceCount());
+        assertEquals(6, Files.readAllLines(tempDir.resolve("sync").resolve(SegmentedHistoryLog.segmentName(1))).size());
+        assertEquals(0, Files.size(asyncSegment));
+        assertEquals(5, async.getTotalCount());
+        async.close();
+        assertEquals(5, Files.readAllLines(asyncSegment).size());
+        async.addSlot(slot("after-close"));
+        assertEquals(6, Files.readAllLines(asyncSegment).size());
+    }
+
+    @Test
+    @DisplayName("En mode GROUP, les ajouts concurrents partagent les forçages sur disque")
+    void groupCommitSharesForces() throws Exception {
+        // Given
+        SlotHistoryService service = new SlotHistoryService(historyDir());
+        assertEquals(SlotHistoryService.Durability.GROUP, service.getDurability());
+        int writers = 8;
+        int perWriter = 100;
+        CountDownLatch start = new CountDownLatch(1);
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < writers; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < perWriter; i++) {
+                        service.addSlot(slot("leaf" + i));
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        // When
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(60));
+        }
+
+        // Then: Tout est sur disque au retour des appels, sans un forçage par ajout
+        assertTrue(failures.isEmpty(), () -> "Échec concurrent : " + failures.peek());
+        assertEquals(writers * perWriter, Files.readAllLines(firstSegment()).size());
+        assertTrue(service.getForceCount() < writers * perWriter);
+        assertEquals(writers * perWriter, new SlotHistoryService(historyDir()).getTotalCount());
+    }
+
+    @Test
+    @DisplayName("Un octet corrompu ne fait perdre que son enregistrement, ou la fin du segment actif")
+    void corruptRecordsAreSkippedOrTruncated() throws Exception {
+        // Given: Plusieurs segments, un octet invalide dans un segment scellé et dans le segment actif
+        SlotHistoryService service = new SlotHistoryService(historyDir(), 2048);
+        for (int i = 0; i < 40; i++) {
+            service.addSlot(slot("leaf" + i));
+        }
+        int segments = service.getSegmentCount();
+        assertTrue(segments >= 3);
+        service.close();
+        Path sealed = firstSegment();
+        Path active = historyDir().resolve(SegmentedHistoryLog.segmentName(segments));
+        int activeLines = Files.readAllLines(active).size();
+        corruptLine(sealed, 2);
+        corruptLine(active, 1);
+
+        // When
+        SlotHistoryService recovered = new SlotHistoryService(historyDir(), 2048);
+
+        // Then: Le slot 3 est perdu ; le segment actif est tronqué après sa première ligne
+        int expected = 40 - 1 - (activeLines - 1);
+        assertEquals(expected, recovered.getTotalCount());
+        assertTrue(recovered.getAllSlots().stream().noneMatch(slot -> slot.getId() == 3L));
+        assertEquals(1, Files.readAllLines(active).size());
+        recovered.addSlot(slot("next"));
+        SlotHistoryService reloaded = new SlotHistoryService(historyDir(), 2048);
+        assertEquals(expected + 1, reloaded.getTotalCount());
+        assertEquals("next", reloaded.getLastSlot().getSelectedNodeId());
+    }
+
+    @Test
+    @DisplayName("Un slot à la date hors limites est ignoré au chargement sans bloquer les ajouts suivants")
+    void outOfRangeDateIsSkippedWithoutBlockingAppends() throws Exception {
+        // Given: Un enregistrement intègre dont la date dépasse les millisecondes représentables, entre deux slots valides
+        SlotHistoryService service = new SlotHistoryService(historyDir());
+        service.addSlot(slot("first"));
+        service.close();
+        String line = "{\"id\":2,\"generatedAt\":\"+999999999-12-31 23:59:59\",\"decisionPath\":\"Racine > x\","
+                + "\"selectedNodeId\":\"x\",\"selectedNodeName\":\"x\"}";
+        Files.write(firstSegment(), ChecksummedLog.frame(line), StandardOpenOption.APPEND);
+        SlotHistoryService writer = new SlotHistoryService(historyDir());
+        writer.addSlot(slot("last"));
+        writer.close();
+
+        // When
+        SlotHistoryService reloaded = new SlotHistoryService(historyDir());
+
+        // Then: Seul l'enregistrement inutilisable est écarté, le segment actif n'est pas tronqué
+        assertEquals(List.of("first", "last"), reloaded.getAllSlots().stream()
+                .map(GeneratedSlot::getSelectedNodeId).collect(java.util.stream.Collectors.toList()));
+        assertEquals(3, Files.readAllLines(firstSegment()).size());
+
+        // And: Un ajout refusé ne réserve pas de ligne, les ajouts suivants sont publiés
+        GeneratedSlot invalid = slot("invalid");
+        invalid.setGeneratedAt(java.time.LocalDateTime.MAX);
+        assertThrows(ArithmeticException.class, () -> reloaded.addSlot(invalid));
+        reloaded.addSlot(slot("after"));
+        assertEquals("after", reloaded.getLastSlot().getSelectedNodeId());
+        assertEquals(3, reloaded.getTotalCount());
+    }
+
+    @Test
+    @DisplayName("Un ancien historique abîmé est complété par ses sauvegardes")
+    void damagedLegacyHistoryIsCompletedFromBackup() throws Exception {
+        // Given: Fichier principal illisible à partir du troisième slot, sauvegarde complète
+        Files.write(tempDir.resolve(SlotHistoryService.LEGACY_HISTORY_FILE), concat(
+                ("[ " + legacySlot(1) + ", " + legacySlot(2) + ", {\"id\" : 3, \"decision").getBytes(StandardCharsets.UTF_8),
+                new byte[] {(byte) 0xFF, '"', '}', ']'}));
+        Files.writeString(tempDir.resolve(SlotHistoryService.LEGACY_BACKUP_FILES.get(0)),
+                "[ " + legacySlot(1) + ", " + legacySlot(2) + ", " + legacySlot(3) + " ]");
+
+        // When
+        SlotHistoryService service = new SlotHistoryService(historyDir());
+
+        // Then
+        assertEquals(List.of(1L, 2L, 3L), ids(service.asList()));
+        assertTrue(Files.exists(tempDir.resolve(SlotHistoryService.LEGACY_HISTORY_FILE + SlotHistoryService.MIGRATED_SUFFIX)));
+        assertEquals(3, new SlotHistoryService(historyDir()).getTotalCount());
+    }
+
+    @Test
+    @DisplayName("Une sauvegarde lie les segments scellés au lieu de réécrire l'historique")
+    void backupLinksSealedSegments() throws Exception {
+        // Given
+        SlotHistoryService service = new SlotHistoryService(historyDir(), 2048);
+        for (int i = 0; i < 60; i++) {
+            service.addSlot(slot("leaf" + i));
+        }
+        Path backupDir = tempDir.resolve("backup");
+
+        // When
+        assertTrue(service.backup(backupDir));
+        int segments = service.getSegmentCount();
+        boolean sealedShared = Files.isSameFile(firstSegment(), backupDir.resolve(SegmentedHistoryLog.segmentName(1)));
+        boolean activeShared = Files.isSameFile(historyDir().resolve(SegmentedHistoryLog.segmentName(segments)),
+                backupDir.resolve(SegmentedHistoryLog.segmentName(segments)));
+        List<Long> removed = new ArrayList<>();
+        for (long id = 1; id <= 30; id++) {
+            removed.add(id);
+        }
+        service.removeSlots(removed);
+        service.addSlot(slot("after-backup"));
+        service.close();
+        service.compactNow();
+
+        // Then: Segment scellé partagé au moment de la sauvegarde, contenu figé ensuite
+        assertTrue(sealedShared);
+        assertFalse(activeShared);
+        SlotHistoryService restored = new SlotHistoryService(backupDir, 2048);
+        assertEquals(60, restored.getTotalCount());
+        assertEquals("leaf59", restored.getLastSlot().getSelectedNodeId());
+        assertEquals(31, new SlotHistoryService(historyDir(), 2048).getTotalCount());
+    }
+
+    private static void corruptLine(Path file, int lineIndex) throws Exception {
+        byte[] content = Files.readAllBytes(file);
+        int offset = 0;
+        for (int line = 0; line < lineIndex; line++) {
+            while (content[offset] != '\n') {
+                offset++;
+            }
+            offset++;
+        }
+        content[offset + 30] = (byte) 0xFF;
+        Files.write(file, content);
+    }
+
+    private static String legacySlot(long id) {
+        return "{\n  \"id\" : " + id + ",\n  \"decisionPath\" : \"Racine > S" + id + "\",\n"
+                + "  \"selectedNodeId\" : \"s" + id + "\",\n  \"selectedNodeName\" : \"S" + id + "\"\n}";
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static String framed(String payload) {
+        byte[] line = ChecksummedLog.frame(payload);
+        return new String(line, 0, line.length - 1, StandardCharsets.UTF_8);
+    }
+
+    private static List<Long> ids(List<GeneratedSlot> slots) {
+        return ids(slots.iterator());
+    }
+
+    private static List<Long> ids(Iterator<GeneratedSlot> slots) {
+        List<Long> ids = new ArrayList<>();
+        slots.forEachRemaining(slot -> ids.add(slot.getId()));
+        return ids;
+    }
+}
@@ -0,0 +1,128 @@
+package com.applydance.service;
+
+import ch.qos.logback.classic.Level;
+import com.applydance.model.GeneratedSlot;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Mesure du débit d'ajout à l'historique selon le niveau de durabilité.
+ * Hors de la suite par défaut (plusieurs dizaines de secondes, dépend du disque) :
+ * {@code mvn test -Dtest=SlotHistoryThroughputBenchmarkTest -Dbenchmark=true}
+ */
+@DisplayName("SlotHistoryService - Débit selon la durabilité")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class SlotHistoryThroughputBenchmarkTest {
+
+    private static final int SLOTS_PER_RUN = 4000;
+    // Les 3 modes dans les 6 ordres possibles : chaque mode suit autant de fois chacun des autres
+    // (un run qui suit ASYNC subit l'écriture différée de ses pages)
+    private static final int[][] ORDERS = {{0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0}};
+    private static final int REPETITIONS = 2 * ORDERS.length;
+    private static final int[] THREAD_COUNTS = {1, 8};
+
+    @TempDir
+    Path tempDir;
+
+    private int runNumber;
+
+    @Test
+    @DisplayName("Débit médian sur plusieurs répétitions entrelacées, 1 et 8 threads")
+    void measureThroughput() throws Exception {
+        ch.qos.logback.classic.Logger appLogger =
+                (ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.applydance");
+        Level previous = appLogger.getLevel();
+        appLogger.setLevel(Level.WARN);
+        try {
+            for (int threads : THREAD_COUNTS) {
+                Map<SlotHistoryService.Durability, double[]> rates = new EnumMap<>(SlotHistoryService.Durability.class);
+                Map<SlotHistoryService.Durability, long[]> forces = new EnumMap<>(SlotHistoryService.Durability.class);
+                SlotHistoryService.Durability[] modes = SlotHistoryService.Durability.values();
+                for (SlotHistoryService.Durability mode : modes) {
+                    rates.put(mode, new double[REPETITIONS]);
+                    forces.put(mode, new long[REPETITIONS]);
+                }
+                // Un tour d'échauffement, puis les modes dans chacun des ordres possibles
+                for (SlotHistoryService.Durability mode : modes) {
+                    run(mode, threads, new long[1]);
+                }
+                for (int repetition = 0; repetition < REPETITIONS; repetition++) {
+                    for (int index : ORDERS[repetition % ORDERS.length]) {
+                        SlotHistoryService.Durability mode = modes[index];
+                        long[] forceCount = new long[1];
+                        rates.get(mode)[repetition] = run(mode, threads, forceCount);
+                        forces.get(mode)[repetition] = forceCount[0];
+                    }
+                }
+                for (SlotHistoryService.Durability mode : modes) {
+                    double[] sorted = rates.get(mode).clone();
+                    Arrays.sort(sorted);
+                    System.out.printf("%-5s %d thread(s) : mediane %,.0f slots/s (min %,.0f, max %,.0f), %,d forcages medians%n",
+                            mode, threads, (sorted[REPETITIONS / 2 - 1] + sorted[REPETITIONS / 2]) / 2, sorted[0], sorted[REPETITIONS - 1],
+                            median(forces.get(mode)));
+                }
+                // Chaque appel SYNC force son propre ajout ; GROUP partage les forçages dès qu'il y a concurrence
+                assertTrue(median(forces.get(SlotHistoryService.Durability.SYNC)) >= SLOTS_PER_RUN);
+                if (threads > 1) {
+                    assertTrue(median(forces.get(SlotHistoryService.Durability.GROUP)) < SLOTS_PER_RUN);
+                }
+            }
+        } finally {
+            appLogger.setLevel(previous);
+        }
+    }
+
+    /**
+     * Un historique neuf, {@link #SLOTS_PER_RUN} ajouts répartis entre les threads ; retourne le débit
+     */
+    private double run(SlotHistoryService.Durability mode, int threads, long[] forceCount) throws Exception {
+        SlotHistoryService service = new SlotHistoryService(tempDir.resolve("run" + (runNumber++)),
+                SlotHistoryService.DEFAULT_SEGMENT_MAX_BYTES, mode);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread writer = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < SLOTS_PER_RUN / threads; i++) {
+                        service.addSlot(new GeneratedSlot("Racine > Branche > f" + (i % 10), "f" + (i % 10), "f" + (i % 10)));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        // ASYNC : les ajouts ne sont durables qu'à la fermeture, comptée dans la mesure
+        service.close();
+        long elapsed = System.nanoTime() - begin;
+        forceCount[0] = service.getForceCount();
+        assertEquals(SLOTS_PER_RUN, service.getTotalCount());
+        return SLOTS_PER_RUN * 1e9 / elapsed;
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,120 @@
+package com.applydance.service;
+
+import com.applydance.model.TreeNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests de l'instantané binaire compact de l'arbre de configuration.
+ */
+@DisplayName("TreeBinarySnapshot - Instantané binaire")
+class TreeBinarySnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final TreeBinarySnapshot snapshot = new TreeBinarySnapshot(new ObjectMapper());
+
+    @Test
+    @DisplayName("Un aller-retour conserve l'arbre, les pondérations et les métadonnées typées")
+    void roundTripKeepsTreeAndTypedMetadata() throws Exception {
+        // Given
+        TreeNode root = new TreeNode("root", "Racine", 100.0, "🌳");
+        TreeNode first = new TreeNode("a", "Élément", 33.3333, "🔹");
+        first.setColor("#81A1C1");
+        first.setMetadata("locked", true);
+        first.setMetadata("count", 42);
+        first.setMetadata("big", 1L << 40);
+        first.setMetadata("minPercentage", 12.5);
+        first.setMetadata("tags", Arrays.asList("x", "y"));
+        TreeNode second = new TreeNode("b", "Élément", 66.6667, "🔹");
+        second.setColor("#81A1C1");
+        root.addChild(first);
+        root.addChild(second);
+
+        // When
+        byte[] payload = snapshot.encode(root);
+        TreeNode decoded = snapshot.decode(TreeBinarySnapshot.frame(payload, 10, 20, 30), 10, 20, 30);
+
+        // Then: Structure, références parent et types conservés ; chaînes répétées stockées une fois
+        TreeNode a = decoded.findById("a");
+        assertSame(decoded, a.getParent());
+        assertEquals(first.getWeightPpm(), a.getWeightPpm());
+        assertEquals(Boolean.TRUE, a.getMetadata("locked"));
+        assertEquals(42, a.getMetadata("count"));
+        assertEquals(1L << 40, a.getMetadata("big"));
+        assertEquals(12.5, a.getMetadata("minPercentage"));
+        assertEquals(Arrays.asList("x", "y"), a.getMetadata("tags"));
+        assertEquals("#81A1C1", decoded.findById("b").getColor());
+        List<String> strings = TreeBinarySnapshot.stringTable(payload);
+        assertEquals(1, Collections.frequency(strings, "Élément"));
+        assertEquals(1, Collections.frequency(strings, "#81A1C1"));
+    }
+
+    @Test
+    @DisplayName("Un instantané corrompu ou périmé par rapport au JSON est ignoré")
+    void corruptOrStaleSnapshotIsIgnored() throws Exception {
+        // Given: Un JSON et son instantané binaire à jour
+        Path json = tempDir.resolve("tree_configuration.json");
+        byte[] source = "{\"id\":\"a\"}".getBytes(StandardCharsets.UTF_8);
+        Files.write(json, source);
+        TreeBinarySnapshot.writeFor(json, source, snapshot.encode(new TreeNode("root", "Racine", 100.0)));
+        assertNotNull(snapshot.readIfFresh(json));
+
+        // When/Then: Contenu altéré
+        Path binary = TreeBinarySnapshot.pathFor(json);
+        byte[] content = Files.readAllBytes(binary);
+        content[content.length - 1] ^= 0x01;
+        Files.write(binary, content);
+        assertNull(snapshot.readIfFresh(json));
+
+        // When/Then: JSON modifié après l'écriture de l'instantané
+        TreeBinarySnapshot.writeFor(json, source, snapshot.encode(new TreeNode("root", "Racine", 100.0)));
+        Files.setLastModifiedTime(json, FileTime.fromMillis(Files.getLastModifiedTime(json).toMillis() + 5000));
+        assertNull(snapshot.readIfFresh(json));
+
+        // When/Then: JSON réécrit avec la même taille et la même date, contenu différent
+        TreeBinarySnapshot.writeFor(json, source, snapshot.encode(new TreeNode("root", "Racine", 100.0)));
+        assertNotNull(snapshot.readIfFresh(json));
+        FileTime modified = Files.getLastModifiedTime(json);
+        Files.write(json, "{\"id\":\"b\"}".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(json, modified);
+        assertNull(snapshot.readIfFresh(json));
+    }
+
+    @Test
+    @DisplayName("Le service écrit l'instantané binaire et le relit au démarrage suivant")
+    void serviceWritesAndReloadsBinarySnapshot() {
+        // Given
+        Path config = tempDir.resolve("tree_configuration.json");
+        TreeConfigurationService first = new TreeConfigurationService(config);
+        TreeNode brancheA = first.getRootNode().findById("brancheA");
+        first.addChildNode(brancheA, new TreeNode("subA3", "A3", 20.0));
+        first.shutdown();
+        assertTrue(Files.exists(TreeBinarySnapshot.pathFor(config)));
+        assertNotNull(snapshot.readIfFresh(config));
+
+        // When
+        TreeConfigurationService second = new TreeConfigurationService(config);
+
+        // Then
+        try {
+            assertNotNull(second.getRootNode().findById("subA3"));
+            assertTrue(second.validateEntireTree());
+        } finally {
+            second.shutdown();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.applydance.service;
+
+import com.applydance.model.TreeNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests de la diffusion coalescée des événements de modification de l'arbre.
+ */
+@DisplayName("TreeChangeDispatcher - Notifications coalescées")
+class TreeChangeDispatcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Exécuteur manuel simulant une file d'événements (type Platform.runLater)
+     */
+    private static class QueueExecutor implements Executor {
+        final Deque<Runnable> queue = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable command) {
+            queue.add(command);
+        }
+
+        void drain() {
+            while (!queue.isEmpty()) {
+                queue.poll().run();
+            }
+        }
+    }
+
+    private final List<TreeConfigurationService> services = new ArrayList<>();
+
+    private TreeConfigurationService newService() {
+        TreeConfigurationService service = new TreeConfigurationService(tempDir.resolve("tree.json"));
+        services.add(service);
+        return service;
+    }
+
+    @AfterEach
+    void tearDown() {
+        services.forEach(TreeConfigurationService::shutdown);
+    }
+
+    @Test
+    @DisplayName("Une rafale de modifications produit une seule notification avec le delta fusionné")
+    void burstIsCoalescedIntoSingleNotification() {
+        // Given: Un listener sur un exécuteur différé
+        TreeConfigurationService configService = newService();
+        QueueExecutor executor = new QueueExecutor();
+        List<TreeChangeEvent> received = new ArrayList<>();
+        configService.addTreeChangeListener(received::add, executor, 0);
+        TreeNode subA1 = configService.getRootNode().findById("subA1");
+
+        // When: 20 modifications successives du même nœud (glissement d'un curseur)
+        for (int i = 1; i <= 20; i++) {
+            double percentage = 50.0 + i;
+            configService.updateNode(subA1, node -> node.setPercentage(percentage));
+        }
+        assertEquals(1, executor.queue.size());
+        executor.drain();
+
+        // Then: Une seule notification, sans doublons de redistribution
+        assertEquals(1, received.size());
+        TreeChangeEvent event = received.get(0);
+        assertFalse(event.isFullRefresh());
+        assertEquals(2, event.getChanges().size());
+        assertEquals(List.of("brancheA"), new ArrayList<>(event.getAffectedParentIds()));
+    }
+
+    @Test
+    @DisplayName("Un rafraîchissement complet absorbe les deltas en attente")
+    void fullRefreshAbsorbsPendingDeltas() {
+        TreeConfigurationService configService = newService();
+        QueueExecutor executor = new QueueExecutor();
+        List<TreeChangeEvent> received = new ArrayList<>();
+        configService.addTreeChangeListener(received::add, executor, 0);
+
+        configService.removeNode(configService.getRootNode().findById("subB2"));
+        configService.resetToDefault();
+        executor.drain();
+
+        assertEquals(1, received.size());
+        assertTrue(received.get(0).isFullRefresh());
+        assertSame(configService.getRootNode(), received.get(0).getRootNode());
+    }
+
+    @Test
+    @DisplayName("Les événements structurels sont conservés dans l'ordre")
+    void structuralChangesAreKeptInOrder() {
+        TreeConfigurationService configService = newService();
+        QueueExecutor executor = new QueueExecutor();
+        List<TreeChangeEvent> received = new ArrayList<>();
+        configService.addTreeChangeListener(received::add, executor, 0);
+        TreeNode brancheB = configService.getRootNode().findById("brancheB");
+
+        configService.addChildNode(brancheB, new TreeNode("subB3", "B3", 10.0));
+        configService.moveNode(configService.getRootNode().findById("subA1"), brancheB);
+        executor.drain();
+
+        List<TreeChangeEvent.Type> types = new ArrayList<>();
+        received.get(0).getChanges().forEach(change -> types.add(change.type));
+        assertEquals(List.of(TreeChangeEvent.Type.NODE_ADDED, TreeChangeEvent.Type.WEIGHTS_CHANGED,
+                TreeChangeEvent.Type.NODE_MOVED, TreeChangeEvent.Type.WEIGHTS_CHANGED), types);
+    }
+
+    @Test
+    @DisplayName("Une longue rafale est fusionnée en temps linéaire, chaque delta n'étant ajouté qu'une fois")
+    void longBurstIsAccumulatedIncrementally() {
+        // Given: 50 000 événements en attente, mises à jour de 25 000 nœuds distincts, chacune publiée deux fois
+        TreeChangeDispatcher dispatcher = new TreeChangeDispatcher();
+        QueueExecutor executor = new QueueExecutor();
+        List<TreeChangeEvent> received = new ArrayList<>();
+        dispatcher.subscribe(received::add, executor, 0);
+        TreeNode root = new TreeNode("root", "Racine", 100.0);
+        List<TreeNode> nodes = new ArrayList<>();
+        for (int i = 0; i < 25_000; i++) {
+            TreeNode node = new TreeNode("n" + i, "Nœud " + i, 0.0);
+            root.addChild(node);
+            nodes.add(node);
+        }
+
+        // When: Une fusion par copie serait quadratique (plus d'un milliard de copies)
+        assertTimeout(java.time.Duration.ofSeconds(5), () -> {
+            for (int round = 0; round < 2; round++) {
+                for (TreeNode node : nodes) {
+                    dispatcher.publish(TreeChangeEvent.updated(root, List.of(node)));
+                }
+            }
+        });
+        executor.drain();
+        dispatcher.shutdown();
+
+        // Then: Une notification, sans doublon, dans l'ordre de publication
+        assertEquals(1, received.size());
+        List<TreeChangeEvent.Change> changes = received.get(0).getChanges();
+        assertEquals(25_000, changes.size());
+        assertEquals("n0", changes.get(0).nodeId);
+        assertEquals("n24999", changes.get(24_999).nodeId);
+    }
+}
@@ -0,0 +1,154 @@
+package com.applydance.service;
+
+import com.applydance.model.GeneratedSlot;
+import com.applydance.model.TreeNode;
+import com.applydance.model.Weights;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests du contrôle de concurrence lecteurs/rédacteur de TreeConfigurationService.
+ */
+@DisplayName("TreeConfigurationService - Concurrence")
+class TreeConfigurationConcurrencyTest {
+
+    @TempDir
+    Path tempDir;
+
+    private TreeConfigurationService configService;
+
+    @BeforeEach
+    void setUp() {
+        configService = new TreeConfigurationService(tempDir.resolve("tree_configuration.json"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        configService.shutdown();
+    }
+
+    @Test
+    @DisplayName("Les générateurs concurrents ne voient jamais une fratrie incomplète pendant les modifications")
+    void concurrentGeneratorsSeeConsistentTree() throws Exception {
+        // Given: Un moteur partagé par plusieurs threads de génération
+        TreeGenerationEngine engine = new TreeGenerationEngine(configService);
+        TreeNode brancheA = configService.getRootNode().findById("brancheA");
+        AtomicBoolean running = new AtomicBoolean(true);
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        CountDownLatch started = new CountDownLatch(4);
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread reader = new Thread(() -> {
+                started.countDown();
+                try {
+                    while (running.get()) {
+                        GeneratedSlot slot = engine.generateSlot();
+                        assertNotNull(slot);
+                        boolean complete = configService.readTree(TreeConfigurationConcurrencyTest::isComplete);
+                        assertTrue(complete, "Fratrie incomplète observée");
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // When: Ajouts et suppressions répétés sur le thread d'édition
+        for (int i = 0; i < 200; i++) {
+            TreeNode child = new TreeNode("concurrent" + i, "C" + i, 10.0);
+            configService.addChildNode(brancheA, child);
+            configService.removeNode(child);
+        }
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join(5000);
+        }
+
+        // Then: Aucune exception ni incohérence côté lecteurs
+        assertTrue(failures.isEmpty(), () -> "Échecs des lecteurs : " + failures);
+        assertTrue(configService.validateEntireTree());
+    }
+
+    @Test
+    @DisplayName("Une génération qui suit immédiatement une modification tire avec les nouvelles pondérations")
+    void generationAfterEditUsesNewWeights() {
+        // Given: Tables d'alias déjà en cache pour Branche A, thread de notification bloqué
+        CountDownLatch release = new CountDownLatch(1);
+        configService.addBackgroundTreeChangeListener(event -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 0);
+        TreeGenerationEngine engine = new TreeGenerationEngine(configService);
+        for (int i = 0; i < 50; i++) {
+            engine.generateSlot();
+        }
+        TreeNode subA1 = configService.getRootNode().findById("subA1");
+
+        // When: Toute la pondération sur A1, génération sans attendre l'événement de modification
+        configService.updateNode(subA1, node -> node.setPercentage(100.0));
+        List<GeneratedSlot> slots = engine.generateMultipleSlots(300);
+        release.countDown();
+
+        // Then
+        assertEquals(0, configService.getRootNode().findById("subA2").getWeightPpm());
+        assertTrue(slots.stream().noneMatch(slot -> "subA2".equals(slot.getSelectedNodeId())));
+        assertTrue(slots.stream().anyMatch(slot -> "subA1".equals(slot.getSelectedNodeId())));
+    }
+
+    @Test
+    @DisplayName("Une transaction imbriquée du même thread rejoint le verrou sans interblocage")
+    void nestedEditOnSameThreadReusesLock() {
+        // Given
+        TreeNode brancheB = configService.getRootNode().findById("brancheB");
+
+        // When: Une modification lancée depuis une transaction, puis une lecture sous le verrou d'écriture
+        configService.edit("Englobante", editor -> {
+            configService.addChildNode(brancheB, new TreeNode("subB3", "B3", 10.0));
+            int size = configService.readTree(root -> root.findById("brancheB").getChildren().size());
+            assertEquals(3, size);
+        });
+
+        // Then: Le verrou est libéré et un autre thread peut modifier l'arbre
+        assertFalse(configService.isInTransaction());
+        Thread other = new Thread(() -> configService.removeNode(configService.getRootNode().findById("subB3")));
+        other.start();
+        assertDoesNotThrow(() -> other.join(5000));
+        assertFalse(other.isAlive());
+        assertNull(configService.getRootNode().findById("subB3"));
+    }
+
+    private static boolean isComplete(TreeNode node) {
+        if (!node.hasChildren()) {
+            return true;
+        }
+        if (!Weights.isComplete(node.getChildren())) {
+            return false;
+        }
+        for (TreeNode child : node.getChildren()) {
+            if (!isComplete(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
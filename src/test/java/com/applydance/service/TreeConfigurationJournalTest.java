@@ -0,0 +1,174 @@
+package com.applydance.service;
+
+import com.applydance.model.TreeNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests du journal d'annulation/rétablissement de TreeConfigurationService.
+ */
+@DisplayName("TreeConfigurationService - Annuler / Rétablir")
+class TreeConfigurationJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    private TreeConfigurationService configService;
+    private TreeNode brancheA;
+    private TreeNode brancheB;
+
+    @BeforeEach
+    void setUp() {
+        configService = new TreeConfigurationService(tempDir.resolve("tree_configuration.json"));
+        brancheA = configService.getRootNode().findById("brancheA");
+        brancheB = configService.getRootNode().findById("brancheB");
+    }
+
+    @AfterEach
+    void tearDown() {
+        configService.shutdown();
+    }
+
+    @Test
+    @DisplayName("Annuler un ajout retire le nœud et restaure les pourcentages des frères")
+    void undoAddRestoresSiblingPercentages() {
+        // Given: Un ajout avec redistribution
+        configService.addChildNode(brancheA, new TreeNode("subA3", "Sous-élément A3", 50.0));
+        assertEquals(3, brancheA.getChildren().size());
+
+        // When: On annule
+        assertTrue(configService.undo());
+
+        // Then: L'arbre est revenu à son état initial
+        assertEquals(2, brancheA.getChildren().size());
+        assertNull(brancheA.findById("subA3"));
+        assertEquals(70.0, brancheA.findById("subA1").getPercentage(), 1e-9);
+        assertEquals(30.0, brancheA.findById("subA2").getPercentage(), 1e-9);
+
+        // And: Rétablir réapplique l'ajout et la redistribution
+        assertTrue(configService.redo());
+        assertNotNull(brancheA.findById("subA3"));
+        double sum = brancheA.getChildren().stream().mapToDouble(TreeNode::getPercentage).sum();
+        assertEquals(100.0, sum, 1e-6);
+    }
+
+    @Test
+    @DisplayName("Annuler une mise à jour restaure le nœud modifié et sa fratrie")
+    void undoUpdateRestoresEditedNodeAndSiblings() {
+        // Given: Le nœud est modifié sous verrou, son état d'avant capturé au passage
+        TreeNode subA1 = brancheA.findById("subA1");
+        configService.updateNode(subA1, node -> {
+            node.setPercentage(90.0);
+            node.setLabel("A1 renommé");
+        });
+        assertEquals(10.0, brancheA.findById("subA2").getPercentage(), 1e-9);
+
+        // When: On annule
+        assertTrue(configService.undo());
+
+        // Then
+        assertEquals(70.0, subA1.getPercentage(), 1e-9);
+        assertEquals("🔹 Sous-élément A1", subA1.getLabel());
+        assertEquals(30.0, brancheA.findById("subA2").getPercentage(), 1e-9);
+    }
+
+    @Test
+    @DisplayName("Annuler un déplacement remet le nœud à sa position d'origine")
+    void undoMoveRestoresOriginalPosition() {
+        TreeNode subA1 = brancheA.findById("subA1");
+        configService.moveNode(subA1, brancheB);
+        assertSame(brancheB, subA1.getParent());
+
+        assertTrue(configService.undo());
+
+        assertSame(brancheA, subA1.getParent());
+        assertEquals(0, brancheA.getChildren().indexOf(subA1));
+        assertEquals(2, brancheB.getChildren().size());
+        assertEquals(50.0, brancheB.findById("subB1").getPercentage(), 1e-9);
+    }
+
+    @Test
+    @DisplayName("Une nouvelle modification invalide la pile de rétablissement")
+    void newEditClearsRedoStack() {
+        configService.removeNode(brancheA.findById("subA2"));
+        assertTrue(configService.undo());
+        assertTrue(configService.canRedo());
+
+        configService.addChildNode(brancheB, new TreeNode("subB3", "Sous-élément B3", 10.0));
+
+        assertFalse(configService.canRedo());
+        assertFalse(configService.redo());
+    }
+
+    @Test
+    @DisplayName("Le journal est borné à sa capacité")
+    void journalIsBounded() {
+        TreeEditJournal journal = new TreeEditJournal(2);
+        TreeNode root = new TreeNode("root", "Root", 100.0);
+        for (int i = 0; i < 5; i++) {
+            TreeNode child = new TreeNode("c" + i, "Child " + i, 10.0);
+            journal.record("Ajout " + i, java.util.List.of(TreeEditJournal.inserted(root, child, i)));
+            root.addChild(child);
+        }
+
+        assertNotNull(journal.undo());
+        assertNotNull(journal.undo());
+        assertNull(journal.undo());
+        assertEquals(3, root.getChildren().size());
+    }
+
+    @Test
+    @DisplayName("L'état d'avant est capturé sur le nœud modifié lui-même, même avec des identifiants dupliqués")
+    void beforeStateIsCapturedPerNodeEvenWithDuplicateIds() {
+        // Given: Deux nœuds de même identifiant dans deux branches
+        TreeNode original = brancheA.findById("subA1");
+        TreeNode homonym = new TreeNode("subA1", "Homonyme", 0.0);
+        configService.addChildNodeWithoutRedistribution(brancheB, homonym);
+
+        // When: Chacun est renommé, puis les deux modifications sont annulées
+        configService.updateNode(original, node -> node.setLabel("Original renommé"));
+        configService.updateNode(homonym, node -> node.setLabel("Homonyme renommé"));
+        assertTrue(configService.undo());
+        assertTrue(configService.undo());
+
+        // Then: Chaque nœud retrouve son propre libellé
+        assertEquals("🔹 Sous-élément A1", original.getLabel());
+        assertEquals("Homonyme", homonym.getLabel());
+    }
+
+    @Test
+    @DisplayName("Tout développer / réduire ne crée aucune entrée d'annulation et n'est pas annulé par une autre édition")
+    void expandStateStaysOutOfUndoJournal() {
+        // Given: Une modification annulable
+        TreeNode subA1 = brancheA.findById("subA1");
+        configService.updateNode(subA1, n -> n.setLabel("A1 renommé"));
+        List<TreeChangeEvent> events = new ArrayList<>();
+        configService.addTreeChangeListener(events::add, Runnable::run, 0);
+
+        // When: Tout réduire
+        configService.setExpanded(configService.getRootNode(), false, true);
+
+        // Then: Un seul événement, tous les nœuds réduits
+        assertEquals(1, events.size());
+        assertEquals(7, events.get(0).getChanges().size());
+        assertFalse(brancheA.isExpanded());
+        assertFalse(subA1.isExpanded());
+
+        // When: Annuler
+        assertTrue(configService.undo());
+
+        // Then: Seul le renommage est annulé, l'état réduit est conservé
+        assertEquals("🔹 Sous-élément A1", subA1.getLabel());
+        assertFalse(subA1.isExpanded());
+        assertFalse(configService.canUndo());
+    }
+}
@@ -0,0 +1,180 @@
+package com.applydance.service;
+
+import com.applydance.model.TreeNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests des transactions d'édition groupée de TreeConfigurationService.
+ */
+@DisplayName("TreeConfigurationService - Transactions d'édition")
+class TreeConfigurationTransactionTest {
+
+    @TempDir
+    Path tempDir;
+
+    private TreeConfigurationService configService;
+    private List<TreeChangeEvent> received;
+
+    @BeforeEach
+    void setUp() {
+        configService = new TreeConfigurationService(tempDir.resolve("tree_configuration.json"));
+        received = new ArrayList<>();
+        configService.addTreeChangeListener(received::add, Runnable::run, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        configService.shutdown();
+    }
+
+    @Test
+    @DisplayName("Un lot de modifications produit une seule notification et une seule entrée d'annulation")
+    void batchProducesSingleEventAndUndoEntry() {
+        // Given
+        TreeNode brancheA = configService.getRootNode().findById("brancheA");
+
+        // When: Trois ajouts sous le même parent dans une transaction
+        configService.edit("Ajout groupé", editor -> {
+            for (int i = 3; i <= 5; i++) {
+                editor.addChild(brancheA, new TreeNode("subA" + i, "A" + i, 20.0));
+            }
+        });
+
+        // Then: Une notification, une seule redistribution du parent
+        assertEquals(1, received.size());
+        long weightChanges = received.get(0).getChanges().stream()
+                .filter(change -> change.type == TreeChangeEvent.Type.WEIGHTS_CHANGED)
+                .count();
+        assertEquals(1, weightChanges);
+        double sum = brancheA.getChildren().stream().mapToDouble(TreeNode::getPercentage).sum();
+        assertEquals(100.0, sum, 1e-6);
+
+        // And: Une seule annulation retire tout le lot
+        assertEquals("Ajout groupé", configService.getJournal().getUndoDescription());
+        assertTrue(configService.undo());
+        assertEquals(2, brancheA.getChildren().size());
+        assertEquals(70.0, brancheA.findById("subA1").getPercentage(), 1e-9);
+        assertFalse(configService.canUndo());
+    }
+
+    @Test
+    @DisplayName("Une erreur dans le lot annule toutes les modifications déjà appliquées")
+    void failureRollsBackWholeBatch() {
+        TreeNode brancheB = configService.getRootNode().findById("brancheB");
+
+        assertThrows(IllegalStateException.class, () -> configService.edit("Lot en échec", editor -> {
+            editor.remove(brancheB.findById("subB1"));
+            editor.move(configService.getRootNode().findById("subA1"), brancheB);
+            throw new IllegalStateException("échec simulé");
+        }));
+
+        assertFalse(configService.isInTransaction());
+        assertTrue(received.isEmpty());
+        assertFalse(configService.canUndo());
+        assertEquals(List.of("subB1", "subB2"), idsOf(brancheB));
+        assertEquals(List.of("subA1", "subA2"), idsOf(configService.getRootNode().findById("brancheA")));
+        assertEquals(50.0, brancheB.findById("subB1").getPercentage(), 1e-9);
+    }
+
+    @Test
+    @DisplayName("Les appels publics imbriqués rejoignent la transaction englobante")
+    void nestedPublicCallsJoinTransaction() {
+        TreeNode brancheB = configService.getRootNode().findById("brancheB");
+
+        configService.begin("Lot imbriqué");
+        configService.addChildNode(brancheB, new TreeNode("subB3", "B3", 10.0));
+        configService.removeNode(brancheB.findById("subB1"));
+        assertTrue(received.isEmpty());
+        configService.commit();
+
+        assertEquals(1, received.size());
+        assertEquals(List.of("subB2", "subB3"), idsOf(brancheB));
+        assertTrue(configService.undo());
+        assertEquals(List.of("subB1", "subB2"), idsOf(brancheB));
+    }
+
+    @Test
+    @DisplayName("Une erreur (Error) dans le lot annule les modifications et libère le verrou")
+    void errorRollsBackAndReleasesLock() throws Exception {
+        // Given
+        TreeNode brancheB = configService.getRootNode().findById("brancheB");
+
+        // When: Le lot échoue sur une Error et non une RuntimeException
+        assertThrows(AssertionError.class, () -> configService.edit("Lot en erreur", editor -> {
+            editor.remove(brancheB.findById("subB1"));
+            throw new AssertionError("erreur simulée");
+        }));
+
+        // Then: Arbre intact et verrou d'écriture rendu (une lecture d'un autre thread aboutit)
+        assertFalse(configService.isInTransaction());
+        assertEquals(List.of("subB1", "subB2"), idsOf(brancheB));
+        int children = CompletableFuture.supplyAsync(() ->
+                configService.readTree(root -> root.findById("brancheB").getChildren().size()))
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(2, children);
+    }
+
+    @Test
+    @DisplayName("Un échec à la validation annule toutes les opérations, y compris la redistribution partielle")
+    void commitFailureRevertsOperations() throws Exception {
+        // Given: Un nœud dont l'écriture du pourcentage échoue une fois, pendant la redistribution
+        TreeNode brancheB = configService.getRootNode().findById("brancheB");
+        FaultyNode faulty = new FaultyNode("subB3", "B3");
+
+        // When
+        assertThrows(IllegalStateException.class, () -> configService.edit("Validation en échec", editor -> {
+            editor.addChild(brancheB, faulty);
+            faulty.armed = true;
+        }));
+
+        // Then: Ni insertion ni pourcentages modifiés, aucune entrée d'annulation, verrou rendu
+        assertFalse(configService.isInTransaction());
+        assertTrue(received.isEmpty());
+        assertFalse(configService.canUndo());
+        assertEquals(List.of("subB1", "subB2"), idsOf(brancheB));
+        assertEquals(50.0, brancheB.findById("subB1").getPercentage(), 1e-9);
+        assertEquals(50.0, brancheB.findById("subB2").getPercentage(), 1e-9);
+        int children = CompletableFuture.supplyAsync(() ->
+                configService.readTree(root -> root.findById("brancheB").getChildren().size()))
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(2, children);
+    }
+
+    /**
+     * Nœud dont la prochaine écriture de pourcentage échoue une fois armé
+     */
+    private static final class FaultyNode extends TreeNode {
+        boolean armed;
+
+        FaultyNode(String id, String label) {
+            super(id, label, 20.0);
+        }
+
+        @Override
+        public void setWeightPpm(int weightPpm) {
+            if (armed) {
+                armed = false;
+                throw new IllegalStateException("écriture refusée");
+            }
+            super.setWeightPpm(weightPpm);
+        }
+    }
+
+    private static List<String> idsOf(TreeNode parent) {
+        List<String> ids = new ArrayList<>();
+        parent.getChildren().forEach(child -> ids.add(child.getId()));
+        return ids;
+    }
+}
@@ -0,0 +1,145 @@
+package com.applydance.service;
+
+import com.applydance.model.TreeNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests du calcul de différence entre arbres et de son application en transaction.
+ */
+@DisplayName("TreeDiff - Différence et correctif d'arbre")
+class TreeDiffTest {
+
+    @TempDir
+    Path tempDir;
+
+    private TreeConfigurationService configService;
+
+    @BeforeEach
+    void setUp() {
+        configService = new TreeConfigurationService(tempDir.resolve("tree_configuration.json"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        configService.shutdown();
+    }
+
+    @Test
+    @DisplayName("Un seul pourcentage modifié produit un script minimal et un événement delta")
+    void singleWeightChangeIsPatchedAsDelta() {
+        // Given: La configuration importée ne diffère que par deux poids d'une fratrie
+        TreeNode target = configService.getRootNode().clone();
+        target.findById("subA1").setPercentage(80.0);
+        target.findById("subA2").setPercentage(20.0);
+        List<TreeChangeEvent> events = new ArrayList<>();
+        configService.addTreeChangeListener(events::add, Runnable::run, 0);
+        TreeNode rootBefore = configService.getRootNode();
+
+        // When
+        TreeDiff diff = configService.patchTree("Import", target);
+
+        // Then
+        assertFalse(diff.requiresReplacement());
+        assertEquals(2, diff.size());
+        assertTrue(diff.getEdits().stream().allMatch(edit -> edit.type == TreeDiff.Type.UPDATE));
+        assertSame(rootBefore, configService.getRootNode());
+        assertEquals(1, events.size());
+        assertFalse(events.get(0).isFullRefresh());
+        assertEquals(target.getContentHash(), configService.getRootNode().getContentHash());
+        assertTrue(configService.undo());
+        assertEquals(70.0, configService.getRootNode().findById("subA1").getPercentage(), 1e-9);
+    }
+
+    @Test
+    @DisplayName("Les pourcentages de la cible sont appliqués tels quels, sans redistribution au commit")
+    void patchKeepsTargetWeightsVerbatim() {
+        // Given: Une fratrie modifiée et un enfant ajouté, que le solveur aurait redistribués
+        TreeNode target = configService.getRootNode().clone();
+        target.findById("subA1").setPercentage(60.0);
+        target.findById("subA2").setPercentage(30.0);
+        target.findById("brancheB").addChild(new TreeNode("subB3", "B3", 25.0));
+
+        // When
+        configService.patchTree("Import", target);
+
+        // Then
+        TreeNode root = configService.getRootNode();
+        assertEquals(60.0, root.findById("subA1").getPercentage(), 1e-9);
+        assertEquals(30.0, root.findById("subA2").getPercentage(), 1e-9);
+        assertEquals(25.0, root.findById("subB3").getPercentage(), 1e-9);
+        assertEquals(50.0, root.findById("subB1").getPercentage(), 1e-9);
+        assertEquals(target.getContentHash(), root.getContentHash());
+    }
+
+    @Test
+    @DisplayName("Un arbre qui ne diffère que par l'état développé/réduit ne produit aucune édition")
+    void expandedStateDifferenceIsNotPatched() {
+        // Given
+        TreeNode target = configService.getRootNode().clone();
+        target.findById("brancheA").setExpanded(false);
+
+        // When
+        TreeDiff diff = configService.patchTree("Import", target);
+
+        // Then
+        assertEquals(0, diff.size());
+        assertFalse(configService.canUndo());
+    }
+
+    @Test
+    @DisplayName("Ajouts, suppressions, déplacements et réordonnancement reproduisent exactement l'arbre cible")
+    void structuralChangesReproduceTarget() {
+        // Given
+        TreeNode target = configService.getRootNode().clone();
+        TreeNode brancheA = target.findById("brancheA");
+        TreeNode brancheB = target.findById("brancheB");
+        TreeNode subB1 = target.findById("subB1");
+        brancheB.removeChild(subB1);
+        brancheA.insertChild(0, subB1);                          // déplacement entre parents
+        brancheA.findById("subA1").setPercentage(20.0);
+        brancheA.findById("subA2").setPercentage(30.0);
+        subB1.setPercentage(50.0);
+        brancheB.removeChild(brancheB.findById("subB2"));         // suppression
+        TreeNode added = new TreeNode("subB3", "Nouveau B3", 100.0);
+        added.addChild(new TreeNode("leafB3", "Feuille B3", 100.0));
+        brancheB.addChild(added);                                 // ajout d'un sous-arbre
+        target.removeChild(brancheA);
+        target.addChild(brancheA);                                // réordonnancement de la racine
+
+        // When
+        TreeDiff diff = configService.patchTree("Import", target);
+
+        // Then
+        assertFalse(diff.requiresReplacement());
+        assertEquals(target.getContentHash(), configService.getRootNode().getContentHash());
+        assertEquals(1, diff.getEdits().stream().filter(edit -> edit.type == TreeDiff.Type.REMOVE).count());
+        assertEquals(1, diff.getEdits().stream().filter(edit -> edit.type == TreeDiff.Type.ADD).count());
+        assertTrue(configService.validateEntireTree());
+    }
+
+    @Test
+    @DisplayName("Des racines différentes imposent un remplacement complet")
+    void differentRootsRequireReplacement() {
+        // Given
+        TreeNode other = new TreeNode("autre", "Autre racine", 100.0);
+        other.addChild(new TreeNode("x", "X", 100.0));
+
+        // When
+        TreeDiff diff = configService.patchTree("Import", other);
+
+        // Then
+        assertTrue(diff.requiresReplacement());
+        assertEquals("autre", configService.getRootNode().getId());
+        assertTrue(TreeDiff.compute(other, other.clone()).isEmpty());
+    }
+}
@@ -0,0 +1,141 @@
+package com.applydance.service;
+
+import com.applydance.model.TreeNode;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests du journal d'écriture anticipée de la configuration d'arbre.
+ */
+@DisplayName("TreeEditLog - Journal d'écriture anticipée")
+class TreeEditLogTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Les modifications sont journalisées puis rejouées au redémarrage")
+    void editsAreAppendedAndReplayedOnStartup() throws IOException {
+        // Given: Un service dont l'instantané n'est jamais réécrit pendant le test
+        Path configPath = tempDir.resolve("tree_configuration.json");
+        TreeConfigurationService configService = new TreeConfigurationService(configPath, 60_000);
+        configService.flush();
+        String snapshotBefore = Files.readString(configPath);
+
+        // When: Ajout, modification et déplacement, puis arrêt brutal (sans compaction)
+        TreeNode brancheB = configService.getRootNode().findById("brancheB");
+        configService.addChildNode(brancheB, new TreeNode("subB3", "B3", 50.0));
+        TreeNode subA1 = configService.getRootNode().findById("subA1");
+        configService.updateNode(subA1, node -> {
+            node.setLabel("A1 renommé");
+            node.setPercentage(80.0);
+        });
+        configService.moveNode(configService.getRootNode().findById("subA2"), brancheB);
+        configService.flush();
+
+        // Then: Seul le journal a été écrit
+        assertEquals(snapshotBefore, Files.readString(configPath));
+        assertTrue(Files.size(TreeEditLog.pathFor(configPath)) > 0);
+
+        // And: Le redémarrage reconstruit le même arbre
+        TreeConfigurationService reloaded = new TreeConfigurationService(configPath);
+        TreeNode root = reloaded.getRootNode();
+        assertEquals(List.of("subB1", "subB2", "subB3", "subA2"), idsOf(root.findById("brancheB")));
+        assertEquals(List.of("subA1"), idsOf(root.findById("brancheA")));
+        assertEquals("A1 renommé", root.findById("subA1").getLabel());
+        assertEquals(configService.getRootNode().findById("subB3").getPercentage(),
+                root.findById("subB3").getPercentage(), 1e-9);
+        reloaded.shutdown();
+    }
+
+    @Test
+    @DisplayName("Développer ou réduire ajoute une seule étape au journal sans réécrire l'instantané")
+    void expandStateIsLoggedAsSingleStep() throws IOException {
+        // Given
+        Path configPath = tempDir.resolve("tree_configuration.json");
+        TreeConfigurationService configService = new TreeConfigurationService(configPath, 60_000);
+        configService.flush();
+        String snapshotBefore = Files.readString(configPath);
+
+        // When: Tout réduire, puis redévelopper une branche
+        configService.setExpanded(configService.getRootNode(), false, true);
+        configService.setExpanded(configService.getRootNode().findById("brancheA"), true, false);
+        configService.flush();
+
+        // Then: Deux lignes de journal, instantané intact, état restauré au redémarrage
+        assertEquals(snapshotBefore, Files.readString(configPath));
+        assertEquals(2, Files.readAllLines(TreeEditLog.pathFor(configPath)).size());
+        TreeConfigurationService reloaded = new TreeConfigurationService(configPath);
+        assertFalse(reloaded.getRootNode().isExpanded());
+        assertTrue(reloaded.getRootNode().findById("brancheA").isExpanded());
+        assertFalse(reloaded.getRootNode().findById("brancheB").isExpanded());
+        reloaded.shutdown();
+    }
+
+    @Test
+    @DisplayName("Une annulation est journalisée comme une modification")
+    void undoIsLogged() {
+        Path configPath = tempDir.resolve("tree_configuration.json");
+        TreeConfigurationService configService = new TreeConfigurationService(configPath, 60_000);
+        configService.removeNode(configService.getRootNode().findById("subB1"));
+        configService.undo();
+        configService.flush();
+
+        TreeConfigurationService reloaded = new TreeConfigurationService(configPath);
+        assertEquals(List.of("subB1", "subB2"), idsOf(reloaded.getRootNode().findById("brancheB")));
+        assertEquals(50.0, reloaded.getRootNode().findById("subB1").getPercentage(), 1e-9);
+        reloaded.shutdown();
+    }
+
+    @Test
+    @DisplayName("Un enregistrement interrompu en fin de journal est ignoré et tronqué")
+    void tornTailIsDiscarded() throws IOException {
+        // Given: Deux modifications journalisées puis une écriture interrompue
+        Path configPath = tempDir.resolve("tree_configuration.json");
+        TreeConfigurationService configService = new TreeConfigurationService(configPath, 60_000);
+        TreeNode brancheA = configService.getRootNode().findById("brancheA");
+        configService.addChildNode(brancheA, new TreeNode("subA3", "A3", 10.0));
+        configService.flush();
+        Path logPath = TreeEditLog.pathFor(configPath);
+        long validSize = Files.size(logPath);
+        byte[] torn = ChecksummedLog.frame("{\"sequence\":99,\"steps\":[]}");
+        Files.write(logPath, new String(torn, 0, torn.length - 5, StandardCharsets.UTF_8)
+                .getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        // When
+        TreeEditLog log = new TreeEditLog(logPath);
+        List<TreeEditLog.Record> records = log.recover();
+        log.close();
+
+        // Then
+        assertEquals(1, records.size());
+        assertEquals(validSize, Files.size(logPath));
+        TreeConfigurationService reloaded = new TreeConfigurationService(configPath);
+        assertNotNull(reloaded.getRootNode().findById("subA3"));
+        reloaded.shutdown();
+    }
+
+    @Test
+    @DisplayName("Une somme de contrôle invalide est détectée")
+    void corruptedChecksumIsRejected() {
+        byte[] line = ChecksummedLog.frame("{\"sequence\":1}");
+        assertEquals("{\"sequence\":1}", ChecksummedLog.decode(line, 0, line.length - 1));
+        line[12] = 'X';
+        assertNull(ChecksummedLog.decode(line, 0, line.length - 1));
+    }
+
+    private static List<String> idsOf(TreeNode parent) {
+        return parent.getChildren().stream().map(TreeNode::getId).collect(Collectors.toList());
+    }
+}
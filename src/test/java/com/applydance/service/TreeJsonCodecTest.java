@@ -0,0 +1,71 @@
+package com.applydance.service;
+
+import com.applydance.model.TreeNode;
+import com.applydance.model.TreeNodeDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests du codec JSON en flux de l'arbre de configuration.
+ */
+@DisplayName("TreeJsonCodec - Lecture et écriture en flux")
+class TreeJsonCodecTest {
+
+    private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private final TreeJsonCodec codec = new TreeJsonCodec(mapper);
+
+    @Test
+    @DisplayName("Un aller-retour conserve la structure, les références parent et les métadonnées")
+    void roundTripKeepsStructureAndParents() throws Exception {
+        // Given
+        TreeNode root = new TreeNode("root", "Racine", 100.0, "🌳");
+        TreeNode branch = new TreeNode("branch", "Branche", 33.3333, "📊");
+        branch.setColor("#5E81AC");
+        branch.setMetadata(WeightSolver.LOCKED_KEY, true);
+        branch.setMetadata("tags", Arrays.asList("a", "b"));
+        TreeNode leaf = new TreeNode("leaf", "Feuille", 100.0);
+        branch.addChild(leaf);
+        root.addChild(branch);
+
+        // When
+        TreeNode read = codec.read(codec.writeAsBytes(root));
+
+        // Then
+        TreeNode readBranch = read.findById("branch");
+        assertSame(read, readBranch.getParent());
+        assertSame(readBranch, read.findById("leaf").getParent());
+        assertEquals(branch.getWeightPpm(), readBranch.getWeightPpm());
+        assertEquals("#5E81AC", readBranch.getColor());
+        assertTrue(WeightSolver.isLocked(readBranch));
+        assertEquals(Arrays.asList("a", "b"), readBranch.getMetadata("tags"));
+        assertNull(read.findById("leaf").getEmoji());
+    }
+
+    @Test
+    @DisplayName("Le format reste compatible avec TreeNodeDTO dans les deux sens")
+    void formatIsCompatibleWithDto() throws Exception {
+        // Given
+        TreeNode root = new TreeNode("root", "Racine", 100.0, "🌳");
+        root.addChild(new TreeNode("a", "A", 60.0, "🔹"));
+        root.addChild(new TreeNode("b", "B", 40.0, "🔸"));
+
+        // When: Écriture en flux relue par le DTO, et JSON du DTO relu en flux (champ inconnu ignoré)
+        TreeNodeDTO dto = mapper.readValue(codec.writeAsBytes(root), TreeNodeDTO.class);
+        String dtoJson = mapper.writeValueAsString(TreeNodeDTO.fromTreeNode(root))
+                .replaceFirst("\\{", "{\"futureField\" : {\"x\" : [1, 2]},");
+        TreeNode fromDto = codec.read(dtoJson.getBytes("UTF-8"));
+
+        // Then
+        assertEquals(2, dto.getChildren().size());
+        assertEquals(60.0, dto.getChildren().get(0).getPercentage(), 1e-9);
+        assertEquals("Racine", fromDto.getLabel());
+        assertEquals(400_000, fromDto.findById("b").getWeightPpm());
+        assertEquals("🔹", fromDto.findById("a").getEmoji());
+    }
+}
@@ -0,0 +1,112 @@
+package com.applydance.service;
+
+import com.applydance.model.TreeNode;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests du moteur de validation à règles et du rapport partagé par version de l'arbre.
+ */
+@DisplayName("TreeValidator - Moteur de validation")
+class TreeValidatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Les règles standard et enregistrées produisent des diagnostics structurés en un parcours")
+    void rulesProduceStructuredDiagnostics() {
+        // Given: Une fratrie incomplète, un doublon et une règle personnalisée
+        TreeNode root = new TreeNode("root", "Racine", 100.0);
+        TreeNode branch = new TreeNode("branch", "Branche", 60.0);
+        branch.addChild(new TreeNode("leaf", "Feuille", 50.0));
+        root.addChild(branch);
+        root.addChild(new TreeNode("leaf", "Doublon", 40.0));
+        TreeValidator validator = new TreeValidator();
+        validator.addRule((node, diagnostics) -> {
+            if (node.getLabel().startsWith("Doublon")) {
+                diagnostics.add(TreeValidator.Diagnostic.warning("LABEL", node, "Libellé suspect"));
+            }
+        });
+
+        // When
+        TreeValidator.Report report = validator.validate(root);
+
+        // Then
+        assertEquals(4, report.getNodeCount());
+        assertFalse(report.isValid());
+        List<TreeValidator.Diagnostic> errors = report.getErrors();
+        assertEquals(2, errors.size());
+        assertEquals(TreeValidator.CHILDREN_SUM, errors.get(0).code);
+        assertEquals("Racine > Branche", errors.get(0).path);
+        assertEquals(TreeValidator.DUPLICATE_ID, errors.get(1).code);
+        assertEquals("LABEL", report.getWarnings().get(0).code);
+    }
+
+    @Test
+    @DisplayName("Le parcours parallèle donne les mêmes diagnostics que le parcours séquentiel, doublons compris")
+    void parallelTraversalMatchesSequential() {
+        // Given: Un arbre de 50 000 nœuds avec une fratrie incomplète et des identifiants
+        // réutilisés d'un sous-arbre à l'autre
+        TreeNode root = new TreeNode("root", "Racine", 100.0);
+        Deque<TreeNode> queue = new ArrayDeque<>();
+        queue.add(root);
+        int created = 1;
+        while (created < 50_000) {
+            TreeNode parent = queue.poll();
+            for (int i = 0; i < 10 && created < 50_000; i++, created++) {
+                TreeNode child = new TreeNode("n" + (created % 45_000), "N" + created, 10.0);
+                parent.addChild(child);
+                queue.add(child);
+            }
+        }
+        root.getChildren().get(3).setPercentage(5.0);
+        TreeValidator validator = new TreeValidator();
+
+        // When
+        TreeValidator.Report sequential = validator.validate(root, false);
+
+        // Then: Mêmes diagnostics, dans le même ordre, à chaque exécution
+        assertEquals(4_999, sequential.getDiagnostics().stream()
+                .filter(diagnostic -> TreeValidator.DUPLICATE_ID.equals(diagnostic.code)).count());
+        for (int run = 0; run < 5; run++) {
+            TreeValidator.Report parallel = validator.validate(root, true);
+            assertEquals(50_000, parallel.getNodeCount());
+            assertEquals(sequential.getDiagnostics().size(), parallel.getDiagnostics().size());
+            for (int i = 0; i < sequential.getDiagnostics().size(); i++) {
+                assertEquals(sequential.getDiagnostics().get(i).code, parallel.getDiagnostics().get(i).code);
+                assertEquals(sequential.getDiagnostics().get(i).path, parallel.getDiagnostics().get(i).path);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Le rapport de l'arbre courant est partagé jusqu'à la modification suivante")
+    void reportIsCachedPerTreeVersion() {
+        // Given
+        TreeConfigurationService configService = new TreeConfigurationService(tempDir.resolve("tree_configuration.json"));
+        try {
+            TreeValidator.Report first = configService.getValidationReport();
+
+            // When/Then: Même instance sans modification
+            assertSame(first, configService.getValidationReport());
+            assertTrue(configService.validateEntireTree());
+
+            // When/Then: Nouveau rapport après une modification
+            TreeNode subA1 = configService.getRootNode().findById("subA1");
+            configService.updateNode(subA1, node -> node.setPercentage(80.0));
+            assertNotSame(first, configService.getValidationReport());
+            assertTrue(configService.getValidationReport().isValid());
+        } finally {
+            configService.shutdown();
+        }
+    }
+}
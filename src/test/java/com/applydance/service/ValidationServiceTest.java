@@ -0,0 +1,135 @@
+package com.applydance.service;
+
+import com.applydance.model.TreeNode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests de la validation incrémentale (nœuds modifiés et index des identifiants).
+ */
+@DisplayName("ValidationService - Validation incrémentale")
+class ValidationServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private TreeConfigurationService configService;
+    private ValidationService validationService;
+
+    @BeforeEach
+    void setUp() {
+        configService = new TreeConfigurationService(tempDir.resolve("tree_configuration.json"));
+        validationService = new ValidationService(configService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        configService.shutdown();
+    }
+
+    @Test
+    @DisplayName("Après une modification, seule la fratrie concernée est revalidée")
+    void singleEditRevalidatesOnlySiblings() {
+        // Given: Une première validation complète de l'arbre par défaut (7 nœuds)
+        ValidationService.ValidationStatus initial = validationService.validateTree();
+        assertEquals(7, validationService.getLastValidatedCount());
+        assertEquals(ValidationService.ValidationLevel.VALID, initial.globalLevel);
+
+        // When: Modification d'un sous-élément (redistribution de sa fratrie)
+        TreeNode subA1 = configService.getRootNode().findById("subA1");
+        configService.updateNode(subA1, node -> node.setPercentage(80.0));
+        ValidationService.ValidationStatus status = validationService.validateTree();
+
+        // Then: Le parent et ses deux enfants seulement
+        assertEquals(3, validationService.getLastValidatedCount());
+        assertEquals(ValidationService.ValidationLevel.VALID, status.globalLevel);
+        assertEquals(7, status.nodeValidations.size());
+    }
+
+    @Test
+    @DisplayName("Un identifiant dupliqué est signalé à l'ajout puis retiré à la suppression")
+    void duplicateIdsAreTrackedIncrementally() {
+        // Given
+        validationService.validateTree();
+        TreeNode brancheB = configService.getRootNode().findById("brancheB");
+        TreeNode duplicate = new TreeNode("subA1", "Doublon", 0.0);
+
+        // When
+        configService.addChildNodeWithoutRedistribution(brancheB, duplicate);
+        ValidationService.ValidationStatus withDuplicate = validationService.validateTree();
+
+        // Then
+        assertEquals(ValidationService.ValidationLevel.ERROR, withDuplicate.globalLevel);
+        assertTrue(withDuplicate.nodeValidations.containsKey("subA1_duplicate"));
+
+        // When
+        configService.removeNode(duplicate);
+        ValidationService.ValidationStatus cleaned = validationService.validateTree();
+
+        // Then: L'original reste validé sous son identifiant
+        assertFalse(cleaned.nodeValidations.containsKey("subA1_duplicate"));
+        assertTrue(cleaned.nodeValidations.get("subA1").isValid);
+        assertEquals(ValidationService.ValidationLevel.VALID, cleaned.globalLevel);
+
+        // And: Le statut publié précédemment n'a pas changé et ne peut pas être modifié
+        assertTrue(withDuplicate.nodeValidations.containsKey("subA1_duplicate"));
+        assertNotSame(withDuplicate.nodeValidations, cleaned.nodeValidations);
+        assertThrows(UnsupportedOperationException.class, () -> cleaned.nodeValidations.remove("subA1"));
+    }
+
+    @Test
+    @DisplayName("Chaque statut publie un instantané complet sans recopier les résultats inchangés")
+    void snapshotsShareUnchangedResults() {
+        // Given: Un arbre de plusieurs centaines de nœuds
+        TreeNode brancheB = configService.getRootNode().findById("brancheB");
+        configService.edit("Ajout massif", editor -> {
+            for (int i = 0; i < 500; i++) {
+                editor.addChild(brancheB, new TreeNode("bulk" + i, "Lot " + i, 1.0));
+            }
+        });
+        ValidationService.ValidationStatus before = validationService.validateTree();
+        Map<String, ValidationService.NodeValidationResult> expected = new HashMap<>(before.nodeValidations);
+
+        // When: Un doublon ajouté
+        configService.addChildNodeWithoutRedistribution(configService.getRootNode().findById("brancheA"),
+                new TreeNode("bulk7", "Doublon", 0.0));
+        ValidationService.ValidationStatus after = validationService.validateTree();
+
+        // Then: Le nouvel instantané contient tous les résultats, l'ancien est intact
+        assertEquals(507, before.nodeValidations.size());
+        assertEquals(expected, before.nodeValidations);
+        assertTrue(after.nodeValidations.containsKey("bulk7_duplicate"));
+        assertTrue(after.nodeValidations.containsKey("bulk499"));
+        assertEquals(after.nodeValidations.size(), after.nodeValidations.entrySet().stream().count());
+        assertFalse(before.nodeValidations.containsKey("bulk7_duplicate"));
+    }
+
+    @Test
+    @DisplayName("Les listeners ne sont notifiés que si un résultat change")
+    void listenersAreNotifiedOnlyOnChange() {
+        // Given
+        List<ValidationService.ValidationStatus> notifications = new ArrayList<>();
+        validationService.addValidationListener(notifications::add);
+        validationService.validateTree();
+
+        // When: Aucune modification, puis un rechargement complet à l'identique
+        validationService.validateTree();
+        configService.resetToDefault();
+        validationService.validateTree();
+
+        // Then
+        assertEquals(1, notifications.size());
+        assertEquals(7, validationService.getLastValidatedCount());
+    }
+}
@@ -0,0 +1,146 @@
+package com.applydance.service;
+
+import com.applydance.model.TreeNode;
+import com.applydance.model.Weights;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests du solveur de redistribution sous contraintes.
+ */
+@DisplayName("WeightSolver - Redistribution sous contraintes")
+class WeightSolverTest {
+
+    @TempDir
+    Path tempDir;
+
+    private TreeConfigurationService configService;
+
+    @BeforeEach
+    void setUp() {
+        configService = new TreeConfigurationService(tempDir.resolve("tree_configuration.json"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        configService.shutdown();
+    }
+
+    @Test
+    @DisplayName("Les nœuds figés et les bornes sont respectés")
+    void lockedNodesAndBoundsAreRespected() {
+        // Given: A figé à 40%, B plafonné à 20%, C libre
+        TreeNode a = node("a", 40.0);
+        a.setMetadata(WeightSolver.LOCKED_KEY, true);
+        TreeNode b = node("b", 50.0);
+        b.setMetadata(WeightSolver.MAX_KEY, 20.0);
+        TreeNode c = node("c", 10.0);
+        List<TreeNode> children = List.of(a, b, c);
+
+        // When
+        boolean satisfied = WeightSolver.solve(children, Collections.emptySet());
+
+        // Then: B est fixé à sa borne, C reçoit le reste
+        assertTrue(satisfied);
+        assertEquals(400_000, a.getWeightPpm());
+        assertEquals(200_000, b.getWeightPpm());
+        assertEquals(400_000, c.getWeightPpm());
+    }
+
+    @Test
+    @DisplayName("Des contraintes incompatibles sont signalées")
+    void infeasibleConstraintsAreReported() {
+        TreeNode a = node("a", 70.0);
+        a.setMetadata(WeightSolver.LOCKED_KEY, true);
+        TreeNode b = node("b", 30.0);
+        b.setMetadata(WeightSolver.MIN_KEY, 40.0);
+
+        assertFalse(WeightSolver.solve(List.of(a, b), Collections.emptySet()));
+        assertEquals(700_000, a.getWeightPpm());
+        assertEquals(400_000, b.getWeightPpm());
+    }
+
+    @Test
+    @DisplayName("Plusieurs valeurs saisies dans la même fratrie sont conservées")
+    void severalPinnedNodesInSameGroup() {
+        TreeNode a = node("a", 10.0);
+        TreeNode b = node("b", 20.0);
+        TreeNode c = node("c", 35.0);
+        TreeNode d = node("d", 35.0);
+
+        assertTrue(WeightSolver.solve(List.of(a, b, c, d), Set.of(a, b)));
+        assertEquals(100_000, a.getWeightPpm());
+        assertEquals(200_000, b.getWeightPpm());
+        assertEquals(350_000, c.getWeightPpm());
+        assertEquals(350_000, d.getWeightPpm());
+    }
+
+    @Test
+    @DisplayName("Une grande fratrie bornée est répartie en une passe, proportionnellement entre les bornes")
+    void largeBoundedGroupIsFilledInOnePass() {
+        // Given: 20 000 enfants de poids croissants, un sur trois plafonné, un sur cinq avec un minimum
+        List<TreeNode> children = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            TreeNode child = node("n" + i, (i % 100 + 1) / 1000.0);
+            if (i % 3 == 0) {
+                child.setMetadata(WeightSolver.MAX_KEY, 0.004);
+            }
+            if (i % 5 == 0) {
+                child.setMetadata(WeightSolver.MIN_KEY, 0.002);
+            }
+            children.add(child);
+        }
+
+        // When
+        boolean satisfied = WeightSolver.solve(children, Collections.emptySet());
+
+        // Then: Somme exacte, bornes respectées ; deux nœuds libres de même poids reçoivent la même part à 1 ppm près
+        assertTrue(satisfied);
+        assertEquals(Weights.TOTAL_PPM, Weights.sumPpm(children));
+        for (TreeNode child : children) {
+            assertTrue(WeightSolver.withinBounds(child), child.getId());
+        }
+        assertEquals(children.get(1).getWeightPpm(), children.get(101).getWeightPpm(), 1);
+        assertTrue(children.get(98).getWeightPpm() > children.get(1).getWeightPpm());
+    }
+
+    @Test
+    @DisplayName("La normalisation complète est une seule modification notifiée une fois")
+    void normalizeTreeIsSingleEdit() {
+        // Given: Un arbre importé cassé dans deux fratries
+        TreeNode root = configService.getRootNode();
+        root.findById("subA1").setPercentage(10.0);
+        root.findById("subB1").setPercentage(80.0);
+        root.findById("subB2").setMetadata(WeightSolver.LOCKED_KEY, true);
+        List<TreeChangeEvent> received = new ArrayList<>();
+        configService.addTreeChangeListener(received::add, Runnable::run, 0);
+
+        // When
+        List<String> unsatisfied = configService.normalizeTree();
+
+        // Then
+        assertTrue(unsatisfied.isEmpty());
+        assertTrue(configService.validateEntireTree());
+        assertEquals(500_000, root.findById("subB2").getWeightPpm());
+        assertEquals(500_000, root.findById("subB1").getWeightPpm());
+        assertEquals(1, received.size());
+        assertEquals(List.of("brancheA", "brancheB"), new ArrayList<>(received.get(0).getAffectedParentIds()));
+        assertTrue(configService.undo());
+        assertEquals(800_000, root.findById("subB1").getWeightPpm());
+    }
+
+    private static TreeNode node(String id, double percentage) {
+        return new TreeNode(id, id, percentage);
+    }
+}